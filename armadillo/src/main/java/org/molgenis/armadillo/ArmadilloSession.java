@@ -5,6 +5,7 @@ import static java.util.Objects.requireNonNull;
 import java.util.function.Function;
 import org.molgenis.armadillo.service.ArmadilloConnectionFactory;
 import org.molgenis.r.RServerConnection;
+import org.molgenis.r.RServerException;
 import org.molgenis.r.service.ProcessService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,11 +38,26 @@ public class ArmadilloSession {
     }
   }
 
+  /** Whether R still answers, e.g. after the session waited in a pool. */
+  public synchronized boolean isAlive() {
+    try {
+      connection.eval("base::TRUE");
+      return true;
+    } catch (RServerException | RuntimeException e) {
+      logger.debug("Session with pid {} no longer answers: {}", pid, e.getMessage());
+      return false;
+    }
+  }
+
   public void sessionCleanup() {
-    if (busy) {
-      killProcess();
+    try {
+      if (busy) {
+        killProcess();
+      }
+    } finally {
+      // also releases the connection when the process could not be killed
+      connection.close();
     }
-    connection.close();
   }
 
   private void killProcess() {
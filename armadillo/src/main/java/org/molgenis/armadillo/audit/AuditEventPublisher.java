@@ -30,10 +30,12 @@ public class AuditEventPublisher implements ApplicationEventPublisherAware {
   public static final String LOAD_RESOURCE = "LOAD_RESOURCE";
   public static final String LOAD_RESOURCE_FAILURE = "LOAD_RESOURCE_FAILURE";
   public static final String REMOVE_SYMBOL = "REMOVE_SYMBOL";
+  public static final String CLOSE_SESSION_LANE = "CLOSE_SESSION_LANE";
   public static final String ASSIGN1 = "ASSIGN";
   public static final String ASSIGN_FAILURE = "ASSIGN_FAILURE";
   public static final String EXECUTE = "EXECUTE";
   public static final String EXECUTE_FAILURE = "EXECUTE_FAILURE";
+  public static final String EXECUTE_BATCH = "EXECUTE_BATCH";
   public static final String GET_ASSIGN_METHODS = "GET_ASSIGN_METHODS";
   public static final String GET_AGGREGATE_METHODS = "GET_AGGREGATE_METHODS";
   public static final String GET_USER_WORKSPACES = "GET_USER_WORKSPACES";
@@ -69,6 +71,7 @@ public class AuditEventPublisher implements ApplicationEventPublisherAware {
   public static final String START_PROFILE = "START_PROFILE";
   public static final String STOP_PROFILE = "STOP_PROFILE";
   public static final String LIST_OBJECTS = "LIST_OBJECTS";
+  public static final String LIST_OBJECT_VERSIONS = "LIST_OBJECT_VERSIONS";
   public static final String UPLOAD_OBJECT = "UPLOAD_OBJECT";
   public static final String COPY_OBJECT = "COPY_OBJECT";
   public static final String CREATE_LINKED_OBJECT = "CREATE_LINKED_OBJECT";
@@ -77,6 +80,7 @@ public class AuditEventPublisher implements ApplicationEventPublisherAware {
   public static final String PREVIEW_OBJECT = "PREVIEW_OBJECT";
   public static final String PREVIEW_METADATA = "PREVIEW_METADATA";
   public static final String GET_VARIABLES = "GET_VARIABLES";
+  public static final String SEARCH_VARIABLES = "SEARCH_VARIABLES";
   public static final String GET_OBJECT_INFO = "GET_OBJECT_INFO";
   public static final String DELETE_OBJECT = "DELETE_OBJECT";
   public static final String DOWNLOAD_OBJECT = "DOWNLOAD_OBJECT";
@@ -88,17 +92,22 @@ public class AuditEventPublisher implements ApplicationEventPublisherAware {
   public static final String INSTALL_PACKAGES = "INSTALL_PACKAGES";
   public static final String INSTALL_PACKAGES_FAILURE = "INSTALL_PACKAGES_FAILURE";
   public static final String EXPRESSION = "expression";
+  public static final String EXPRESSIONS = "expressions";
   public static final String SELECTED_PROFILE = "selectedProfile";
   public static final String TYPE = "type";
   public static final String FOLDER = "folder";
   public static final String RESOURCE = "resource";
   public static final String SYMBOL = "symbol";
+  public static final String FILTER = "filter";
+  public static final String LANE = "lane";
   public static final String PROJECT = "project";
   public static final String PROFILE = "profile";
   public static final String OBJECT = "object";
+  public static final String VERSION = "version";
   public static final String EMAIL = "email";
   public static final String MESSAGE = "message";
   public static final String TABLE = "table";
+  public static final String QUERY = "query";
   public static final String ID = "id";
   public static final String USER = "user";
   public static final String MDC_SESSION_ID = "sessionID";
@@ -149,6 +158,20 @@ public class AuditEventPublisher implements ApplicationEventPublisherAware {
         });
   }
 
+  /** Audits only a failure of the future, e.g. when its parts are audited separately. */
+  public <T> CompletableFuture<T> auditFailure(
+      CompletableFuture<T> future, Principal principal, String type, Map<String, Object> data) {
+    final var sessionId = MDC.get(MDC_SESSION_ID);
+    final var roles = getRoles();
+
+    return future.whenComplete(
+        (success, failure) -> {
+          if (failure != null) {
+            auditFailure(principal, type, data, failure, sessionId, roles);
+          }
+        });
+  }
+
   /** Audits a function with a return value. */
   public <T> T audit(Supplier<T> c, Principal principal, String type, Map<String, Object> data) {
     try {
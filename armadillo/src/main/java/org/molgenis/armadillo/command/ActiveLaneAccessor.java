@@ -0,0 +1,57 @@
+package org.molgenis.armadillo.command;
+
+import static org.springframework.web.context.request.RequestContextHolder.getRequestAttributes;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.molgenis.armadillo.exceptions.InvalidSessionLaneException;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * The session lane a request runs its commands in. Each lane of a user has its own R session, so
+ * commands in different lanes run in parallel. Requests without lane header use the default lane.
+ */
+public class ActiveLaneAccessor {
+
+  public static final String DEFAULT = "default";
+  public static final String LANE_HEADER = "X-Armadillo-Lane";
+  public static final String LANE_RE = "[\\w-]{1,64}";
+
+  private static final Pattern LANE_PATTERN = Pattern.compile(LANE_RE);
+  private static final ThreadLocal<String> ACTIVE_LANE = ThreadLocal.withInitial(() -> DEFAULT);
+
+  private ActiveLaneAccessor() {
+    throw new UnsupportedOperationException("Do not instantiate");
+  }
+
+  /**
+   * Retrieves the lane from the header of the current request, or the lane bound to the current
+   * thread if there is no request.
+   *
+   * @throws InvalidSessionLaneException if the header is not a valid lane name
+   */
+  public static String getActiveLaneName() {
+    if (getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+      return Optional.ofNullable(attributes.getRequest().getHeader(LANE_HEADER))
+          .map(ActiveLaneAccessor::validate)
+          .orElse(DEFAULT);
+    }
+    return ACTIVE_LANE.get();
+  }
+
+  public static void setActiveLaneName(String lane) {
+    ACTIVE_LANE.set(validate(lane));
+  }
+
+  public static void resetActiveLaneName() {
+    ACTIVE_LANE.remove();
+  }
+
+  private static String validate(String lane) {
+    if (!LANE_PATTERN.matcher(lane).matches()) {
+      throw new InvalidSessionLaneException(
+          lane, "use at most 64 letters, digits, underscores or dashes");
+    }
+    return lane;
+  }
+}
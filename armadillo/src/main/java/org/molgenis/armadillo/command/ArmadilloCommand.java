@@ -7,5 +7,8 @@ public interface ArmadilloCommand<T> {
 
   Optional<CompletableFuture<T>> getExecution();
 
+  /** Whether the result can be retrieved as the result of the last execution. */
+  boolean isWithResult();
+
   ArmadilloCommandDTO asDto();
 }
@@ -0,0 +1,15 @@
+package org.molgenis.armadillo.command;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The streamed result of a batch and the error of every statement that failed, by the index of the
+ * statement.
+ */
+public record BatchResult(InputStream result, Map<Integer, String> errors) {
+
+  public BatchResult {
+    errors = Map.copyOf(errors);
+  }
+}
@@ -0,0 +1,20 @@
+package org.molgenis.armadillo.command;
+
+/**
+ * A statement of a batch: an expression that is assigned to a symbol, or an aggregate expression
+ * when there is no symbol.
+ */
+public record BatchStatement(String symbol, String expression) {
+
+  public static BatchStatement assign(String symbol, String expression) {
+    return new BatchStatement(symbol, expression);
+  }
+
+  public static BatchStatement aggregate(String expression) {
+    return new BatchStatement(null, expression);
+  }
+
+  public boolean isAssign() {
+    return symbol != null;
+  }
+}
@@ -1,9 +1,11 @@
 package org.molgenis.armadillo.command;
 
+import java.io.InputStream;
 import java.security.Principal;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import org.molgenis.armadillo.storage.RowFilter;
 import org.molgenis.r.RServerResult;
 import org.molgenis.r.model.RPackage;
 import org.springframework.core.io.Resource;
@@ -20,9 +22,27 @@ public interface Commands {
 
   CompletableFuture<RServerResult> evaluate(String expression, boolean serialized);
 
+  /**
+   * Evaluates an expression and streams the raw result, which isn't kept as the result of the last
+   * execution. The stream has to be closed.
+   */
+  CompletableFuture<InputStream> evaluateStream(String expression);
+
   CompletableFuture<Void> assign(String symbol, String expression);
 
-  CompletableFuture<Void> loadTable(String symbol, String table, List<String> variables);
+  /**
+   * Evaluates statements in order, in one evaluation, and streams the raw result: a list with per
+   * statement either {@code list(result = ...)} or, when it failed, {@code list(error = message)}.
+   * The result of an assignment is {@code NULL}. The errors are also returned separately, so every
+   * statement can be audited with its own outcome. The stream has to be closed.
+   */
+  CompletableFuture<BatchResult> evaluateBatch(List<BatchStatement> statements);
+
+  /**
+   * @param filter the rows to load, or null to load all rows
+   */
+  CompletableFuture<Void> loadTable(
+      String symbol, String table, List<String> variables, RowFilter filter);
 
   CompletableFuture<Void> loadResource(Principal principal, String symbol, String resource);
 
@@ -38,6 +58,12 @@ public interface Commands {
 
   Optional<ArmadilloCommandDTO> getLastCommand();
 
+  /** The names of the open session lanes, see {@link ActiveLaneAccessor}. */
+  List<String> getLanes();
+
+  /** Closes a session lane and its R session, does nothing if the lane isn't open. */
+  void closeLane(String name);
+
   enum ArmadilloCommandStatus {
     COMPLETED,
     FAILED,
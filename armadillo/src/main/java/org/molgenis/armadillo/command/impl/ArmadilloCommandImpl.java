@@ -99,6 +99,7 @@ public abstract class ArmadilloCommandImpl<T> implements ArmadilloCommand<T> {
     return expression;
   }
 
+  @Override
   public boolean isWithResult() {
     return withResult;
   }
@@ -2,6 +2,8 @@ package org.molgenis.armadillo.command.impl;
 
 import static java.lang.String.format;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.function.Predicate.not;
+import static java.util.stream.Collectors.joining;
 import static org.molgenis.armadillo.controller.ArmadilloUtils.GLOBAL_ENV;
 import static org.molgenis.armadillo.security.RunAs.runAsSystem;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.PARQUET;
@@ -17,22 +19,28 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import org.molgenis.armadillo.ArmadilloSession;
+import org.molgenis.armadillo.command.ActiveLaneAccessor;
 import org.molgenis.armadillo.command.ArmadilloCommand;
 import org.molgenis.armadillo.command.ArmadilloCommandDTO;
+import org.molgenis.armadillo.command.BatchResult;
+import org.molgenis.armadillo.command.BatchStatement;
 import org.molgenis.armadillo.command.Commands;
+import org.molgenis.armadillo.exceptions.InvalidSessionLaneException;
 import org.molgenis.armadillo.exceptions.StorageException;
+import org.molgenis.armadillo.exceptions.TooManySessionLanesException;
 import org.molgenis.armadillo.metadata.ProfileConfig;
 import org.molgenis.armadillo.metadata.ProfileService;
 import org.molgenis.armadillo.profile.ActiveProfileNameAccessor;
 import org.molgenis.armadillo.security.ResourceTokenService;
-import org.molgenis.armadillo.service.ArmadilloConnectionFactory;
+import org.molgenis.armadillo.service.ArmadilloSessionPool;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
+import org.molgenis.armadillo.storage.RowFilter;
 import org.molgenis.r.RServerConnection;
 import org.molgenis.r.RServerResult;
 import org.molgenis.r.model.RPackage;
 import org.molgenis.r.service.PackageService;
-import org.molgenis.r.service.ProcessService;
 import org.molgenis.r.service.RExecutorService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.task.TaskExecutor;
@@ -44,37 +52,46 @@ import org.springframework.web.context.annotation.SessionScope;
 @SessionScope
 class CommandsImpl implements Commands {
 
+  /** Holds the result of a batch while its errors are read, the dot hides it from ls() */
+  static final String BATCH_SYMBOL = ".armadillo_batch";
+
   private final ArmadilloStorageService armadilloStorage;
   private final PackageService packageService;
   private final RExecutorService rExecutorService;
   private final TaskExecutor taskExecutor;
-  private final ArmadilloConnectionFactory connectionFactory;
-  private final ProcessService processService;
+  private final ArmadilloSessionPool sessionPool;
   private final ProfileService profileService;
   private final ResourceTokenService resourceTokenService;
+  private final int maxLanes;
+
+  /** The lanes by name, in the order they were opened. */
+  private final Map<String, Lane> lanes = new LinkedHashMap<>();
 
-  private ArmadilloSession armadilloSession;
+  /** Commands of a lane run one after the other, in the R session of the lane. */
+  private static class Lane {
+    private ArmadilloSession session;
 
-  @SuppressWarnings("java:S3077") // ArmadilloCommand is thread-safe
-  private volatile ArmadilloCommand lastCommand;
+    @SuppressWarnings("java:S3077") // ArmadilloCommand is thread-safe
+    private volatile ArmadilloCommand lastCommand;
+  }
 
   public CommandsImpl(
       ArmadilloStorageService armadilloStorage,
       PackageService packageService,
       RExecutorService rExecutorService,
       TaskExecutor taskExecutor,
-      ArmadilloConnectionFactory connectionFactory,
-      ProcessService processService,
+      ArmadilloSessionPool sessionPool,
       ProfileService profileService,
-      ResourceTokenService resourceTokenService) {
+      ResourceTokenService resourceTokenService,
+      @Value("${armadillo.session-lanes.max-per-user:4}") int maxLanes) {
     this.armadilloStorage = armadilloStorage;
     this.packageService = packageService;
     this.rExecutorService = rExecutorService;
     this.taskExecutor = taskExecutor;
-    this.connectionFactory = connectionFactory;
-    this.processService = processService;
+    this.sessionPool = sessionPool;
     this.profileService = profileService;
     this.resourceTokenService = resourceTokenService;
+    this.maxLanes = Math.max(1, maxLanes);
   }
 
   @Override
@@ -85,9 +102,17 @@ class CommandsImpl implements Commands {
   @Override
   public void selectProfile(String profileName) {
     runAsSystem(() -> profileService.getByName(profileName));
-    if (armadilloSession != null) armadilloSession.sessionCleanup();
+    List<Lane> openLanes;
+    synchronized (lanes) {
+      openLanes = List.copyOf(lanes.values());
+    }
+    // the other lanes start a session of the new profile with their next command
+    openLanes.forEach(CommandsImpl::closeSession);
     ActiveProfileNameAccessor.setActiveProfileName(profileName);
-    armadilloSession = new ArmadilloSession(connectionFactory, processService);
+    Lane lane = getOrOpenLane(ActiveLaneAccessor.DEFAULT);
+    synchronized (lane) {
+      lane.session = sessionPool.take();
+    }
   }
 
   @Override
@@ -97,24 +122,89 @@ class CommandsImpl implements Commands {
 
   @Override
   public Optional getLastExecution() {
-    return Optional.ofNullable(lastCommand).flatMap(ArmadilloCommand::getExecution);
+    return getLastLaneCommand()
+        .filter(ArmadilloCommand::isWithResult)
+        .flatMap(ArmadilloCommand::getExecution);
   }
 
   @Override
   public Optional<ArmadilloCommandDTO> getLastCommand() {
-    return Optional.ofNullable(lastCommand).map(ArmadilloCommand::asDto);
+    return getLastLaneCommand().map(ArmadilloCommand::asDto);
   }
 
-  synchronized <T> CompletableFuture<T> schedule(ArmadilloCommandImpl<T> command) {
-    final ArmadilloSession session =
-        armadilloSession == null
-            ? new ArmadilloSession(connectionFactory, processService)
-            : armadilloSession;
-    lastCommand = command;
-    CompletableFuture<T> result =
-        supplyAsync(() -> session.execute(command::evaluate), taskExecutor);
-    command.setExecution(result);
-    return result;
+  private Optional<ArmadilloCommand> getLastLaneCommand() {
+    String name = ActiveLaneAccessor.getActiveLaneName();
+    synchronized (lanes) {
+      return Optional.ofNullable(lanes.get(name)).map(lane -> lane.lastCommand);
+    }
+  }
+
+  @Override
+  public List<String> getLanes() {
+    synchronized (lanes) {
+      return List.copyOf(lanes.keySet());
+    }
+  }
+
+  @Override
+  public void closeLane(String name) {
+    if (name.equals(ActiveLaneAccessor.DEFAULT)) {
+      throw new InvalidSessionLaneException(name, "the default lane can't be closed");
+    }
+    Lane lane;
+    synchronized (lanes) {
+      lane = lanes.remove(name);
+    }
+    if (lane != null) {
+      closeSession(lane);
+    }
+  }
+
+  private Lane getOrOpenLane(String name) {
+    synchronized (lanes) {
+      Lane lane = lanes.get(name);
+      if (lane == null) {
+        // the default lane is always available
+        long namedLanes =
+            lanes.keySet().stream().filter(not(ActiveLaneAccessor.DEFAULT::equals)).count();
+        if (!name.equals(ActiveLaneAccessor.DEFAULT) && namedLanes >= maxLanes - 1) {
+          throw new TooManySessionLanesException(name, maxLanes);
+        }
+        lane = new Lane();
+        lanes.put(name, lane);
+      }
+      return lane;
+    }
+  }
+
+  private static void closeSession(Lane lane) {
+    synchronized (lane) {
+      if (lane.session != null) {
+        lane.session.sessionCleanup();
+        lane.session = null;
+      }
+    }
+  }
+
+  <T> CompletableFuture<T> schedule(ArmadilloCommandImpl<T> command) {
+    String name = ActiveLaneAccessor.getActiveLaneName();
+    Lane lane = getOrOpenLane(name);
+    synchronized (lane) {
+      ArmadilloSession session = lane.session;
+      if (session == null) {
+        session = sessionPool.take();
+        // the default lane gets its session when a profile is selected
+        if (!name.equals(ActiveLaneAccessor.DEFAULT)) {
+          lane.session = session;
+        }
+      }
+      lane.lastCommand = command;
+      final ArmadilloSession laneSession = session;
+      CompletableFuture<T> result =
+          supplyAsync(() -> laneSession.execute(command::evaluate), taskExecutor);
+      command.setExecution(result);
+      return result;
+    }
   }
 
   @Override
@@ -133,6 +223,74 @@ class CommandsImpl implements Commands {
         });
   }
 
+  @Override
+  public CompletableFuture<InputStream> evaluateStream(String expression) {
+    return schedule(
+        // the stream can only be read once
+        new ArmadilloCommandImpl<>(expression, false) {
+          @Override
+          protected InputStream doWithConnection(RServerConnection connection) {
+            return rExecutorService.executeStream(expression, connection);
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<BatchResult> evaluateBatch(List<BatchStatement> statements) {
+    String expression =
+        statements.stream()
+            .map(CommandsImpl::toBatchExpression)
+            .collect(joining(",\n", "base::list(\n", ")"));
+    String assignment = format("is.null(base::assign('%s', value=%s))", BATCH_SYMBOL, expression);
+    return schedule(
+        // the stream can only be read once
+        new ArmadilloCommandImpl<>(expression, false) {
+          @Override
+          protected BatchResult doWithConnection(RServerConnection connection) {
+            rExecutorService.execute(assignment, connection);
+            Map<Integer, String> errors = getBatchErrors(connection);
+            InputStream result =
+                rExecutorService.executeStream(
+                    format("base::tryCatch(%1$s, finally = base::rm('%1$s'))", BATCH_SYMBOL),
+                    connection);
+            return new BatchResult(result, errors);
+          }
+        });
+  }
+
+  /** The error of every statement of the evaluated batch that failed, by index. */
+  private Map<Integer, String> getBatchErrors(RServerConnection connection) {
+    String[] errors =
+        rExecutorService
+            .execute(
+                format(
+                    "base::vapply(%s, function(s) if (base::is.null(s$error)) '' else s$error,"
+                        + " base::character(1))",
+                    BATCH_SYMBOL),
+                connection)
+            .asStrings();
+    Map<Integer, String> result = new HashMap<>();
+    for (int i = 0; i < errors.length; i++) {
+      if (!errors[i].isEmpty()) {
+        result.put(i, errors[i]);
+      }
+    }
+    return result;
+  }
+
+  private static String toBatchExpression(BatchStatement statement) {
+    String expression =
+        statement.isAssign()
+            ? format(
+                "base::assign('%s', value={%s}); NULL", statement.symbol(), statement.expression())
+            : statement.expression();
+    // a failing statement doesn't stop the others
+    return format(
+        "base::tryCatch(base::list(result = {%s}), error = function(e) base::list(error ="
+            + " base::conditionMessage(e)))",
+        expression);
+  }
+
   @Override
   public CompletableFuture<Void> assign(String symbol, String expression) {
     String statement = format("is.null(base::assign('%s', value={%s}))", symbol, expression);
@@ -161,15 +319,27 @@ class CommandsImpl implements Commands {
   }
 
   @Override
-  public CompletableFuture<Void> loadTable(String symbol, String table, List<String> variables) {
+  public CompletableFuture<Void> loadTable(
+      String symbol, String table, List<String> variables, RowFilter filter) {
     int index = table.indexOf('/');
     String project = table.substring(0, index);
     String objectName = table.substring(index + 1);
+    // the disclosure threshold of a row filter can be set per profile
+    int minFilteredRows =
+        filter == null
+            ? 0
+            : armadilloStorage.getMinFilteredRows(
+                runAsSystem(() -> profileService.getByName(getActiveProfileName()).getOptions()));
     return schedule(
         new ArmadilloCommandImpl<>("Load table " + table, false) {
           @Override
           protected Void doWithConnection(RServerConnection connection) {
-            InputStream inputStream = armadilloStorage.loadTable(project, objectName);
+            // only the selected variables of the selected rows are copied to R
+            InputStream inputStream =
+                filter == null
+                    ? armadilloStorage.loadTable(project, objectName, variables, null)
+                    : armadilloStorage.loadTable(
+                        project, objectName, variables, filter, minFilteredRows);
             rExecutorService.loadTable(
                 connection,
                 new InputStreamResource(inputStream),
@@ -276,6 +446,11 @@ class CommandsImpl implements Commands {
 
   @PreDestroy
   public void preDestroy() {
-    if (armadilloSession != null) armadilloSession.sessionCleanup();
+    List<Lane> openLanes;
+    synchronized (lanes) {
+      openLanes = List.copyOf(lanes.values());
+      lanes.clear();
+    }
+    openLanes.forEach(CommandsImpl::closeSession);
   }
 }
@@ -5,12 +5,14 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.util.function.Predicate.not;
 import static org.springframework.web.servlet.support.ServletUriComponentsBuilder.fromCurrentContextPath;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.Optional;
 import org.molgenis.r.RServerResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public class ArmadilloUtils {
 
@@ -36,6 +38,15 @@ public class ArmadilloUtils {
     }
   }
 
+  /** Copies a raw result to the response with a fixed size buffer and closes it. */
+  public static StreamingResponseBody createStreamingResponse(InputStream result) {
+    return outputStream -> {
+      try (result) {
+        result.transferTo(outputStream);
+      }
+    };
+  }
+
   static URI getLastCommandLocation() {
     return fromCurrentContextPath().replacePath("/lastcommand").build().toUri();
   }
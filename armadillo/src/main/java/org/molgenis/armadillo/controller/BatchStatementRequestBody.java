@@ -0,0 +1,10 @@
+package org.molgenis.armadillo.controller;
+
+import static org.molgenis.armadillo.controller.DataController.SYMBOL_RE;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+
+/** A statement of a batch, the expression is assigned to the symbol if there is one. */
+public record BatchStatementRequestBody(
+    @Pattern(regexp = SYMBOL_RE) String symbol, @NotBlank String expression) {}
@@ -5,6 +5,8 @@ import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.molgenis.armadillo.audit.AuditEventPublisher.*;
+import static org.molgenis.armadillo.command.ActiveLaneAccessor.LANE_HEADER;
+import static org.molgenis.armadillo.command.ActiveLaneAccessor.LANE_RE;
 import static org.molgenis.armadillo.controller.ArmadilloUtils.getLastCommandLocation;
 import static org.molgenis.armadillo.security.RunAs.runAsSystem;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.LINK_FILE;
@@ -16,8 +18,10 @@ import static org.springframework.http.MediaType.*;
 import static org.springframework.http.ResponseEntity.*;
 import static org.springframework.web.bind.annotation.RequestMethod.HEAD;
 
+import com.google.common.base.Throwables;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -25,6 +29,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 import java.io.InputStream;
 import java.security.Principal;
@@ -33,8 +38,11 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import org.molgenis.armadillo.audit.AuditEventPublisher;
 import org.molgenis.armadillo.command.ArmadilloCommandDTO;
+import org.molgenis.armadillo.command.BatchResult;
+import org.molgenis.armadillo.command.BatchStatement;
 import org.molgenis.armadillo.command.Commands;
 import org.molgenis.armadillo.exceptions.ExpressionException;
+import org.molgenis.armadillo.exceptions.InvalidRowFilterException;
 import org.molgenis.armadillo.exceptions.StorageException;
 import org.molgenis.armadillo.exceptions.UnknownObjectException;
 import org.molgenis.armadillo.exceptions.UnknownVariableException;
@@ -43,7 +51,9 @@ import org.molgenis.armadillo.service.DSEnvironmentCache;
 import org.molgenis.armadillo.service.ExpressionRewriter;
 import org.molgenis.armadillo.storage.ArmadilloLinkFile;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
+import org.molgenis.armadillo.storage.RowFilter;
 import org.molgenis.r.RServerResult;
+import org.molgenis.r.exceptions.RExecutionException;
 import org.molgenis.r.model.RPackage;
 import org.obiba.datashield.core.DSMethod;
 import org.rosuda.REngine.REXPMismatchException;
@@ -52,6 +62,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "DataSHIELD", description = "Core API that interacts with the DataSHIELD environments")
 @SecurityRequirement(name = "bearerAuth")
@@ -99,15 +110,11 @@ public class DataController {
   @Operation(
       summary = "Get available tables",
       description =
-          "Return a list of (fully qualified) table identifiers available for DataSHIELD operations")
+          "Return a list of (fully qualified) table identifiers available for DataSHIELD"
+              + " operations")
   @GetMapping(value = "/tables", produces = APPLICATION_JSON_VALUE)
   public List<String> getTables(Principal principal) {
-    return auditEventPublisher.audit(
-        () ->
-            storage.listProjects().stream().map(storage::listTables).flatMap(List::stream).toList(),
-        principal,
-        GET_TABLES,
-        Map.of());
+    return auditEventPublisher.audit(storage::listVisibleTables, principal, GET_TABLES, Map.of());
   }
 
   @Operation(
@@ -134,11 +141,18 @@ public class DataController {
 
   @Operation(
       summary = "Load table",
-      description = "Load a table",
+      description =
+          "Load a table. The optional filter selects the rows to load, e.g. age >= 18 & region"
+              + " %in% c('north', 'east')",
       security = {@SecurityRequirement(name = "jwt")})
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "200", description = "Object loaded successfully"),
+        @ApiResponse(
+            responseCode = "400",
+            description =
+                "Invalid filter, or a filter that selects or leaves out too few rows to be safe",
+            content = @Content(mediaType = "application/json")),
         @ApiResponse(
             responseCode = "404",
             description = "Unknown project or object",
@@ -154,18 +168,25 @@ public class DataController {
       @Valid @Pattern(regexp = SYMBOL_RE) @RequestParam String symbol,
       @Valid @Pattern(regexp = TABLE_RESOURCE_REGEX) @RequestParam String table,
       @Valid @Pattern(regexp = SYMBOL_CSV_RE) @RequestParam(required = false) String variables,
+      @RequestParam(required = false) String filter,
       @RequestParam(defaultValue = "false") boolean async) {
     java.util.regex.Pattern tableResourcePattern =
         java.util.regex.Pattern.compile(TABLE_RESOURCE_REGEX);
     HashMap<String, Object> data = getMatchedData(tableResourcePattern, table, TABLE);
     data.put(SYMBOL, symbol);
+    RowFilter rowFilter = null;
+    if (filter != null) {
+      rowFilter = RowFilter.parse(filter);
+      data.put(FILTER, filter);
+    }
     String project = (String) data.get(PROJECT);
     String objectName = String.format(PATH_FORMAT, data.get(FOLDER), data.get(TABLE));
     if (storage.hasObject(project, objectName + LINK_FILE)) {
-      return loadTableFromLinkFile(project, objectName, variables, principal, data, symbol, async);
+      return loadTableFromLinkFile(
+          project, objectName, variables, rowFilter, principal, data, symbol, async);
     } else if (storage.hasObject(project, objectName + PARQUET)) {
       var variableList = getVariableList(variables);
-      return doLoadTable(symbol, table, variableList, principal, data, async);
+      return doLoadTable(symbol, table, variableList, rowFilter, principal, data, async);
     } else {
       data = new HashMap<>(data);
       data.put(MESSAGE, "Table not found");
@@ -178,7 +199,8 @@ public class DataController {
   @Operation(
       summary = "Get available resources",
       description =
-          "Return a list of (fully qualified) resource identifiers available for DataSHIELD operations")
+          "Return a list of (fully qualified) resource identifiers available for DataSHIELD"
+              + " operations")
   @GetMapping(value = "/resources", produces = APPLICATION_JSON_VALUE)
   public List<String> getResources(Principal principal) {
     return auditEventPublisher.audit(
@@ -242,7 +264,14 @@ public class DataController {
         ? completedFuture(created(getLastCommandLocation()).body(null))
         : result
             .thenApply(ResponseEntity::ok)
-            .exceptionally(t -> status(INTERNAL_SERVER_ERROR).build());
+            .exceptionally(
+                t -> {
+                  // a refused filter is a bad request, which is reported with its reason
+                  if (Throwables.getRootCause(t) instanceof InvalidRowFilterException e) {
+                    throw new ResponseStatusException(BAD_REQUEST, e.getMessage(), e);
+                  }
+                  return status(INTERNAL_SERVER_ERROR).build();
+                });
   }
 
   @Operation(summary = "Get assigned symbols")
@@ -302,7 +331,7 @@ public class DataController {
       value = "/execute",
       consumes = TEXT_PLAIN_VALUE,
       produces = APPLICATION_OCTET_STREAM_VALUE)
-  public CompletableFuture<ResponseEntity<byte[]>> execute(
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> execute(
       Principal principal,
       @RequestBody String expression,
       @Parameter(description = "Indicates if the expression should be executed asynchronously")
@@ -311,15 +340,18 @@ public class DataController {
     Map<String, Object> data = Map.of(EXPRESSION, expression);
     try {
       String rewrittenExpression = expressionRewriter.rewriteAggregate(expression);
-      CompletableFuture<RServerResult> result =
-          auditEventPublisher.audit(
-              commands.evaluate(rewrittenExpression, true), principal, EXECUTE, data);
-      return async
-          ? completedFuture(created(getLastCommandLocation()).body(null))
-          : result
-              .thenApply(ArmadilloUtils::createRawResponse)
-              .thenApply(ResponseEntity::ok)
-              .exceptionally(t -> status(INTERNAL_SERVER_ERROR).build());
+      if (async) {
+        // the result is kept until it is retrieved from /lastresult
+        auditEventPublisher.audit(
+            commands.evaluate(rewrittenExpression, true), principal, EXECUTE, data);
+        return completedFuture(created(getLastCommandLocation()).body(null));
+      }
+      // the result is streamed from R to the client, instead of being held in memory
+      return auditEventPublisher
+          .audit(commands.evaluateStream(rewrittenExpression), principal, EXECUTE, data)
+          .thenApply(ArmadilloUtils::createStreamingResponse)
+          .thenApply(ResponseEntity::ok)
+          .exceptionally(t -> status(INTERNAL_SERVER_ERROR).build());
     } catch (ExpressionException ex) {
       data = new HashMap<>(data);
       data.put(MESSAGE, ex.getMessage());
@@ -329,13 +361,110 @@ public class DataController {
     }
   }
 
-  @Operation(summary = "Get last command")
+  @Operation(
+      summary = "Execute statements",
+      description =
+          "Assigns and aggregates in one evaluation, in order. The result is a list with per"
+              + " statement either list(result = ...) or list(error = message); a failing"
+              + " statement doesn't stop the others. Statements without symbol are aggregates.")
+  @PostMapping(
+      value = "/batch",
+      consumes = APPLICATION_JSON_VALUE,
+      produces = APPLICATION_OCTET_STREAM_VALUE)
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> executeBatch(
+      Principal principal,
+      @RequestBody @NotEmpty List<@Valid BatchStatementRequestBody> statements) {
+    List<BatchStatement> rewrittenStatements = new ArrayList<>();
+    for (BatchStatementRequestBody statement : statements) {
+      rewrittenStatements.add(rewrite(principal, statement));
+    }
+    CompletableFuture<BatchResult> result = commands.evaluateBatch(rewrittenStatements);
+    // every statement is audited with its own outcome, a batch that couldn't be evaluated at all
+    // is audited once
+    List<CompletableFuture<Void>> outcomes = new ArrayList<>();
+    for (BatchStatementRequestBody statement : statements) {
+      CompletableFuture<Void> outcome = new CompletableFuture<>();
+      if (statement.symbol() != null) {
+        auditEventPublisher.audit(
+            outcome,
+            principal,
+            ASSIGN1,
+            Map.of(SYMBOL, statement.symbol(), EXPRESSION, statement.expression()));
+      } else {
+        auditEventPublisher.audit(
+            outcome, principal, EXECUTE, Map.of(EXPRESSION, statement.expression()));
+      }
+      outcomes.add(outcome);
+    }
+    result =
+        auditEventPublisher.auditFailure(
+            result,
+            principal,
+            EXECUTE_BATCH,
+            Map.of(
+                EXPRESSIONS,
+                statements.stream().map(BatchStatementRequestBody::expression).toList()));
+    return result
+        .thenApply(
+            batch -> {
+              completeOutcomes(outcomes, batch);
+              return batch.result();
+            })
+        .thenApply(ArmadilloUtils::createStreamingResponse)
+        .thenApply(ResponseEntity::ok)
+        .exceptionally(t -> status(INTERNAL_SERVER_ERROR).build());
+  }
+
+  private static void completeOutcomes(List<CompletableFuture<Void>> outcomes, BatchResult batch) {
+    for (int i = 0; i < outcomes.size(); i++) {
+      String error = batch.errors().get(i);
+      if (error == null) {
+        outcomes.get(i).complete(null);
+      } else {
+        outcomes.get(i).completeExceptionally(new RExecutionException(error));
+      }
+    }
+  }
+
+  private BatchStatement rewrite(Principal principal, BatchStatementRequestBody statement) {
+    String symbol = statement.symbol();
+    String expression = statement.expression();
+    try {
+      return symbol != null
+          ? BatchStatement.assign(symbol, expressionRewriter.rewriteAssign(expression))
+          : BatchStatement.aggregate(expressionRewriter.rewriteAggregate(expression));
+    } catch (ExpressionException ex) {
+      Map<String, Object> data = new HashMap<>();
+      if (symbol != null) {
+        data.put(SYMBOL, symbol);
+      }
+      data.put(EXPRESSION, expression);
+      data.put(MESSAGE, ex.getMessage());
+      data.put(TYPE, ex.getClass().getSimpleName());
+      auditEventPublisher.audit(principal, symbol != null ? ASSIGN_FAILURE : EXECUTE_FAILURE, data);
+      throw ex;
+    }
+  }
+
+  @Operation(
+      summary = "Get last command",
+      parameters =
+          @Parameter(
+              in = ParameterIn.HEADER,
+              name = LANE_HEADER,
+              description = "The session lane of the command, the default lane if absent"))
   @GetMapping(value = "/lastcommand", produces = APPLICATION_JSON_VALUE)
   public ResponseEntity<ArmadilloCommandDTO> getLastCommand() {
     return ResponseEntity.of(commands.getLastCommand());
   }
 
-  @Operation(summary = "Get last result")
+  @Operation(
+      summary = "Get last result",
+      parameters =
+          @Parameter(
+              in = ParameterIn.HEADER,
+              name = LANE_HEADER,
+              description = "The session lane of the command, the default lane if absent"))
   @GetMapping(value = "/lastresult", produces = APPLICATION_OCTET_STREAM_VALUE)
   @ResponseStatus(OK)
   public CompletableFuture<ResponseEntity<byte[]>> lastResult() {
@@ -350,6 +479,26 @@ public class DataController {
         .orElse(completedFuture(notFound().build()));
   }
 
+  @Operation(
+      summary = "Get session lanes",
+      description =
+          "Lists the open session lanes. Commands of a request with header "
+              + LANE_HEADER
+              + " run in the R session of that lane, in parallel with the other lanes.")
+  @GetMapping(value = "/lanes", produces = APPLICATION_JSON_VALUE)
+  public List<String> getLanes() {
+    return commands.getLanes();
+  }
+
+  @Operation(summary = "Close session lane", description = "Closes a lane and its R session")
+  @DeleteMapping(value = "/lanes/{lane}")
+  @ResponseStatus(NO_CONTENT)
+  public void closeLane(
+      Principal principal, @Valid @Pattern(regexp = LANE_RE) @PathVariable String lane) {
+    auditEventPublisher.audit(
+        () -> commands.closeLane(lane), principal, CLOSE_SESSION_LANE, Map.of(LANE, lane));
+  }
+
   @PostMapping(value = "select-profile")
   @ResponseStatus(NO_CONTENT)
   public void selectProfile(Principal principal, @RequestBody @NotBlank String profileName) {
@@ -529,17 +678,28 @@ public class DataController {
       String symbol,
       String table,
       List<String> variableList,
+      RowFilter rowFilter,
       Principal principal,
       Map<String, Object> data,
       Boolean async) {
     var result =
         auditEventPublisher.audit(
-            commands.loadTable(symbol, table, variableList), principal, LOAD_TABLE, data);
+            commands.loadTable(symbol, table, variableList, rowFilter),
+            principal,
+            LOAD_TABLE,
+            data);
     return async
         ? completedFuture(created(getLastCommandLocation()).body(null))
         : result
             .thenApply(ResponseEntity::ok)
-            .exceptionally(t -> status(INTERNAL_SERVER_ERROR).build());
+            .exceptionally(
+                t -> {
+                  // a refused filter is a bad request, which is reported with its reason
+                  if (Throwables.getRootCause(t) instanceof InvalidRowFilterException e) {
+                    throw new ResponseStatusException(BAD_REQUEST, e.getMessage(), e);
+                  }
+                  return status(INTERNAL_SERVER_ERROR).build();
+                });
   }
 
   protected List<String> getLinkedVariables(ArmadilloLinkFile linkFile, String variables) {
@@ -569,6 +729,7 @@ public class DataController {
       String project,
       String objectName,
       String variables,
+      RowFilter rowFilter,
       Principal principal,
       HashMap<String, Object> data,
       String symbol,
@@ -581,12 +742,14 @@ public class DataController {
     if (runAsSystem(() -> storage.hasObject(sourceProject, sourceObject + PARQUET))) {
       List<String> variableList = getLinkedVariables(linkFile, variables);
       HashMap<String, Object> finalData = data;
+      // the storage reads the linked variables from the materialised table, or from the source
       return runAsSystem(
           () ->
               doLoadTable(
                   symbol,
-                  sourceProject + "/" + sourceObject,
+                  project + "/" + objectName,
                   variableList,
+                  rowFilter,
                   principal,
                   finalData,
                   async));
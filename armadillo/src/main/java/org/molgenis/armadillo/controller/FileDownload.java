@@ -0,0 +1,68 @@
+package org.molgenis.armadillo.controller;
+
+import static java.lang.String.format;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Serves a file from local storage. Spring answers conditional requests with the ETag and
+ * Last-Modified headers and Range requests from the {@link FileSystemResource}. A complete file is
+ * handed to Tomcat's sendfile support when the connector offers it, so the bytes go from the page
+ * cache to the socket without passing through the JVM.
+ */
+class FileDownload {
+  static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private FileDownload() {}
+
+  static ResponseEntity<Resource> download(Path path, String fileName, HttpServletRequest request)
+      throws IOException {
+    long size = Files.size(path);
+    Instant lastModified = Files.getLastModifiedTime(path).toInstant();
+    String eTag = getETag(size, lastModified);
+
+    HttpHeaders httpHeaders = new HttpHeaders();
+    httpHeaders.setContentDisposition(ContentDisposition.attachment().filename(fileName).build());
+    httpHeaders.setContentType(APPLICATION_OCTET_STREAM);
+    httpHeaders.setETag(eTag);
+    httpHeaders.setLastModified(lastModified);
+    httpHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    if (canSendFile(request)
+        && !new ServletWebRequest(request).checkNotModified(eTag, lastModified.toEpochMilli())) {
+      request.setAttribute(SENDFILE_FILENAME, path.toFile().getCanonicalPath());
+      request.setAttribute(SENDFILE_START, 0L);
+      request.setAttribute(SENDFILE_END, size);
+      httpHeaders.setContentLength(size);
+      return new ResponseEntity<>(httpHeaders, HttpStatus.OK);
+    }
+    return new ResponseEntity<>(new FileSystemResource(path), httpHeaders, HttpStatus.OK);
+  }
+
+  /** Strong validator that changes whenever the file is rewritten. */
+  static String getETag(long size, Instant lastModified) {
+    return format("\"%x-%x\"", size, lastModified.toEpochMilli());
+  }
+
+  private static boolean canSendFile(HttpServletRequest request) {
+    return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+        && HttpMethod.GET.matches(request.getMethod())
+        && request.getHeader(HttpHeaders.RANGE) == null;
+  }
+}
@@ -4,10 +4,10 @@ import static org.apache.logging.log4j.util.Strings.concat;
 import static org.molgenis.armadillo.audit.AuditEventPublisher.*;
 import static org.molgenis.armadillo.security.ResourceTokenService.INTERNAL_ISSUER;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.LINK_FILE;
+import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
-import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
 import static org.springframework.http.MediaType.MULTIPART_FORM_DATA_VALUE;
 import static org.springframework.http.ResponseEntity.noContent;
 import static org.springframework.http.ResponseEntity.notFound;
@@ -22,11 +22,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.molgenis.armadillo.audit.AuditEventPublisher;
 import org.molgenis.armadillo.exceptions.FileProcessingException;
 import org.molgenis.armadillo.exceptions.UnknownObjectException;
@@ -34,7 +39,13 @@ import org.molgenis.armadillo.exceptions.UnknownProjectException;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
 import org.molgenis.armadillo.storage.FileInfo;
-import org.springframework.core.io.InputStreamResource;
+import org.molgenis.armadillo.storage.ObjectMetadata;
+import org.molgenis.armadillo.storage.ParquetWriteOptions;
+import org.molgenis.armadillo.storage.UploadJob;
+import org.molgenis.armadillo.storage.UploadJobService;
+import org.molgenis.armadillo.storage.UploadProgress;
+import org.molgenis.armadillo.storage.VariableSearchResult;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
@@ -60,10 +71,13 @@ import org.springframework.web.server.ResponseStatusException;
 public class StorageController {
 
   private final ArmadilloStorageService storage;
+  private final UploadJobService uploadJobs;
   private final AuditEventPublisher auditor;
 
-  public StorageController(ArmadilloStorageService storage, AuditEventPublisher auditor) {
+  public StorageController(
+      ArmadilloStorageService storage, UploadJobService uploadJobs, AuditEventPublisher auditor) {
     this.storage = storage;
+    this.uploadJobs = uploadJobs;
     this.auditor = auditor;
   }
 
@@ -117,7 +131,12 @@ public class StorageController {
         Map.of(PROJECT, project, OBJECT, object));
   }
 
-  @Operation(summary = "Upload a csv file to a project")
+  @Operation(
+      summary = "Upload a csv file to a project",
+      description =
+          "The compression codec and the columns with bloom filters of the written table default to"
+              + " the configured layout. The codec is one of UNCOMPRESSED, SNAPPY, GZIP, ZSTD or"
+              + " LZ4_RAW")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "204", description = "Object uploaded successfully"),
@@ -134,11 +153,14 @@ public class StorageController {
       @PathVariable String project,
       @RequestParam @NotEmpty String object,
       @RequestParam int numberOfRowsToDetermineTypeBy,
-      @Valid @RequestParam MultipartFile file) {
+      @Valid @RequestParam MultipartFile file,
+      @RequestParam(required = false) CompressionCodecName compressionCodec,
+      @RequestParam(required = false) List<String> bloomFilterColumns) {
+    var overrides = new ParquetWriteOptions.Overrides(compressionCodec, bloomFilterColumns);
     auditor.audit(
         () -> {
           try {
-            addParquetObject(project, object, file, numberOfRowsToDetermineTypeBy);
+            addParquetObject(project, object, file, numberOfRowsToDetermineTypeBy, overrides);
           } catch (IOException | CsvValidationException | FileProcessingException e) {
             throw new FileProcessingException(
                 String.format(
@@ -151,6 +173,106 @@ public class StorageController {
         Map.of(PROJECT, project, OBJECT, object));
   }
 
+  @Operation(
+      summary = "Upload an object to a project in the background",
+      description =
+          "Returns as soon as the file is received. The returned job can be followed at"
+              + " /storage/jobs/{id}")
+  @ApiResponses(
+      value = {
+        @ApiResponse(responseCode = "202", description = "Upload accepted"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Too many uploads in progress, try again later")
+      })
+  @PostMapping(
+      value = "/projects/{project}/objects",
+      consumes = {MULTIPART_FORM_DATA_VALUE},
+      produces = {APPLICATION_JSON_VALUE},
+      params = "async=true")
+  @ResponseStatus(ACCEPTED)
+  public UploadJob uploadObjectAsync(
+      Principal principal,
+      @PathVariable String project,
+      @RequestParam @NotEmpty String object,
+      @Valid @RequestParam MultipartFile file) {
+    return auditUploadJob(
+        () -> uploadJobs.submitObjectUpload(project, object, file), principal, project, object);
+  }
+
+  @Operation(
+      summary = "Upload a csv file to a project in the background",
+      description =
+          "Returns as soon as the file is received. The returned job can be followed at"
+              + " /storage/jobs/{id}. The compression codec and the columns with bloom filters of"
+              + " the written table default to the configured layout. The codec is one of"
+              + " UNCOMPRESSED, SNAPPY, GZIP, ZSTD or LZ4_RAW")
+  @ApiResponses(
+      value = {
+        @ApiResponse(responseCode = "202", description = "Upload accepted"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Too many uploads in progress, try again later")
+      })
+  @PostMapping(
+      value = "/projects/{project}/csv",
+      consumes = {MULTIPART_FORM_DATA_VALUE},
+      produces = {APPLICATION_JSON_VALUE},
+      params = "async=true")
+  @ResponseStatus(ACCEPTED)
+  public UploadJob uploadCharacterSeparatedFileAsync(
+      Principal principal,
+      @PathVariable String project,
+      @RequestParam @NotEmpty String object,
+      @RequestParam int numberOfRowsToDetermineTypeBy,
+      @Valid @RequestParam MultipartFile file,
+      @RequestParam(required = false) CompressionCodecName compressionCodec,
+      @RequestParam(required = false) List<String> bloomFilterColumns) {
+    var overrides = new ParquetWriteOptions.Overrides(compressionCodec, bloomFilterColumns);
+    return auditUploadJob(
+        () ->
+            uploadJobs.submitCsvUpload(
+                project, object, file, numberOfRowsToDetermineTypeBy, overrides),
+        principal,
+        project,
+        object);
+  }
+
+  /**
+   * Audits a background upload when its job finishes, so the audit log tells whether the object was
+   * written. A job that cannot be submitted is audited as failed right away.
+   */
+  private UploadJob auditUploadJob(
+      Supplier<UploadJob> submit, Principal principal, String project, String object) {
+    Map<String, Object> data = Map.of(PROJECT, project, OBJECT, object);
+    UploadJob job;
+    try {
+      job = submit.get();
+    } catch (RuntimeException e) {
+      auditor.audit(CompletableFuture.failedFuture(e), principal, UPLOAD_OBJECT, data);
+      throw e;
+    }
+    auditor.audit(job.whenFinished(), principal, UPLOAD_OBJECT, data);
+    return job;
+  }
+
+  @Operation(summary = "Get the progress of a background upload")
+  @ApiResponses(
+      value = {
+        @ApiResponse(responseCode = "200", description = "Upload job found"),
+        @ApiResponse(responseCode = "404", description = "Unknown upload job"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized")
+      })
+  @GetMapping(
+      value = "/jobs/{id}",
+      produces = {APPLICATION_JSON_VALUE})
+  @ResponseStatus(OK)
+  public UploadJob getUploadJob(@PathVariable String id) {
+    return uploadJobs.getJob(id);
+  }
+
   void addObject(String project, String object, MultipartFile file) {
     try {
       storage.addObject(project, object, file.getInputStream());
@@ -160,15 +282,21 @@ public class StorageController {
   }
 
   private void addParquetObject(
-      String project, String object, MultipartFile file, int numberOfRowsToDetermineTypeBy)
+      String project,
+      String object,
+      MultipartFile file,
+      int numberOfRowsToDetermineTypeBy,
+      ParquetWriteOptions.Overrides overrides)
       throws CsvValidationException, IOException {
-    storage.writeParquetFromCsv(project, object, file, numberOfRowsToDetermineTypeBy);
+    storage.writeParquetFromCsv(
+        project, object, file, numberOfRowsToDetermineTypeBy, overrides, UploadProgress.NONE);
   }
 
   @Operation(
       summary = "Copy an object within a project",
       description =
-          "The request body should contain the new object's name in full (e.g. core/nonrep.parquet)")
+          "The request body should contain the new object's name in full (e.g."
+              + " core/nonrep.parquet)")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "204", description = "Object copied successfully"),
@@ -195,8 +323,9 @@ public class StorageController {
   @Operation(
       summary = "Create a view from an existing table in another project",
       description =
-          "The view you're creating will be a symbolic link to selected variables of an existing table. It will"
-              + "look and respond like a table, but it will not take up duplicated resources")
+          "The view you're creating will be a symbolic link to selected variables of an existing"
+              + " table. It willlook and respond like a table, but it will not take up duplicated"
+              + " resources")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "204", description = "Link successfully created"),
@@ -246,7 +375,8 @@ public class StorageController {
   @Operation(
       summary = "Move an object within a project",
       description =
-          "The request body should contain the new object's name in full (e.g. core/nonrep.parquet)")
+          "The request body should contain the new object's name in full (e.g."
+              + " core/nonrep.parquet)")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "204", description = "Object moved successfully"),
@@ -289,10 +419,16 @@ public class StorageController {
     return objectExists ? noContent().build() : notFound().build();
   }
 
-  @Operation(summary = "Retrieve first 10 rows of the data")
+  @Operation(
+      summary = "Retrieve rows of the data",
+      description =
+          "Returns limit rows, at most 1000, starting at row offset. Only the given columns are"
+              + " returned, or the first 10 columns if none are given. Unknown columns are"
+              + " ignored.")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "200", description = "Preview success"),
+        @ApiResponse(responseCode = "400", description = "Invalid offset or limit"),
         @ApiResponse(responseCode = "404", description = "Object does not exist"),
         @ApiResponse(responseCode = "401", description = "Unauthorized")
       })
@@ -300,15 +436,31 @@ public class StorageController {
       path = "/projects/{project}/objects/{object}/preview",
       produces = APPLICATION_JSON_VALUE)
   public @ResponseBody List<Map<String, String>> previewObject(
-      Principal principal, @PathVariable String project, @PathVariable String object) {
+      Principal principal,
+      @PathVariable String project,
+      @PathVariable String object,
+      @RequestParam(defaultValue = "0") long offset,
+      @RequestParam(defaultValue = "10") int limit,
+      @RequestParam(required = false) List<String> columns) {
     return auditor.audit(
-        () -> storage.getPreview(project, object),
+        () -> {
+          try {
+            return storage.getPreview(
+                project, object, offset, limit, columns == null ? List.of() : columns);
+          } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+          }
+        },
         principal,
         PREVIEW_OBJECT,
         Map.of(PROJECT, project, OBJECT, object));
   }
 
-  @Operation(summary = "Retrieve metadata of table")
+  @Operation(
+      summary = "Retrieve metadata of table",
+      description =
+          "Set levels to false to skip determining the levels of string columns, so the metadata"
+              + " can be answered from the Parquet footer statistics")
   @ApiResponses(
       value = {
         @ApiResponse(responseCode = "200", description = "Metadata successfully determined"),
@@ -319,11 +471,14 @@ public class StorageController {
       path = "/projects/{project}/objects/{object}/metadata",
       produces = APPLICATION_JSON_VALUE)
   public Map<String, ArmadilloColumnMetaData> getMetadataOfTable(
-      Principal principal, @PathVariable String project, @PathVariable String object) {
+      Principal principal,
+      @PathVariable String project,
+      @PathVariable String object,
+      @RequestParam(defaultValue = "true") boolean levels) {
     return auditor.audit(
         () -> {
           try {
-            return storage.getMetadata(project, object);
+            return storage.getMetadata(project, object, levels);
           } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
           }
@@ -383,10 +538,21 @@ public class StorageController {
             content = @Content(mediaType = "application/json"))
       })
   @GetMapping(value = "/projects/{project}/objects/{object}")
-  public ResponseEntity<InputStreamResource> downloadObject(
-      Principal principal, @PathVariable String project, @PathVariable String object) {
+  public ResponseEntity<Resource> downloadObject(
+      Principal principal,
+      @PathVariable String project,
+      @PathVariable String object,
+      @RequestParam(required = false) String version,
+      HttpServletRequest request) {
     try {
-      return auditDownloadObject(project, object, principal, DOWNLOAD_OBJECT);
+      if (version != null) {
+        return auditor.audit(
+            () -> getObjectVersion(project, object, version, request),
+            principal,
+            DOWNLOAD_OBJECT,
+            Map.of(PROJECT, project, OBJECT, object, VERSION, version));
+      }
+      return auditDownloadObject(project, object, principal, DOWNLOAD_OBJECT, request);
     } catch (UnknownObjectException | UnknownProjectException e) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
     } catch (Exception e) {
@@ -408,12 +574,15 @@ public class StorageController {
             content = @Content(mediaType = "application/json"))
       })
   @GetMapping(value = "/projects/{project}/rawfiles/{object}")
-  public ResponseEntity<InputStreamResource> downloadResource(
-      Principal principal, @PathVariable String project, @PathVariable String object) {
+  public ResponseEntity<Resource> downloadResource(
+      Principal principal,
+      @PathVariable String project,
+      @PathVariable String object,
+      HttpServletRequest request) {
     try {
       Map<String, Object> data = new HashMap<>(Map.of(PROJECT, project, OBJECT, object));
       if (principal instanceof JwtAuthenticationToken token) {
-        return downloadResourceWithToken(token, project, object, data);
+        return downloadResourceWithToken(token, project, object, data, request);
       } else {
         throw new ResponseStatusException(
             HttpStatus.FORBIDDEN,
@@ -428,8 +597,12 @@ public class StorageController {
     }
   }
 
-  ResponseEntity<InputStreamResource> downloadResourceWithToken(
-      JwtAuthenticationToken token, String project, String object, Map<String, Object> data) {
+  ResponseEntity<Resource> downloadResourceWithToken(
+      JwtAuthenticationToken token,
+      String project,
+      String object,
+      Map<String, Object> data,
+      HttpServletRequest request) {
     Map<String, Object> claims = token.getTokenAttributes();
     String errorMsg = "Token must be issued by armadillo application with correct permissions";
     if (!claims.get("iss").equals(INTERNAL_ISSUER)) {
@@ -439,7 +612,7 @@ public class StorageController {
     if (claims.get("resource_project").equals(project)) {
       String resourceObj = storage.getFilenameWithoutExtension(object).toLowerCase();
       if (claims.get("resource_object").toString().toLowerCase().equals(resourceObj)) {
-        return auditDownloadObject(project, object, token, DOWNLOAD_RESOURCE);
+        return auditDownloadObject(project, object, token, DOWNLOAD_RESOURCE, request);
       } else {
         errorMsg = "Token has no permissions for resource object:" + object;
         auditFailure(errorMsg, data, token);
@@ -452,31 +625,31 @@ public class StorageController {
     }
   }
 
-  private ResponseEntity<InputStreamResource> getObject(String project, String object) {
+  private ResponseEntity<Resource> getObject(
+      String project, String object, HttpServletRequest request) {
+    return download(storage.getObjectPath(project, object), object, request);
+  }
+
+  private ResponseEntity<Resource> getObjectVersion(
+      String project, String object, String version, HttpServletRequest request) {
+    return download(storage.getObjectVersionPath(project, object, version), object, request);
+  }
+
+  private static ResponseEntity<Resource> download(
+      Path path, String object, HttpServletRequest request) {
     try {
-      var inputStream = storage.loadObject(project, object);
       var objectParts = object.split("/");
       var fileName = objectParts[objectParts.length - 1];
-      InputStreamResource inputStreamResource = new InputStreamResource(inputStream);
-      ContentDisposition contentDisposition =
-          ContentDisposition.attachment().filename(fileName).build();
-      var fileSize =
-          storage.getFileSizeIfObjectExists(
-              ArmadilloStorageService.SHARED_PREFIX + project, object);
-      HttpHeaders httpHeaders = new HttpHeaders();
-      httpHeaders.setContentDisposition(contentDisposition);
-      httpHeaders.setContentLength(fileSize);
-      httpHeaders.setContentType(APPLICATION_OCTET_STREAM);
-      return new ResponseEntity<>(inputStreamResource, httpHeaders, HttpStatus.OK);
+      return FileDownload.download(path, fileName, request);
     } catch (IOException e) {
       throw new FileProcessingException();
     }
   }
 
-  private ResponseEntity<InputStreamResource> auditDownloadObject(
-      String project, String object, Principal principal, String type) {
+  private ResponseEntity<Resource> auditDownloadObject(
+      String project, String object, Principal principal, String type, HttpServletRequest request) {
     return auditor.audit(
-        () -> getObject(project, object),
+        () -> getObject(project, object, request),
         principal,
         type,
         Map.of(PROJECT, project, OBJECT, object));
@@ -489,6 +662,30 @@ public class StorageController {
     auditor.audit(principal, DOWNLOAD_RESOURCE + "_FAILURE", data);
   }
 
+  @Operation(
+      summary = "List previous versions of an object",
+      description =
+          "Versions are only kept when storage.versions.keep is set. Download a version by passing"
+              + " its name as the version parameter when downloading the object.")
+  @PreAuthorize("hasRole('ROLE_SU')")
+  @ApiResponses(
+      value = {
+        @ApiResponse(responseCode = "200", description = "Versions listed, newest first"),
+        @ApiResponse(responseCode = "404", description = "Unknown project"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized")
+      })
+  @GetMapping(
+      path = "/projects/{project}/objects/{object}/versions",
+      produces = APPLICATION_JSON_VALUE)
+  public @ResponseBody List<ObjectMetadata> listObjectVersions(
+      Principal principal, @PathVariable String project, @PathVariable String object) {
+    return auditor.audit(
+        () -> storage.listObjectVersions(project, object),
+        principal,
+        LIST_OBJECT_VERSIONS,
+        Map.of(PROJECT, project, OBJECT, object));
+  }
+
   @Operation(summary = "Retrieve columns of parquet file")
   @ApiResponses(
       value = {
@@ -507,4 +704,35 @@ public class StorageController {
         GET_VARIABLES,
         Map.of(PROJECT, project, OBJECT, object));
   }
+
+  @Operation(
+      summary = "Search variables",
+      description =
+          "Find the variables whose name starts with the query in the tables and link files of all"
+              + " projects you have access to. Set substring to true to find the variables whose"
+              + " name contains the query. Both ignore case.")
+  @ApiResponses(
+      value = {
+        @ApiResponse(responseCode = "200", description = "Return matching variables"),
+        @ApiResponse(responseCode = "400", description = "Empty query or invalid limit"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized")
+      })
+  @GetMapping(path = "/variables", produces = APPLICATION_JSON_VALUE)
+  public @ResponseBody List<VariableSearchResult> searchVariables(
+      Principal principal,
+      @RequestParam String query,
+      @RequestParam(defaultValue = "false") boolean substring,
+      @RequestParam(defaultValue = "100") int limit) {
+    return auditor.audit(
+        () -> {
+          try {
+            return storage.searchVariables(query, substring, limit);
+          } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+          }
+        },
+        principal,
+        SEARCH_VARIABLES,
+        Map.of(QUERY, query));
+  }
 }
@@ -0,0 +1,14 @@
+package org.molgenis.armadillo.exceptions;
+
+import static java.lang.String.format;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(BAD_REQUEST)
+public class InvalidSessionLaneException extends RuntimeException {
+
+  public InvalidSessionLaneException(String lane, String reason) {
+    super(format("Invalid session lane '%s': %s", lane, reason));
+  }
+}
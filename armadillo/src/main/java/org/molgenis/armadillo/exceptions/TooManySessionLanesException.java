@@ -0,0 +1,17 @@
+package org.molgenis.armadillo.exceptions;
+
+import static java.lang.String.format;
+import static org.springframework.http.HttpStatus.CONFLICT;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(CONFLICT)
+public class TooManySessionLanesException extends RuntimeException {
+
+  public TooManySessionLanesException(String lane, int maxLanes) {
+    super(
+        format(
+            "Unable to open session lane '%s': at most %d lanes can be open, close one first",
+            lane, maxLanes));
+  }
+}
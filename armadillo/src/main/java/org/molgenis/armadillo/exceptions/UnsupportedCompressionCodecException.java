@@ -0,0 +1,17 @@
+package org.molgenis.armadillo.exceptions;
+
+import static java.lang.String.format;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.util.Set;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(BAD_REQUEST)
+public class UnsupportedCompressionCodecException extends RuntimeException {
+
+  public UnsupportedCompressionCodecException(
+      CompressionCodecName codec, Set<CompressionCodecName> supported) {
+    super(format("Compression codec %s is not supported, use one of %s", codec, supported));
+  }
+}
@@ -0,0 +1,18 @@
+package org.molgenis.armadillo.exceptions;
+
+import static java.lang.String.format;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(SERVICE_UNAVAILABLE)
+public class UploadJobsBusyException extends RuntimeException {
+
+  public UploadJobsBusyException(int maxJobs) {
+    super(
+        format(
+            "All %d upload job slots are taken, try again when one of the running uploads has"
+                + " finished",
+            maxJobs));
+  }
+}
@@ -294,6 +294,7 @@ public class AccessService {
 
   private void save() {
     settings = loader.save(settings);
+    storage.invalidateVisibleTables();
   }
 
   private Set<String> getPermissionsForEmail(String email) {
@@ -1,6 +1,7 @@
 package org.molgenis.armadillo.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.auto.value.AutoValue;
@@ -14,6 +15,8 @@ public abstract class ArmadilloColumnMetaData {
   private int missing = 0;
   private long total = 0;
   private Set<String> possibleLevels = new HashSet<>();
+  private String min;
+  private String max;
 
   @JsonProperty("type")
   @NotEmpty
@@ -34,6 +37,18 @@ public abstract class ArmadilloColumnMetaData {
     return null;
   }
 
+  @JsonProperty("min")
+  @Nullable
+  public String getMin() {
+    return min;
+  }
+
+  @JsonProperty("max")
+  @Nullable
+  public String getMax() {
+    return max;
+  }
+
   @JsonCreator
   public static ArmadilloColumnMetaData create(@JsonProperty("type") String newType) {
     return new AutoValue_ArmadilloColumnMetaData(newType);
@@ -43,11 +58,13 @@ public abstract class ArmadilloColumnMetaData {
     missing += 1;
   }
 
-  private long getTotal() {
+  @JsonIgnore
+  public long getTotal() {
     return total;
   }
 
-  private int getMissing() {
+  @JsonIgnore
+  public int getMissing() {
     return missing;
   }
 
@@ -59,6 +76,11 @@ public abstract class ArmadilloColumnMetaData {
     this.missing = missing;
   }
 
+  public void setRange(String min, String max) {
+    this.min = min;
+    this.max = max;
+  }
+
   public void setPossibleLevels(Set<String> possibleLevels) {
     this.possibleLevels = possibleLevels;
   }
@@ -1,12 +1,15 @@
 package org.molgenis.armadillo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.auto.value.AutoValue;
+import jakarta.annotation.Nullable;
 import java.time.ZonedDateTime;
 
 @AutoValue
 @JsonSerialize(as = Workspace.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public abstract class Workspace {
 
   @JsonProperty("name")
@@ -18,6 +21,11 @@ public abstract class Workspace {
   @JsonProperty("size")
   public abstract long size();
 
+  /** Hex encoded SHA-256 checksum, absent for workspaces saved without one. */
+  @JsonProperty("checksum")
+  @Nullable
+  public abstract String checksum();
+
   abstract Builder toBuilder();
 
   @AutoValue.Builder
@@ -28,6 +36,8 @@ public abstract class Workspace {
 
     public abstract Builder setSize(long size);
 
+    public abstract Builder setChecksum(String checksum);
+
     public abstract Workspace build();
   }
 
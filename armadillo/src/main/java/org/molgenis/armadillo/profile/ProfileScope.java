@@ -1,5 +1,6 @@
 package org.molgenis.armadillo.profile;
 
+import jakarta.annotation.PreDestroy;
 import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +16,10 @@ public class ProfileScope implements Scope {
   /** Contains all profile scoped beans for all profiles */
   private final ConcurrentHashMap<String, Object> scopedBeans = new ConcurrentHashMap<>();
 
+  /** Destroy the beans that need it, e.g. close the connections of a connection factory */
+  private final ConcurrentHashMap<String, Runnable> destructionCallbacks =
+      new ConcurrentHashMap<>();
+
   @Override
   public Object get(String beanName, ObjectFactory<?> objectFactory) {
     return scopedBeans.computeIfAbsent(
@@ -27,6 +32,8 @@ public class ProfileScope implements Scope {
 
   @Override
   public Object remove(@NonNull String beanName) {
+    // the caller destroys the bean
+    destructionCallbacks.remove(getFullyQualifiedBeanName(beanName));
     return scopedBeans.remove(getFullyQualifiedBeanName(beanName));
   }
 
@@ -36,15 +43,33 @@ public class ProfileScope implements Scope {
         .asIterator()
         .forEachRemaining(
             key -> {
-              if (key.startsWith(profileName)) {
+              if (key.startsWith(profileName + ".")) {
                 scopedBeans.remove(key);
+                destroy(key);
               }
             });
   }
 
   @Override
-  public void registerDestructionCallback(String beanName, Runnable runnable) {
-    // We do not use this because our set of beans is application scoped
+  public void registerDestructionCallback(@NonNull String beanName, @NonNull Runnable runnable) {
+    destructionCallbacks.put(getFullyQualifiedBeanName(beanName), runnable);
+  }
+
+  @PreDestroy
+  public void destroyAllProfileBeans() {
+    scopedBeans.clear();
+    destructionCallbacks.keys().asIterator().forEachRemaining(this::destroy);
+  }
+
+  private void destroy(String name) {
+    Runnable callback = destructionCallbacks.remove(name);
+    if (callback != null) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        LOGGER.warn("Failed to destroy profile bean with name {}", name, e);
+      }
+    }
   }
 
   @Override
@@ -9,7 +9,9 @@ import org.molgenis.armadillo.metadata.ProfileConfig;
 import org.molgenis.armadillo.metadata.ProfileService;
 import org.molgenis.r.RConnectionFactory;
 import org.molgenis.r.RServerConnectionFactory;
+import org.molgenis.r.config.RockClientProps;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -30,8 +32,15 @@ public class ProfileScopeConfig {
 
   @Bean
   @org.molgenis.armadillo.profile.annotation.ProfileScope
-  public RConnectionFactory rConnectionFactory(ProfileConfig profileConfig) {
-    return new RServerConnectionFactory(profileConfig.toEnvironmentConfigProps());
+  public RConnectionFactory rConnectionFactory(
+      ProfileConfig profileConfig, RockClientProps rockClientProps) {
+    return new RServerConnectionFactory(profileConfig.toEnvironmentConfigProps(), rockClientProps);
+  }
+
+  @Bean
+  @ConfigurationProperties(prefix = "armadillo.rock-client")
+  public RockClientProps rockClientProps() {
+    return new RockClientProps();
   }
 
   @Bean
@@ -0,0 +1,244 @@
+package org.molgenis.armadillo.service;
+
+import static org.molgenis.armadillo.security.RunAs.runAsSystem;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.molgenis.armadillo.ArmadilloSession;
+import org.molgenis.armadillo.metadata.ProfileConfig;
+import org.molgenis.armadillo.metadata.ProfileService;
+import org.molgenis.armadillo.profile.ActiveProfileNameAccessor;
+import org.molgenis.r.service.ProcessService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sessions that are started before they are needed, per profile, so selecting a profile or running
+ * the first command doesn't wait for R to load the whitelisted packages and set the DataSHIELD
+ * options. A session is taken out of the pool and never returned, because it holds the workspace of
+ * its user. When fewer than the minimum number of sessions are idle, the pool of the profile is
+ * filled up to the maximum in the background. Idle sessions are checked before they are handed out
+ * and dropped when the profile was changed after they were started.
+ */
+@Component
+public class ArmadilloSessionPool implements MeterBinder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArmadilloSessionPool.class);
+
+  private final ArmadilloConnectionFactory connectionFactory;
+  private final ProcessService processService;
+  private final ProfileService profileService;
+  private final int minIdle;
+  private final int maxIdle;
+  private final Executor executor;
+  private final Map<String, ProfilePool> pools = new ConcurrentHashMap<>();
+  private MeterRegistry registry;
+
+  /** A started session and the settings of the profile it was started with. */
+  private record IdleSession(ArmadilloSession session, String fingerprint) {}
+
+  private static class ProfilePool {
+    private final Deque<IdleSession> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong checkoutNanos = new AtomicLong();
+    private final AtomicLong refills = new AtomicLong();
+    private final AtomicLong refillNanos = new AtomicLong();
+  }
+
+  @Autowired
+  public ArmadilloSessionPool(
+      ArmadilloConnectionFactory connectionFactory,
+      ProcessService processService,
+      ProfileService profileService,
+      @Value("${armadillo.session-pool.min-idle:1}") int minIdle,
+      @Value("${armadillo.session-pool.max-idle:0}") int maxIdle) {
+    this(
+        connectionFactory,
+        processService,
+        profileService,
+        minIdle,
+        maxIdle,
+        maxIdle > 0
+            ? Executors.newCachedThreadPool(new CustomizableThreadFactory("session-pool-"))
+            : null);
+  }
+
+  ArmadilloSessionPool(
+      ArmadilloConnectionFactory connectionFactory,
+      ProcessService processService,
+      ProfileService profileService,
+      int minIdle,
+      int maxIdle,
+      Executor executor) {
+    this.connectionFactory = connectionFactory;
+    this.processService = processService;
+    this.profileService = profileService;
+    this.maxIdle = Math.max(0, maxIdle);
+    this.minIdle = Math.clamp(minIdle, Math.min(1, this.maxIdle), this.maxIdle);
+    this.executor = executor;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor instanceof ExecutorService executorService) {
+      executorService.shutdownNow();
+    }
+    pools.values().forEach(ArmadilloSessionPool::drain);
+  }
+
+  /** Starts filling the pools of all profiles. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    if (maxIdle == 0) {
+      return;
+    }
+    runAsSystem(() -> profileService.getAll().stream().map(ProfileConfig::getName).toList())
+        .forEach(this::warmUp);
+  }
+
+  /** Starts filling the pool of a profile, when fewer than the minimum sessions are idle. */
+  void warmUp(String profile) {
+    refill(profile, getPool(profile));
+  }
+
+  /** Takes a session of the active profile, or starts one when none is idle. */
+  public ArmadilloSession take() {
+    if (maxIdle == 0) {
+      return new ArmadilloSession(connectionFactory, processService);
+    }
+    long start = System.nanoTime();
+    String profile = ActiveProfileNameAccessor.getActiveProfileName();
+    ProfilePool pool = getPool(profile);
+    String current = getFingerprint(profile);
+    ArmadilloSession session = null;
+    IdleSession idleSession;
+    while (session == null && (idleSession = pool.idle.poll()) != null) {
+      if (idleSession.fingerprint().equals(current) && idleSession.session().isAlive()) {
+        session = idleSession.session();
+      } else {
+        idleSession.session().sessionCleanup();
+      }
+    }
+    if (session == null) {
+      session = new ArmadilloSession(connectionFactory, processService);
+    }
+    pool.checkouts.incrementAndGet();
+    pool.checkoutNanos.addAndGet(System.nanoTime() - start);
+    refill(profile, pool);
+    return session;
+  }
+
+  int getIdleCount(String profile) {
+    ProfilePool pool = pools.get(profile);
+    return pool == null ? 0 : pool.idle.size();
+  }
+
+  private ProfilePool getPool(String profile) {
+    return pools.computeIfAbsent(
+        profile,
+        name -> {
+          ProfilePool pool = new ProfilePool();
+          registerMeters(name, pool);
+          return pool;
+        });
+  }
+
+  private void refill(String profile, ProfilePool pool) {
+    if (pool.idle.size() >= minIdle || !pool.refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(
+          () -> {
+            ActiveProfileNameAccessor.setActiveProfileName(profile);
+            try {
+              while (pool.idle.size() < maxIdle) {
+                long start = System.nanoTime();
+                String fingerprint = getFingerprint(profile);
+                ArmadilloSession session = new ArmadilloSession(connectionFactory, processService);
+                pool.idle.add(new IdleSession(session, fingerprint));
+                pool.refills.incrementAndGet();
+                pool.refillNanos.addAndGet(System.nanoTime() - start);
+              }
+            } catch (RuntimeException e) {
+              // the next checkout tries again
+              LOGGER.warn("Unable to start a session for profile {}: {}", profile, e.getMessage());
+            } finally {
+              ActiveProfileNameAccessor.resetActiveProfileName();
+              pool.refilling.set(false);
+            }
+          });
+    } catch (RuntimeException e) {
+      pool.refilling.set(false);
+      throw e;
+    }
+  }
+
+  /** The settings of a profile that a session depends on, e.g. the package whitelist. */
+  private String getFingerprint(String profile) {
+    // the whitelist is changed in place, so compare a snapshot
+    return runAsSystem(() -> profileService.getByName(profile)).toString();
+  }
+
+  private static void drain(ProfilePool pool) {
+    IdleSession idleSession;
+    while ((idleSession = pool.idle.poll()) != null) {
+      idleSession.session().sessionCleanup();
+    }
+  }
+
+  @Override
+  public synchronized void bindTo(@NonNull MeterRegistry registry) {
+    this.registry = registry;
+    pools.forEach(this::registerMeters);
+  }
+
+  private synchronized void registerMeters(String profile, ProfilePool pool) {
+    if (registry == null) {
+      return;
+    }
+    Gauge.builder("rserve.session.pool.idle", pool, p -> p.idle.size())
+        .tag("environment", profile)
+        .description("Number of started sessions that wait to be used")
+        .register(registry);
+    FunctionTimer.builder(
+            "rserve.session.pool.checkout",
+            pool,
+            p -> p.checkouts.get(),
+            p -> p.checkoutNanos.get(),
+            TimeUnit.NANOSECONDS)
+        .tag("environment", profile)
+        .description("Time it takes to get a session, including starting one if none is idle")
+        .register(registry);
+    FunctionTimer.builder(
+            "rserve.session.pool.refill",
+            pool,
+            p -> p.refills.get(),
+            p -> p.refillNanos.get(),
+            TimeUnit.NANOSECONDS)
+        .tag("environment", profile)
+        .description("Time it takes to start a session in the background")
+        .register(registry);
+  }
+}
@@ -14,21 +14,28 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.Principal;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import org.apache.commons.io.FilenameUtils;
 import org.molgenis.armadillo.exceptions.*;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 import org.molgenis.armadillo.model.Workspace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -43,15 +50,33 @@ public class ArmadilloStorageService {
   public static final String RDS = ".rds";
   public static final String SYSTEM = "system";
   public static final String RDATA_EXT = ".RData";
+  static final int PREVIEW_SIZE = 10;
+  static final int MAX_PREVIEW_ROWS = 1000;
+  static final int MAX_SEARCH_RESULTS = 1000;
+  static final String NFILTER_SUBSET = "nfilter.subset";
   private final StorageService storageService;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LocalStorageService.class);
   private final LocalStorageService localStorageService;
+  private final ParquetWriteOptions parquetWriteOptions;
+  private final int csvParseThreads;
+  private final int minFilteredRows;
+  private final VisibleTablesCache visibleTables = new VisibleTablesCache();
+  private final VariableIndex variableIndex;
 
   public ArmadilloStorageService(
-      StorageService storageService, LocalStorageService localStorageService) {
+      StorageService storageService,
+      LocalStorageService localStorageService,
+      ParquetWriteOptions parquetWriteOptions,
+      @Value("${storage.csv.parse-threads:0}") int csvParseThreads,
+      @Value("${storage.row-filter.min-rows:3}") int minFilteredRows) {
     this.storageService = storageService;
     this.localStorageService = localStorageService;
+    this.variableIndex = new VariableIndex(storageService);
+    this.parquetWriteOptions = parquetWriteOptions;
+    this.csvParseThreads =
+        csvParseThreads > 0 ? csvParseThreads : Runtime.getRuntime().availableProcessors();
+    this.minFilteredRows = minFilteredRows;
   }
 
   public String getFilenameWithoutExtension(String fileName) {
@@ -89,8 +114,9 @@ public class ArmadilloStorageService {
 
   @PreAuthorize("hasRole('ROLE_SU')")
   public void moveObject(String project, String newObject, String oldObject) {
-    copyObject(project, newObject, oldObject);
-    storageService.delete(SHARED_PREFIX + project, oldObject);
+    throwIfUnknown(project, oldObject);
+    throwIfDuplicate(project, newObject);
+    storageService.move(SHARED_PREFIX + project, oldObject, SHARED_PREFIX + project, newObject);
   }
 
   @PreAuthorize("hasRole('ROLE_SU')")
@@ -103,8 +129,7 @@ public class ArmadilloStorageService {
   @PreAuthorize("hasRole('ROLE_SU')")
   public void copyFile(
       String oldLocation, String newLocation, String oldFileName, String newFileName) {
-    var inputStream = storageService.load(oldLocation, oldFileName);
-    storageService.save(inputStream, newLocation, newFileName, APPLICATION_OCTET_STREAM);
+    storageService.copy(oldLocation, oldFileName, newLocation, newFileName);
   }
 
   @PreAuthorize("hasRole('ROLE_SU')")
@@ -168,6 +193,34 @@ public class ArmadilloStorageService {
     return storageService.load(SHARED_PREFIX + project, object);
   }
 
+  /** Path of the object on the local file system, to serve it without copying it. */
+  @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
+  public Path getObjectPath(String project, String object) {
+    throwIfUnknown(project, object);
+    return storageService.getPathIfObjectExists(SHARED_PREFIX + project, object);
+  }
+
+  /** Previous versions of an object, newest first, see {@code storage.versions.keep}. */
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public List<ObjectMetadata> listObjectVersions(String project, String object) {
+    throwIfUnknown(project);
+    return storageService.listVersions(SHARED_PREFIX + project, object);
+  }
+
+  /**
+   * Path of a previous version of an object. A version never changes, so readers can keep using it
+   * while the object is replaced.
+   */
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public Path getObjectVersionPath(String project, String object, String version) {
+    throwIfUnknown(project);
+    if (listObjectVersions(project, object).stream()
+        .noneMatch(objectVersion -> objectVersion.name().equals(version))) {
+      throw new UnknownObjectException(project, format("%s (version %s)", object, version));
+    }
+    return storageService.getVersionPath(SHARED_PREFIX + project, object, version);
+  }
+
   @PostFilter("hasAnyRole('ROLE_SU', 'ROLE_' + filterObject.toUpperCase() + '_RESEARCHER')")
   @SuppressWarnings("java:S6204") // result of method can't be unmodifiable because of @PostFilter
   public List<String> listProjects() {
@@ -194,6 +247,74 @@ public class ArmadilloStorageService {
         .toList();
   }
 
+  /**
+   * Lists the tables of all projects the current user can see. The list is cached per user and only
+   * built again when the roles of the user or the contents of the storage change.
+   */
+  @PreAuthorize("isAuthenticated()")
+  public List<String> listVisibleTables() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    Set<String> roles = AuthorityUtils.authorityListToSet(authentication.getAuthorities());
+    long version = storageService.getVersion();
+    return visibleTables.get(
+        getUser(authentication), roles, version, () -> loadVisibleTables(roles));
+  }
+
+  private List<String> loadVisibleTables(Set<String> roles) {
+    return storageService.listBuckets().stream()
+        .filter(it -> it.startsWith(SHARED_PREFIX))
+        .map(it -> it.substring(SHARED_PREFIX.length()))
+        .filter(project -> isVisible(roles, project))
+        .flatMap(
+            project ->
+                storageService.listObjects(SHARED_PREFIX + project).stream()
+                    .map(objectMetadata -> format("%s/%s", project, objectMetadata.name())))
+        .filter(it -> it.endsWith(PARQUET) || it.endsWith(LINK_FILE))
+        .map(FilenameUtils::removeExtension)
+        .toList();
+  }
+
+  /** Same check as the permission expressions of the project methods, without evaluating them. */
+  private static boolean isVisible(Set<String> roles, String project) {
+    return roles.contains("ROLE_SU")
+        || roles.contains("ROLE_" + project.toUpperCase() + "_RESEARCHER");
+  }
+
+  /**
+   * Finds the variables whose name starts with, or contains, the query in the tables and link files
+   * of all projects the current user can see.
+   *
+   * @param substring whether to find variables that contain the query instead of variables that
+   *     start with it. Both ignore case.
+   */
+  @PreAuthorize("isAuthenticated()")
+  public List<VariableSearchResult> searchVariables(String query, boolean substring, int limit) {
+    if (query == null || query.isBlank()) {
+      throw new IllegalArgumentException("Query must not be empty");
+    }
+    if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+      throw new IllegalArgumentException(
+          format("Limit must be between 1 and %d", MAX_SEARCH_RESULTS));
+    }
+    Set<String> roles =
+        AuthorityUtils.authorityListToSet(
+            SecurityContextHolder.getContext().getAuthentication().getAuthorities());
+    return variableIndex.search(
+        query.strip(), substring, project -> isVisible(roles, project), limit);
+  }
+
+  /** Builds the variable index in the background, so the first search doesn't have to. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildVariableIndex() {
+    Thread.ofVirtual().name("variable-index").start(variableIndex::update);
+  }
+
+  /** Drops the cached table lists of all users, after the permissions have changed. */
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public void invalidateVisibleTables() {
+    visibleTables.invalidate();
+  }
+
   @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
   public boolean tableExists(String project, String objectName) {
     return storageService.objectExists(SHARED_PREFIX + project, objectName + PARQUET);
@@ -204,6 +325,138 @@ public class ArmadilloStorageService {
     return storageService.load(SHARED_PREFIX + project, objectName + PARQUET);
   }
 
+  /**
+   * Loads only the given variables of a table, so they can be copied to R without the rest of the
+   * table. Loads the whole table when no variables are given. The table of a link file is read from
+   * its materialised table when available, and is limited to the variables of the link file.
+   */
+  @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
+  public InputStream loadTable(String project, String objectName, List<String> variables) {
+    return loadTable(project, objectName, variables, null);
+  }
+
+  /**
+   * Loads only the given variables of the rows of a table that match a filter. A filter that
+   * selects fewer than {@code storage.row-filter.min-rows} rows, or leaves out fewer than that, is
+   * refused, unless it selects or leaves out none. Otherwise the filter, or the filter and its
+   * complement, could be used to single out individuals.
+   *
+   * @param filter the rows to load, or null to load all rows
+   */
+  @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
+  public InputStream loadTable(
+      String project, String objectName, List<String> variables, RowFilter filter) {
+    return loadTable(project, objectName, variables, filter, minFilteredRows);
+  }
+
+  /**
+   * @param minFilteredRows the number of rows a filter must at least select and leave out
+   */
+  @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
+  public InputStream loadTable(
+      String project,
+      String objectName,
+      List<String> variables,
+      RowFilter filter,
+      int minFilteredRows) {
+    String bucketName = SHARED_PREFIX + project;
+    if (storageService.objectExists(bucketName, objectName + LINK_FILE)) {
+      return loadLinkedTable(project, objectName, variables, filter, minFilteredRows);
+    }
+    if (variables.isEmpty() && filter == null) {
+      return loadTable(project, objectName);
+    }
+    return loadProjection(
+        storageService.getPathIfObjectExists(bucketName, objectName + PARQUET),
+        variables,
+        filter,
+        minFilteredRows);
+  }
+
+  /**
+   * The number of rows a row filter must at least select and leave out. A profile sets it with the
+   * {@value #NFILTER_SUBSET} option, the DataSHIELD threshold for subsets, otherwise {@code
+   * storage.row-filter.min-rows} applies.
+   */
+  public int getMinFilteredRows(Map<String, String> profileOptions) {
+    String subset = profileOptions.get(NFILTER_SUBSET);
+    if (subset != null) {
+      try {
+        return (int) Math.ceil(Double.parseDouble(subset.trim()));
+      } catch (NumberFormatException e) {
+        LOGGER.warn("Ignoring invalid value '{}' of option {}", subset, NFILTER_SUBSET);
+      }
+    }
+    return minFilteredRows;
+  }
+
+  private InputStream loadLinkedTable(
+      String project,
+      String objectName,
+      List<String> variables,
+      RowFilter filter,
+      int minFilteredRows) {
+    String bucketName = SHARED_PREFIX + project;
+    ArmadilloLinkFile linkFile;
+    try (InputStream inputStream = storageService.load(bucketName, objectName + LINK_FILE)) {
+      linkFile = createArmadilloLinkFileFromStream(inputStream, project, objectName);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+    List<String> linkedVariables = List.of(linkFile.getVariables().split(","));
+    List<String> selectedVariables =
+        variables.isEmpty()
+            ? linkedVariables
+            : variables.stream().filter(linkedVariables::contains).toList();
+    if (selectedVariables.isEmpty()) {
+      throw new UnknownVariableException(project, objectName, variables.toString());
+    }
+    if (filter != null && !linkedVariables.containsAll(filter.getColumns())) {
+      // the source table has more columns than the link file shows
+      throw new UnknownVariableException(project, objectName, filter.getColumns().toString());
+    }
+    return loadProjection(
+        storageService.getLinkedTablePath(bucketName, objectName + LINK_FILE),
+        selectedVariables,
+        filter,
+        minFilteredRows);
+  }
+
+  private InputStream loadProjection(
+      Path table, List<String> variables, RowFilter filter, int minFilteredRows) {
+    try {
+      Path projection = Files.createTempFile("armadillo-projection", PARQUET);
+      // the parquet writer creates the file itself
+      Files.delete(projection);
+      try {
+        if (filter != null) {
+          long rows =
+              ParquetUtils.writeFilteredRows(
+                  table, projection, variables, filter, parquetWriteOptions);
+          if (rows > 0 && rows < minFilteredRows) {
+            throw new InvalidRowFilterException(
+                filter.toString(), format("it selects fewer than %d rows", minFilteredRows));
+          }
+          long excluded = ParquetUtils.getRowCount(table) - rows;
+          if (excluded > 0 && excluded < minFilteredRows) {
+            throw new InvalidRowFilterException(
+                filter.toString(), format("it leaves out fewer than %d rows", minFilteredRows));
+          }
+          return Files.newInputStream(projection, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        if (ParquetUtils.writeProjection(table, projection, variables)) {
+          return Files.newInputStream(projection, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(projection);
+        throw e;
+      }
+      return Files.newInputStream(table);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+  }
+
   @PreAuthorize("hasAnyRole('ROLE_SU', 'ROLE_' + #project.toUpperCase() + '_RESEARCHER')")
   public boolean resourceExists(String project, String objectName) {
     return storageService.objectExists(SHARED_PREFIX + project, objectName + RDS);
@@ -223,11 +476,9 @@ public class ArmadilloStorageService {
   }
 
   public List<Workspace> listWorkspaces(Principal principal) {
-    return Stream.of(principal)
-        .map(ArmadilloStorageService::getUserBucketName)
-        .map(storageService::listObjects)
-        .flatMap(List::stream)
-        .map(ArmadilloStorageService::toWorkspace)
+    String bucketName = getUserBucketName(principal);
+    return storageService.listObjects(bucketName).stream()
+        .map(item -> toWorkspace(bucketName, item))
         .toList();
   }
 
@@ -244,7 +495,7 @@ public class ArmadilloStorageService {
                 userFolder ->
                     storageService.listObjects(userFolder).stream()
                         .filter((object -> object.name().endsWith(RDATA_EXT)))
-                        .map(ArmadilloStorageService::toWorkspace)
+                        .map(item -> toWorkspace(userFolder, item))
                         .collect(Collectors.toList())));
   }
 
@@ -270,33 +521,23 @@ public class ArmadilloStorageService {
     return USER_PREFIX + userIdentifier;
   }
 
-  private static Workspace toWorkspace(ObjectMetadata item) {
+  private Workspace toWorkspace(String bucketName, ObjectMetadata item) {
     return Workspace.builder()
         .setLastModified(item.lastModified())
         .setName(removeExtension(item.name()))
         .setSize(item.size())
+        .setChecksum(storageService.getWorkspaceChecksum(bucketName, item.name()))
         .build();
   }
 
-  private void trySaveWorkspace(ArmadilloWorkspace workspace, Principal principal, String id) {
-    try {
-      storageService.save(
-          workspace.createInputStream(),
-          getUserBucketName(principal),
-          getWorkspaceObjectName(id),
-          APPLICATION_OCTET_STREAM);
-    } catch (StorageException e) {
-      throw new StorageException(e);
-    }
-  }
-
   public void moveWorkspacesIfInOldBucket(Principal principal) throws FileNotFoundException {
     String oldBucketName = getOldUserBucketName(principal);
     String newBucketName = getUserBucketName(principal);
     // only move workspaces from old bucket to new if there is no new bucket yet, we don't want to
     if (storageService.bucketExists(oldBucketName) && !storageService.bucketExists(newBucketName)) {
       LOGGER.info(
-          "Found old workspaces bucket for user, moving workspaces from old directory [{}] to new directory [{}]",
+          "Found old workspaces bucket for user, moving workspaces from old directory [{}] to new"
+              + " directory [{}]",
           oldBucketName,
           newBucketName);
       Path source = Paths.get(storageService.getRootDir() + File.separator + oldBucketName);
@@ -306,26 +547,24 @@ public class ArmadilloStorageService {
             source.resolveSibling(storageService.getRootDir() + File.separator + newBucketName));
       } catch (IOException e) {
         throw new StorageException(e);
+      } finally {
+        storageService.refreshBucket(oldBucketName);
+        storageService.refreshBucket(newBucketName);
       }
     }
   }
 
   public void saveWorkspace(InputStream is, Principal principal, String id) {
-    // Load root dir
-    File drive = new File("/");
-    long usableSpace = drive.getUsableSpace();
     try {
       moveWorkspacesIfInOldBucket(principal);
-      ArmadilloWorkspace workspace = storageService.getWorkSpace(is);
-
-      long fileSize = workspace.getSize();
-      if (usableSpace > fileSize * 2L) {
-        trySaveWorkspace(workspace, principal, id);
-      } else {
-        throw new StorageException(
-            format(
-                "Can't save workspace: workspace too big (%s), not enough space left on device. Try to make your workspace smaller and/or contact the administrator to increase diskspace.",
-                getHumanReadableByteCount(fileSize)));
+      String bucketName = getUserBucketName(principal);
+      try (ArmadilloWorkspace workspace = storageService.getWorkSpace(is, bucketName)) {
+        storageService.save(workspace, bucketName, getWorkspaceObjectName(id));
+        LOGGER.debug(
+            "Saved workspace [{}] of {} with SHA-256 checksum {}",
+            id,
+            getHumanReadableByteCount(workspace.getSize()),
+            workspace.getChecksum());
       }
     } catch (StorageException | FileNotFoundException e) {
       throw new StorageException(e.getMessage().replace("load", "save"));
@@ -387,8 +626,27 @@ public class ArmadilloStorageService {
 
   @PreAuthorize("hasRole('ROLE_SU')")
   public List<Map<String, String>> getPreview(String project, String object) {
+    return getPreview(project, object, 0, PREVIEW_SIZE, List.of());
+  }
+
+  /**
+   * Reads a page of rows of a table, starting at the offset. Only the requested columns are read,
+   * or the first ten if none are requested.
+   */
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public List<Map<String, String>> getPreview(
+      String project, String object, long offset, int limit, List<String> columns) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative");
+    }
+    if (limit < 1 || limit > MAX_PREVIEW_ROWS) {
+      throw new IllegalArgumentException(
+          format("Limit must be between 1 and %d", MAX_PREVIEW_ROWS));
+    }
     throwIfUnknown(project, object);
-    return storageService.preview(SHARED_PREFIX + project, object, 10, 10);
+    int columnLimit = columns.isEmpty() ? PREVIEW_SIZE : columns.size();
+    return storageService.preview(
+        SHARED_PREFIX + project, object, offset, limit, columnLimit, columns);
   }
 
   @PreAuthorize("hasRole('ROLE_SU')")
@@ -401,6 +659,18 @@ public class ArmadilloStorageService {
     }
   }
 
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public Map<String, ArmadilloColumnMetaData> getMetadata(
+      String project, String object, boolean includeLevels) {
+    throwIfUnknown(project, object);
+    try {
+      return storageService.getMetadataFromTablePath(
+          SHARED_PREFIX + project, object, includeLevels);
+    } catch (StorageException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
   @PreAuthorize("hasRole('ROLE_SU')")
   public List<String> getVariables(String project, String object) {
     throwIfUnknown(project, object);
@@ -417,26 +687,57 @@ public class ArmadilloStorageService {
   public void writeParquetFromCsv(
       String project, String object, MultipartFile file, int numberOfRowsToDetermineTypeBy)
       throws CsvValidationException, IOException {
+    writeParquetFromCsv(project, object, file, numberOfRowsToDetermineTypeBy, UploadProgress.NONE);
+  }
+
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public void writeParquetFromCsv(
+      String project,
+      String object,
+      MultipartFile file,
+      int numberOfRowsToDetermineTypeBy,
+      UploadProgress progress)
+      throws CsvValidationException, IOException {
+    writeParquetFromCsv(
+        project,
+        object,
+        file,
+        numberOfRowsToDetermineTypeBy,
+        ParquetWriteOptions.Overrides.NONE,
+        progress);
+  }
+
+  /**
+   * @param overrides the layout of the written table, where it differs from the configured layout
+   */
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public void writeParquetFromCsv(
+      String project,
+      String object,
+      MultipartFile file,
+      int numberOfRowsToDetermineTypeBy,
+      ParquetWriteOptions.Overrides overrides,
+      UploadProgress progress)
+      throws CsvValidationException, IOException {
     String objectParquet = removeExtension(object) + PARQUET;
     throwIfDuplicate(project, objectParquet);
-    CharacterSeparatedFile characterSeparatedFile = new CharacterSeparatedFile(file);
-    characterSeparatedFile.setNumberOfRowsToDetermineTypeBy(numberOfRowsToDetermineTypeBy);
-    Path path = localStorageService.getObjectPathSafely(SHARED_PREFIX + project, objectParquet);
-    try {
-      localStorageService.createBucketIfNotExists(SHARED_PREFIX + project);
-
-      // create parent dirs if needed
-      //noinspection ResultOfMethodCallIgnored
-      path.toFile().getParentFile().mkdirs();
-      characterSeparatedFile.writeParquet(
-          storageService.getRootDir()
-              + File.separator
-              + SHARED_PREFIX
-              + project
-              + File.separator
-              + objectParquet);
-    } catch (Exception e) {
-      throw new StorageException(e);
+    try (CharacterSeparatedFile characterSeparatedFile =
+        file instanceof SpooledUpload upload
+            ? new CharacterSeparatedFile(upload, numberOfRowsToDetermineTypeBy, csvParseThreads)
+            : new CharacterSeparatedFile(file, numberOfRowsToDetermineTypeBy, csvParseThreads)) {
+      try {
+        // written to a temporary file first, a failed upload keeps the previous table
+        localStorageService.write(
+            SHARED_PREFIX + project,
+            objectParquet,
+            tempFile ->
+                characterSeparatedFile.writeParquet(
+                    tempFile.toString(), parquetWriteOptions.with(overrides), progress));
+      } catch (FileProcessingException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new StorageException(e);
+      }
     }
   }
 }
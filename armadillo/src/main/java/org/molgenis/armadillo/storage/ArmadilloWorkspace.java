@@ -1,34 +1,149 @@
 package org.molgenis.armadillo.storage;
 
-import java.io.ByteArrayInputStream;
+import static java.lang.String.format;
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.RDATA_EXT;
+import static org.molgenis.armadillo.storage.StorageService.getHumanReadableByteCount;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
-import org.apache.commons.io.IOUtils;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import org.molgenis.armadillo.exceptions.StorageException;
 
-public class ArmadilloWorkspace {
-  byte[] content;
-  public static final String WORKSPACE_TOO_BIG_ERROR =
-      "Unable to load workspace. Maximum supported workspace size is 2GB";
+/**
+ * A workspace on its way to storage. The stream is copied to a hidden temporary file in the
+ * directory of its destination while its size and SHA-256 checksum are computed, so saving a
+ * workspace takes the same amount of memory whatever its size. {@link #moveTo(Path)} renames the
+ * file into place, so a failed save never leaves a partial workspace behind. Close it to remove the
+ * temporary file if it was not moved.
+ *
+ * <p>The checksum is kept in a hidden file next to the saved workspace, in the format of {@code
+ * sha256sum}, so {@code sha256sum -c} in the directory verifies the workspace.
+ */
+public class ArmadilloWorkspace implements Closeable {
+  static final String TEMP_FILE_PREFIX = ".workspace-";
+  static final String TEMP_FILE_SUFFIX = ".tmp";
+  static final String CHECKSUM_FILE_SUFFIX = ".sha256";
+  public static final String NOT_ENOUGH_SPACE_ERROR =
+      "Can't save workspace: workspace too big (%s), not enough space left on device. Try to make"
+          + " your workspace smaller and/or contact the administrator to increase diskspace.";
+  // below this the device is considered full when writing fails
+  private static final long MINIMUM_USABLE_SPACE = 1024 * 1024;
+
+  private final Path file;
+  private final long size;
+  private final String checksum;
 
-  public ArmadilloWorkspace(InputStream is) {
-    content = toByteArray(is);
+  public ArmadilloWorkspace(InputStream is, Path directory) {
+    try {
+      Files.createDirectories(directory);
+      file = Files.createTempFile(directory, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+    } catch (IOException e) {
+      throw new StorageException("Unable to save workspace, because: " + e);
+    }
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      // the caller owns the stream, so it is not closed here
+      size = new DigestInputStream(is, digest).transferTo(outputStream);
+      checksum = HexFormat.of().formatHex(digest.digest());
+    } catch (IOException e) {
+      throw failure(directory, e);
+    } catch (NoSuchAlgorithmException e) {
+      deleteQuietly();
+      throw new IllegalStateException(e);
+    }
   }
 
-  private byte[] toByteArray(InputStream is) {
+  private StorageException failure(Path directory, IOException e) {
+    long written = 0;
     try {
-      return IOUtils.toByteArray(is);
-    } catch (OutOfMemoryError e) {
-      throw new StorageException(WORKSPACE_TOO_BIG_ERROR);
-    } catch (Exception e) {
-      throw new StorageException("Unable to load workspace, because: " + e);
+      written = Files.size(file);
+      if (Files.getFileStore(directory).getUsableSpace() < MINIMUM_USABLE_SPACE) {
+        return new StorageException(
+            format(NOT_ENOUGH_SPACE_ERROR, getHumanReadableByteCount(written)));
+      }
+    } catch (IOException ignored) {
+      // report the original failure
+    } finally {
+      deleteQuietly();
     }
+    return new StorageException("Unable to save workspace, because: " + e);
   }
 
   public long getSize() {
-    return content.length;
+    return size;
+  }
+
+  /** Hex encoded SHA-256 checksum of the workspace. */
+  public String getChecksum() {
+    return checksum;
+  }
+
+  public InputStream createInputStream() throws IOException {
+    return Files.newInputStream(file);
+  }
+
+  /**
+   * Replaces the target with this workspace and writes its checksum file. The target must be on the
+   * same file system. The checksum file of the previous workspace is removed first, so a failure
+   * halfway leaves no checksum rather than a wrong one.
+   */
+  void moveTo(Path target) throws IOException {
+    Path checksumFile = getChecksumFile(target);
+    Path tempFile = Files.createTempFile(target.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+    try {
+      Files.writeString(tempFile, checksum + "  " + target.getFileName() + "\n");
+      Files.deleteIfExists(checksumFile);
+      LocalStorageService.moveAtomically(file, target);
+      LocalStorageService.moveAtomically(tempFile, checksumFile);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  static boolean isTempFile(Path path) {
+    String name = path.getFileName().toString();
+    return name.startsWith(TEMP_FILE_PREFIX) && name.endsWith(TEMP_FILE_SUFFIX);
+  }
+
+  static Path getChecksumFile(Path workspaceFile) {
+    return workspaceFile.resolveSibling("." + workspaceFile.getFileName() + CHECKSUM_FILE_SUFFIX);
+  }
+
+  static boolean isChecksumFile(Path path) {
+    String name = path.getFileName().toString();
+    return name.startsWith(".") && name.endsWith(RDATA_EXT + CHECKSUM_FILE_SUFFIX);
+  }
+
+  /**
+   * @return the checksum that was written when the workspace was saved, or null if there is none
+   */
+  static String readChecksum(Path workspaceFile) throws IOException {
+    Path checksumFile = getChecksumFile(workspaceFile);
+    if (!Files.exists(checksumFile)) {
+      return null;
+    }
+    String line = Files.readString(checksumFile).strip();
+    int end = line.indexOf(' ');
+    return end < 0 ? line : line.substring(0, end);
+  }
+
+  private void deleteQuietly() {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ignored) {
+      // nothing left to clean up
+    }
   }
 
-  public ByteArrayInputStream createInputStream() {
-    return new ByteArrayInputStream(content);
+  @Override
+  public void close() {
+    deleteQuietly();
   }
 }
@@ -1,12 +1,15 @@
 package org.molgenis.armadillo.storage;
 
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.exceptions.CsvValidationException;
 import java.io.*;
-import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -16,41 +19,111 @@ import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaParseException;
-import org.apache.avro.generic.GenericData;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.parquet.avro.AvroParquetWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
 import org.molgenis.armadillo.exceptions.FileProcessingException;
 import org.springframework.web.multipart.MultipartFile;
 
-public class CharacterSeparatedFile {
+/**
+ * Converts an uploaded character separated file to Parquet. The upload is spooled to a temporary
+ * file once, unless it already is a {@link SpooledUpload}; the separator is detected from the
+ * header, the column types are inferred from a sample of the rows and the rows are then streamed to
+ * Parquet, so memory use does not depend on the size of the file. With a parallelism above one, the
+ * rows are parsed on multiple threads by a {@link ParallelCsvConverter}. Close it to remove the
+ * spooled file.
+ */
+public class CharacterSeparatedFile implements Closeable {
+  public static final int DEFAULT_NUMBER_OF_ROWS_TO_DETERMINE_TYPE_BY = 100;
   public static final String STRING = "string";
   public static final String DOUBLE = "double";
   public static final String BOOLEAN = "boolean";
   public static final String INT = "int";
   MultipartFile file;
+  private final Path spoolFile;
+  private final boolean ownsSpoolFile;
   private char separator = ',';
   Schema schema;
   String[] header;
   List<String> datatypes;
-  int numberOfRowsToDetermineTypeBy = 100;
+  final int numberOfRowsToDetermineTypeBy;
+  final int parallelism;
 
   public CharacterSeparatedFile(MultipartFile file) throws IOException, CsvValidationException {
+    this(file, DEFAULT_NUMBER_OF_ROWS_TO_DETERMINE_TYPE_BY);
+  }
+
+  public CharacterSeparatedFile(MultipartFile file, int numberOfRowsToDetermineTypeBy)
+      throws IOException, CsvValidationException {
+    this(file, numberOfRowsToDetermineTypeBy, 1);
+  }
+
+  /**
+   * @param numberOfRowsToDetermineTypeBy number of rows of which the values determine the column
+   *     types, all rows are used when it is zero or less
+   * @param parallelism number of threads that parse the file
+   */
+  public CharacterSeparatedFile(
+      MultipartFile file, int numberOfRowsToDetermineTypeBy, int parallelism)
+      throws IOException, CsvValidationException {
+    this(file, spool(file), true, numberOfRowsToDetermineTypeBy, parallelism);
+  }
+
+  /**
+   * Reads an upload that is already spooled to disk, without copying it again. The spooled file
+   * stays when this is closed, it belongs to the upload.
+   */
+  CharacterSeparatedFile(SpooledUpload upload, int numberOfRowsToDetermineTypeBy, int parallelism)
+      throws IOException, CsvValidationException {
+    this(upload, upload.getPath(), false, numberOfRowsToDetermineTypeBy, parallelism);
+  }
+
+  private CharacterSeparatedFile(
+      MultipartFile file,
+      Path spoolFile,
+      boolean ownsSpoolFile,
+      int numberOfRowsToDetermineTypeBy,
+      int parallelism)
+      throws IOException, CsvValidationException {
     this.file = file;
-    // test if , is real headerSeparator
-    CSVReader reader = this.getReader();
-    this.setHeader(reader.readNext());
-    char headerSeparator = getSeparatorFromHeader(header, file);
-    this.setHeaderSeparator(headerSeparator);
-    // if , is not the headerSeparator, change it
-    if (headerSeparator != ',') {
-      reader = this.getReader();
-      this.setHeader(reader.readNext());
+    this.spoolFile = spoolFile;
+    this.ownsSpoolFile = ownsSpoolFile;
+    this.numberOfRowsToDetermineTypeBy = numberOfRowsToDetermineTypeBy;
+    this.parallelism = Math.max(1, parallelism);
+    try {
+      // test if , is real headerSeparator
+      try (CSVReader reader = this.getReader()) {
+        this.setHeader(reader.readNext());
+      }
+      char headerSeparator = getSeparatorFromHeader(header, file);
+      this.setHeaderSeparator(headerSeparator);
+      try (CSVReader reader = this.getReader()) {
+        // if , is not the headerSeparator, the header has to be read again
+        this.setHeader(reader.readNext());
+        this.datatypes =
+            numberOfRowsToDetermineTypeBy <= 0 && this.parallelism > 1
+                ? getParallelConverter().inferTypes(header.length)
+                : this.getTypesFromData(reader);
+      }
+      this.setSchema(this.createSchemaFromTypes(this.datatypes, this.header));
+    } catch (IOException | CsvValidationException | RuntimeException e) {
+      close();
+      throw e;
     }
-    this.datatypes = this.getTypesFromData(reader);
-    this.setSchema(this.createSchemaFromTypes(this.datatypes, this.header));
+  }
+
+  private static Path spool(MultipartFile file) throws IOException {
+    Path spoolFile = Files.createTempFile("armadillo-upload", ".csv");
+    try (InputStream inputStream = file.getInputStream()) {
+      Files.copy(inputStream, spoolFile, REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(spoolFile);
+      throw e;
+    }
+    return spoolFile;
   }
 
   public char getHeaderSeparator() {
@@ -69,10 +142,6 @@ public class CharacterSeparatedFile {
     return schema;
   }
 
-  public void setNumberOfRowsToDetermineTypeBy(int numberOfRowsToDetermineTypeBy) {
-    this.numberOfRowsToDetermineTypeBy = numberOfRowsToDetermineTypeBy;
-  }
-
   public void setHeaderSeparator(char separator) {
     this.separator = separator;
   }
@@ -108,10 +177,16 @@ public class CharacterSeparatedFile {
   }
 
   private CSVReader getReader() throws IOException {
+    return getReader(UploadProgress.NONE);
+  }
+
+  private CSVReader getReader(UploadProgress progress) throws IOException {
     CSVParser parser = new CSVParserBuilder().withSeparator(separator).build();
-    return new CSVReaderBuilder(new InputStreamReader(file.getInputStream()))
-        .withCSVParser(parser)
-        .build();
+    Reader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                progress.track(Files.newInputStream(spoolFile)), StandardCharsets.UTF_8));
+    return new CSVReaderBuilder(reader).withCSVParser(parser).build();
   }
 
   static String getTypeOfCell(String cell) {
@@ -169,19 +244,17 @@ public class CharacterSeparatedFile {
       throws IOException, CsvValidationException {
     String[] line;
     String[] types = new String[this.header.length];
-    while ((line = reader.readNext()) != null
-        && reader.getLinesRead() < this.numberOfRowsToDetermineTypeBy) {
-      int i = 0;
-      for (String value : line) {
+    long rowsRead = 0;
+    while ((numberOfRowsToDetermineTypeBy <= 0 || rowsRead < numberOfRowsToDetermineTypeBy)
+        && (line = reader.readNext()) != null) {
+      rowsRead++;
+      for (int i = 0; i < line.length && i < types.length; i++) {
+        String value = line[i];
         // determine type
         // if value is NA, it's not a string by definition
         if (!value.isEmpty() && !value.equals("NA")) {
-          String typeOfCell = getTypeOfCell(value);
-          String currentType = (String) Array.get(types, i);
-          String type = getTypeToSet(typeOfCell, currentType);
-          Array.set(types, i, type);
+          types[i] = getTypeToSet(getTypeOfCell(value), types[i]);
         }
-        i++;
       }
     }
     return Arrays.stream(types).map(type -> Objects.requireNonNullElse(type, STRING)).toList();
@@ -249,34 +322,68 @@ public class CharacterSeparatedFile {
     }
   }
 
-  public void writeParquet(String savePath) throws IOException, CsvValidationException {
-    CSVReader reader = getReader();
-    // skip header
-    reader.readNext();
-    // for each line create dataRecord and write
-    Path outputFilePath = Paths.get(savePath);
-    LocalOutputFile fileToWrite = new LocalOutputFile(outputFilePath);
-    ParquetWriter<GenericData.Record> writer =
-        AvroParquetWriter.<GenericData.Record>builder(fileToWrite)
-            .withSchema(schema)
-            .withConf(new Configuration())
-            .withCompressionCodec(CompressionCodecName.GZIP)
-            .build();
-    String[] line;
-    GenericData.Record dataRecord = new GenericData.Record(schema);
-    while ((line = reader.readNext()) != null) {
-      int i = 0;
-      for (String value : line) {
-        dataRecord.put(header[i], getCorrectlyTypedDataRecord(value, datatypes.get(i)));
-        i++;
+  MessageType getParquetSchema() {
+    Types.MessageTypeBuilder builder = Types.buildMessage();
+    for (int i = 0; i < header.length; i++) {
+      switch (datatypes.get(i)) {
+        case INT -> builder.optional(PrimitiveTypeName.INT32).named(header[i]);
+        case DOUBLE -> builder.optional(PrimitiveTypeName.DOUBLE).named(header[i]);
+        case BOOLEAN -> builder.optional(PrimitiveTypeName.BOOLEAN).named(header[i]);
+        default -> builder
+            .optional(PrimitiveTypeName.BINARY)
+            .as(LogicalTypeAnnotation.stringType())
+            .named(header[i]);
       }
-      try {
-        writer.write(dataRecord);
-      } catch (Exception e) {
-        throw new WriteAbortedException(
-            String.format("Cannot write parquet file because: [%s]", e.getMessage()), e);
+    }
+    return builder.named("armadillo");
+  }
+
+  public void writeParquet(String savePath) throws IOException, CsvValidationException {
+    writeParquet(savePath, ParquetWriteOptions.defaults());
+  }
+
+  public void writeParquet(String savePath, ParquetWriteOptions options)
+      throws IOException, CsvValidationException {
+    writeParquet(savePath, options, UploadProgress.NONE);
+  }
+
+  /**
+   * @param progress receives the number of bytes of the file that are read and the number of rows
+   *     that are written while the file is converted
+   */
+  public void writeParquet(String savePath, ParquetWriteOptions options, UploadProgress progress)
+      throws IOException, CsvValidationException {
+    LocalOutputFile fileToWrite = new LocalOutputFile(Paths.get(savePath));
+    if (parallelism > 1) {
+      getParallelConverter().write(fileToWrite, getParquetSchema(), options, progress);
+      return;
+    }
+    try (CSVReader reader = getReader(progress);
+        ParquetWriter<String[]> writer =
+            options
+                .configure(
+                    new CsvRowWriteSupport.Builder<>(
+                        fileToWrite, new CsvRowWriteSupport(getParquetSchema())))
+                .build()) {
+      // skip header
+      reader.readNext();
+      String[] line;
+      while ((line = reader.readNext()) != null) {
+        writer.write(line);
+        progress.addRowsWritten(1);
       }
     }
-    writer.close();
+  }
+
+  private ParallelCsvConverter getParallelConverter() {
+    return new ParallelCsvConverter(
+        spoolFile, separator, parallelism, ParallelCsvConverter.DEFAULT_CHUNK_SIZE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ownsSpoolFile) {
+      Files.deleteIfExists(spoolFile);
+    }
   }
 }
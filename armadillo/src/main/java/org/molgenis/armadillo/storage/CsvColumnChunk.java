@@ -0,0 +1,161 @@
+package org.molgenis.armadillo.storage;
+
+import static org.molgenis.armadillo.storage.CharacterSeparatedFile.getBooleanValue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Typed, column oriented buffer for the rows of one chunk of a character separated file. Values are
+ * converted while the chunk is parsed, so writing it only copies primitives.
+ */
+class CsvColumnChunk {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final MessageType schema;
+  private final PrimitiveTypeName[] types;
+  private final int[][] ints;
+  private final double[][] doubles;
+  private final boolean[][] booleans;
+  private final Binary[][] binaries;
+  private final BitSet[] present;
+  private int capacity = INITIAL_CAPACITY;
+  private int rowCount = 0;
+
+  // first row that could not be converted, reported when the chunk is written
+  private int invalidRow = -1;
+  private String invalidValue;
+  private int invalidColumn;
+  private int invalidRowLength;
+
+  CsvColumnChunk(MessageType schema) {
+    this.schema = schema;
+    int columnCount = schema.getFieldCount();
+    this.types = new PrimitiveTypeName[columnCount];
+    this.ints = new int[columnCount][];
+    this.doubles = new double[columnCount][];
+    this.booleans = new boolean[columnCount][];
+    this.binaries = new Binary[columnCount][];
+    this.present = new BitSet[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      types[i] = schema.getType(i).asPrimitiveType().getPrimitiveTypeName();
+      switch (types[i]) {
+        case INT32 -> ints[i] = new int[capacity];
+        case DOUBLE -> doubles[i] = new double[capacity];
+        case BOOLEAN -> booleans[i] = new boolean[capacity];
+        default -> binaries[i] = new Binary[capacity];
+      }
+      present[i] = new BitSet();
+    }
+  }
+
+  void add(String[] row) {
+    if (invalidRow >= 0) {
+      // the conversion fails on the first invalid row, the rest doesn't matter
+      return;
+    }
+    if (row.length > types.length) {
+      invalidRow = rowCount;
+      invalidRowLength = row.length;
+      return;
+    }
+    ensureCapacity();
+    for (int i = 0; i < row.length; i++) {
+      String value = row[i];
+      if (!ParquetUtils.isEmpty(value) && !setValue(i, value)) {
+        invalidRow = rowCount;
+        invalidColumn = i;
+        invalidValue = value;
+        return;
+      }
+    }
+    rowCount++;
+  }
+
+  private boolean setValue(int column, String value) {
+    try {
+      switch (types[column]) {
+        case INT32 -> ints[column][rowCount] = Integer.parseInt(value);
+        case DOUBLE -> doubles[column][rowCount] = Double.parseDouble(value);
+        case BOOLEAN -> booleans[column][rowCount] = getBooleanValue(value);
+        default -> binaries[column][rowCount] = Binary.fromString(value);
+      }
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    present[column].set(rowCount);
+    return true;
+  }
+
+  private void ensureCapacity() {
+    if (rowCount < capacity) {
+      return;
+    }
+    capacity *= 2;
+    for (int i = 0; i < types.length; i++) {
+      switch (types[i]) {
+        case INT32 -> ints[i] = Arrays.copyOf(ints[i], capacity);
+        case DOUBLE -> doubles[i] = Arrays.copyOf(doubles[i], capacity);
+        case BOOLEAN -> booleans[i] = Arrays.copyOf(booleans[i], capacity);
+        default -> binaries[i] = Arrays.copyOf(binaries[i], capacity);
+      }
+    }
+  }
+
+  int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @param rowsBefore number of rows in the file before this chunk, to report the row number
+   */
+  void throwIfInvalid(long rowsBefore) {
+    if (invalidRow < 0) {
+      return;
+    }
+    long rowNumber = rowsBefore + invalidRow + 1;
+    if (invalidValue == null) {
+      throw CsvRowWriteSupport.tooManyValues(rowNumber, invalidRowLength, types.length);
+    }
+    throw CsvRowWriteSupport.invalidValue(
+        invalidValue, rowNumber, schema.getFieldName(invalidColumn), types[invalidColumn]);
+  }
+
+  void writeRow(int row, RecordConsumer recordConsumer) {
+    recordConsumer.startMessage();
+    for (int i = 0; i < types.length; i++) {
+      if (present[i].get(row)) {
+        String field = schema.getFieldName(i);
+        recordConsumer.startField(field, i);
+        switch (types[i]) {
+          case INT32 -> recordConsumer.addInteger(ints[i][row]);
+          case DOUBLE -> recordConsumer.addDouble(doubles[i][row]);
+          case BOOLEAN -> recordConsumer.addBoolean(booleans[i][row]);
+          default -> recordConsumer.addBinary(binaries[i][row]);
+        }
+        recordConsumer.endField(field, i);
+      }
+    }
+    recordConsumer.endMessage();
+  }
+
+  /** Exposes one row of a chunk at a time to a {@link org.apache.parquet.hadoop.ParquetWriter}. */
+  static class Row {
+    private CsvColumnChunk chunk;
+    private int row;
+
+    Row moveTo(CsvColumnChunk chunk, int row) {
+      this.chunk = chunk;
+      this.row = row;
+      return this;
+    }
+
+    void write(RecordConsumer recordConsumer) {
+      chunk.writeRow(row, recordConsumer);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.molgenis.armadillo.storage;
+
+import static org.molgenis.armadillo.storage.CharacterSeparatedFile.getBooleanValue;
+
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.molgenis.armadillo.exceptions.FileProcessingException;
+
+/**
+ * Writes CSV rows, as parsed strings, straight to Parquet. Every cell is converted once to the
+ * primitive type of its column, without intermediate record objects.
+ */
+class CsvRowWriteSupport extends WriteSupport<String[]> {
+
+  private final MessageType schema;
+  private final PrimitiveTypeName[] types;
+  private RecordConsumer recordConsumer;
+  private long rowNumber = 0;
+
+  CsvRowWriteSupport(MessageType schema) {
+    this.schema = schema;
+    this.types =
+        schema.getFields().stream()
+            .map(field -> field.asPrimitiveType().getPrimitiveTypeName())
+            .toArray(PrimitiveTypeName[]::new);
+  }
+
+  @Override
+  public WriteContext init(Configuration configuration) {
+    return new WriteContext(schema, Map.of());
+  }
+
+  @Override
+  public void prepareForWrite(RecordConsumer recordConsumer) {
+    this.recordConsumer = recordConsumer;
+  }
+
+  @Override
+  public void write(String[] row) {
+    rowNumber++;
+    if (row.length > types.length) {
+      throw tooManyValues(rowNumber, row.length, types.length);
+    }
+    recordConsumer.startMessage();
+    for (int i = 0; i < row.length; i++) {
+      String value = row[i];
+      if (!ParquetUtils.isEmpty(value)) {
+        String field = schema.getFieldName(i);
+        recordConsumer.startField(field, i);
+        addValue(value, i);
+        recordConsumer.endField(field, i);
+      }
+    }
+    recordConsumer.endMessage();
+  }
+
+  private void addValue(String value, int column) {
+    try {
+      switch (types[column]) {
+        case INT32 -> recordConsumer.addInteger(Integer.parseInt(value));
+        case DOUBLE -> recordConsumer.addDouble(Double.parseDouble(value));
+        case BOOLEAN -> recordConsumer.addBoolean(getBooleanValue(value));
+        default -> recordConsumer.addBinary(Binary.fromString(value));
+      }
+    } catch (NumberFormatException e) {
+      throw invalidValue(value, rowNumber, schema.getFieldName(column), types[column]);
+    }
+  }
+
+  static FileProcessingException tooManyValues(long rowNumber, int values, int columns) {
+    return new FileProcessingException(
+        String.format(
+            "Row %d has %d values, but the header has %d columns", rowNumber, values, columns));
+  }
+
+  static FileProcessingException invalidValue(
+      String value, long rowNumber, String column, PrimitiveTypeName type) {
+    return new FileProcessingException(
+        String.format(
+            "Value [%s] in row %d of column [%s] is not of the type [%s] that was determined"
+                + " for the column, increase the number of rows to determine the type by",
+            value, rowNumber, column, type));
+  }
+
+  /** Builds a {@link ParquetWriter} around a given {@link WriteSupport}. */
+  static class Builder<T> extends ParquetWriter.Builder<T, Builder<T>> {
+    private final WriteSupport<T> writeSupport;
+
+    Builder(OutputFile file, WriteSupport<T> writeSupport) {
+      super(file);
+      this.writeSupport = writeSupport;
+    }
+
+    @Override
+    protected Builder<T> self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<T> getWriteSupport(Configuration conf) {
+      return writeSupport;
+    }
+  }
+}
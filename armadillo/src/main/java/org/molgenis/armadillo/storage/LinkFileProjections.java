@@ -0,0 +1,216 @@
+package org.molgenis.armadillo.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.PARQUET;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Materialised tables of link files: Parquet files with only the linked variables of the source
+ * table, so reading a link file doesn't read the whole source table. They are kept in a hidden
+ * directory of the bucket of the link file as {@code .projections/<link>/<fingerprint>.parquet}.
+ * The fingerprint covers the link file and the size and modification time of the source table, so a
+ * changed source never matches a materialised table of its previous contents.
+ *
+ * <p>Materialised tables are built in the background, one at a time. Until the table of the current
+ * fingerprint is built, readers fall back to the source table.
+ */
+@Component
+public class LinkFileProjections {
+
+  static final String MATERIALIZE_PROPERTY = "storage.link-files.materialize";
+  static final String PROJECTIONS_DIR = ".projections";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LinkFileProjections.class);
+
+  private final boolean enabled;
+  private final Executor executor;
+  private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+  @Autowired
+  public LinkFileProjections(@Value("${" + MATERIALIZE_PROPERTY + ":false}") boolean enabled) {
+    this(
+        enabled,
+        enabled
+            ? Executors.newSingleThreadExecutor(new CustomizableThreadFactory("link-projection-"))
+            : null);
+  }
+
+  LinkFileProjections(boolean enabled, Executor executor) {
+    this.enabled = enabled;
+    this.executor = executor;
+  }
+
+  static LinkFileProjections disabled() {
+    return new LinkFileProjections(false, null);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor instanceof ExecutorService executorService) {
+      executorService.shutdownNow();
+    }
+  }
+
+  static boolean isProjectionFile(Path bucketPath, Path file) {
+    return file.startsWith(bucketPath.resolve(PROJECTIONS_DIR));
+  }
+
+  /**
+   * The materialised table of a link file, when it is built for the current source table. Otherwise
+   * starts building it and returns nothing.
+   */
+  Optional<Path> get(Path bucketPath, String linkObject, ArmadilloLinkFile linkFile, Path source) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    try {
+      Path projection = getProjectionPath(bucketPath, linkObject, linkFile, source);
+      if (Files.isRegularFile(projection)) {
+        return Optional.of(projection);
+      }
+      schedule(projection, linkFile, source);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to look up materialised table of {}: {}", linkObject, e.getMessage());
+    }
+    return Optional.empty();
+  }
+
+  /** Starts building the materialised table of a link file, e.g. after it was saved. */
+  void build(Path bucketPath, String linkObject, ArmadilloLinkFile linkFile, Path source) {
+    get(bucketPath, linkObject, linkFile, source);
+  }
+
+  /** Deletes the materialised tables of a link file. */
+  void remove(Path bucketPath, String linkObject) {
+    Path directory = getProjectionsDir(bucketPath, linkObject);
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try {
+      deleteAllExcept(directory, null);
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to delete materialised tables of {}: {}", linkObject, e.getMessage());
+    }
+  }
+
+  private void schedule(Path projection, ArmadilloLinkFile linkFile, Path source) {
+    if (!pending.add(projection)) {
+      return;
+    }
+    try {
+      executor.execute(
+          () -> {
+            try {
+              write(projection, linkFile, source);
+            } catch (IOException | RuntimeException e) {
+              LOGGER.warn(
+                  "Unable to materialise {} from {}: {}", projection, source, e.getMessage());
+            } finally {
+              pending.remove(projection);
+            }
+          });
+    } catch (RuntimeException e) {
+      pending.remove(projection);
+      throw e;
+    }
+  }
+
+  private static void write(Path projection, ArmadilloLinkFile linkFile, Path source)
+      throws IOException {
+    if (Files.isRegularFile(projection)) {
+      return;
+    }
+    Path directory = projection.getParent();
+    Files.createDirectories(directory);
+    Path tempFile =
+        Files.createTempFile(
+            directory, LocalStorageService.TEMP_FILE_PREFIX, LocalStorageService.TEMP_FILE_SUFFIX);
+    try {
+      // the parquet writer creates the file itself
+      Files.delete(tempFile);
+      List<String> variables = getVariables(linkFile);
+      if (!ParquetUtils.writeProjection(source, tempFile, variables)) {
+        // the link file has all variables of the source, which never changes in place
+        LocalStorageService.linkOrCopy(source, tempFile);
+      }
+      if (!projection.getFileName().toString().equals(getFileName(linkFile, source))) {
+        // the source was replaced while writing, the next read builds the new one
+        return;
+      }
+      LocalStorageService.moveAtomically(tempFile, projection);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+    deleteAllExcept(directory, projection);
+  }
+
+  private static void deleteAllExcept(Path directory, Path keep) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(file -> !file.equals(keep)).toList()) {
+        try {
+          Files.delete(file);
+        } catch (NoSuchFileException e) {
+          // deleted by a concurrent build
+        }
+      }
+    }
+  }
+
+  private static Path getProjectionsDir(Path bucketPath, String linkObject) {
+    return bucketPath.resolve(PROJECTIONS_DIR).resolve(linkObject);
+  }
+
+  private static Path getProjectionPath(
+      Path bucketPath, String linkObject, ArmadilloLinkFile linkFile, Path source)
+      throws IOException {
+    return getProjectionsDir(bucketPath, linkObject).resolve(getFileName(linkFile, source));
+  }
+
+  private static String getFileName(ArmadilloLinkFile linkFile, Path source) throws IOException {
+    String fingerprint =
+        String.join(
+            "\n",
+            linkFile.getSourceProject(),
+            linkFile.getSourceObject(),
+            String.join(",", getVariables(linkFile)),
+            String.valueOf(Files.size(source)),
+            String.valueOf(Files.getLastModifiedTime(source).toMillis()));
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(fingerprint.getBytes(UTF_8));
+      return HexFormat.of().formatHex(hash, 0, 16) + PARQUET;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<String> getVariables(ArmadilloLinkFile linkFile) {
+    return Arrays.stream(linkFile.getVariables().split(","))
+        .map(String::strip)
+        .filter(variable -> !variable.isEmpty())
+        .toList();
+  }
+}
@@ -1,20 +1,25 @@
 package org.molgenis.armadillo.storage;
 
 import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.Collections.emptyList;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.*;
 
+import jakarta.annotation.PreDestroy;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
 import org.molgenis.armadillo.exceptions.IllegalPathException;
 import org.molgenis.armadillo.exceptions.StorageException;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
@@ -23,11 +28,23 @@ import org.springframework.stereotype.Service;
 public class LocalStorageService implements StorageService {
 
   static final String ROOT_DIR_PROPERTY = "storage.root-dir";
+  static final String WATCH_PROPERTY = "storage.catalog.watch";
+  static final String VERSIONS_PROPERTY = "storage.versions.keep";
+  static final String TEMP_FILE_PREFIX = ".save-";
+  static final String TEMP_FILE_SUFFIX = ".tmp";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LocalStorageService.class);
 
   public final String rootDir;
 
+  private final TableMetadataCache metadataCache;
+
+  private final StorageCatalog catalog;
+
+  private final ObjectVersions versions;
+
+  private final LinkFileProjections projections;
+
   public String getRootDir() {
     return rootDir;
   }
@@ -39,7 +56,28 @@ public class LocalStorageService implements StorageService {
         : completeFilename;
   }
 
-  public LocalStorageService(@Value("${" + ROOT_DIR_PROPERTY + "}") String rootDir) {
+  public LocalStorageService(String rootDir) {
+    this(rootDir, new TableMetadataCache(TableMetadataCache.DEFAULT_MAX_SIZE, false), false, 0);
+  }
+
+  LocalStorageService(
+      String rootDir, TableMetadataCache metadataCache, boolean watch, int versionsToKeep) {
+    this(rootDir, metadataCache, LinkFileProjections.disabled(), watch, versionsToKeep);
+  }
+
+  /**
+   * @param watch whether to watch the root directory for changes made by others than this service,
+   *     e.g. files copied into a project directory
+   * @param versionsToKeep number of previous versions to keep of every object that is replaced or
+   *     deleted
+   */
+  @Autowired
+  public LocalStorageService(
+      @Value("${" + ROOT_DIR_PROPERTY + "}") String rootDir,
+      TableMetadataCache metadataCache,
+      LinkFileProjections projections,
+      @Value("${" + WATCH_PROPERTY + ":true}") boolean watch,
+      @Value("${" + VERSIONS_PROPERTY + ":0}") int versionsToKeep) {
     var dir = new File(rootDir);
     if (!dir.isDirectory()) {
       throw new StorageException(
@@ -49,10 +87,26 @@ public class LocalStorageService implements StorageService {
     }
 
     this.rootDir = rootDir;
+    this.metadataCache = metadataCache;
+    this.versions = new ObjectVersions(versionsToKeep);
+    this.projections = projections;
+    this.catalog = new StorageCatalog(dir.toPath());
+    if (watch) {
+      try {
+        catalog.watch();
+      } catch (IOException e) {
+        LOGGER.warn("Unable to watch {} for changes: {}", dir.getAbsolutePath(), e.getMessage());
+      }
+    }
 
     LOGGER.info("Using local storage at {}", dir.getAbsolutePath());
   }
 
+  @PreDestroy
+  public void close() throws IOException {
+    catalog.close();
+  }
+
   @Override
   public List<String> getUnavailableVariables(
       String bucketName, String objectName, String variables) throws IOException {
@@ -68,22 +122,16 @@ public class LocalStorageService implements StorageService {
     Objects.requireNonNull(objectName);
 
     try {
-      // check bucket
-      if (!bucketExists(bucketName)) {
-        return false;
-      }
-      // check object
-      Path object = getObjectPathSafely(bucketName, objectName);
-      return Files.exists(object);
+      // detect path traversal before looking the object up
+      getObjectPathSafely(bucketName, objectName);
+      return catalog.getObject(bucketName, objectName).isPresent();
     } catch (Exception e) {
       throw new StorageException(e);
     }
   }
 
   public boolean bucketExists(String bucketName) {
-    // check bucket
-    Path dir = Paths.get(rootDir, bucketName);
-    return Files.exists(dir);
+    return catalog.bucketExists(bucketName);
   }
 
   @Override
@@ -92,6 +140,7 @@ public class LocalStorageService implements StorageService {
       Path path = Paths.get(rootDir, bucketName);
       if (!Files.exists(path)) {
         Files.createDirectory(path);
+        catalog.refreshBucket(bucketName);
       }
     } catch (Exception e) {
       throw new StorageException(e);
@@ -106,16 +155,30 @@ public class LocalStorageService implements StorageService {
       folder.map(Path::toFile).sorted(Comparator.reverseOrder()).forEach(File::delete);
     } catch (Exception e) {
       throw new StorageException(e);
+    } finally {
+      metadataCache.invalidate(path);
+      catalog.refreshBucket(bucketName);
     }
   }
 
   @Override
   public List<String> listBuckets() {
-    var files = new File(rootDir).listFiles();
-    if (files == null) {
-      return emptyList();
-    }
-    return Arrays.stream(files).filter(File::isDirectory).map(File::getName).toList();
+    return catalog.listBuckets();
+  }
+
+  @Override
+  public void refreshBucket(String bucketName) {
+    catalog.refreshBucket(bucketName);
+  }
+
+  @Override
+  public long getVersion() {
+    return catalog.getVersion();
+  }
+
+  /** Updates the catalog after an object was written without {@link #save}. */
+  void refreshObject(String bucketName, String objectName) {
+    catalog.refreshObject(bucketName, objectName);
   }
 
   @Override
@@ -129,11 +192,147 @@ public class LocalStorageService implements StorageService {
       //noinspection ResultOfMethodCallIgnored
       path.toFile().getParentFile().mkdirs();
 
-      try (FileOutputStream outputStream = new FileOutputStream(path.toFile(), false)) {
-        inputStream.transferTo(outputStream);
+      // tables are read through a memory mapping, so never overwrite a file in place
+      Path tempFile = Files.createTempFile(path.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+      try {
+        try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+          inputStream.transferTo(outputStream);
+        }
+        versions.preserve(Paths.get(rootDir, bucketName), objectName, path);
+        moveAtomically(tempFile, path);
+      } finally {
+        Files.deleteIfExists(tempFile);
       }
     } catch (Exception e) {
       throw new StorageException(e);
+    } finally {
+      metadataCache.invalidate(Paths.get(rootDir, bucketName), objectName);
+      catalog.refreshObject(bucketName, objectName);
+    }
+    materializeIfLinkFile(bucketName, objectName);
+  }
+
+  @FunctionalInterface
+  interface ObjectWriter<E extends Exception> {
+    void write(Path file) throws E;
+  }
+
+  /**
+   * Writes an object with a writer that creates the file itself, such as a Parquet writer. It
+   * writes a hidden temporary file next to the object, which is renamed over the object only when
+   * the writer succeeds. A failed write leaves the previous version of the object in place.
+   */
+  <E extends Exception> void write(String bucketName, String objectName, ObjectWriter<E> writer)
+      throws IOException, E {
+    Path path = getObjectPathSafely(bucketName, objectName);
+    try {
+      createBucketIfNotExists(bucketName);
+      Files.createDirectories(path.getParent());
+      Path tempFile = Files.createTempFile(path.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+      try {
+        // the writer creates the file itself
+        Files.delete(tempFile);
+        writer.write(tempFile);
+        versions.preserve(Paths.get(rootDir, bucketName), objectName, path);
+        moveAtomically(tempFile, path);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } finally {
+      metadataCache.invalidate(Paths.get(rootDir, bucketName), objectName);
+      catalog.refreshObject(bucketName, objectName);
+    }
+  }
+
+  /**
+   * Copies an object by adding a hard link to its file, which takes the same time for any size. The
+   * file system keeps count of the links and only frees the data when the last one is deleted.
+   * Where hard links aren't supported the file is copied.
+   *
+   * <p>The copy and the original share their data, so they only stay independent because an object
+   * file is never opened for writing: {@link #save} and {@link #write} write a temporary file and
+   * rename it over the object. Any new way of writing objects has to do the same, or it changes
+   * every copy and every preserved version of the object with it.
+   */
+  @Override
+  public void copy(
+      String sourceBucket, String sourceObject, String targetBucket, String targetObject) {
+    Path target = getObjectPathSafely(targetBucket, targetObject);
+    try {
+      Path source = getPathIfObjectExists(sourceBucket, sourceObject);
+      createBucketIfNotExists(targetBucket);
+      Files.createDirectories(target.getParent());
+
+      // link under a temporary name first, so an existing target is replaced atomically
+      Path tempFile = Files.createTempFile(target.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+      try {
+        Files.delete(tempFile);
+        linkOrCopy(source, tempFile);
+        versions.preserve(Paths.get(rootDir, targetBucket), targetObject, target);
+        moveAtomically(tempFile, target);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } catch (Exception e) {
+      throw new StorageException(e);
+    } finally {
+      metadataCache.invalidate(Paths.get(rootDir, targetBucket), targetObject);
+      catalog.refreshObject(targetBucket, targetObject);
+    }
+    materializeIfLinkFile(targetBucket, targetObject);
+  }
+
+  static void linkOrCopy(Path source, Path target) throws IOException {
+    try {
+      Files.createLink(target, source);
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      // the file system has no hard links, or source and target are on different file systems
+      LOGGER.debug("Unable to link {} as {}, copying it instead: {}", source, target, e.toString());
+      Files.copy(source, target);
+    }
+  }
+
+  /** Moves an object by renaming its file, which is atomic within a file system. */
+  @Override
+  public void move(
+      String sourceBucket, String sourceObject, String targetBucket, String targetObject) {
+    Path target = getObjectPathSafely(targetBucket, targetObject);
+    try {
+      Path source = getPathIfObjectExists(sourceBucket, sourceObject);
+      createBucketIfNotExists(targetBucket);
+      Files.createDirectories(target.getParent());
+      versions.preserve(Paths.get(rootDir, targetBucket), targetObject, target);
+      moveAtomically(source, target);
+    } catch (Exception e) {
+      throw new StorageException(e);
+    } finally {
+      metadataCache.invalidate(Paths.get(rootDir, sourceBucket), sourceObject);
+      metadataCache.invalidate(Paths.get(rootDir, targetBucket), targetObject);
+      catalog.refreshObject(sourceBucket, sourceObject);
+      catalog.refreshObject(targetBucket, targetObject);
+    }
+    removeIfLinkFile(sourceBucket, sourceObject);
+    materializeIfLinkFile(targetBucket, targetObject);
+  }
+
+  /** Starts building the materialised table of a link file that was added or replaced. */
+  private void materializeIfLinkFile(String bucketName, String objectName) {
+    if (!objectName.endsWith(LINK_FILE)) {
+      return;
+    }
+    try {
+      ArmadilloLinkFile linkFile = getArmadilloLinkFileFromName(bucketName, objectName);
+      projections.build(
+          Paths.get(rootDir, bucketName), objectName, linkFile, getSourcePath(linkFile));
+    } catch (RuntimeException e) {
+      // the link file is still read from its source table
+      LOGGER.warn("Unable to materialise [{}/{}]: {}", bucketName, objectName, e.getMessage());
+    }
+  }
+
+  private void removeIfLinkFile(String bucketName, String objectName) {
+    if (objectName.endsWith(LINK_FILE)) {
+      projections.remove(Paths.get(rootDir, bucketName), objectName);
     }
   }
 
@@ -142,7 +341,9 @@ public class LocalStorageService implements StorageService {
     Path path = Paths.get(rootDir, bucketName, objectName).toAbsolutePath().normalize();
     Path rootPath = Paths.get(rootDir, bucketName).toAbsolutePath().normalize();
 
-    if (!path.startsWith(rootPath)) {
+    if (!path.startsWith(rootPath)
+        || ObjectVersions.isVersionFile(rootPath, path)
+        || LinkFileProjections.isProjectionFile(rootPath, path)) {
       throw new IllegalPathException(objectName);
     }
 
@@ -151,23 +352,31 @@ public class LocalStorageService implements StorageService {
 
   @Override
   public List<ObjectMetadata> listObjects(String bucketName) {
+    return catalog.listObjects(bucketName);
+  }
+
+  /**
+   * Replaces the target with the source in one step, so readers see either the old or the new file.
+   */
+  static void moveAtomically(Path source, Path target) throws IOException {
     try {
-      Path bucketPath = Paths.get(rootDir, bucketName);
-      if (!Files.exists(bucketPath)) {
-        return emptyList();
-      } else {
-        try (var files = Files.walk(bucketPath)) {
-          return files
-              .filter(Files::isRegularFile)
-              .map(objectPath -> ObjectMetadata.of(bucketPath, objectPath))
-              .toList();
-        }
-      }
-    } catch (IOException e) {
-      throw new StorageException(e);
+      Files.move(source, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, REPLACE_EXISTING);
     }
   }
 
+  static boolean isTempFile(Path path) {
+    String name = path.getFileName().toString();
+    return ArmadilloWorkspace.isTempFile(path)
+        || (name.startsWith(TEMP_FILE_PREFIX) && name.endsWith(TEMP_FILE_SUFFIX));
+  }
+
+  static boolean isMetadataCacheFile(Path bucketPath, Path objectPath) {
+    return objectPath.getParent().equals(bucketPath)
+        && objectPath.getFileName().toString().startsWith(TableMetadataCache.SIDECAR_FILE);
+  }
+
   @Override
   public InputStream load(String bucketName, String objectName) {
     try {
@@ -205,7 +414,7 @@ public class LocalStorageService implements StorageService {
       long fileSize = Files.size(objectPath);
       String fileSizeWithUnit = getFileSizeInUnit(fileSize);
       if (objectPathString.endsWith(PARQUET)) {
-        Map<String, String> tableDimensions = ParquetUtils.retrieveDimensions(objectPath);
+        Map<String, String> tableDimensions = getDimensions(bucketName, objectName, objectPath);
         return FileInfo.of(
             objectName,
             fileSizeWithUnit,
@@ -222,42 +431,121 @@ public class LocalStorageService implements StorageService {
   }
 
   ArmadilloLinkFile getArmadilloLinkFileFromName(String bucketName, String objectName) {
-    InputStream armadilloLinkFileStream = load(bucketName, objectName);
-    return new ArmadilloLinkFile(armadilloLinkFileStream, bucketName, objectName);
+    try (InputStream armadilloLinkFileStream = load(bucketName, objectName)) {
+      return new ArmadilloLinkFile(armadilloLinkFileStream, bucketName, objectName);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
   }
 
-  public ArmadilloWorkspace getWorkSpace(InputStream is) {
-    return new ArmadilloWorkspace(is);
+  private Path getSourcePath(ArmadilloLinkFile linkFile) {
+    return getPathIfObjectExists(
+        SHARED_PREFIX + linkFile.getSourceProject(), linkFile.getSourceObject() + PARQUET);
   }
 
-  Map<String, ArmadilloColumnMetaData> getMetaDataForLinkfile(String bucketName, String objectName)
-      throws IOException {
+  /**
+   * The materialised table of a link file when it is built for the current source table, otherwise
+   * the source table.
+   */
+  @Override
+  public Path getLinkedTablePath(String bucketName, String objectName) {
+    return getLinkedTablePath(
+        bucketName, objectName, getArmadilloLinkFileFromName(bucketName, objectName));
+  }
+
+  private Path getLinkedTablePath(
+      String bucketName, String objectName, ArmadilloLinkFile linkFile) {
+    Path source = getSourcePath(linkFile);
+    return projections
+        .get(Paths.get(rootDir, bucketName), objectName, linkFile, source)
+        .orElse(source);
+  }
+
+  @Override
+  public ArmadilloWorkspace getWorkSpace(InputStream is, String bucketName) {
+    return new ArmadilloWorkspace(is, getObjectPathSafely(bucketName, "."));
+  }
+
+  @Override
+  public void save(ArmadilloWorkspace workspace, String bucketName, String objectName) {
+    Path path = getObjectPathSafely(bucketName, objectName);
+    try {
+      Files.createDirectories(path.getParent());
+      versions.preserve(Paths.get(rootDir, bucketName), objectName, path);
+      workspace.moveTo(path);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    } finally {
+      catalog.refreshObject(bucketName, objectName);
+    }
+  }
+
+  @Override
+  public String getWorkspaceChecksum(String bucketName, String objectName) {
+    if (!objectName.endsWith(RDATA_EXT)) {
+      return null;
+    }
+    try {
+      return ArmadilloWorkspace.readChecksum(getObjectPathSafely(bucketName, objectName));
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+  }
+
+  Map<String, ArmadilloColumnMetaData> getMetaDataForLinkfile(
+      String bucketName, String objectName, boolean includeLevels) throws IOException {
     ArmadilloLinkFile linkFile = getArmadilloLinkFileFromName(bucketName, objectName);
     List<String> columns = Arrays.asList(linkFile.getVariables().split(","));
-    Path srcObjectPath =
-        getPathIfObjectExists(
-            SHARED_PREFIX + linkFile.getSourceProject(), linkFile.getSourceObject() + PARQUET);
-    Map<String, ArmadilloColumnMetaData> metadata = ParquetUtils.getColumnMetaData(srcObjectPath);
-    return metadata.entrySet().stream()
-        .filter(
-            map -> {
-              String key = map.getKey();
-              return columns.contains(key);
-            })
-        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    Path bucketPath = Paths.get(rootDir, bucketName);
+    String srcBucketName = SHARED_PREFIX + linkFile.getSourceProject();
+    Path srcObjectPath = getSourcePath(linkFile);
+    Optional<Path> projection = projections.get(bucketPath, objectName, linkFile, srcObjectPath);
+    if (projection.isPresent()) {
+      Path projectionPath = projection.get();
+      return metadataCache.get(
+          bucketPath,
+          bucketPath.relativize(projectionPath).toString(),
+          columns,
+          includeLevels,
+          () -> ParquetUtils.getColumnMetaData(projectionPath, columns, includeLevels));
+    }
+    return metadataCache.get(
+        Paths.get(rootDir, srcBucketName),
+        linkFile.getSourceObject() + PARQUET,
+        columns,
+        includeLevels,
+        () -> ParquetUtils.getColumnMetaData(srcObjectPath, columns, includeLevels));
   }
 
   @Override
   public Map<String, ArmadilloColumnMetaData> getMetadataFromTablePath(
       String bucketName, String objectName) {
+    return getMetadataFromTablePath(bucketName, objectName, true);
+  }
+
+  /**
+   * @param includeLevels whether to determine the levels of BINARY columns, which requires reading
+   *     their data pages. Without levels, metadata is answered from the footer statistics when
+   *     available.
+   */
+  @Override
+  public Map<String, ArmadilloColumnMetaData> getMetadataFromTablePath(
+      String bucketName, String objectName, boolean includeLevels) {
     try {
       Objects.requireNonNull(bucketName);
       Objects.requireNonNull(objectName);
       Path objectPath = getPathIfObjectExists(bucketName, objectName);
       if (objectPath.toString().endsWith(PARQUET)) {
-        return ParquetUtils.getColumnMetaData(objectPath);
+        return metadataCache.get(
+            Paths.get(rootDir, bucketName),
+            objectName,
+            null,
+            includeLevels,
+            () ->
+                ParquetUtils.getColumnMetaData(
+                    objectPath, ParquetUtils.getColumns(objectPath), includeLevels));
       } else if (objectPath.toString().endsWith(LINK_FILE)) {
-        return getMetaDataForLinkfile(bucketName, objectName);
+        return getMetaDataForLinkfile(bucketName, objectName, includeLevels);
       } else {
         throw new StorageException(
             format(
@@ -270,12 +558,16 @@ public class LocalStorageService implements StorageService {
   }
 
   FileInfo getFileInfoForLinkFile(String bucketName, String objectName, String fileSizeWithUnit)
-      throws FileNotFoundException {
+      throws IOException {
     ArmadilloLinkFile linkFile = getArmadilloLinkFileFromName(bucketName, objectName);
     Path srcObjectPath =
         getPathIfObjectExists(
             SHARED_PREFIX + linkFile.getSourceProject(), linkFile.getSourceObject() + PARQUET);
-    Map<String, String> tableDimensions = ParquetUtils.retrieveDimensions(srcObjectPath);
+    Map<String, String> tableDimensions =
+        getDimensions(
+            SHARED_PREFIX + linkFile.getSourceProject(),
+            linkFile.getSourceObject() + PARQUET,
+            srcObjectPath);
     return new FileInfo(
         objectName,
         fileSizeWithUnit,
@@ -292,7 +584,12 @@ public class LocalStorageService implements StorageService {
       Objects.requireNonNull(objectName);
 
       Path objectPath = getPathIfObjectExists(bucketName, objectName);
-      return ParquetUtils.getColumns(objectPath);
+      return metadataCache.get(
+          Paths.get(rootDir, bucketName),
+          objectName,
+          "variables",
+          List.of(),
+          () -> List.copyOf(ParquetUtils.getColumns(objectPath)));
     } catch (Exception e) {
       throw new StorageException(e);
     }
@@ -300,21 +597,31 @@ public class LocalStorageService implements StorageService {
 
   @Override
   public List<Map<String, String>> preview(
-      String bucketName, String objectName, int rowLimit, int columnLimit) {
+      String bucketName,
+      String objectName,
+      long offset,
+      int rowLimit,
+      int columnLimit,
+      List<String> columns) {
     try {
       Objects.requireNonNull(bucketName);
       Objects.requireNonNull(objectName);
 
       Path objectPath = getPathIfObjectExists(bucketName, objectName);
       if (objectPath.toString().endsWith(PARQUET)) {
-        return ParquetUtils.previewRecords(objectPath, rowLimit, columnLimit, new String[0]);
+        return ParquetUtils.previewRecords(
+            objectPath, offset, rowLimit, columnLimit, columns.toArray(new String[0]));
       } else if (objectPath.toString().endsWith(LINK_FILE)) {
         ArmadilloLinkFile linkFile = getArmadilloLinkFileFromName(bucketName, objectName);
-        String srcProject = linkFile.getSourceProject();
-        String srcObject = linkFile.getSourceObject();
-        String[] variables = linkFile.getVariables().split(",");
-        Path srcObjectPath = getPathIfObjectExists(SHARED_PREFIX + srcProject, srcObject + PARQUET);
-        return ParquetUtils.previewRecords(srcObjectPath, rowLimit, columnLimit, variables);
+        String[] variables =
+            Arrays.stream(linkFile.getVariables().split(","))
+                .filter(variable -> columns.isEmpty() || columns.contains(variable))
+                .toArray(String[]::new);
+        if (variables.length == 0) {
+          return emptyList();
+        }
+        Path tablePath = getLinkedTablePath(bucketName, objectName, linkFile);
+        return ParquetUtils.previewRecords(tablePath, offset, rowLimit, columnLimit, variables);
       } else {
         throw new StorageException(
             format("Preview not supported for: %s/%s", bucketName, objectName));
@@ -324,6 +631,16 @@ public class LocalStorageService implements StorageService {
     }
   }
 
+  private Map<String, String> getDimensions(String bucketName, String objectName, Path tablePath)
+      throws IOException {
+    return metadataCache.get(
+        Paths.get(rootDir, bucketName),
+        objectName,
+        "dimensions",
+        List.of(),
+        () -> Collections.unmodifiableMap(ParquetUtils.retrieveDimensions(tablePath)));
+  }
+
   public Path getPathIfObjectExists(String bucketName, String objectName) {
     Path bucketPath = Paths.get(rootDir, bucketName);
     if (!Files.exists(bucketPath)) {
@@ -337,6 +654,22 @@ public class LocalStorageService implements StorageService {
     return objectPath;
   }
 
+  @Override
+  public List<ObjectMetadata> listVersions(String bucketName, String objectName) {
+    getObjectPathSafely(bucketName, objectName);
+    try {
+      return versions.list(Paths.get(rootDir, bucketName), objectName);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+  }
+
+  @Override
+  public Path getVersionPath(String bucketName, String objectName, String version) {
+    getObjectPathSafely(bucketName, objectName);
+    return versions.getPath(Paths.get(rootDir, bucketName), objectName, version);
+  }
+
   @Override
   public void delete(String bucketName, String objectName) {
     Objects.requireNonNull(bucketName);
@@ -344,9 +677,17 @@ public class LocalStorageService implements StorageService {
 
     try {
       Path objectPath = getPathIfObjectExists(bucketName, objectName);
+      versions.preserve(Paths.get(rootDir, bucketName), objectName, objectPath);
       Files.delete(objectPath);
+      if (objectName.endsWith(RDATA_EXT)) {
+        Files.deleteIfExists(ArmadilloWorkspace.getChecksumFile(objectPath));
+      }
+      metadataCache.invalidate(Paths.get(rootDir, bucketName), objectName);
+      removeIfLinkFile(bucketName, objectName);
     } catch (Exception e) {
       throw new StorageException(e);
+    } finally {
+      catalog.refreshObject(bucketName, objectName);
     }
   }
 }
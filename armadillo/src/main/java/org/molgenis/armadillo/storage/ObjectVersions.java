@@ -0,0 +1,106 @@
+package org.molgenis.armadillo.storage;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.molgenis.armadillo.exceptions.StorageException;
+
+/**
+ * Previous versions of objects, kept in a hidden directory of their bucket as {@code
+ * .versions/<object>/<version>}. Before an object is replaced or deleted, its file is hard linked
+ * into that directory, so keeping a version doesn't copy any data. The name of a version is the
+ * modification time of the file in milliseconds, so the names sort from old to new. Only the newest
+ * versions are kept.
+ */
+class ObjectVersions {
+
+  static final String VERSIONS_DIR = ".versions";
+  private static final String VERSION_REGEX = "\\d{13}(-\\d+)?";
+
+  private final int keep;
+
+  /**
+   * @param keep number of previous versions to keep per object, 0 keeps none
+   */
+  ObjectVersions(int keep) {
+    this.keep = keep;
+  }
+
+  static boolean isVersionFile(Path bucketPath, Path file) {
+    return file.startsWith(bucketPath.resolve(VERSIONS_DIR));
+  }
+
+  /** Keeps the current file of an object as a version, before the object is replaced. */
+  void preserve(Path bucketPath, String objectName, Path objectPath) throws IOException {
+    if (keep <= 0 || !Files.isRegularFile(objectPath)) {
+      return;
+    }
+    Path versionsDir = getVersionsDir(bucketPath, objectName);
+    Files.createDirectories(versionsDir);
+    String name = format("%013d", Files.getLastModifiedTime(objectPath).toMillis());
+    for (int i = 1; ; i++) {
+      try {
+        LocalStorageService.linkOrCopy(objectPath, versionsDir.resolve(name));
+        break;
+      } catch (FileAlreadyExistsException e) {
+        // saved twice within a millisecond
+        name = name.replaceFirst("-\\d+$", "") + "-" + i;
+      }
+    }
+    prune(versionsDir);
+  }
+
+  /** The versions of an object, newest first. */
+  List<ObjectMetadata> list(Path bucketPath, String objectName) throws IOException {
+    Path versionsDir = getVersionsDir(bucketPath, objectName);
+    if (!Files.isDirectory(versionsDir)) {
+      return List.of();
+    }
+    return listFiles(versionsDir).stream()
+        .map(file -> ObjectMetadata.of(versionsDir, file))
+        .toList();
+  }
+
+  Path getPath(Path bucketPath, String objectName, String version) {
+    Path versionPath = getVersionsDir(bucketPath, objectName).resolve(version);
+    if (!version.matches(VERSION_REGEX) || !Files.isRegularFile(versionPath)) {
+      throw new StorageException(
+          format(
+              "Object '%s' has no version '%s' in bucket '%s'",
+              objectName, version, bucketPath.getFileName()));
+    }
+    return versionPath;
+  }
+
+  private static Path getVersionsDir(Path bucketPath, String objectName) {
+    return bucketPath.resolve(VERSIONS_DIR).resolve(objectName);
+  }
+
+  private void prune(Path versionsDir) throws IOException {
+    List<Path> versions = listFiles(versionsDir);
+    for (Path version : versions.subList(Math.min(keep, versions.size()), versions.size())) {
+      try {
+        Files.delete(version);
+      } catch (NoSuchFileException e) {
+        // pruned by a concurrent save
+      }
+    }
+  }
+
+  /** The version files, newest first. */
+  private static List<Path> listFiles(Path versionsDir) throws IOException {
+    try (Stream<Path> files = Files.list(versionsDir)) {
+      return files
+          .filter(file -> file.getFileName().toString().matches(VERSION_REGEX))
+          .sorted(Comparator.comparing(Path::getFileName).reversed())
+          .toList();
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package org.molgenis.armadillo.storage;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.ICSVParser;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Converts a spooled character separated file to Parquet on multiple threads. The file is split at
+ * record boundaries into chunks, which are parsed in parallel into {@link CsvColumnChunk}s. A
+ * single writer appends the chunks to the Parquet file in their original order, so the rows keep
+ * their order. At most two chunks per thread are kept in memory.
+ */
+class ParallelCsvConverter {
+  static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+  private final Path file;
+  private final char separator;
+  private final int parallelism;
+  private final int chunkSize;
+
+  ParallelCsvConverter(Path file, char separator, int parallelism, int chunkSize) {
+    this.file = file;
+    this.separator = separator;
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Finds the offsets of the records at which the file can be split. A record ends with "\n",
+   * "\r\n" or a lone "\r", like a line read by OpenCSV, but only when it is not inside a quoted
+   * value; quotes are tracked the way OpenCSV's default parser does, including backslash escapes.
+   *
+   * @return the offset of the first record after the header, followed by the offsets at which the
+   *     chunks of at least chunkSize bytes end. The last offset is the size of the file.
+   */
+  static List<Long> findChunkBoundaries(Path file, int chunkSize, char separator)
+      throws IOException {
+    List<Long> boundaries = new ArrayList<>();
+    long size;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      size = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      boolean inQuotes = false;
+      boolean inField = false;
+      boolean escaping = false;
+      // end of a record that ended with '\r', as long as it is unknown whether '\n' follows
+      long carriageReturnEnd = -1;
+      long nextBoundary = 0;
+      long position = 0;
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byte b = buffer.get();
+          position++;
+          if (carriageReturnEnd >= 0) {
+            if (b != '\n' && carriageReturnEnd >= nextBoundary) {
+              boundaries.add(carriageReturnEnd);
+              nextBoundary = carriageReturnEnd + chunkSize;
+            }
+            carriageReturnEnd = -1;
+          }
+          if (escaping) {
+            escaping = false;
+            if (b == ICSVParser.DEFAULT_QUOTE_CHARACTER
+                || b == ICSVParser.DEFAULT_ESCAPE_CHARACTER) {
+              // escaped character, part of the value
+              continue;
+            }
+          }
+          if (b == ICSVParser.DEFAULT_ESCAPE_CHARACTER && (inQuotes || inField)) {
+            escaping = true;
+          } else if (b == ICSVParser.DEFAULT_QUOTE_CHARACTER) {
+            inQuotes = !inQuotes;
+            inField = true;
+          } else if (!inQuotes && (b == separator || b == '\n' || b == '\r')) {
+            inField = false;
+            if (b == '\n' && position >= nextBoundary) {
+              boundaries.add(position);
+              nextBoundary = position + chunkSize;
+            } else if (b == '\r') {
+              carriageReturnEnd = position;
+            }
+          } else {
+            inField = true;
+          }
+        }
+        buffer.clear();
+      }
+    }
+    if (boundaries.isEmpty() || boundaries.get(boundaries.size() - 1) < size) {
+      boundaries.add(size);
+    }
+    return boundaries;
+  }
+
+  /** Determines the type of every column from all rows. */
+  List<String> inferTypes(int columnCount) throws IOException {
+    List<Long> boundaries = findChunkBoundaries(file, chunkSize, separator);
+    String[] types = new String[columnCount];
+    forEachChunkInOrder(
+        boundaries,
+        (start, end) -> inferChunkTypes(start, end, columnCount),
+        chunkTypes -> {
+          for (int i = 0; i < columnCount; i++) {
+            if (chunkTypes[i] != null) {
+              types[i] =
+                  types[i] == null
+                      ? chunkTypes[i]
+                      : CharacterSeparatedFile.getTypeToSet(chunkTypes[i], types[i]);
+            }
+          }
+        });
+    return Arrays.stream(types)
+        .map(type -> Objects.requireNonNullElse(type, CharacterSeparatedFile.STRING))
+        .toList();
+  }
+
+  void write(OutputFile outputFile, MessageType schema, ParquetWriteOptions options)
+      throws IOException {
+    write(outputFile, schema, options, UploadProgress.NONE);
+  }
+
+  void write(
+      OutputFile outputFile,
+      MessageType schema,
+      ParquetWriteOptions options,
+      UploadProgress progress)
+      throws IOException {
+    List<Long> boundaries = findChunkBoundaries(file, chunkSize, separator);
+    progress.addBytesRead(boundaries.get(0));
+    CsvColumnChunk.Row row = new CsvColumnChunk.Row();
+    long[] rowsWritten = {0};
+    int[] chunksWritten = {0};
+    try (ParquetWriter<CsvColumnChunk.Row> writer =
+        options
+            .configure(new CsvRowWriteSupport.Builder<>(outputFile, new ChunkWriteSupport(schema)))
+            .build()) {
+      forEachChunkInOrder(
+          boundaries,
+          (start, end) -> parseChunk(start, end, schema),
+          chunk -> {
+            chunk.throwIfInvalid(rowsWritten[0]);
+            for (int i = 0; i < chunk.getRowCount(); i++) {
+              writer.write(row.moveTo(chunk, i));
+            }
+            rowsWritten[0] += chunk.getRowCount();
+            chunksWritten[0]++;
+            progress.addBytesRead(
+                boundaries.get(chunksWritten[0]) - boundaries.get(chunksWritten[0] - 1));
+            progress.addRowsWritten(chunk.getRowCount());
+          });
+    }
+  }
+
+  private String[] inferChunkTypes(long start, long end, int columnCount)
+      throws IOException, CsvValidationException {
+    String[] types = new String[columnCount];
+    try (CSVReader reader = getReader(start, end)) {
+      String[] line;
+      while ((line = reader.readNext()) != null) {
+        for (int i = 0; i < line.length && i < columnCount; i++) {
+          String value = line[i];
+          if (!value.isEmpty() && !value.equals("NA")) {
+            types[i] =
+                CharacterSeparatedFile.getTypeToSet(
+                    CharacterSeparatedFile.getTypeOfCell(value), types[i]);
+          }
+        }
+      }
+    }
+    return types;
+  }
+
+  private CsvColumnChunk parseChunk(long start, long end, MessageType schema)
+      throws IOException, CsvValidationException {
+    CsvColumnChunk chunk = new CsvColumnChunk(schema);
+    try (CSVReader reader = getReader(start, end)) {
+      String[] line;
+      while ((line = reader.readNext()) != null) {
+        chunk.add(line);
+      }
+    }
+    return chunk;
+  }
+
+  private CSVReader getReader(long start, long end) throws IOException {
+    byte[] bytes = new byte[Math.toIntExact(end - start)];
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+        // keep reading until the chunk is complete
+      }
+    }
+    CSVParser parser = new CSVParserBuilder().withSeparator(separator).build();
+    return new CSVReaderBuilder(
+            new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))
+        .withCSVParser(parser)
+        .build();
+  }
+
+  @FunctionalInterface
+  private interface ChunkTask<T> {
+    T process(long start, long end) throws IOException, CsvValidationException;
+  }
+
+  @FunctionalInterface
+  private interface ChunkConsumer<T> {
+    void accept(T result) throws IOException;
+  }
+
+  /**
+   * Processes the chunks on a thread pool and hands the results to the consumer on the calling
+   * thread in the order of the chunks. New chunks are only submitted once earlier results are
+   * consumed, which bounds the memory use.
+   */
+  private <T> void forEachChunkInOrder(
+      List<Long> boundaries, ChunkTask<T> task, ChunkConsumer<T> consumer) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      Deque<Future<T>> pending = new ArrayDeque<>();
+      int next = 0;
+      int chunks = boundaries.size() - 1;
+      while (next < chunks || !pending.isEmpty()) {
+        while (next < chunks && pending.size() < parallelism * 2) {
+          long start = boundaries.get(next);
+          long end = boundaries.get(next + 1);
+          pending.add(executor.submit(() -> task.process(start, end)));
+          next++;
+        }
+        consumer.accept(getResult(pending.poll()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Conversion of character separated file interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException ioException) {
+        throw ioException;
+      } else if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  private static class ChunkWriteSupport extends WriteSupport<CsvColumnChunk.Row> {
+    private final MessageType schema;
+    private RecordConsumer recordConsumer;
+
+    ChunkWriteSupport(MessageType schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+      return new WriteContext(schema, Map.of());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+      this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(CsvColumnChunk.Row row) {
+      row.write(recordConsumer);
+    }
+  }
+}
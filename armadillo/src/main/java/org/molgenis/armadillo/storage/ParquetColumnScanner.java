@@ -0,0 +1,205 @@
+package org.molgenis.armadillo.storage;
+
+import static org.molgenis.armadillo.storage.ParquetUtils.isEmpty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReadStore;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Column oriented scan of a Parquet file that computes the missing value counts and the distinct
+ * values of BINARY columns. Only the requested column chunks are read, nulls are counted from the
+ * definition levels and only BINARY values are decoded. Row groups are scanned in parallel from a
+ * single mapping of the file and the partial results are merged afterwards.
+ */
+class ParquetColumnScanner {
+
+  private static final int MAX_PARALLELISM = 8;
+  private static final ForkJoinPool SCAN_POOL =
+      new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM));
+
+  private final Path path;
+  private final ParquetMetadata footer;
+  private final MessageType projection;
+  private final int levelCap;
+
+  /**
+   * @param levelCap maximum number of distinct values to collect per column, columns that exceed it
+   *     are considered unique and no longer tracked
+   */
+  ParquetColumnScanner(Path path, ParquetMetadata footer, MessageType projection, int levelCap) {
+    this.path = path;
+    this.footer = footer;
+    this.projection = projection;
+    this.levelCap = levelCap;
+  }
+
+  Map<String, ColumnStats> scan() throws IOException {
+    int numberOfRowGroups = footer.getBlocks().size();
+    if (numberOfRowGroups == 0) {
+      return new HashMap<>();
+    }
+    LocalInputFile file = new LocalInputFile(path);
+    try {
+      return SCAN_POOL.invoke(new RowGroupTask(file, 0, numberOfRowGroups));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Map<String, ColumnStats> scanRowGroup(ParquetFileReader reader, int rowGroup)
+      throws IOException {
+    PageReadStore pages = reader.readRowGroup(rowGroup);
+    ColumnReadStore store =
+        new ColumnReadStoreImpl(
+            pages,
+            new GroupRecordConverter(projection).getRootConverter(),
+            projection,
+            footer.getFileMetaData().getCreatedBy());
+
+    Map<String, ColumnStats> result = new HashMap<>();
+    for (ColumnDescriptor descriptor : projection.getColumns()) {
+      ColumnStats stats = new ColumnStats();
+      scanColumn(store.getColumnReader(descriptor), descriptor, stats);
+      result.put(descriptor.getPath()[0], stats);
+    }
+    return result;
+  }
+
+  private void scanColumn(
+      ColumnReader columnReader, ColumnDescriptor descriptor, ColumnStats stats) {
+    int maxDefinitionLevel = descriptor.getMaxDefinitionLevel();
+    boolean isBinary =
+        descriptor.getPrimitiveType().getPrimitiveTypeName() == PrimitiveTypeName.BINARY;
+    long totalValueCount = columnReader.getTotalValueCount();
+
+    for (long i = 0; i < totalValueCount; i++) {
+      if (columnReader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+        stats.countMissingValue();
+      } else if (isBinary) {
+        stats.addValue(columnReader.getBinary(), levelCap);
+      } else {
+        columnReader.skip();
+      }
+      columnReader.consume();
+    }
+  }
+
+  /** Partial result for a single column, mergeable across row groups. */
+  static class ColumnStats {
+    private static final Binary NA_BINARY = Binary.fromString("NA");
+
+    private long missing = 0;
+    private Set<String> levels = new HashSet<>();
+
+    void countMissingValue() {
+      missing++;
+    }
+
+    void countMissingValues(long count) {
+      missing += count;
+    }
+
+    /** Empty strings and 'NA' are stored as values, but count as missing. */
+    static boolean isMissing(Binary value) {
+      return value.length() == 0 || NA_BINARY.equals(value);
+    }
+
+    void addValue(Binary value, int levelCap) {
+      if (isMissing(value)) {
+        missing++;
+      } else if (levels != null) {
+        addLevel(value.toStringUsingUTF8(), levelCap);
+      }
+    }
+
+    void addLevel(String level, int levelCap) {
+      if (levels != null && !isEmpty(level)) {
+        levels.add(level);
+        if (levels.size() > levelCap) {
+          levels = null;
+        }
+      }
+    }
+
+    ColumnStats merge(ColumnStats other, int levelCap) {
+      missing += other.missing;
+      if (levels != null && other.levels != null) {
+        other.levels.forEach(level -> addLevel(level, levelCap));
+      } else {
+        levels = null;
+      }
+      return this;
+    }
+
+    long getMissing() {
+      return missing;
+    }
+
+    /**
+     * @return the distinct values of the column, or null if the number of distinct values exceeds
+     *     the cap
+     */
+    Set<String> getLevels() {
+      return levels;
+    }
+  }
+
+  private class RowGroupTask extends RecursiveTask<Map<String, ColumnStats>> {
+    private final LocalInputFile file;
+    private final int from;
+    private final int to;
+
+    RowGroupTask(LocalInputFile file, int from, int to) {
+      this.file = file;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Map<String, ColumnStats> compute() {
+      if (to - from == 1) {
+        return scanSingleRowGroup();
+      }
+      int middle = (from + to) >>> 1;
+      RowGroupTask left = new RowGroupTask(file, from, middle);
+      left.fork();
+      Map<String, ColumnStats> right = new RowGroupTask(file, middle, to).compute();
+      return mergeResults(left.join(), right);
+    }
+
+    private Map<String, ColumnStats> scanSingleRowGroup() {
+      try {
+        try (ParquetFileReader reader =
+            ParquetFileReader.open(file, footer, ParquetUtils.READ_OPTIONS, file.newStream())) {
+          reader.setRequestedSchema(projection);
+          return scanRowGroup(reader, from);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private Map<String, ColumnStats> mergeResults(
+        Map<String, ColumnStats> left, Map<String, ColumnStats> right) {
+      right.forEach(
+          (column, stats) ->
+              left.merge(column, stats, (current, other) -> current.merge(other, levelCap)));
+      return left;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.molgenis.armadillo.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.EncodingStats;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.DictionaryPageReadStore;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+
+/**
+ * Determines the levels of a dictionary encoded BINARY column from the dictionary pages only. The
+ * dictionary of a chunk holds exactly its distinct values, so no data pages have to be decoded.
+ */
+class ParquetDictionaryLevels {
+
+  /**
+   * @param statistics merged footer statistics of the column, used for the missing value count
+   * @param levelCap maximum number of levels, see {@link ParquetUtils#getLevelCap(long)}
+   * @return the column stats, or empty if the column is not fully dictionary encoded or the
+   *     dictionary contains empty strings or 'NA', whose occurrences can only be counted by reading
+   *     the data pages
+   */
+  static Optional<ParquetColumnScanner.ColumnStats> extract(
+      ParquetFileReader reader, String column, Statistics<?> statistics, int levelCap)
+      throws IOException {
+    List<BlockMetaData> blocks = reader.getRowGroups();
+    if (!blocks.stream().allMatch(block -> isDictionaryEncoded(getChunk(block, column)))) {
+      return Optional.empty();
+    }
+
+    MessageType schema = reader.getFileMetaData().getSchema();
+    ColumnDescriptor descriptor = schema.getColumnDescription(new String[] {column});
+    boolean missingCountExact = ParquetFooterStatistics.isMissingCountExact(statistics);
+    ParquetColumnScanner.ColumnStats stats = new ParquetColumnScanner.ColumnStats();
+    stats.countMissingValues(statistics.getNumNulls());
+
+    for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+      Optional<Dictionary> dictionary = readDictionary(reader, blockIndex, descriptor);
+      if (dictionary.isEmpty()) {
+        // empty row group
+        continue;
+      }
+      for (int id = 0; id <= dictionary.get().getMaxId(); id++) {
+        if (stats.getLevels() == null && missingCountExact) {
+          // the column is unique, no need to read the remaining values
+          return Optional.of(stats);
+        }
+        Binary value = dictionary.get().decodeToBinary(id);
+        if (ParquetColumnScanner.ColumnStats.isMissing(value)) {
+          return Optional.empty();
+        }
+        stats.addLevel(value.toStringUsingUTF8(), levelCap);
+      }
+    }
+    return Optional.of(stats);
+  }
+
+  /**
+   * @param levelCap maximum number of levels, see {@link ParquetUtils#getLevelCap(long)}
+   * @return the distinct values of the column, without empty strings and 'NA', or empty if the
+   *     column is not fully dictionary encoded or has more than levelCap distinct values
+   */
+  static Optional<Set<String>> extractLevels(ParquetFileReader reader, String column, int levelCap)
+      throws IOException {
+    List<BlockMetaData> blocks = reader.getRowGroups();
+    if (!blocks.stream().allMatch(block -> isDictionaryEncoded(getChunk(block, column)))) {
+      return Optional.empty();
+    }
+
+    MessageType schema = reader.getFileMetaData().getSchema();
+    ColumnDescriptor descriptor = schema.getColumnDescription(new String[] {column});
+    ParquetColumnScanner.ColumnStats stats = new ParquetColumnScanner.ColumnStats();
+    for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+      Optional<Dictionary> dictionary = readDictionary(reader, blockIndex, descriptor);
+      if (dictionary.isEmpty()) {
+        continue;
+      }
+      for (int id = 0; id <= dictionary.get().getMaxId(); id++) {
+        Binary value = dictionary.get().decodeToBinary(id);
+        if (!ParquetColumnScanner.ColumnStats.isMissing(value)) {
+          stats.addLevel(value.toStringUsingUTF8(), levelCap);
+        }
+        if (stats.getLevels() == null) {
+          return Optional.empty();
+        }
+      }
+    }
+    return Optional.of(stats.getLevels());
+  }
+
+  private static Optional<Dictionary> readDictionary(
+      ParquetFileReader reader, int blockIndex, ColumnDescriptor descriptor) throws IOException {
+    DictionaryPageReadStore dictionaryReader = reader.getDictionaryReader(blockIndex);
+    DictionaryPage page = dictionaryReader.readDictionaryPage(descriptor);
+    if (page == null) {
+      return Optional.empty();
+    }
+    return Optional.of(page.getEncoding().initDictionary(descriptor, page));
+  }
+
+  private static ColumnChunkMetaData getChunk(BlockMetaData block, String column) {
+    return block.getColumns().stream()
+        .filter(chunk -> chunk.getPath().toDotString().equals(column))
+        .findFirst()
+        .orElseThrow();
+  }
+
+  static boolean isDictionaryEncoded(ColumnChunkMetaData chunk) {
+    if (chunk.getValueCount() == 0) {
+      return true;
+    }
+    EncodingStats encodingStats = chunk.getEncodingStats();
+    return encodingStats != null
+        && encodingStats.hasDictionaryPages()
+        && !encodingStats.hasNonDictionaryEncodedPages();
+  }
+}
@@ -0,0 +1,85 @@
+package org.molgenis.armadillo.storage;
+
+import java.util.*;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Answers column metadata from the column chunk statistics in the Parquet footer, so no data pages
+ * have to be read.
+ */
+class ParquetFooterStatistics {
+  private static final Binary NA_BINARY = Binary.fromString("NA");
+  private static final Set<PrimitiveTypeName> NUMERIC_TYPES =
+      EnumSet.of(
+          PrimitiveTypeName.INT32,
+          PrimitiveTypeName.INT64,
+          PrimitiveTypeName.FLOAT,
+          PrimitiveTypeName.DOUBLE);
+
+  /**
+   * Merges the statistics of all column chunks per column. Columns of which at least one chunk
+   * lacks a null count, or lacks min/max while containing values, are left out.
+   */
+  static Map<String, Statistics<?>> getColumnStatistics(
+      ParquetMetadata footer, Collection<String> columns) {
+    MessageType schema = footer.getFileMetaData().getSchema();
+    Map<String, Statistics<?>> result = new HashMap<>();
+    Set<String> incomplete = new HashSet<>();
+    for (BlockMetaData block : footer.getBlocks()) {
+      for (ColumnChunkMetaData chunk : block.getColumns()) {
+        String column = chunk.getPath().toDotString();
+        if (!columns.contains(column) || incomplete.contains(column)) {
+          continue;
+        }
+        Statistics<?> statistics = chunk.getStatistics();
+        if (!isComplete(chunk, statistics)) {
+          incomplete.add(column);
+          result.remove(column);
+        } else {
+          result
+              .computeIfAbsent(
+                  column, name -> Statistics.createStats(schema.getType(name).asPrimitiveType()))
+              .mergeStatistics(statistics);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean isComplete(ColumnChunkMetaData chunk, Statistics<?> statistics) {
+    if (statistics == null || !statistics.isNumNullsSet()) {
+      return false;
+    }
+    boolean hasValues = chunk.getValueCount() > statistics.getNumNulls();
+    return !hasValues || statistics.hasNonNullValue();
+  }
+
+  /**
+   * The null count equals the number of missing values, unless a BINARY column may contain empty
+   * strings or 'NA', which also count as missing. Those can be ruled out with the min/max.
+   */
+  @SuppressWarnings("unchecked")
+  static boolean isMissingCountExact(Statistics<?> statistics) {
+    if (statistics.type().getPrimitiveTypeName() != PrimitiveTypeName.BINARY
+        || !statistics.hasNonNullValue()) {
+      return true;
+    }
+    Statistics<Binary> binaryStatistics = (Statistics<Binary>) statistics;
+    boolean emptyPossible = binaryStatistics.genericGetMin().length() == 0;
+    boolean naPossible =
+        binaryStatistics.compareMinToValue(NA_BINARY) <= 0
+            && binaryStatistics.compareMaxToValue(NA_BINARY) >= 0;
+    return !emptyPossible && !naPossible;
+  }
+
+  static boolean hasNumericRange(Statistics<?> statistics) {
+    return NUMERIC_TYPES.contains(statistics.type().getPrimitiveTypeName())
+        && statistics.hasNonNullValue();
+  }
+}
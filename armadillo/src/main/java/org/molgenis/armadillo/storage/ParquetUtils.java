@@ -3,63 +3,150 @@ package org.molgenis.armadillo.storage;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
+import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.conf.PlainParquetConfiguration;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.example.data.simple.SimpleGroup;
 import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.filter2.compat.FilterCompat;
 import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.rewrite.ParquetRewriter;
+import org.apache.parquet.hadoop.rewrite.RewriteOptions;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.internal.filter2.columnindex.RowRanges;
 import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.LocalOutputFile;
 import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.GroupType;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.PrimitiveType;
 import org.apache.parquet.schema.Type;
-import org.molgenis.armadillo.exceptions.StorageException;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 
 public class ParquetUtils {
   private static final String BINARY_TYPE = "BINARY";
   private static final String NA_VALUE = "NA";
+  private static final double UNIQUE_THRESHOLD = 0.3;
+
+  /** Reads the column chunks of a row group with one vectored read from the mapped file. */
+  static final ParquetReadOptions READ_OPTIONS =
+      ParquetReadOptions.builder().withUseHadoopVectoredIo(true).build();
 
   public static List<Map<String, String>> previewRecords(
       Path path, int rowLimit, int columnLimit, String[] variables) throws IOException {
+    return previewRecords(path, 0, rowLimit, columnLimit, variables);
+  }
+
+  /**
+   * Reads a page of rows, decoding only the columns that are shown. Row groups before the offset
+   * are skipped using the row counts in the footer. Of the other row groups only the pages that
+   * contain the requested rows are read, as found in the offset index of the first shown column.
+   *
+   * @param variables the columns to show, or all columns if empty. Unknown columns are ignored.
+   */
+  public static List<Map<String, String>> previewRecords(
+      Path path, long offset, int rowLimit, int columnLimit, String[] variables)
+      throws IOException {
     List<Map<String, String>> result = new ArrayList<>();
     try (ParquetFileReader reader = getFileReader(path)) {
       MessageType schema = getSchemaFromReader(reader);
-      RecordReader<Group> recordReader = getRecordReader(schema, reader);
-      List<String> columns = getColumnsFromSchema(schema);
+      Set<String> selected = new HashSet<>(Arrays.asList(variables));
+      List<String> columns =
+          getColumnsFromSchema(schema).stream()
+              .filter(column -> selected.isEmpty() || selected.contains(column))
+              .limit(columnLimit)
+              .toList();
+      if (columns.isEmpty()) {
+        return result;
+      }
+      MessageType projection = getProjection(schema, columns);
+      reader.setRequestedSchema(projection);
+      MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(projection);
 
-      for (int i = 0; i < rowLimit; i++) {
-        result.add(getPreviewRow(recordReader, schema, columns, columnLimit, variables));
+      List<BlockMetaData> rowGroups = reader.getRowGroups();
+      long firstRowOfRowGroup = 0;
+      for (int i = 0; i < rowGroups.size() && result.size() < rowLimit; i++) {
+        long rowCount = rowGroups.get(i).getRowCount();
+        long from = offset + result.size() - firstRowOfRowGroup;
+        if (from < rowCount) {
+          long to = Math.min(rowCount, from + rowLimit - result.size());
+          readPreviewRows(reader, i, from, to, columnIO, columns, result);
+        }
+        firstRowOfRowGroup += rowCount;
       }
     }
     return result;
   }
 
-  private static Map<String, String> getPreviewRow(
-      RecordReader<Group> recordReader,
-      MessageType schema,
+  /** Adds the rows [from, to) of a row group to the result. */
+  private static void readPreviewRows(
+      ParquetFileReader reader,
+      int rowGroup,
+      long from,
+      long to,
+      MessageColumnIO columnIO,
       List<String> columns,
-      int columnLimit,
-      String[] variables) {
-    AtomicInteger colCount = new AtomicInteger();
-    SimpleGroup group = (SimpleGroup) recordReader.read();
+      List<Map<String, String>> result)
+      throws IOException {
+    RowRanges rowRanges =
+        getPageRowRanges(reader, reader.getRowGroups().get(rowGroup), columns.get(0), from, to);
+    PageReadStore pages = reader.readFilteredRowGroup(rowGroup, rowRanges);
+    RecordReader<Group> recordReader =
+        columnIO.getRecordReader(pages, new GroupRecordConverter(columnIO.getType()));
+    for (long row = rowRanges.getRanges().get(0).from; row < to; row++) {
+      Group group = recordReader.read();
+      if (row >= from) {
+        result.add(getPreviewRow(group, columns));
+      }
+    }
+  }
+
+  /**
+   * @return the rows of the pages of the column that overlap [from, to), or the whole row group if
+   *     the file has no offset index
+   */
+  private static RowRanges getPageRowRanges(
+      ParquetFileReader reader, BlockMetaData rowGroup, String column, long from, long to)
+      throws IOException {
+    long rowCount = rowGroup.getRowCount();
+    ColumnChunkMetaData chunk =
+        rowGroup.getColumns().stream()
+            .filter(columnChunk -> columnChunk.getPath().equals(ColumnPath.get(column)))
+            .findFirst()
+            .orElseThrow();
+    OffsetIndex offsetIndex = reader.readOffsetIndex(chunk);
+    if (offsetIndex == null) {
+      return RowRanges.createSingle(rowCount);
+    }
+    PrimitiveIterator.OfInt pages =
+        IntStream.range(0, offsetIndex.getPageCount())
+            .filter(
+                page ->
+                    offsetIndex.getFirstRowIndex(page) < to
+                        && offsetIndex.getLastRowIndex(page, rowCount) >= from)
+            .iterator();
+    return RowRanges.create(rowCount, pages, offsetIndex);
+  }
+
+  private static Map<String, String> getPreviewRow(Group group, List<String> columns) {
     Map<String, String> row = new LinkedHashMap<>();
-    columns.forEach(
-        column -> {
-          if (colCount.get() < columnLimit) {
-            if (variables.length == 0 || Arrays.stream(variables).toList().contains(column)) {
-              colCount.getAndIncrement();
-              try {
-                row.put(column, group.getValueToString(schema.getFieldIndex(column), 0));
-              } catch (Exception e) {
-                row.put(column, NA_VALUE);
-              }
-            }
-          }
-        });
+    for (int i = 0; i < columns.size(); i++) {
+      String value = NA_VALUE;
+      if (group.getFieldRepetitionCount(i) > 0) {
+        value = group.getValueToString(i, 0);
+      }
+      row.put(columns.get(i), value);
+    }
     return row;
   }
 
@@ -79,8 +166,13 @@ public class ParquetUtils {
   }
 
   private static ParquetFileReader getFileReader(Path path) throws IOException {
-    LocalInputFile file = new LocalInputFile(path);
-    return ParquetFileReader.open(file);
+    return ParquetFileReader.open(new LocalInputFile(path), READ_OPTIONS);
+  }
+
+  static long getRowCount(Path path) throws IOException {
+    try (ParquetFileReader reader = getFileReader(path)) {
+      return reader.getRecordCount();
+    }
   }
 
   public static List<String> getColumns(Path path) throws IOException {
@@ -92,6 +184,123 @@ public class ParquetUtils {
     }
   }
 
+  /**
+   * Writes the given columns of a Parquet file to a new file. The column chunks are copied as they
+   * are, without decoding the values, so this costs little more than copying the selected bytes.
+   *
+   * @return false when no columns can be left out, in which case nothing is written
+   */
+  static boolean writeProjection(Path source, Path target, Collection<String> columns)
+      throws IOException {
+    List<String> allColumns = getColumns(source);
+    List<String> prunedColumns =
+        allColumns.stream().filter(column -> !columns.contains(column)).toList();
+    if (prunedColumns.isEmpty() || prunedColumns.size() == allColumns.size()) {
+      return false;
+    }
+    RewriteOptions options =
+        new RewriteOptions.Builder(
+                new PlainParquetConfiguration(),
+                new LocalInputFile(source),
+                new LocalOutputFile(target))
+            .prune(prunedColumns)
+            .build();
+    try (ParquetRewriter rewriter = new ParquetRewriter(options)) {
+      rewriter.processBlocks();
+    }
+    return true;
+  }
+
+  /**
+   * Writes the rows of a Parquet file that match a filter, with only the given columns. Row groups
+   * that can't contain a matching row are skipped using the statistics, dictionaries and bloom
+   * filters of the file, and pages using its column indexes, so only the remaining rows are
+   * decoded. Unlike {@link #writeProjection} the rows are encoded again.
+   *
+   * @param columns the columns to write, or all columns if empty
+   * @return the number of rows written
+   */
+  static long writeFilteredRows(
+      Path source,
+      Path target,
+      Collection<String> columns,
+      RowFilter filter,
+      ParquetWriteOptions writeOptions)
+      throws IOException {
+    LocalInputFile inputFile = new LocalInputFile(source);
+    MessageType schema;
+    try (ParquetFileReader reader = ParquetFileReader.open(inputFile, READ_OPTIONS)) {
+      schema = getSchemaFromReader(reader);
+    }
+    FilterCompat.Filter recordFilter = FilterCompat.get(filter.toPredicate(schema));
+    List<String> allColumns = getColumnsFromSchema(schema);
+    MessageType writeSchema =
+        getProjection(
+            schema,
+            allColumns.stream()
+                .filter(column -> columns.isEmpty() || columns.contains(column))
+                .toList());
+    // the filtered columns have to be read as well
+    MessageType readSchema =
+        getProjection(
+            schema,
+            allColumns.stream()
+                .filter(
+                    column ->
+                        writeSchema.containsField(column) || filter.getColumns().contains(column))
+                .toList());
+    ParquetReadOptions readOptions =
+        ParquetReadOptions.builder()
+            .withUseHadoopVectoredIo(true)
+            .withRecordFilter(recordFilter)
+            .build();
+    long rowsWritten = 0;
+    try (ParquetFileReader reader = ParquetFileReader.open(inputFile, readOptions);
+        ParquetWriter<Group> writer =
+            writeOptions
+                .configure(
+                    ExampleParquetWriter.builder(new LocalOutputFile(target)).withType(writeSchema))
+                .build()) {
+      reader.setRequestedSchema(readSchema);
+      MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(readSchema);
+      PageReadStore pages;
+      while ((pages = reader.readNextFilteredRowGroup()) != null) {
+        RecordReader<Group> recordReader =
+            columnIO.getRecordReader(pages, new GroupRecordConverter(readSchema), recordFilter);
+        for (long row = 0; row < pages.getRowCount(); row++) {
+          Group group = recordReader.read();
+          if (group != null && !recordReader.shouldSkipCurrentRecord()) {
+            writer.write(readSchema.equals(writeSchema) ? group : copy(group, writeSchema));
+            rowsWritten++;
+          }
+        }
+      }
+    }
+    return rowsWritten;
+  }
+
+  /** Copies the values of the columns of a flat schema. */
+  private static Group copy(Group group, MessageType schema) {
+    Group result = new SimpleGroup(schema);
+    GroupType groupType = group.getType();
+    for (int i = 0; i < schema.getFieldCount(); i++) {
+      int field = groupType.getFieldIndex(schema.getFieldName(i));
+      if (group.getFieldRepetitionCount(field) == 0) {
+        continue;
+      }
+      switch (schema.getType(i).asPrimitiveType().getPrimitiveTypeName()) {
+        case INT32 -> result.add(i, group.getInteger(field, 0));
+        case INT64 -> result.add(i, group.getLong(field, 0));
+        case FLOAT -> result.add(i, group.getFloat(field, 0));
+        case DOUBLE -> result.add(i, group.getDouble(field, 0));
+        case BOOLEAN -> result.add(i, group.getBoolean(field, 0));
+        case INT96 -> result.add(i, group.getInt96(field, 0));
+        default -> result.add(i, group.getBinary(field, 0));
+      }
+    }
+    return result;
+  }
+
   public static Map<String, String> getDatatypes(Path path) throws IOException {
     try (ParquetFileReader reader = getFileReader(path)) {
       List<Type> schema = getSchemaFromReader(reader).getFields();
@@ -104,8 +313,47 @@ public class ParquetUtils {
     }
   }
 
+  /**
+   * Determines the levels of the BINARY columns from their dictionary pages only, so no data pages
+   * are read. Columns that are not fully dictionary encoded, or have too many distinct values to be
+   * categorical, are left out.
+   */
+  static Map<String, Set<String>> getDictionaryLevels(Path path) throws IOException {
+    try (ParquetFileReader reader = getFileReader(path)) {
+      int levelCap = getLevelCap(reader.getRecordCount());
+      Map<String, Set<String>> levels = new LinkedHashMap<>();
+      for (Type field : getSchemaFromReader(reader).getFields()) {
+        if (BINARY_TYPE.equals(((PrimitiveType) field).getPrimitiveTypeName().toString())) {
+          ParquetDictionaryLevels.extractLevels(reader, field.getName(), levelCap)
+              .ifPresent(
+                  columnLevels ->
+                      levels.put(
+                          field.getName(),
+                          Collections.unmodifiableSortedSet(new TreeSet<>(columnLevels))));
+        }
+      }
+      return levels;
+    }
+  }
+
   public static Map<String, ArmadilloColumnMetaData> getColumnMetaData(Path path)
       throws IOException {
+    return getColumnMetaData(path, List.copyOf(getDatatypes(path).keySet()));
+  }
+
+  public static Map<String, ArmadilloColumnMetaData> getColumnMetaData(
+      Path path, List<String> columns) throws IOException {
+    return getColumnMetaData(path, columns, true);
+  }
+
+  /**
+   * Determines the metadata of the requested columns. Missing value counts and numeric ranges are
+   * taken from the footer statistics where possible, the remaining columns, and BINARY columns when
+   * levels are requested, are determined with a column oriented scan over all row groups. Only the
+   * columns that need scanning are read from disk.
+   */
+  public static Map<String, ArmadilloColumnMetaData> getColumnMetaData(
+      Path path, List<String> columns, boolean includeLevels) throws IOException {
     HashMap<String, Set<String>> rawLevels = new LinkedHashMap<>();
     HashMap<String, Integer> levelCounts = new LinkedHashMap<>();
     Map<String, String> datatypes = getDatatypes(path);
@@ -113,43 +361,100 @@ public class ParquetUtils {
 
     try (ParquetFileReader reader = getFileReader(path)) {
       long numberOfRows = reader.getRecordCount();
+      ParquetMetadata footer = reader.getFooter();
       MessageType schema = getSchemaFromReader(reader);
-      RecordReader<Group> recordReader = getRecordReader(schema, reader);
-      List<String> columns = getColumnsFromSchema(schema);
-
-      processRows(
-          recordReader,
-          numberOfRows,
-          schema,
-          columns,
-          datatypes,
-          columnMetaData,
-          rawLevels,
-          levelCounts);
-
-      addLevelsToMetaData(rawLevels, levelCounts, numberOfRows, columnMetaData);
+      Set<String> columnSet = new HashSet<>(columns);
+      List<String> requestedColumns =
+          getColumnsFromSchema(schema).stream().filter(columnSet::contains).toList();
+
+      Map<String, Statistics<?>> statistics =
+          ParquetFooterStatistics.getColumnStatistics(footer, columnSet);
+      List<String> columnsToScan = new ArrayList<>();
+      for (String column : requestedColumns) {
+        initializeColumnMetadata(
+            column, datatypes, columnMetaData, rawLevels, levelCounts, numberOfRows);
+        ArmadilloColumnMetaData metaData = columnMetaData.get(column);
+        Statistics<?> columnStatistics = statistics.get(column);
+        if (columnStatistics != null && ParquetFooterStatistics.hasNumericRange(columnStatistics)) {
+          metaData.setRange(columnStatistics.minAsString(), columnStatistics.maxAsString());
+        }
+
+        boolean needsLevels = includeLevels && BINARY_TYPE.equals(datatypes.get(column));
+        Optional<ParquetColumnScanner.ColumnStats> dictionaryStats =
+            needsLevels && columnStatistics != null
+                ? ParquetDictionaryLevels.extract(
+                    reader, column, columnStatistics, getLevelCap(numberOfRows))
+                : Optional.empty();
+        if (dictionaryStats.isPresent()) {
+          addColumnStats(
+              column, dictionaryStats.get(), numberOfRows, columnMetaData, rawLevels, levelCounts);
+        } else if (columnStatistics != null
+            && !needsLevels
+            && ParquetFooterStatistics.isMissingCountExact(columnStatistics)) {
+          metaData.setMissing(Math.toIntExact(columnStatistics.getNumNulls()));
+          metaData.setPossibleLevels(null);
+          rawLevels.remove(column);
+          levelCounts.remove(column);
+        } else {
+          columnsToScan.add(column);
+        }
+      }
+
+      if (!columnsToScan.isEmpty()) {
+        scanColumns(path, footer, getProjection(schema, columnsToScan), numberOfRows)
+            .forEach(
+                (column, stats) ->
+                    addColumnStats(
+                        column, stats, numberOfRows, columnMetaData, rawLevels, levelCounts));
+      }
+
+      if (numberOfRows > 0) {
+        addLevelsToMetaData(rawLevels, levelCounts, numberOfRows, columnMetaData);
+      }
     }
 
     return columnMetaData;
   }
 
-  static void processRows(
-      RecordReader<Group> recordReader,
+  private static void addColumnStats(
+      String column,
+      ParquetColumnScanner.ColumnStats stats,
       long numberOfRows,
-      MessageType schema,
-      List<String> columns,
-      Map<String, String> datatypes,
       HashMap<String, ArmadilloColumnMetaData> columnMetaData,
       HashMap<String, Set<String>> rawLevels,
       HashMap<String, Integer> levelCounts) {
-    for (int i = 0; i < numberOfRows; i++) {
-      Group group = recordReader.read();
-      for (String column : columns) {
-        initializeColumnMetadata(
-            column, datatypes, columnMetaData, rawLevels, levelCounts, numberOfRows);
-        handleColumnValue(group, schema, column, datatypes, columnMetaData, rawLevels, levelCounts);
-      }
+    columnMetaData.get(column).setMissing(Math.toIntExact(stats.getMissing()));
+    if (stats.getLevels() == null) {
+      levelCounts.put(column, getLevelCap(numberOfRows) + 1);
+    } else {
+      rawLevels.put(column, stats.getLevels());
+      levelCounts.put(column, stats.getLevels().size());
+    }
+  }
+
+  private static Map<String, ParquetColumnScanner.ColumnStats> scanColumns(
+      Path path, ParquetMetadata footer, MessageType projection, long numberOfRows)
+      throws IOException {
+    return new ParquetColumnScanner(path, footer, projection, getLevelCap(numberOfRows)).scan();
+  }
+
+  private static MessageType getProjection(MessageType schema, List<String> columns) {
+    return new MessageType(schema.getName(), columns.stream().map(schema::getType).toList());
+  }
+
+  /**
+   * The maximum number of distinct values a column can have without being considered unique, see
+   * {@link #isUnique(int, long)}.
+   */
+  static int getLevelCap(long numberOfRows) {
+    if (numberOfRows == 0) {
+      return 0;
+    }
+    int cap = (int) Math.min(Integer.MAX_VALUE - 1L, (long) (numberOfRows * UNIQUE_THRESHOLD));
+    while (cap > 0 && isUnique(cap, numberOfRows)) {
+      cap--;
     }
+    return cap;
   }
 
   static void initializeColumnMetadata(
@@ -169,55 +474,6 @@ public class ParquetUtils {
     }
   }
 
-  static void handleColumnValue(
-      Group group,
-      MessageType schema,
-      String column,
-      Map<String, String> datatypes,
-      HashMap<String, ArmadilloColumnMetaData> columnMetaData,
-      HashMap<String, Set<String>> rawLevels,
-      HashMap<String, Integer> levelCounts) {
-    try {
-      String value = group.getValueToString(schema.getFieldIndex(column), 0);
-
-      if (isEmpty(value)) {
-        columnMetaData.get(column).countMissingValue();
-      } else if (Objects.equals(datatypes.get(column), BINARY_TYPE)) {
-        handleBinaryLevel(column, value, rawLevels, levelCounts);
-      }
-
-    } catch (Exception e) {
-      columnMetaData.get(column).countMissingValue();
-    }
-  }
-
-  private static void handleBinaryLevel(
-      String column,
-      String value,
-      HashMap<String, Set<String>> rawLevels,
-      HashMap<String, Integer> levelCounts) {
-    try {
-      Set<String> currentLevels = rawLevels.get(column);
-      if (!currentLevels.contains(value)) {
-        currentLevels.add(value);
-        countLevelValue(rawLevels, levelCounts, column, value);
-      }
-    } catch (Exception ignored) {
-      throw new StorageException("Cannot handle binary level for column: " + column);
-    }
-  }
-
-  private static void countLevelValue(
-      HashMap<String, Set<String>> raw_levels,
-      HashMap<String, Integer> level_counts,
-      String column,
-      String levelToAdd) {
-    Set<String> currentLevels = raw_levels.get(column);
-    currentLevels.add(levelToAdd);
-    raw_levels.put(column, currentLevels);
-    level_counts.put(column, level_counts.get(column) + 1);
-  }
-
   static void addLevelsToMetaData(
       HashMap<String, Set<String>> rawLevels,
       HashMap<String, Integer> levelCounts,
@@ -238,7 +494,7 @@ public class ParquetUtils {
     if (totalRows == 0) {
       throw new ArithmeticException("Number of rows is 0, cannot divide by 0");
     }
-    return ((double) occurrences / totalRows) >= 0.3;
+    return ((double) occurrences / totalRows) >= UNIQUE_THRESHOLD;
   }
 
   static boolean isEmpty(String value) {
@@ -0,0 +1,173 @@
+package org.molgenis.armadillo.storage;
+
+import static org.apache.parquet.hadoop.metadata.CompressionCodecName.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.molgenis.armadillo.exceptions.UnsupportedCompressionCodecException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Layout of the Parquet files that Armadillo writes itself, e.g. when converting CSV uploads.
+ * Besides the codec and the sizes of row groups and pages, it sets how many rows a page holds at
+ * most, which is the granularity of the column and offset indexes that previews and filtered loads
+ * use to skip pages, and on which columns bloom filters are written, so filtering on e.g. an
+ * identifier skips row groups that don't contain it.
+ *
+ * <p>Only the codecs in {@link #SUPPORTED_CODECS} can be used. The others need native libraries or
+ * Hadoop codec classes that aren't on the classpath, so writing fails halfway. A codec that isn't
+ * supported is refused when the layout is configured or chosen for an upload.
+ */
+@Component
+public class ParquetWriteOptions {
+
+  static final Set<CompressionCodecName> SUPPORTED_CODECS =
+      EnumSet.of(UNCOMPRESSED, SNAPPY, GZIP, ZSTD, LZ4_RAW);
+
+  /** Layout that is chosen for a single upload, unset values keep the configured layout. */
+  public record Overrides(CompressionCodecName compressionCodec, List<String> bloomFilterColumns) {
+    public static final Overrides NONE = new Overrides(null, List.of());
+
+    public Overrides {
+      compressionCodec = compressionCodec == null ? null : getSupportedCodec(compressionCodec);
+      bloomFilterColumns = bloomFilterColumns == null ? List.of() : List.copyOf(bloomFilterColumns);
+    }
+  }
+
+  private final CompressionCodecName compressionCodec;
+  private final long rowGroupSize;
+  private final int pageSize;
+  private final int pageRowCountLimit;
+  private final int dictionaryPageSize;
+  private final int columnIndexTruncateLength;
+  private final List<String> bloomFilterColumns;
+
+  @Autowired
+  public ParquetWriteOptions(
+      @Value("${storage.parquet.compression-codec:ZSTD}") CompressionCodecName compressionCodec,
+      @Value("${storage.parquet.row-group-size:" + ParquetWriter.DEFAULT_BLOCK_SIZE + "}")
+          long rowGroupSize,
+      @Value("${storage.parquet.page-size:" + ParquetWriter.DEFAULT_PAGE_SIZE + "}") int pageSize,
+      @Value(
+              "${storage.parquet.page-row-count-limit:"
+                  + ParquetProperties.DEFAULT_PAGE_ROW_COUNT_LIMIT
+                  + "}")
+          int pageRowCountLimit,
+      @Value("${storage.parquet.dictionary-page-size:" + ParquetWriter.DEFAULT_PAGE_SIZE + "}")
+          int dictionaryPageSize,
+      @Value(
+              "${storage.parquet.column-index-truncate-length:"
+                  + ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH
+                  + "}")
+          int columnIndexTruncateLength,
+      @Value("${storage.parquet.bloom-filter-columns:}") List<String> bloomFilterColumns) {
+    this.compressionCodec = getSupportedCodec(compressionCodec);
+    this.rowGroupSize = rowGroupSize;
+    this.pageSize = pageSize;
+    this.pageRowCountLimit = pageRowCountLimit;
+    this.dictionaryPageSize = dictionaryPageSize;
+    this.columnIndexTruncateLength = columnIndexTruncateLength;
+    this.bloomFilterColumns = List.copyOf(bloomFilterColumns);
+  }
+
+  public ParquetWriteOptions(
+      CompressionCodecName compressionCodec, long rowGroupSize, int pageSize) {
+    this(
+        compressionCodec,
+        rowGroupSize,
+        pageSize,
+        ParquetProperties.DEFAULT_PAGE_ROW_COUNT_LIMIT,
+        ParquetWriter.DEFAULT_PAGE_SIZE,
+        ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH,
+        List.of());
+  }
+
+  public static ParquetWriteOptions defaults() {
+    return new ParquetWriteOptions(
+        CompressionCodecName.ZSTD,
+        ParquetWriter.DEFAULT_BLOCK_SIZE,
+        ParquetWriter.DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * @return the codec, or LZ4_RAW for LZ4: Hadoop's LZ4 framing needs a codec class that isn't on
+   *     the classpath, LZ4_RAW is the same compression without it
+   * @throws UnsupportedCompressionCodecException for a codec that can't be written
+   */
+  static CompressionCodecName getSupportedCodec(CompressionCodecName codec) {
+    if (codec == LZ4) {
+      return LZ4_RAW;
+    }
+    if (!SUPPORTED_CODECS.contains(codec)) {
+      throw new UnsupportedCompressionCodecException(codec, SUPPORTED_CODECS);
+    }
+    return codec;
+  }
+
+  /** These options with the layout chosen for an upload. */
+  public ParquetWriteOptions with(Overrides overrides) {
+    if (overrides.compressionCodec() == null && overrides.bloomFilterColumns().isEmpty()) {
+      return this;
+    }
+    List<String> columns = new ArrayList<>(bloomFilterColumns);
+    overrides.bloomFilterColumns().stream().filter(c -> !columns.contains(c)).forEach(columns::add);
+    return new ParquetWriteOptions(
+        overrides.compressionCodec() != null ? overrides.compressionCodec() : compressionCodec,
+        rowGroupSize,
+        pageSize,
+        pageRowCountLimit,
+        dictionaryPageSize,
+        columnIndexTruncateLength,
+        columns);
+  }
+
+  /**
+   * Applies these options to a writer. Bloom filters on columns the file doesn't have are ignored.
+   */
+  <T, B extends ParquetWriter.Builder<T, B>> B configure(B builder) {
+    builder
+        .withCompressionCodec(compressionCodec)
+        .withRowGroupSize(rowGroupSize)
+        .withPageSize(pageSize)
+        .withPageRowCountLimit(pageRowCountLimit)
+        .withDictionaryPageSize(dictionaryPageSize)
+        .withColumnIndexTruncateLength(columnIndexTruncateLength);
+    bloomFilterColumns.forEach(column -> builder.withBloomFilterEnabled(column, true));
+    return builder;
+  }
+
+  public CompressionCodecName getCompressionCodec() {
+    return compressionCodec;
+  }
+
+  public long getRowGroupSize() {
+    return rowGroupSize;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public int getPageRowCountLimit() {
+    return pageRowCountLimit;
+  }
+
+  public int getDictionaryPageSize() {
+    return dictionaryPageSize;
+  }
+
+  public int getColumnIndexTruncateLength() {
+    return columnIndexTruncateLength;
+  }
+
+  public List<String> getBloomFilterColumns() {
+    return bloomFilterColumns;
+  }
+}
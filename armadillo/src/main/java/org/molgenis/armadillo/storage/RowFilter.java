@@ -0,0 +1,195 @@
+package org.molgenis.armadillo.storage;
+
+import static org.apache.parquet.filter2.predicate.FilterApi.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators.Column;
+import org.apache.parquet.filter2.predicate.Operators.SupportsEqNotEq;
+import org.apache.parquet.filter2.predicate.Operators.SupportsLtGt;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.molgenis.armadillo.exceptions.InvalidRowFilterException;
+
+/**
+ * Filter on the rows of a table that is loaded, written like an R expression: comparisons of a
+ * column with a value, combined with {@code &}, e.g. {@code age >= 18 & region %in% c('north',
+ * 'east')}. The operators are {@code == != < <= > >=} and {@code %in%}. Like in R, a row doesn't
+ * match when a compared column is missing. Text is compared by its UTF-8 bytes.
+ */
+public class RowFilter {
+
+  private static final Pattern CONDITION =
+      Pattern.compile("\\s*(\\p{Alnum}[\\w.]*)\\s*(==|!=|<=|>=|<|>|%in%)\\s*(.*?)\\s*");
+  private static final Pattern VALUES = Pattern.compile("c\\((.*)\\)");
+  private static final Pattern VALUE =
+      Pattern.compile("\\s*(?:'([^']*)'|\"([^\"]*)\"|([^'\",\\s]+))\\s*");
+
+  record Condition(String column, String operator, List<String> values) {}
+
+  private final String expression;
+  private final List<Condition> conditions;
+
+  private RowFilter(String expression, List<Condition> conditions) {
+    this.expression = expression;
+    this.conditions = conditions;
+  }
+
+  public static RowFilter parse(String expression) {
+    List<Condition> conditions = new ArrayList<>();
+    for (String condition : split(expression, '&')) {
+      Matcher matcher = CONDITION.matcher(condition);
+      if (!matcher.matches()) {
+        throw new InvalidRowFilterException(
+            expression, "expected a comparison of a column with a value, not '" + condition + "'");
+      }
+      String operator = matcher.group(2);
+      String value = matcher.group(3);
+      List<String> values;
+      if (operator.equals("%in%")) {
+        Matcher valuesMatcher = VALUES.matcher(value);
+        if (!valuesMatcher.matches()) {
+          throw new InvalidRowFilterException(expression, "expected c(...) after %in%");
+        }
+        values = parseValues(expression, split(valuesMatcher.group(1), ','));
+      } else {
+        values = parseValues(expression, List.of(value));
+      }
+      conditions.add(new Condition(matcher.group(1), operator, values));
+    }
+    return new RowFilter(expression, List.copyOf(conditions));
+  }
+
+  /** Splits on a separator that is not quoted. */
+  private static List<String> split(String expression, char separator) {
+    List<String> parts = new ArrayList<>();
+    StringBuilder part = new StringBuilder();
+    char quote = 0;
+    for (char c : expression.toCharArray()) {
+      if (quote == 0 && c == separator) {
+        parts.add(part.toString());
+        part.setLength(0);
+        continue;
+      }
+      if (quote == 0 && (c == '\'' || c == '"')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+      part.append(c);
+    }
+    parts.add(part.toString());
+    return parts;
+  }
+
+  private static List<String> parseValues(String expression, List<String> values) {
+    return values.stream()
+        .map(
+            value -> {
+              Matcher matcher = VALUE.matcher(value);
+              if (!matcher.matches()) {
+                throw new InvalidRowFilterException(expression, "invalid value '" + value + "'");
+              }
+              for (int group = 1; group <= 3; group++) {
+                if (matcher.group(group) != null) {
+                  return matcher.group(group);
+                }
+              }
+              throw new IllegalStateException();
+            })
+        .toList();
+  }
+
+  /** The columns the filter compares, in the order they appear. */
+  public Set<String> getColumns() {
+    Set<String> columns = new LinkedHashSet<>();
+    conditions.forEach(condition -> columns.add(condition.column()));
+    return columns;
+  }
+
+  /** The filter as a Parquet predicate on the columns of a table. */
+  FilterPredicate toPredicate(MessageType schema) {
+    FilterPredicate predicate = null;
+    for (Condition condition : conditions) {
+      FilterPredicate conditionPredicate = toPredicate(schema, condition);
+      predicate = predicate == null ? conditionPredicate : and(predicate, conditionPredicate);
+    }
+    return predicate;
+  }
+
+  private FilterPredicate toPredicate(MessageType schema, Condition condition) {
+    String name = condition.column();
+    if (!schema.containsField(name) || !schema.getType(name).isPrimitive()) {
+      throw new InvalidRowFilterException(expression, "unknown column '" + name + "'");
+    }
+    PrimitiveType type = schema.getType(name).asPrimitiveType();
+    try {
+      return switch (type.getPrimitiveTypeName()) {
+        case INT32 -> compare(intColumn(name), condition, Integer::valueOf);
+        case INT64 -> compare(longColumn(name), condition, Long::valueOf);
+        case FLOAT -> compare(floatColumn(name), condition, Float::valueOf);
+        case DOUBLE -> compare(doubleColumn(name), condition, Double::valueOf);
+        case BINARY -> compare(binaryColumn(name), condition, Binary::fromString);
+        case BOOLEAN -> {
+          if (!condition.operator().equals("==")
+              && !condition.operator().equals("!=")
+              && !condition.operator().equals("%in%")) {
+            throw new InvalidRowFilterException(
+                expression, "column '" + name + "' can only be compared with ==, != and %in%");
+          }
+          yield equality(booleanColumn(name), condition, RowFilter::parseBoolean);
+        }
+        default -> throw new InvalidRowFilterException(
+            expression, "column '" + name + "' of type " + type + " can't be filtered on");
+      };
+    } catch (NumberFormatException e) {
+      throw new InvalidRowFilterException(
+          expression, "column '" + name + "' can't be compared with " + condition.values());
+    }
+  }
+
+  private static <T extends Comparable<T>, C extends Column<T> & SupportsLtGt>
+      FilterPredicate compare(C column, Condition condition, Function<String, T> parser) {
+    T value = parser.apply(condition.values().get(0));
+    return switch (condition.operator()) {
+      case "<" -> lt(column, value);
+      case "<=" -> ltEq(column, value);
+      case ">" -> gt(column, value);
+      case ">=" -> gtEq(column, value);
+      default -> equality(column, condition, parser);
+    };
+  }
+
+  private static <T extends Comparable<T>, C extends Column<T> & SupportsEqNotEq>
+      FilterPredicate equality(C column, Condition condition, Function<String, T> parser) {
+    List<T> values = condition.values().stream().map(parser).toList();
+    return switch (condition.operator()) {
+      case "==" -> eq(column, values.get(0));
+        // notEq matches missing values, which R leaves out
+      case "!=" -> and(notEq(column, values.get(0)), notEq(column, null));
+      case "%in%" -> in(column, new HashSet<>(values));
+      default -> throw new IllegalArgumentException(condition.operator());
+    };
+  }
+
+  private static Boolean parseBoolean(String value) {
+    return switch (value) {
+      case "TRUE", "true", "T" -> true;
+      case "FALSE", "false", "F" -> false;
+      default -> throw new NumberFormatException(value);
+    };
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
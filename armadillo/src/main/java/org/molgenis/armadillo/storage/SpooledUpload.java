@@ -0,0 +1,99 @@
+package org.molgenis.armadillo.storage;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Copy of an uploaded file in a temporary directory. The servlet container removes the original
+ * when the request ends, the copy stays until it is deleted, so it can be processed afterwards.
+ */
+class SpooledUpload implements MultipartFile {
+  private final Path directory;
+  private final Path file;
+  private final String name;
+  private final String originalFilename;
+  private final String contentType;
+
+  private SpooledUpload(
+      Path directory, Path file, String name, String originalFilename, String contentType) {
+    this.directory = directory;
+    this.file = file;
+    this.name = name;
+    this.originalFilename = originalFilename;
+    this.contentType = contentType;
+  }
+
+  static SpooledUpload of(MultipartFile upload) throws IOException {
+    Path directory = Files.createTempDirectory("armadillo-upload-job");
+    Path file = directory.resolve("upload");
+    try {
+      // moves the file instead of copying it when the container stored it on the same disk
+      upload.transferTo(file);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+      throw e;
+    }
+    return new SpooledUpload(
+        directory, file, upload.getName(), upload.getOriginalFilename(), upload.getContentType());
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getOriginalFilename() {
+    return originalFilename;
+  }
+
+  @Override
+  public String getContentType() {
+    return contentType;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return getSize() == 0;
+  }
+
+  @Override
+  public long getSize() {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public byte[] getBytes() throws IOException {
+    return Files.readAllBytes(file);
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return Files.newInputStream(file);
+  }
+
+  @Override
+  public void transferTo(File dest) throws IOException {
+    Files.copy(file, dest.toPath(), REPLACE_EXISTING);
+  }
+
+  Path getPath() {
+    return file;
+  }
+
+  void delete() throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(directory);
+  }
+}
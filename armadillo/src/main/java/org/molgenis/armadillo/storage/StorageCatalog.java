@@ -0,0 +1,239 @@
+package org.molgenis.armadillo.storage;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the buckets and objects in the storage root, so listings and existence checks
+ * don't touch the disk. The root is scanned once when the catalog is created. After that the
+ * storage service refreshes the objects it changes and, when watching, a {@link WatchService} picks
+ * up changes made by others. A refresh always reads the current state from disk, so it doesn't
+ * matter in which order or how often the refreshes of an object arrive.
+ */
+class StorageCatalog implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StorageCatalog.class);
+
+  private final Path root;
+  private final Map<String, NavigableMap<String, ObjectMetadata>> buckets =
+      new ConcurrentHashMap<>();
+  private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private WatchService watchService;
+  private Thread watcher;
+
+  StorageCatalog(Path root) {
+    this.root = root.toAbsolutePath().normalize();
+    reload();
+  }
+
+  /** Starts watching the storage root for changes that are not made through the catalog. */
+  synchronized void watch() throws IOException {
+    if (watchService != null) {
+      return;
+    }
+    watchService = root.getFileSystem().newWatchService();
+    register(root);
+    buckets.keySet().forEach(bucket -> registerDirectories(root.resolve(bucket)));
+    watcher =
+        Thread.ofPlatform().daemon().name("storage-catalog-watcher").start(this::processEvents);
+  }
+
+  @Override
+  public void close() throws IOException {
+    Thread thread;
+    synchronized (this) {
+      if (watchService == null) {
+        return;
+      }
+      watchService.close();
+      thread = watcher;
+    }
+    try {
+      thread.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Number that is increased after every update, so callers can tell whether something derived from
+   * the catalog is still current. Read it before reading the catalog.
+   */
+  long getVersion() {
+    return version.get();
+  }
+
+  List<String> listBuckets() {
+    return buckets.keySet().stream().sorted().toList();
+  }
+
+  boolean bucketExists(String bucketName) {
+    return buckets.containsKey(bucketName);
+  }
+
+  List<ObjectMetadata> listObjects(String bucketName) {
+    NavigableMap<String, ObjectMetadata> objects = buckets.get(bucketName);
+    return objects == null ? List.of() : List.copyOf(objects.values());
+  }
+
+  Optional<ObjectMetadata> getObject(String bucketName, String objectName) {
+    NavigableMap<String, ObjectMetadata> objects = buckets.get(bucketName);
+    if (objects == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(objects.get(getObjectKey(bucketName, objectName)));
+  }
+
+  /** Rescans the whole storage root. */
+  synchronized void reload() {
+    Set<String> found = new HashSet<>();
+    try (Stream<Path> files = Files.list(root)) {
+      files.filter(Files::isDirectory).forEach(dir -> found.add(dir.getFileName().toString()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    buckets.keySet().retainAll(found);
+    found.forEach(this::refreshBucket);
+    version.incrementAndGet();
+  }
+
+  /** Rescans a bucket, or removes it when its directory no longer exists. */
+  synchronized void refreshBucket(String bucketName) {
+    Path bucketPath = root.resolve(bucketName);
+    if (!Files.isDirectory(bucketPath)) {
+      buckets.remove(bucketName);
+      version.incrementAndGet();
+      return;
+    }
+    // watch before scanning, so files created during the scan aren't missed
+    registerDirectories(bucketPath);
+    NavigableMap<String, ObjectMetadata> objects = new ConcurrentSkipListMap<>();
+    try (Stream<Path> files = Files.walk(bucketPath)) {
+      files
+          .filter(Files::isRegularFile)
+          .filter(file -> isListed(bucketPath, file))
+          .map(file -> ObjectMetadata.of(bucketPath, file))
+          .forEach(object -> objects.put(object.name(), object));
+    } catch (NoSuchFileException e) {
+      // deleted while scanning, the watcher or the next refresh will remove it
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    buckets.put(bucketName, objects);
+    version.incrementAndGet();
+  }
+
+  /** Reads the current state of an object, adding, updating or removing it. */
+  synchronized void refreshObject(String bucketName, String objectName) {
+    Path bucketPath = root.resolve(bucketName);
+    Path objectPath = bucketPath.resolve(objectName).normalize();
+    if (!Files.isDirectory(bucketPath)) {
+      buckets.remove(bucketName);
+    } else if (Files.isDirectory(objectPath)) {
+      refreshBucket(bucketName);
+    } else {
+      NavigableMap<String, ObjectMetadata> objects =
+          buckets.computeIfAbsent(bucketName, bucket -> new ConcurrentSkipListMap<>());
+      String key = getObjectKey(bucketName, objectName);
+      if (Files.isRegularFile(objectPath) && isListed(bucketPath, objectPath)) {
+        objects.put(key, ObjectMetadata.of(bucketPath, objectPath));
+      } else {
+        objects.remove(key);
+      }
+    }
+    version.incrementAndGet();
+  }
+
+  private String getObjectKey(String bucketName, String objectName) {
+    Path bucketPath = root.resolve(bucketName);
+    return bucketPath.relativize(bucketPath.resolve(objectName).normalize()).toString();
+  }
+
+  private static boolean isListed(Path bucketPath, Path file) {
+    return !LocalStorageService.isTempFile(file)
+        && !ArmadilloWorkspace.isChecksumFile(file)
+        && !LocalStorageService.isMetadataCacheFile(bucketPath, file)
+        && !ObjectVersions.isVersionFile(bucketPath, file)
+        && !LinkFileProjections.isProjectionFile(bucketPath, file);
+  }
+
+  private void registerDirectories(Path directory) {
+    if (watchService == null) {
+      return;
+    }
+    try (Stream<Path> directories = Files.walk(directory)) {
+      directories.filter(Files::isDirectory).forEach(this::register);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to watch {} for changes: {}", directory, e.getMessage());
+    }
+  }
+
+  private void register(Path directory) {
+    try {
+      watchedDirectories.put(
+          directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+    } catch (IOException | ClosedWatchServiceException e) {
+      LOGGER.warn("Unable to watch {} for changes: {}", directory, e.getMessage());
+    }
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+      Path directory = watchedDirectories.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        try {
+          if (event.kind() == OVERFLOW || directory == null) {
+            reload();
+          } else {
+            handleChange(directory.resolve((Path) event.context()));
+          }
+        } catch (RuntimeException e) {
+          LOGGER.warn("Unable to update the storage catalog: {}", e.getMessage());
+        }
+      }
+      if (!key.reset()) {
+        watchedDirectories.remove(key);
+      }
+    }
+  }
+
+  private void handleChange(Path path) {
+    Path relativePath = root.relativize(path);
+    String bucketName = relativePath.getName(0).toString();
+    if (relativePath.getNameCount() == 1) {
+      refreshBucket(bucketName);
+    } else {
+      refreshObject(bucketName, relativePath.subpath(1, relativePath.getNameCount()).toString());
+    }
+  }
+}
@@ -29,8 +29,23 @@ public interface StorageService {
 
   List<String> listBuckets();
 
+  /** Updates the listing of a bucket after its files were changed by others than this service. */
+  void refreshBucket(String bucketName);
+
+  /**
+   * Number that changes whenever a bucket or object is added, changed or removed, to tell whether
+   * something derived from the listings is still current.
+   */
+  long getVersion();
+
   void save(InputStream is, String bucketName, String objectName, MediaType mediaType);
 
+  /** Copies an object, sharing its data with the original where the storage supports it. */
+  void copy(String sourceBucket, String sourceObject, String targetBucket, String targetObject);
+
+  /** Moves an object, atomically when source and target are on the same file system. */
+  void move(String sourceBucket, String sourceObject, String targetBucket, String targetObject);
+
   List<ObjectMetadata> listObjects(String bucketName);
 
   InputStream load(String bucketName, String objectName);
@@ -39,13 +54,39 @@ public interface StorageService {
 
   List<String> getVariables(String bucketName, String objectName);
 
+  default List<Map<String, String>> preview(
+      String bucketName, String objectName, int rowLimit, int columnLimit) {
+    return preview(bucketName, objectName, 0, rowLimit, columnLimit, List.of());
+  }
+
+  /**
+   * @param offset number of rows to skip
+   * @param columns the columns to show, or the first columnLimit columns if empty
+   */
   List<Map<String, String>> preview(
-      String bucketName, String objectName, int rowLimit, int columnLimit);
+      String bucketName,
+      String objectName,
+      long offset,
+      int rowLimit,
+      int columnLimit,
+      List<String> columns);
 
   void delete(String bucketName, String objectName);
 
+  /** Previous versions of an object, newest first. The name of a version identifies it. */
+  List<ObjectMetadata> listVersions(String bucketName, String objectName);
+
+  /** Path of a previous version of an object, see {@link #listVersions}. */
+  Path getVersionPath(String bucketName, String objectName, String version);
+
   Path getPathIfObjectExists(String bucketName, String objectName);
 
+  /**
+   * Path of the Parquet file to read the table of a link file from: its materialised table when
+   * that is up to date with the source table, otherwise the source table itself.
+   */
+  Path getLinkedTablePath(String bucketName, String objectName);
+
   static String getHumanReadableByteCount(long bytes) {
     long absB = bytes == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(bytes);
     if (absB < 1024) {
@@ -62,8 +103,18 @@ public interface StorageService {
     return String.format("%.1f %cB", value / 1024.0, ci.current());
   }
 
-  ArmadilloWorkspace getWorkSpace(InputStream is);
+  /** Copies a workspace to a temporary file in the bucket, without holding it in memory. */
+  ArmadilloWorkspace getWorkSpace(InputStream is, String bucketName);
+
+  /** Atomically replaces the object with a workspace from {@link #getWorkSpace}. */
+  void save(ArmadilloWorkspace workspace, String bucketName, String objectName);
+
+  /** The SHA-256 checksum of a saved workspace, or null when it was saved without one. */
+  String getWorkspaceChecksum(String bucketName, String objectName);
 
   Map<String, ArmadilloColumnMetaData> getMetadataFromTablePath(
       String bucketName, String objectName);
+
+  Map<String, ArmadilloColumnMetaData> getMetadataFromTablePath(
+      String bucketName, String objectName, boolean includeLevels);
 }
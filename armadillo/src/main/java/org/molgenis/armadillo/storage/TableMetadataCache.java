@@ -0,0 +1,330 @@
+package org.molgenis.armadillo.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.common.lang.NonNull;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded LRU cache for table metadata, keyed by bucket, object, file size and modification time,
+ * so a changed file never hits a stale entry. Entries of an object are also dropped explicitly when
+ * it is saved or deleted. When persistence is enabled, the entries of a bucket are kept in a
+ * sidecar file in that bucket, so they survive restarts.
+ *
+ * <p>The other lookups of a table, such as its variables and dimensions, are cached under the same
+ * fingerprint. They are cheap to recompute compared to the metadata, so they are kept in memory
+ * only and not written to the sidecar file. Previews are not cached: they are read from a few row
+ * groups only, and caching every offset and column selection would push the metadata out of the
+ * cache.
+ */
+@Component
+public class TableMetadataCache implements MeterBinder {
+
+  static final String SIDECAR_FILE = ".metadata-cache.json";
+  static final String MAX_SIZE_PROPERTY = "storage.metadata-cache.max-size";
+  static final String PERSIST_PROPERTY = "storage.metadata-cache.persist";
+  static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TableMetadataCache.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final int maxSize;
+  private final boolean persist;
+  private final Map<Key, Map<String, ArmadilloColumnMetaData>> entries;
+  private final Map<LookupKey, Object> lookups;
+  private final Set<Path> loadedBuckets = new HashSet<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public TableMetadataCache(
+      @Value("${" + MAX_SIZE_PROPERTY + ":" + DEFAULT_MAX_SIZE + "}") int maxSize,
+      @Value("${" + PERSIST_PROPERTY + ":false}") boolean persist) {
+    this.maxSize = maxSize;
+    this.persist = persist;
+    this.entries = createLruMap();
+    this.lookups = createLruMap();
+  }
+
+  private <K, V> Map<K, V> createLruMap() {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        boolean evict = size() > maxSize;
+        if (evict) {
+          evictions.incrementAndGet();
+        }
+        return evict;
+      }
+    };
+  }
+
+  @FunctionalInterface
+  interface Loader {
+    Map<String, ArmadilloColumnMetaData> load() throws IOException;
+  }
+
+  @FunctionalInterface
+  interface LookupLoader<T> {
+    T load() throws IOException;
+  }
+
+  /**
+   * @param bucketPath directory of the bucket that holds the Parquet file
+   * @param objectName name of the Parquet file in the bucket
+   * @param columns the requested columns, or null for all columns
+   * @param loader determines the metadata on a cache miss
+   */
+  Map<String, ArmadilloColumnMetaData> get(
+      Path bucketPath,
+      String objectName,
+      List<String> columns,
+      boolean includeLevels,
+      Loader loader)
+      throws IOException {
+    Key key = createKey(bucketPath, objectName, columns, includeLevels);
+    synchronized (this) {
+      loadSidecarIfNeeded(key.bucket());
+      Map<String, ArmadilloColumnMetaData> metadata = entries.get(key);
+      if (metadata != null) {
+        hits.incrementAndGet();
+        return metadata;
+      }
+    }
+    misses.incrementAndGet();
+    Map<String, ArmadilloColumnMetaData> metadata = Collections.unmodifiableMap(loader.load());
+    synchronized (this) {
+      entries.put(key, metadata);
+      writeSidecar(key.bucket());
+    }
+    return metadata;
+  }
+
+  /**
+   * @param bucketPath directory of the bucket that holds the Parquet file
+   * @param objectName name of the Parquet file in the bucket
+   * @param lookup name of the lookup, such as "variables" or "dimensions"
+   * @param arguments the arguments that determine the result of the lookup
+   * @param loader performs the lookup on a cache miss, its result must not be modified afterwards
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(
+      Path bucketPath, String objectName, String lookup, List<?> arguments, LookupLoader<T> loader)
+      throws IOException {
+    Key fileKey = createKey(bucketPath, objectName, null, false);
+    LookupKey key =
+        new LookupKey(
+            fileKey.bucket(),
+            fileKey.object(),
+            fileKey.size(),
+            fileKey.lastModified(),
+            lookup,
+            List.copyOf(arguments));
+    synchronized (this) {
+      Object value = lookups.get(key);
+      if (value != null) {
+        hits.incrementAndGet();
+        return (T) value;
+      }
+    }
+    misses.incrementAndGet();
+    T value = loader.load();
+    synchronized (this) {
+      lookups.put(key, value);
+    }
+    return value;
+  }
+
+  /** Drops all entries of an object, regardless of the size and modification time. */
+  synchronized void invalidate(Path bucketPath, String objectName) {
+    Path bucket = normalize(bucketPath);
+    String object = getObjectKey(bucket, objectName);
+    lookups.keySet().removeIf(key -> key.bucket().equals(bucket) && key.object().equals(object));
+    if (entries
+        .keySet()
+        .removeIf(key -> key.bucket().equals(bucket) && key.object().equals(object))) {
+      writeSidecar(bucket);
+    }
+  }
+
+  /** Drops all entries of a bucket. */
+  synchronized void invalidate(Path bucketPath) {
+    Path bucket = normalize(bucketPath);
+    entries.keySet().removeIf(key -> key.bucket().equals(bucket));
+    lookups.keySet().removeIf(key -> key.bucket().equals(bucket));
+    loadedBuckets.remove(bucket);
+  }
+
+  synchronized int size() {
+    return entries.size() + lookups.size();
+  }
+
+  @Override
+  public void bindTo(@NonNull MeterRegistry registry) {
+    FunctionCounter.builder("storage.metadata.cache.hits", hits, AtomicLong::doubleValue)
+        .description("Number of table metadata requests answered from the cache")
+        .register(registry);
+    FunctionCounter.builder("storage.metadata.cache.misses", misses, AtomicLong::doubleValue)
+        .description("Number of table metadata requests that had to read the table")
+        .register(registry);
+    FunctionCounter.builder("storage.metadata.cache.evictions", evictions, AtomicLong::doubleValue)
+        .description("Number of table metadata entries evicted because the cache was full")
+        .register(registry);
+    Gauge.builder("storage.metadata.cache.size", this, TableMetadataCache::size)
+        .description("Number of table metadata entries in the cache")
+        .register(registry);
+  }
+
+  private static Key createKey(
+      Path bucketPath, String objectName, List<String> columns, boolean includeLevels)
+      throws IOException {
+    Path bucket = normalize(bucketPath);
+    String object = getObjectKey(bucket, objectName);
+    Path objectPath = bucket.resolve(object);
+    return new Key(
+        bucket,
+        object,
+        Files.size(objectPath),
+        Files.getLastModifiedTime(objectPath).toMillis(),
+        columns == null ? null : List.copyOf(columns),
+        includeLevels);
+  }
+
+  private static Path normalize(Path bucketPath) {
+    return bucketPath.toAbsolutePath().normalize();
+  }
+
+  private static String getObjectKey(Path bucket, String objectName) {
+    return bucket.relativize(bucket.resolve(objectName).normalize()).toString();
+  }
+
+  private void loadSidecarIfNeeded(Path bucket) {
+    if (!persist || !loadedBuckets.add(bucket)) {
+      return;
+    }
+    Path sidecar = bucket.resolve(SIDECAR_FILE);
+    if (!Files.exists(sidecar)) {
+      return;
+    }
+    try {
+      PersistedEntry[] persisted = objectMapper.readValue(sidecar.toFile(), PersistedEntry[].class);
+      for (PersistedEntry entry : persisted) {
+        Key key = entry.toKey(bucket);
+        if (isCurrent(key)) {
+          entries.put(key, entry.toMetadata());
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Ignoring unreadable metadata cache file {}: {}", sidecar, e.getMessage());
+    }
+  }
+
+  private static boolean isCurrent(Key key) {
+    try {
+      Path objectPath = key.bucket().resolve(key.object());
+      return Files.size(objectPath) == key.size()
+          && Files.getLastModifiedTime(objectPath).toMillis() == key.lastModified();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private void writeSidecar(Path bucket) {
+    if (!persist || !Files.isDirectory(bucket)) {
+      return;
+    }
+    List<PersistedEntry> persisted =
+        entries.entrySet().stream()
+            .filter(entry -> entry.getKey().bucket().equals(bucket))
+            .map(entry -> PersistedEntry.of(entry.getKey(), entry.getValue()))
+            .toList();
+    Path sidecar = bucket.resolve(SIDECAR_FILE);
+    try {
+      Path tempFile = Files.createTempFile(bucket, SIDECAR_FILE, ".tmp");
+      objectMapper.writeValue(tempFile.toFile(), persisted);
+      Files.move(tempFile, sidecar, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write metadata cache file {}: {}", sidecar, e.getMessage());
+    }
+  }
+
+  record Key(
+      Path bucket,
+      String object,
+      long size,
+      long lastModified,
+      List<String> columns,
+      boolean includeLevels) {}
+
+  record LookupKey(
+      Path bucket, String object, long size, long lastModified, String lookup, List<?> arguments) {}
+
+  record PersistedEntry(
+      String object,
+      long size,
+      long lastModified,
+      List<String> columns,
+      boolean includeLevels,
+      LinkedHashMap<String, PersistedColumn> metadata) {
+
+    static PersistedEntry of(Key key, Map<String, ArmadilloColumnMetaData> metadata) {
+      LinkedHashMap<String, PersistedColumn> columns = new LinkedHashMap<>();
+      metadata.forEach(
+          (column, columnMetaData) -> columns.put(column, PersistedColumn.of(columnMetaData)));
+      return new PersistedEntry(
+          key.object(),
+          key.size(),
+          key.lastModified(),
+          key.columns(),
+          key.includeLevels(),
+          columns);
+    }
+
+    Key toKey(Path bucket) {
+      return new Key(bucket, object, size, lastModified, columns, includeLevels);
+    }
+
+    Map<String, ArmadilloColumnMetaData> toMetadata() {
+      Map<String, ArmadilloColumnMetaData> result = new LinkedHashMap<>();
+      metadata.forEach(
+          (column, persistedColumn) -> result.put(column, persistedColumn.toMetaData()));
+      return Collections.unmodifiableMap(result);
+    }
+  }
+
+  record PersistedColumn(
+      String type, int missing, long total, Set<String> levels, String min, String max) {
+
+    static PersistedColumn of(ArmadilloColumnMetaData columnMetaData) {
+      return new PersistedColumn(
+          columnMetaData.getType(),
+          columnMetaData.getMissing(),
+          columnMetaData.getTotal(),
+          columnMetaData.getLevels(),
+          columnMetaData.getMin(),
+          columnMetaData.getMax());
+    }
+
+    ArmadilloColumnMetaData toMetaData() {
+      ArmadilloColumnMetaData columnMetaData = ArmadilloColumnMetaData.create(type);
+      columnMetaData.setMissing(missing);
+      columnMetaData.setTotal(total);
+      columnMetaData.setPossibleLevels(levels);
+      columnMetaData.setRange(min, max);
+      return columnMetaData;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.molgenis.armadillo.storage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An upload that is written to storage in the background. The bytes read and rows written are
+ * updated while the job runs, the estimated time to completion is derived from them.
+ */
+public class UploadJob implements UploadProgress {
+
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  private final String id;
+  private final String project;
+  private final String object;
+  private final long totalBytes;
+  private final Instant submitted;
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong rowsWritten = new AtomicLong();
+  private volatile Status status = Status.QUEUED;
+  private volatile Instant started;
+  private volatile Instant finished;
+  private volatile String error;
+  private final CompletableFuture<UploadJob> completion = new CompletableFuture<>();
+
+  public UploadJob(String id, String project, String object, long totalBytes, Instant submitted) {
+    this.id = id;
+    this.project = project;
+    this.object = object;
+    this.totalBytes = totalBytes;
+    this.submitted = submitted;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getProject() {
+    return project;
+  }
+
+  public String getObject() {
+    return object;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten.get();
+  }
+
+  public Instant getSubmitted() {
+    return submitted;
+  }
+
+  public Instant getStarted() {
+    return started;
+  }
+
+  public Instant getFinished() {
+    return finished;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * @return the estimated number of seconds until all bytes are read, based on the average speed so
+   *     far, or null when it cannot be estimated yet
+   */
+  public Long getEtaSeconds() {
+    return getEtaSeconds(Instant.now());
+  }
+
+  Long getEtaSeconds(Instant now) {
+    if (status == Status.COMPLETED || status == Status.FAILED) {
+      return 0L;
+    }
+    long read = bytesRead.get();
+    if (started == null || read == 0) {
+      return null;
+    }
+    long elapsedMillis = Duration.between(started, now).toMillis();
+    long remaining = Math.max(0, totalBytes - read);
+    return (long) Math.ceil(remaining * (double) elapsedMillis / read / 1000);
+  }
+
+  /**
+   * @return completes when the job has written the object, or completes exceptionally with the
+   *     reason the job failed
+   */
+  public CompletableFuture<UploadJob> whenFinished() {
+    return completion;
+  }
+
+  @Override
+  public void addBytesRead(long bytes) {
+    bytesRead.addAndGet(bytes);
+  }
+
+  @Override
+  public void addRowsWritten(long rows) {
+    rowsWritten.addAndGet(rows);
+  }
+
+  void start(Instant now) {
+    started = now;
+    status = Status.RUNNING;
+  }
+
+  void complete(Instant now) {
+    finished = now;
+    status = Status.COMPLETED;
+    completion.complete(this);
+  }
+
+  void fail(Instant now, Exception failure) {
+    finished = now;
+    error = failure.getMessage();
+    status = Status.FAILED;
+    completion.completeExceptionally(failure);
+  }
+
+  boolean isFinishedBefore(Instant instant) {
+    return finished != null && finished.isBefore(instant);
+  }
+}
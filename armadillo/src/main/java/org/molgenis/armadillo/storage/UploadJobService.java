@@ -0,0 +1,249 @@
+package org.molgenis.armadillo.storage;
+
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.PARQUET;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.molgenis.armadillo.exceptions.FileProcessingException;
+import org.molgenis.armadillo.exceptions.UnknownUploadJobException;
+import org.molgenis.armadillo.exceptions.UploadJobsBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Writes uploads to storage in the background, so the request that uploads a file returns as soon
+ * as the file is received. The jobs run on a fixed number of threads with a bounded queue. When all
+ * threads are busy and the queue is full, a new upload waits for a free slot for a while and is
+ * then refused with a {@link UploadJobsBusyException}, so clients know to retry later. Finished
+ * jobs can be looked up until their retention period has passed.
+ */
+@Service
+public class UploadJobService implements MeterBinder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(UploadJobService.class);
+
+  @FunctionalInterface
+  interface UploadTask {
+    void run(MultipartFile upload, UploadJob job) throws Exception;
+  }
+
+  private final ArmadilloStorageService storage;
+  private final ThreadPoolExecutor executor;
+  private final Semaphore slots;
+  private final int maxJobs;
+  private final Duration submitTimeout;
+  private final Duration retention;
+  private final Clock clock;
+  private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+  @Autowired
+  public UploadJobService(
+      ArmadilloStorageService storage,
+      @Value("${storage.upload-jobs.threads:2}") int threads,
+      @Value("${storage.upload-jobs.queue-capacity:8}") int queueCapacity,
+      @Value("${storage.upload-jobs.submit-timeout-seconds:30}") long submitTimeoutSeconds,
+      @Value("${storage.upload-jobs.retention-minutes:60}") long retentionMinutes) {
+    this(
+        storage,
+        threads,
+        queueCapacity,
+        Duration.ofSeconds(submitTimeoutSeconds),
+        Duration.ofMinutes(retentionMinutes),
+        Clock.systemUTC());
+  }
+
+  UploadJobService(
+      ArmadilloStorageService storage,
+      int threads,
+      int queueCapacity,
+      Duration submitTimeout,
+      Duration retention,
+      Clock clock) {
+    this.storage = storage;
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("upload-job-"));
+    // the slots bound the number of queued jobs, not the queue: a thread releases its slot just
+    // before it is ready to take the next job, a bounded queue could still be full at that moment
+    this.maxJobs = threads + queueCapacity;
+    this.slots = new Semaphore(maxJobs, true);
+    this.submitTimeout = submitTimeout;
+    this.retention = retention;
+    this.clock = clock;
+  }
+
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public UploadJob submitObjectUpload(String project, String object, MultipartFile file) {
+    return submit(
+        project,
+        object,
+        file,
+        (upload, job) -> {
+          try (InputStream inputStream = job.track(upload.getInputStream())) {
+            storage.addObject(project, object, inputStream);
+          }
+          if (object.endsWith(PARQUET)) {
+            precomputeMetadata(project, object);
+          }
+        });
+  }
+
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public UploadJob submitCsvUpload(
+      String project, String object, MultipartFile file, int numberOfRowsToDetermineTypeBy) {
+    return submitCsvUpload(
+        project, object, file, numberOfRowsToDetermineTypeBy, ParquetWriteOptions.Overrides.NONE);
+  }
+
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public UploadJob submitCsvUpload(
+      String project,
+      String object,
+      MultipartFile file,
+      int numberOfRowsToDetermineTypeBy,
+      ParquetWriteOptions.Overrides overrides) {
+    String table = removeExtension(object) + PARQUET;
+    return submit(
+        project,
+        table,
+        file,
+        (upload, job) -> {
+          try {
+            storage.writeParquetFromCsv(
+                project, object, upload, numberOfRowsToDetermineTypeBy, overrides, job);
+          } catch (Exception e) {
+            throw new FileProcessingException(
+                String.format(
+                    "Could not process file: [%s] because: [%s]",
+                    upload.getOriginalFilename(), e.getMessage()));
+          }
+          precomputeMetadata(project, table);
+        });
+  }
+
+  @PreAuthorize("hasRole('ROLE_SU')")
+  public UploadJob getJob(String id) {
+    removeExpiredJobs();
+    UploadJob job = jobs.get(id);
+    if (job == null) {
+      throw new UnknownUploadJobException(id);
+    }
+    return job;
+  }
+
+  UploadJob submit(String project, String object, MultipartFile file, UploadTask task) {
+    removeExpiredJobs();
+    acquireSlot();
+    SpooledUpload upload;
+    try {
+      upload = SpooledUpload.of(file);
+    } catch (IOException | RuntimeException e) {
+      slots.release();
+      throw new FileProcessingException(
+          String.format("Could not receive file: [%s]", file.getOriginalFilename()));
+    }
+    UploadJob job =
+        new UploadJob(
+            UUID.randomUUID().toString(), project, object, upload.getSize(), clock.instant());
+    jobs.put(job.getId(), job);
+    try {
+      executor.execute(new DelegatingSecurityContextRunnable(() -> run(job, upload, task)));
+    } catch (RejectedExecutionException e) {
+      // only happens when the application shuts down
+      jobs.remove(job.getId());
+      deleteQuietly(upload);
+      slots.release();
+      throw new UploadJobsBusyException(maxJobs);
+    }
+    return job;
+  }
+
+  private void acquireSlot() {
+    try {
+      if (!slots.tryAcquire(submitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        throw new UploadJobsBusyException(maxJobs);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UploadJobsBusyException(maxJobs);
+    }
+  }
+
+  private void run(UploadJob job, SpooledUpload upload, UploadTask task) {
+    try {
+      job.start(clock.instant());
+      task.run(upload, job);
+      job.complete(clock.instant());
+    } catch (Exception e) {
+      LOGGER.warn(
+          "Upload job {} for [{}/{}] failed", job.getId(), job.getProject(), job.getObject(), e);
+      job.fail(clock.instant(), e);
+    } finally {
+      deleteQuietly(upload);
+      slots.release();
+    }
+  }
+
+  /** Reads the metadata once, so it is cached before anyone asks for it. */
+  private void precomputeMetadata(String project, String object) {
+    try {
+      storage.getMetadata(project, object);
+    } catch (Exception e) {
+      LOGGER.warn("Could not precompute metadata of [{}/{}]", project, object, e);
+    }
+  }
+
+  private void removeExpiredJobs() {
+    var expiry = clock.instant().minus(retention);
+    jobs.values().removeIf(job -> job.isFinishedBefore(expiry));
+  }
+
+  private static void deleteQuietly(SpooledUpload upload) {
+    try {
+      upload.delete();
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete spooled upload", e);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("storage.upload.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Number of upload jobs that are running")
+        .register(registry);
+    Gauge.builder("storage.upload.jobs.queued", executor, e -> e.getQueue().size())
+        .description("Number of upload jobs that wait for a thread")
+        .register(registry);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,53 @@
+package org.molgenis.armadillo.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Receives the progress of writing an uploaded file to storage. */
+public interface UploadProgress {
+
+  /** Ignores all progress, for uploads that nobody follows. */
+  UploadProgress NONE =
+      new UploadProgress() {
+        @Override
+        public void addBytesRead(long bytes) {}
+
+        @Override
+        public void addRowsWritten(long rows) {}
+      };
+
+  void addBytesRead(long bytes);
+
+  void addRowsWritten(long rows);
+
+  /** Wraps an input stream so that every byte read from it is reported as progress. */
+  default InputStream track(InputStream inputStream) {
+    return new FilterInputStream(inputStream) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          addBytesRead(1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+          addBytesRead(read);
+        }
+        return read;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        addBytesRead(skipped);
+        return skipped;
+      }
+    };
+  }
+}
@@ -0,0 +1,279 @@
+package org.molgenis.armadillo.storage;
+
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.LINK_FILE;
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.PARQUET;
+import static org.molgenis.armadillo.storage.ArmadilloStorageService.SHARED_PREFIX;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inverted index from variable name to the tables and link files that contain it, over all
+ * projects. Tables are indexed from their Parquet footer and the dictionary pages of their string
+ * columns, link files from their list of variables; the type and levels of a linked variable are
+ * looked up in the indexed source table.
+ *
+ * <p>Searches are answered from the last published snapshot of the index, without a lock. When the
+ * version of the storage changed since, a search starts an update in the background and is answered
+ * from the previous snapshot. An update compares the listing of the storage with the indexed
+ * objects, only reads the objects that were added or changed and then publishes a new snapshot.
+ */
+class VariableIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VariableIndex.class);
+
+  record TableKey(String project, String object) implements Comparable<TableKey> {
+    private static final Comparator<TableKey> ORDER =
+        Comparator.comparing(TableKey::project).thenComparing(TableKey::object);
+
+    @Override
+    public int compareTo(TableKey other) {
+      return ORDER.compare(this, other);
+    }
+  }
+
+  /**
+   * @param types the variables of a table with their type, or the variables of a link file without
+   *     a type
+   * @param levels the levels of the categorical variables of a table
+   * @param source the table a link file refers to, null for tables
+   */
+  private record IndexedTable(
+      ObjectMetadata metadata,
+      Map<String, String> types,
+      Map<String, Set<String>> levels,
+      TableKey source) {}
+
+  /** A published state of the index, which is never changed afterwards. */
+  private record Snapshot(
+      long version,
+      Map<TableKey, IndexedTable> tables,
+      NavigableMap<String, NavigableMap<TableKey, String>> tablesByVariable) {}
+
+  private final StorageService storageService;
+  private final Executor executor;
+  // the working state of the index, only used by update while it holds the lock
+  private final Map<TableKey, IndexedTable> tables = new HashMap<>();
+  // lower case variable name -> tables that contain it -> variable name in that table
+  private final NavigableMap<String, NavigableMap<TableKey, String>> tablesByVariable =
+      new TreeMap<>();
+  private final Set<String> changedVariables = new HashSet<>();
+  private volatile Snapshot snapshot;
+  private final AtomicBoolean updateScheduled = new AtomicBoolean();
+
+  VariableIndex(StorageService storageService) {
+    this(storageService, task -> Thread.ofVirtual().name("variable-index").start(task));
+  }
+
+  /**
+   * @param executor runs the updates that searches start
+   */
+  VariableIndex(StorageService storageService, Executor executor) {
+    this.storageService = storageService;
+    this.executor = executor;
+  }
+
+  /**
+   * @param substring whether to find variables that contain the query instead of variables that
+   *     start with it. Both ignore case.
+   * @param projectFilter the projects to search in
+   */
+  List<VariableSearchResult> search(
+      String query, boolean substring, Predicate<String> projectFilter, int limit) {
+    Snapshot current = snapshot;
+    if (current == null) {
+      // nothing to answer from yet, wait for the first build
+      update();
+      current = snapshot;
+    } else if (current.version() != storageService.getVersion()) {
+      scheduleUpdate();
+    }
+    var byVariable = current.tablesByVariable();
+    String key = query.toLowerCase(Locale.ROOT);
+    Stream<NavigableMap<TableKey, String>> matches =
+        substring
+            ? byVariable.entrySet().stream()
+                .filter(entry -> entry.getKey().contains(key))
+                .map(Map.Entry::getValue)
+            : byVariable.subMap(key, true, key + Character.MAX_VALUE, true).values().stream();
+    Snapshot found = current;
+    return matches
+        .flatMap(variableTables -> variableTables.entrySet().stream())
+        .filter(entry -> projectFilter.test(entry.getKey().project()))
+        .limit(limit)
+        .map(entry -> toResult(found, entry.getKey(), entry.getValue()))
+        .toList();
+  }
+
+  /** Starts an update in the background, unless one is already waiting or running. */
+  private void scheduleUpdate() {
+    if (!updateScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(
+          () -> {
+            try {
+              update();
+            } catch (RuntimeException e) {
+              LOGGER.warn("Unable to update the variable index: {}", e.getMessage());
+            } finally {
+              updateScheduled.set(false);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      updateScheduled.set(false);
+    }
+  }
+
+  /**
+   * Indexes the objects that were added or changed, drops the ones that were removed and publishes
+   * the result.
+   */
+  synchronized void update() {
+    // read the version first, so changes made while updating are picked up the next time
+    long version = storageService.getVersion();
+    Snapshot previous = snapshot;
+    if (previous != null && version == previous.version()) {
+      return;
+    }
+    Map<TableKey, ObjectMetadata> current = listTables();
+    List.copyOf(tables.keySet()).stream()
+        .filter(key -> !current.containsKey(key))
+        .forEach(this::remove);
+    current.forEach(
+        (key, metadata) -> {
+          IndexedTable table = tables.get(key);
+          if (table == null || !table.metadata().equals(metadata)) {
+            remove(key);
+            add(key, metadata);
+          }
+        });
+    snapshot = publish(version, previous);
+  }
+
+  /**
+   * Copies the working state into a new snapshot. The tables of a variable that didn't change are
+   * shared with the previous snapshot, so an update that changes a few objects copies little more
+   * than the variable names.
+   */
+  private Snapshot publish(long version, Snapshot previous) {
+    NavigableMap<String, NavigableMap<TableKey, String>> byVariable = new TreeMap<>();
+    tablesByVariable.forEach(
+        (name, variableTables) ->
+            byVariable.put(
+                name,
+                previous != null && !changedVariables.contains(name)
+                    ? previous.tablesByVariable().get(name)
+                    : Collections.unmodifiableNavigableMap(new TreeMap<>(variableTables))));
+    changedVariables.clear();
+    return new Snapshot(
+        version, Map.copyOf(tables), Collections.unmodifiableNavigableMap(byVariable));
+  }
+
+  private Map<TableKey, ObjectMetadata> listTables() {
+    Map<TableKey, ObjectMetadata> result = new HashMap<>();
+    storageService.listBuckets().stream()
+        .filter(bucket -> bucket.startsWith(SHARED_PREFIX))
+        .forEach(
+            bucket ->
+                storageService.listObjects(bucket).stream()
+                    .filter(it -> it.name().endsWith(PARQUET) || it.name().endsWith(LINK_FILE))
+                    .forEach(
+                        object ->
+                            result.put(
+                                new TableKey(
+                                    bucket.substring(SHARED_PREFIX.length()), object.name()),
+                                object)));
+    return result;
+  }
+
+  private void add(TableKey key, ObjectMetadata metadata) {
+    IndexedTable table;
+    try {
+      table = read(key, metadata);
+    } catch (Exception e) {
+      // index it without variables, so it is only read again when it changes
+      LOGGER.warn(
+          "Unable to index variables of [{}/{}]: {}", key.project(), key.object(), e.getMessage());
+      table = new IndexedTable(metadata, Map.of(), Map.of(), null);
+    }
+    tables.put(key, table);
+    table
+        .types()
+        .keySet()
+        .forEach(
+            variable -> {
+              String name = variable.toLowerCase(Locale.ROOT);
+              changedVariables.add(name);
+              tablesByVariable.computeIfAbsent(name, it -> new TreeMap<>()).put(key, variable);
+            });
+  }
+
+  private IndexedTable read(TableKey key, ObjectMetadata metadata) throws Exception {
+    String bucket = SHARED_PREFIX + key.project();
+    if (key.object().endsWith(PARQUET)) {
+      Path path = storageService.getPathIfObjectExists(bucket, key.object());
+      return new IndexedTable(
+          metadata, ParquetUtils.getDatatypes(path), ParquetUtils.getDictionaryLevels(path), null);
+    }
+    String linkObject = key.object().substring(0, key.object().length() - LINK_FILE.length());
+    ArmadilloLinkFile linkFile;
+    try (InputStream inputStream = storageService.load(bucket, key.object())) {
+      linkFile = new ArmadilloLinkFile(inputStream, key.project(), linkObject);
+    }
+    Map<String, String> variables = new LinkedHashMap<>();
+    Arrays.stream(linkFile.getVariables().split(","))
+        .map(String::strip)
+        .filter(variable -> !variable.isEmpty())
+        .forEach(variable -> variables.put(variable, null));
+    return new IndexedTable(
+        metadata,
+        variables,
+        Map.of(),
+        new TableKey(linkFile.getSourceProject(), linkFile.getSourceObject() + PARQUET));
+  }
+
+  private void remove(TableKey key) {
+    IndexedTable table = tables.remove(key);
+    if (table == null) {
+      return;
+    }
+    table
+        .types()
+        .keySet()
+        .forEach(
+            variable -> {
+              String name = variable.toLowerCase(Locale.ROOT);
+              changedVariables.add(name);
+              NavigableMap<TableKey, String> variableTables = tablesByVariable.get(name);
+              variableTables.remove(key);
+              if (variableTables.isEmpty()) {
+                tablesByVariable.remove(name);
+              }
+            });
+  }
+
+  private static VariableSearchResult toResult(Snapshot snapshot, TableKey key, String variable) {
+    IndexedTable table = snapshot.tables().get(key);
+    if (table.source() != null) {
+      table = snapshot.tables().get(table.source());
+    }
+    return table == null
+        ? new VariableSearchResult(key.project(), key.object(), variable, null, null)
+        : new VariableSearchResult(
+            key.project(),
+            key.object(),
+            variable,
+            table.types().get(variable),
+            table.levels().get(variable));
+  }
+}
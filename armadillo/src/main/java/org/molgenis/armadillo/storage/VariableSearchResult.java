@@ -0,0 +1,16 @@
+package org.molgenis.armadillo.storage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Set;
+
+/**
+ * @param project The project of the table
+ * @param object The table or link file that contains the variable (e.g. core/nonrep.parquet)
+ * @param variable The name of the variable
+ * @param type The Parquet type of the variable, absent when the source of a link file is missing
+ * @param levels The levels of a categorical string variable, absent when the variable isn't
+ *     categorical or its levels can't be read from the dictionary pages of the table
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record VariableSearchResult(
+    String project, String object, String variable, String type, Set<String> levels) {}
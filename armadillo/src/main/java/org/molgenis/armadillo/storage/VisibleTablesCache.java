@@ -0,0 +1,36 @@
+package org.molgenis.armadillo.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Tables each user can see, so listing them doesn't check the permissions of every project again.
+ * An entry is only used while the user has the same roles and the storage has the same version as
+ * when it was built. Entries are dropped when the permissions change, so users that lost access
+ * don't keep an entry around.
+ */
+class VisibleTablesCache {
+
+  private record Entry(Set<String> roles, long version, List<String> tables) {}
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * @param version version of the storage, read before the tables are loaded
+   */
+  List<String> get(String user, Set<String> roles, long version, Supplier<List<String>> loader) {
+    Entry entry = entries.get(user);
+    if (entry == null || entry.version() != version || !entry.roles().equals(roles)) {
+      entry = new Entry(roles, version, loader.get());
+      entries.put(user, entry);
+    }
+    return entry.tables();
+  }
+
+  void invalidate() {
+    entries.clear();
+  }
+}
@@ -1,7 +1,9 @@
 package org.molgenis.armadillo;
 
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -16,6 +18,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.molgenis.armadillo.service.ArmadilloConnectionFactory;
 import org.molgenis.r.RServerConnection;
 import org.molgenis.r.exceptions.RExecutionException;
+import org.molgenis.r.rock.RockServerException;
 import org.molgenis.r.service.ProcessService;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPNull;
@@ -50,6 +53,15 @@ class ArmadilloSessionTest {
     assertThrows(RExecutionException.class, () -> armadilloSession.execute(rConnectionConsumer));
   }
 
+  @Test
+  void isAlive() throws Exception {
+    assertTrue(armadilloSession.isAlive());
+
+    when(rConnection.eval("base::TRUE")).thenThrow(new RockServerException("gone"));
+
+    assertFalse(armadilloSession.isAlive());
+  }
+
   @Test
   void sessionCleanup() {
     when(rConnection.close()).thenReturn(true);
@@ -93,4 +105,32 @@ class ArmadilloSessionTest {
 
     verify(processService).terminateProcess(rConnection, 218);
   }
+
+  @Test
+  void sessionCleanupClosesConnectionWhenTerminationFails() throws Exception {
+    var executionIsRunning = new CountDownLatch(1);
+    var sessionIsDestroyed = new CountDownLatch(1);
+    var task =
+        newSingleThreadExecutor()
+            .submit(
+                () ->
+                    armadilloSession.execute(
+                        connection -> {
+                          executionIsRunning.countDown();
+                          try {
+                            sessionIsDestroyed.await();
+                          } catch (InterruptedException ignore) {
+                          }
+                          return new REXPNull();
+                        }));
+    executionIsRunning.await();
+    when(connectionFactory.createConnection())
+        .thenThrow(new IllegalStateException("Connection factory is closed"));
+
+    assertThrows(IllegalStateException.class, () -> armadilloSession.sessionCleanup());
+    sessionIsDestroyed.countDown();
+    task.get();
+
+    verify(rConnection).close();
+  }
 }
@@ -0,0 +1,57 @@
+package org.molgenis.armadillo.command;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.molgenis.armadillo.command.ActiveLaneAccessor.LANE_HEADER;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.molgenis.armadillo.exceptions.InvalidSessionLaneException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+class ActiveLaneAccessorTest {
+
+  @AfterEach
+  void afterEach() {
+    RequestContextHolder.resetRequestAttributes();
+    ActiveLaneAccessor.resetActiveLaneName();
+  }
+
+  @Test
+  void testDefaultLane() {
+    assertEquals("default", ActiveLaneAccessor.getActiveLaneName());
+  }
+
+  @Test
+  void testLaneOfThread() {
+    ActiveLaneAccessor.setActiveLaneName("fit");
+    assertEquals("fit", ActiveLaneAccessor.getActiveLaneName());
+  }
+
+  @Test
+  void testLaneOfRequest() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(LANE_HEADER, "fit-1");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    ActiveLaneAccessor.setActiveLaneName("plot");
+
+    assertEquals("fit-1", ActiveLaneAccessor.getActiveLaneName());
+  }
+
+  @Test
+  void testRequestWithoutLane() {
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest()));
+    assertEquals("default", ActiveLaneAccessor.getActiveLaneName());
+  }
+
+  @Test
+  void testInvalidLane() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(LANE_HEADER, "fit lane");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+    assertThrows(InvalidSessionLaneException.class, ActiveLaneAccessor::getActiveLaneName);
+  }
+}
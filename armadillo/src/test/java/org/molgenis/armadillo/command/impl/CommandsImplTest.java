@@ -15,22 +15,32 @@ import java.security.Principal;
 import java.util.*;
 import java.util.HashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.molgenis.armadillo.command.ActiveLaneAccessor;
+import org.molgenis.armadillo.command.BatchResult;
+import org.molgenis.armadillo.command.BatchStatement;
+import org.molgenis.armadillo.exceptions.InvalidSessionLaneException;
+import org.molgenis.armadillo.exceptions.TooManySessionLanesException;
 import org.molgenis.armadillo.exceptions.UnknownProfileException;
 import org.molgenis.armadillo.metadata.ProfileConfig;
 import org.molgenis.armadillo.metadata.ProfileService;
 import org.molgenis.armadillo.profile.ActiveProfileNameAccessor;
 import org.molgenis.armadillo.security.ResourceTokenService;
 import org.molgenis.armadillo.service.ArmadilloConnectionFactory;
+import org.molgenis.armadillo.service.ArmadilloSessionPool;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
+import org.molgenis.armadillo.storage.RowFilter;
 import org.molgenis.r.RServerConnection;
 import org.molgenis.r.RServerResult;
 import org.molgenis.r.model.RPackage;
@@ -40,6 +50,7 @@ import org.molgenis.r.service.RExecutorService;
 import org.rosuda.REngine.REXP;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.context.request.RequestAttributes;
@@ -81,10 +92,15 @@ class CommandsImplTest {
             packageService,
             rExecutorService,
             taskExecutor,
-            connectionFactory,
-            processService,
+            new ArmadilloSessionPool(connectionFactory, processService, profileService, 1, 0),
             profileService,
-            resourceTokenService);
+            resourceTokenService,
+            2);
+  }
+
+  @AfterEach
+  void afterEach() {
+    ActiveLaneAccessor.resetActiveLaneName();
   }
 
   @Test
@@ -142,6 +158,51 @@ class CommandsImplTest {
     assertSame(rexp, commands.evaluate("ls()", false).get());
   }
 
+  @Test
+  void testEvaluateBatch() throws Exception {
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+    InputStream stream = new ByteArrayInputStream(new byte[] {0x1});
+    String assignment =
+        """
+        is.null(base::assign('.armadillo_batch', value=base::list(
+        base::tryCatch(base::list(result = {base::assign('D', value={E}); NULL}), \
+        error = function(e) base::list(error = base::conditionMessage(e))),
+        base::tryCatch(base::list(result = {mean(D)}), \
+        error = function(e) base::list(error = base::conditionMessage(e))))))""";
+    when(rExecutorService.execute(assignment, rConnection)).thenReturn(rexp);
+    when(rExecutorService.execute(
+            "base::vapply(.armadillo_batch, function(s) if (base::is.null(s$error)) '' else"
+                + " s$error, base::character(1))",
+            rConnection))
+        .thenReturn(rexp);
+    when(rexp.asStrings()).thenReturn(new String[] {"", "object 'D' not found"});
+    when(rExecutorService.executeStream(
+            "base::tryCatch(.armadillo_batch, finally = base::rm('.armadillo_batch'))",
+            rConnection))
+        .thenReturn(stream);
+
+    BatchResult result =
+        commands
+            .evaluateBatch(
+                List.of(BatchStatement.assign("D", "E"), BatchStatement.aggregate("mean(D)")))
+            .get();
+
+    assertSame(stream, result.result());
+    assertEquals(Map.of(1, "object 'D' not found"), result.errors());
+  }
+
+  @Test
+  void testEvaluateStream() throws Exception {
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+    InputStream stream = new ByteArrayInputStream(new byte[] {0x1});
+    when(rExecutorService.executeStream("ls()", rConnection)).thenReturn(stream);
+
+    assertSame(stream, commands.evaluateStream("ls()").get());
+    assertEquals(Optional.empty(), commands.getLastExecution());
+  }
+
   @Test
   void testSaveWorkspace() throws Exception {
     when(connectionFactory.createConnection()).thenReturn(rConnection);
@@ -173,11 +234,12 @@ class CommandsImplTest {
 
   @Test
   void testLoadTable() throws Exception {
-    when(armadilloStorage.loadTable("project", "folder/table")).thenReturn(inputStream);
+    when(armadilloStorage.loadTable("project", "folder/table", List.of("col1", "col2"), null))
+        .thenReturn(inputStream);
     when(connectionFactory.createConnection()).thenReturn(rConnection);
     when(processService.getPid(rConnection)).thenReturn(218);
 
-    commands.loadTable("D", "project/folder/table", List.of("col1", "col2")).get();
+    commands.loadTable("D", "project/folder/table", List.of("col1", "col2"), null).get();
 
     verify(rExecutorService)
         .loadTable(
@@ -188,6 +250,23 @@ class CommandsImplTest {
             eq(List.of("col1", "col2")));
   }
 
+  @Test
+  void testLoadTableWithFilterUsesThresholdOfProfile() throws Exception {
+    RowFilter filter = RowFilter.parse("age > 18");
+    ProfileConfig profileConfig = mock(ProfileConfig.class);
+    when(profileConfig.getOptions()).thenReturn(Map.of("nfilter.subset", "5"));
+    when(profileService.getByName("default")).thenReturn(profileConfig);
+    when(armadilloStorage.getMinFilteredRows(Map.of("nfilter.subset", "5"))).thenReturn(5);
+    when(armadilloStorage.loadTable("project", "folder/table", List.of(), filter, 5))
+        .thenReturn(inputStream);
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+
+    commands.loadTable("D", "project/folder/table", List.of(), filter).get();
+
+    verify(armadilloStorage).loadTable("project", "folder/table", List.of(), filter, 5);
+  }
+
   @Test
   void testInstallPackage() throws Exception {
     ArmadilloCommandImpl<REXP> command =
@@ -210,6 +289,94 @@ class CommandsImplTest {
     assertSame(result, commands.getPackages().get());
   }
 
+  @Test
+  void testLanesRunInParallel() throws Exception {
+    RServerConnection laneConnection = mock(RServerConnection.class);
+    when(connectionFactory.createConnection()).thenReturn(laneConnection, rConnection);
+    when(processService.getPid(any())).thenReturn(218);
+    // a thread per command, like the executor of the application
+    CommandsImpl commands =
+        new CommandsImpl(
+            armadilloStorage,
+            packageService,
+            rExecutorService,
+            new SimpleAsyncTaskExecutor(),
+            new ArmadilloSessionPool(connectionFactory, processService, profileService, 1, 0),
+            profileService,
+            resourceTokenService,
+            2);
+    CountDownLatch fitting = new CountDownLatch(1);
+    ActiveLaneAccessor.setActiveLaneName("fit");
+    CompletableFuture<RServerResult> fit =
+        commands.schedule(
+            new ArmadilloCommandImpl<>("fit", true) {
+              @Override
+              protected RServerResult doWithConnection(RServerConnection connection) {
+                assertSame(laneConnection, connection);
+                try {
+                  fitting.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                return rexp;
+              }
+            });
+
+    ActiveLaneAccessor.resetActiveLaneName();
+    when(rExecutorService.execute("ls()", false, rConnection)).thenReturn(rexp);
+    assertSame(rexp, commands.evaluate("ls()").get(10, TimeUnit.SECONDS));
+    assertFalse(fit.isDone());
+
+    fitting.countDown();
+    assertSame(rexp, fit.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testLastCommandPerLane() throws Exception {
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+    when(rExecutorService.execute(any(), eq(false), eq(rConnection))).thenReturn(rexp);
+    commands.evaluate("ls()").get();
+    ActiveLaneAccessor.setActiveLaneName("fit");
+    assertEquals(Optional.empty(), commands.getLastCommand());
+
+    commands.evaluate("fit()").get();
+
+    assertEquals("fit()", commands.getLastCommand().orElseThrow().expression());
+    ActiveLaneAccessor.resetActiveLaneName();
+    assertEquals("ls()", commands.getLastCommand().orElseThrow().expression());
+    assertEquals(List.of("default", "fit"), commands.getLanes());
+  }
+
+  @Test
+  void testTooManyLanes() throws Exception {
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+    ActiveLaneAccessor.setActiveLaneName("fit");
+    commands.evaluate("fit()").get();
+
+    ActiveLaneAccessor.setActiveLaneName("plot");
+    assertThrows(TooManySessionLanesException.class, () -> commands.evaluate("plot()"));
+  }
+
+  @Test
+  void testCloseLane() throws Exception {
+    when(connectionFactory.createConnection()).thenReturn(rConnection);
+    when(processService.getPid(rConnection)).thenReturn(218);
+    ActiveLaneAccessor.setActiveLaneName("fit");
+    commands.evaluate("fit()").get();
+
+    commands.closeLane("fit");
+
+    verify(rConnection).close();
+    assertEquals(List.of(), commands.getLanes());
+  }
+
+  @Test
+  void testCloseDefaultLane() {
+    assertThrows(InvalidSessionLaneException.class, () -> commands.closeLane("default"));
+  }
+
   @Test
   void testCleanup() {
     commands.preDestroy();
@@ -307,7 +474,18 @@ class CommandsImplTest {
   @Test
   void testExtractResourceInfo() {
     String fileInfo =
-        "X\u0000\u0000\u0000\u0003\u0000\u0004\u0005\u0000\u0000\u0003\u0005\u0000\u0000\u0000\u0000\u0005UTF-8\u0000\u0000\u0003\u0013\u0000\u0000\u0000\u0005\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000\u0004test\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000Uhttp://host.docker.internal:8080/storage/projects/omics/objects/ewas%2Fgse66351_1.rda\u0000\u0000\u0000�\u0000\u0000\u0000�\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000ExpressionSet\u0000\u0000\u0004\u0002\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000\u0005names\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0005\u0000\u0004\u0000\t\u0000\u0000\u0000\u0004name\u0000\u0004\u0000\t\u0000\u0000\u0000\u0003url\u0000\u0004\u0000\t\u0000\u0000\u0000\bidentity\u0000\u0004\u0000\t\u0000\u0000\u0000\u0006secret\u0000\u0004\u0000\t\u0000\u0000\u0000\u0006format\u0000\u0000\u0004\u0002\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000\u0005class\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000\t\u0000\u0000\u0000\bresource\u0000\u0000\u0000�";
+        "X\u0000\u0000\u0000\u0003\u0000\u0004\u0005\u0000\u0000\u0003\u0005\u0000\u0000\u0000\u0000\u0005UTF-8\u0000\u0000\u0003\u0013\u0000\u0000\u0000\u0005\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0004test\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000Uhttp://host.docker.internal:8080/storage/projects/omics/objects/ewas%2Fgse66351_1.rda\u0000\u0000\u0000�\u0000\u0000\u0000�\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000ExpressionSet\u0000\u0000\u0004\u0002\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0005names\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0005\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0004name\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0003url\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\bidentity\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0006secret\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0006format\u0000\u0000\u0004\u0002\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\u0005class\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0001\u0000\u0004\u0000"
+            + "\t\u0000\u0000\u0000\bresource\u0000\u0000\u0000�";
 
     HashMap<String, String> result = commands.extractResourceInfo(fileInfo);
 
@@ -3,8 +3,15 @@ package org.molgenis.armadillo.controller;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.doThrow;
 import static org.molgenis.armadillo.controller.ArmadilloUtils.createRawResponse;
+import static org.molgenis.armadillo.controller.ArmadilloUtils.createStreamingResponse;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -40,6 +47,26 @@ class ArmadilloUtilsTest {
     assertThrows(IllegalStateException.class, () -> createRawResponse(rexp));
   }
 
+  @Test
+  void testCreateStreamingResponse() throws IOException {
+    byte[] bytes = new byte[100_000];
+    new Random(1).nextBytes(bytes);
+    AtomicBoolean closed = new AtomicBoolean();
+    InputStream result =
+        new ByteArrayInputStream(bytes) {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    createStreamingResponse(result).writeTo(out);
+
+    assertArrayEquals(bytes, out.toByteArray());
+    assertTrue(closed.get());
+  }
+
   @Test
   void testHexDumpHelloWorld() {
     byte[] bytes = "Hello World!".getBytes(Charset.defaultCharset());
@@ -10,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.molgenis.armadillo.command.ActiveLaneAccessor.LANE_HEADER;
 import static org.molgenis.armadillo.controller.DataController.TABLE_RESOURCE_REGEX;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.LINK_FILE;
 import static org.molgenis.armadillo.storage.ArmadilloStorageService.PARQUET;
@@ -20,10 +21,12 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.github.dockerjava.api.DockerClient;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.security.Principal;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -31,16 +34,21 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.molgenis.armadillo.MockMvcValidationConfiguration;
 import org.molgenis.armadillo.TestSecurityConfig;
+import org.molgenis.armadillo.command.ActiveLaneAccessor;
 import org.molgenis.armadillo.command.ArmadilloCommandDTO;
+import org.molgenis.armadillo.command.BatchResult;
+import org.molgenis.armadillo.command.BatchStatement;
 import org.molgenis.armadillo.command.Commands;
 import org.molgenis.armadillo.command.Commands.ArmadilloCommandStatus;
 import org.molgenis.armadillo.exceptions.ExpressionException;
+import org.molgenis.armadillo.exceptions.InvalidRowFilterException;
 import org.molgenis.armadillo.exceptions.UnknownProfileException;
 import org.molgenis.armadillo.exceptions.UnknownVariableException;
 import org.molgenis.armadillo.service.DSEnvironmentCache;
 import org.molgenis.armadillo.service.ExpressionRewriter;
 import org.molgenis.armadillo.storage.ArmadilloLinkFile;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
+import org.molgenis.r.exceptions.RExecutionException;
 import org.molgenis.r.model.RPackage;
 import org.molgenis.r.rock.RockResult;
 import org.molgenis.r.rserve.RserveResult;
@@ -52,6 +60,7 @@ import org.rosuda.REngine.REXPDouble;
 import org.rosuda.REngine.REXPRaw;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.actuate.audit.listener.AuditApplicationEvent;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -61,7 +70,7 @@ import org.springframework.test.web.servlet.MvcResult;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest({DataController.class, MockMvcValidationConfiguration.class})
-@Import({TestSecurityConfig.class})
+@Import({TestSecurityConfig.class, SynchronousStreamingConfig.class})
 class DataControllerTest extends ArmadilloControllerTestBase {
 
   private static final RPackage BASE =
@@ -137,8 +146,7 @@ class DataControllerTest extends ArmadilloControllerTestBase {
   @Test
   @WithMockUser
   void getGetTables() throws Exception {
-    when(armadilloStorage.listProjects()).thenReturn(List.of("gecko"));
-    when(armadilloStorage.listTables("gecko"))
+    when(armadilloStorage.listVisibleTables())
         .thenReturn(List.of("gecko/1_1_core_2_1/core", "gecko/1_1_core_2_2/core"));
 
     mockMvc
@@ -345,6 +353,48 @@ class DataControllerTest extends ArmadilloControllerTestBase {
     verifyNoInteractions(applicationEventPublisher);
   }
 
+  @Test
+  @WithMockUser
+  void testGetLastCommandOfLane() throws Exception {
+    when(commands.getLastCommand())
+        .thenAnswer(
+            invocation -> {
+              assertEquals("fit", ActiveLaneAccessor.getActiveLaneName());
+              return Optional.empty();
+            });
+
+    mockMvc
+        .perform(get("/lastcommand").header(LANE_HEADER, "fit").accept(APPLICATION_JSON))
+        .andExpect(status().isNotFound());
+
+    verify(commands).getLastCommand();
+  }
+
+  @Test
+  @WithMockUser
+  void testGetLanes() throws Exception {
+    when(commands.getLanes()).thenReturn(List.of("default", "fit"));
+
+    mockMvc
+        .perform(get("/lanes").session(session))
+        .andExpect(status().isOk())
+        .andExpect(content().json("[\"default\", \"fit\"]"));
+  }
+
+  @Test
+  @WithMockUser
+  void testCloseLane() throws Exception {
+    mockMvc.perform(delete("/lanes/fit").session(session)).andExpect(status().isNoContent());
+
+    verify(commands).closeLane("fit");
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            "CLOSE_SESSION_LANE",
+            Map.of("sessionId", sessionId, "roles", List.of("ROLE_USER"), "lane", "fit")));
+  }
+
   @Test
   @WithMockUser(username = "henk")
   void testDeleteWorkspace() throws Exception {
@@ -463,17 +513,23 @@ class DataControllerTest extends ArmadilloControllerTestBase {
     String rewrittenExpression = "dsBase::meanDS(D$age)";
     when(expressionRewriter.rewriteAggregate(expression)).thenReturn(rewrittenExpression);
 
-    when(commands.evaluate(rewrittenExpression, true))
-        .thenReturn(completedFuture(new RockResult(new REXPRaw(new byte[0]))));
+    byte[] bytes = {0x0, 0x1, 0x2};
+    when(commands.evaluateStream(rewrittenExpression))
+        .thenReturn(completedFuture(new ByteArrayInputStream(bytes)));
 
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/execute")
+                    .session(session)
+                    .accept(APPLICATION_OCTET_STREAM)
+                    .contentType(TEXT_PLAIN)
+                    .content(expression))
+            .andReturn();
     mockMvc
-        .perform(
-            post("/execute")
-                .session(session)
-                .accept(APPLICATION_OCTET_STREAM)
-                .contentType(TEXT_PLAIN)
-                .content(expression))
-        .andExpect(status().isOk());
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(bytes));
 
     auditEventValidator.validateAuditEvent(
         new AuditEvent(
@@ -560,6 +616,201 @@ class DataControllerTest extends ArmadilloControllerTestBase {
                 "meanDS(D$age)")));
   }
 
+  @Test
+  @WithMockUser
+  void testExecuteBatch() throws Exception {
+    when(expressionRewriter.rewriteAssign("asFactorDS(D$sex)"))
+        .thenReturn("dsBase::asFactorDS(D$sex)");
+    when(expressionRewriter.rewriteAggregate("meanDS(D$age)")).thenReturn("dsBase::meanDS(D$age)");
+    byte[] bytes = {0x0, 0x1, 0x2};
+    when(commands.evaluateBatch(
+            List.of(
+                BatchStatement.assign("sex", "dsBase::asFactorDS(D$sex)"),
+                BatchStatement.aggregate("dsBase::meanDS(D$age)"))))
+        .thenReturn(completedFuture(new BatchResult(new ByteArrayInputStream(bytes), Map.of())));
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/batch")
+                    .session(session)
+                    .accept(APPLICATION_OCTET_STREAM)
+                    .contentType(APPLICATION_JSON)
+                    .content(
+                        "[{\"symbol\": \"sex\", \"expression\": \"asFactorDS(D$sex)\"},"
+                            + " {\"expression\": \"meanDS(D$age)\"}]"))
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(bytes));
+
+    verify(applicationEventPublisher, times(2)).publishEvent(eventCaptor.capture());
+    List<AuditEvent> events =
+        eventCaptor.getAllValues().stream().map(AuditApplicationEvent::getAuditEvent).toList();
+    assertEquals("ASSIGN", events.get(0).getType());
+    assertEquals(
+        Map.of(
+            "sessionId",
+            sessionId,
+            "roles",
+            List.of("ROLE_USER"),
+            "symbol",
+            "sex",
+            "expression",
+            "asFactorDS(D$sex)"),
+        events.get(0).getData());
+    assertEquals("EXECUTE", events.get(1).getType());
+    assertEquals(
+        Map.of(
+            "sessionId", sessionId, "roles", List.of("ROLE_USER"), "expression", "meanDS(D$age)"),
+        events.get(1).getData());
+  }
+
+  @Test
+  @WithMockUser
+  void testExecuteBatchAuditsFailedStatement() throws Exception {
+    when(expressionRewriter.rewriteAssign("asFactorDS(D$sex)"))
+        .thenReturn("dsBase::asFactorDS(D$sex)");
+    when(expressionRewriter.rewriteAggregate("meanDS(D$age)")).thenReturn("dsBase::meanDS(D$age)");
+    byte[] bytes = {0x0, 0x1, 0x2};
+    when(commands.evaluateBatch(any()))
+        .thenReturn(
+            completedFuture(
+                new BatchResult(
+                    new ByteArrayInputStream(bytes), Map.of(0, "object 'D' not found"))));
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/batch")
+                    .session(session)
+                    .accept(APPLICATION_OCTET_STREAM)
+                    .contentType(APPLICATION_JSON)
+                    .content(
+                        "[{\"symbol\": \"sex\", \"expression\": \"asFactorDS(D$sex)\"},"
+                            + " {\"expression\": \"meanDS(D$age)\"}]"))
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(bytes));
+
+    verify(applicationEventPublisher, times(2)).publishEvent(eventCaptor.capture());
+    List<AuditEvent> events =
+        eventCaptor.getAllValues().stream().map(AuditApplicationEvent::getAuditEvent).toList();
+    assertEquals("ASSIGN_FAILURE", events.get(0).getType());
+    assertEquals(
+        Map.of(
+            "sessionId",
+            sessionId,
+            "roles",
+            List.of("ROLE_USER"),
+            "symbol",
+            "sex",
+            "expression",
+            "asFactorDS(D$sex)",
+            "message",
+            "object 'D' not found",
+            "type",
+            RExecutionException.class.getName()),
+        events.get(0).getData());
+    assertEquals("EXECUTE", events.get(1).getType());
+  }
+
+  @Test
+  @WithMockUser
+  void testExecuteBatchThatCouldNotBeEvaluated() throws Exception {
+    when(expressionRewriter.rewriteAssign("asFactorDS(D$sex)"))
+        .thenReturn("dsBase::asFactorDS(D$sex)");
+    when(expressionRewriter.rewriteAggregate("meanDS(D$age)")).thenReturn("dsBase::meanDS(D$age)");
+    when(commands.evaluateBatch(any()))
+        .thenReturn(failedFuture(new RExecutionException("Connection refused")));
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/batch")
+                    .session(session)
+                    .accept(APPLICATION_OCTET_STREAM)
+                    .contentType(APPLICATION_JSON)
+                    .content(
+                        "[{\"symbol\": \"sex\", \"expression\": \"asFactorDS(D$sex)\"},"
+                            + " {\"expression\": \"meanDS(D$age)\"}]"))
+            .andReturn();
+    mockMvc.perform(asyncDispatch(result)).andExpect(status().isInternalServerError());
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            "EXECUTE_BATCH_FAILURE",
+            Map.of(
+                "sessionId",
+                sessionId,
+                "roles",
+                List.of("ROLE_USER"),
+                "expressions",
+                List.of("asFactorDS(D$sex)", "meanDS(D$age)"),
+                "message",
+                "Connection refused",
+                "type",
+                RExecutionException.class.getName())));
+  }
+
+  @Test
+  @WithMockUser
+  void testExecuteBatchSyntaxError() throws Exception {
+    when(expressionRewriter.rewriteAggregate("meanDS(D$age)")).thenReturn("dsBase::meanDS(D$age)");
+    doThrow(new ExpressionException("meanDS(D$age", new ParseException("Missing end bracket")))
+        .when(expressionRewriter)
+        .rewriteAggregate("meanDS(D$age");
+
+    mockMvc
+        .perform(
+            post("/batch")
+                .session(session)
+                .accept(APPLICATION_OCTET_STREAM)
+                .contentType(APPLICATION_JSON)
+                .content(
+                    "[{\"expression\": \"meanDS(D$age)\"}, {\"expression\": \"meanDS(D$age\"}]"))
+        .andExpect(status().isBadRequest());
+
+    verify(commands, never()).evaluateBatch(any());
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            "EXECUTE_FAILURE",
+            Map.of(
+                "sessionId",
+                sessionId,
+                "roles",
+                List.of("ROLE_USER"),
+                "expression",
+                "meanDS(D$age",
+                "type",
+                "ExpressionException",
+                "message",
+                "Error parsing expression 'meanDS(D$age':\nMissing end bracket")));
+  }
+
+  @Test
+  @WithMockUser
+  void testExecuteBatchInvalidSymbol() {
+    assertThrows(
+        jakarta.servlet.ServletException.class,
+        () ->
+            mockMvc.perform(
+                post("/batch")
+                    .session(session)
+                    .accept(APPLICATION_OCTET_STREAM)
+                    .contentType(APPLICATION_JSON)
+                    .content("[{\"symbol\": \"_sex\", \"expression\": \"asFactorDS(D$sex)\"}]")));
+
+    verifyNoInteractions(commands);
+  }
+
   @Test
   @WithMockUser
   void testAssignSyntaxError() throws Exception {
@@ -756,7 +1007,7 @@ class DataControllerTest extends ArmadilloControllerTestBase {
   void testLoadTable() throws Exception {
     when(armadilloStorage.hasObject("project", "folder/table.alf")).thenReturn(false);
     when(armadilloStorage.hasObject("project", "folder/table.parquet")).thenReturn(true);
-    when(commands.loadTable("D", "project/folder/table", emptyList()))
+    when(commands.loadTable("D", "project/folder/table", emptyList(), null))
         .thenReturn(completedFuture(null));
 
     mockMvc
@@ -804,8 +1055,9 @@ class DataControllerTest extends ArmadilloControllerTestBase {
     when(armadilloStorage.hasObject(sourceProject, sourceObject + PARQUET)).thenReturn(true);
     when(commands.loadTable(
             "D",
-            sourceProject + "/" + sourceObject,
-            new ArrayList<>(Arrays.asList(variables.split(",")))))
+            project + "/" + linkObject,
+            new ArrayList<>(Arrays.asList(variables.split(","))),
+            null))
         .thenReturn(completedFuture(null));
     mockMvc
         .perform(
@@ -854,7 +1106,7 @@ class DataControllerTest extends ArmadilloControllerTestBase {
     when(alfMock.getSourceProject()).thenReturn(sourceProject);
     when(alfMock.getVariables()).thenReturn(variables);
     when(armadilloStorage.hasObject(sourceProject, sourceObject + PARQUET)).thenReturn(true);
-    when(commands.loadTable("D", sourceProject + "/" + sourceObject, selectedVariables))
+    when(commands.loadTable("D", project + "/" + linkObject, selectedVariables, null))
         .thenReturn(completedFuture(null));
     mockMvc
         .perform(
@@ -927,7 +1179,7 @@ class DataControllerTest extends ArmadilloControllerTestBase {
   void testLoadTableWithVariables() throws Exception {
     when(armadilloStorage.hasObject("project", "folder/table.alf")).thenReturn(false);
     when(armadilloStorage.hasObject("project", "folder/table.parquet")).thenReturn(true);
-    when(commands.loadTable("D", "project/folder/table", List.of("age", "weight")))
+    when(commands.loadTable("D", "project/folder/table", List.of("age", "weight"), null))
         .thenReturn(completedFuture(null));
 
     mockMvc
@@ -956,6 +1208,92 @@ class DataControllerTest extends ArmadilloControllerTestBase {
                 "table")));
   }
 
+  @Test
+  @WithMockUser
+  void testLoadTableWithFilter() throws Exception {
+    when(armadilloStorage.hasObject("project", "folder/table.alf")).thenReturn(false);
+    when(armadilloStorage.hasObject("project", "folder/table.parquet")).thenReturn(true);
+    when(commands.loadTable(
+            eq("D"),
+            eq("project/folder/table"),
+            eq(emptyList()),
+            argThat(filter -> filter.toString().equals("age >= 18"))))
+        .thenReturn(completedFuture(null));
+
+    mockMvc
+        .perform(
+            post("/load-table")
+                .param("symbol", "D")
+                .param("table", "project/folder/table")
+                .param("filter", "age >= 18")
+                .session(session))
+        .andExpect(status().isOk());
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            "LOAD_TABLE",
+            Map.of(
+                "symbol",
+                "D",
+                "sessionId",
+                sessionId,
+                "roles",
+                List.of("ROLE_USER"),
+                "project",
+                "project",
+                "folder",
+                "folder",
+                "table",
+                "table",
+                "filter",
+                "age >= 18")));
+  }
+
+  @Test
+  @WithMockUser
+  void testLoadTableWithRefusedFilter() throws Exception {
+    when(armadilloStorage.hasObject("project", "folder/table.alf")).thenReturn(false);
+    when(armadilloStorage.hasObject("project", "folder/table.parquet")).thenReturn(true);
+    when(commands.loadTable(eq("D"), eq("project/folder/table"), eq(emptyList()), any()))
+        .thenReturn(
+            CompletableFuture.failedFuture(
+                new CompletionException(
+                    new InvalidRowFilterException("age >= 18", "it selects fewer than 3 rows"))));
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/load-table")
+                    .param("symbol", "D")
+                    .param("table", "project/folder/table")
+                    .param("filter", "age >= 18")
+                    .session(session))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isBadRequest())
+        .andExpect(status().reason("Invalid filter 'age >= 18': it selects fewer than 3 rows"));
+  }
+
+  @Test
+  @WithMockUser
+  void testLoadTableWithInvalidFilter() throws Exception {
+    mockMvc
+        .perform(
+            post("/load-table")
+                .param("symbol", "D")
+                .param("table", "project/folder/table")
+                .param("filter", "age => 18")
+                .session(session))
+        .andExpect(status().isBadRequest());
+
+    verifyNoInteractions(commands);
+  }
+
   @ParameterizedTest
   @ValueSource(
       strings = {
@@ -6,11 +6,14 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.molgenis.armadillo.audit.AuditEventPublisher.*;
 import static org.molgenis.armadillo.security.ResourceTokenService.INTERNAL_ISSUER;
+import static org.springframework.http.HttpHeaders.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.github.dockerjava.api.DockerClient;
@@ -18,11 +21,17 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.molgenis.armadillo.TestSecurityConfig;
@@ -30,6 +39,12 @@ import org.molgenis.armadillo.exceptions.*;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 import org.molgenis.armadillo.storage.ArmadilloStorageService;
 import org.molgenis.armadillo.storage.FileInfo;
+import org.molgenis.armadillo.storage.ObjectMetadata;
+import org.molgenis.armadillo.storage.ParquetWriteOptions;
+import org.molgenis.armadillo.storage.UploadJob;
+import org.molgenis.armadillo.storage.UploadJobService;
+import org.molgenis.armadillo.storage.UploadProgress;
+import org.molgenis.armadillo.storage.VariableSearchResult;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
@@ -49,8 +64,10 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
 
   @MockitoBean DockerClient dockerClient;
   @MockitoBean ArmadilloStorageService storage;
+  @MockitoBean UploadJobService uploadJobs;
 
   @Captor protected ArgumentCaptor<InputStream> inputStreamCaptor;
+  @TempDir Path tempDir;
 
   @Test
   @WithMockUser(roles = "SU")
@@ -95,6 +112,162 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
             mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "core/nonrep2.parquet"))));
   }
 
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadObjectAsync() throws Exception {
+    var file = mockMultipartFile("contents".getBytes());
+    var job = new UploadJob("job-1", "lifecycle", "core/nonrep2.parquet", 8, instant);
+    when(uploadJobs.submitObjectUpload(eq("lifecycle"), eq("core/nonrep2.parquet"), any()))
+        .thenReturn(job);
+
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/objects")
+                .file(file)
+                .session(session)
+                .param("object", "core/nonrep2.parquet")
+                .param("async", "true"))
+        .andExpect(status().isAccepted())
+        .andExpect(
+            content()
+                .json(
+                    "{\"id\": \"job-1\", \"status\": \"QUEUED\", \"object\":"
+                        + " \"core/nonrep2.parquet\", \"totalBytes\": 8, \"bytesRead\": 0}"));
+
+    verify(storage, never()).addObject(any(), any(), any());
+    verify(applicationEventPublisher, never()).publishEvent(any());
+
+    job.whenFinished().complete(job);
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            UPLOAD_OBJECT,
+            mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "core/nonrep2.parquet"))));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadCharacterSeparatedFileAsync() throws Exception {
+    var file = mockMultipartFile("contents".getBytes());
+    var job = new UploadJob("job-2", "lifecycle", "core/nonrep2.parquet", 8, instant);
+    when(uploadJobs.submitCsvUpload(
+            "lifecycle", "core/nonrep2.csv", file, 10, ParquetWriteOptions.Overrides.NONE))
+        .thenReturn(job);
+
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/csv")
+                .file(file)
+                .session(session)
+                .param("object", "core/nonrep2.csv")
+                .param("numberOfRowsToDetermineTypeBy", "10")
+                .param("async", "true"))
+        .andExpect(status().isAccepted())
+        .andExpect(content().json("{\"id\": \"job-2\", \"status\": \"QUEUED\"}"));
+
+    verify(storage, never()).writeParquetFromCsv(any(), any(), any(), anyInt(), any(), any());
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadCharacterSeparatedFileAsyncFails() throws Exception {
+    var file = mockMultipartFile("contents".getBytes());
+    var job = new UploadJob("job-2", "lifecycle", "core/nonrep2.parquet", 8, instant);
+    when(uploadJobs.submitCsvUpload(
+            "lifecycle", "core/nonrep2.csv", file, 10, ParquetWriteOptions.Overrides.NONE))
+        .thenReturn(job);
+
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/csv")
+                .file(file)
+                .session(session)
+                .param("object", "core/nonrep2.csv")
+                .param("numberOfRowsToDetermineTypeBy", "10")
+                .param("async", "true"))
+        .andExpect(status().isAccepted());
+    verify(applicationEventPublisher, never()).publishEvent(any());
+
+    job.whenFinished().completeExceptionally(new FileProcessingException("Cannot write parquet"));
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            UPLOAD_OBJECT + "_FAILURE",
+            mockSuAuditMap(
+                Map.of(
+                    PROJECT,
+                    "lifecycle",
+                    OBJECT,
+                    "core/nonrep2.csv",
+                    "message",
+                    "Cannot write parquet",
+                    "type",
+                    "org.molgenis.armadillo.exceptions.FileProcessingException"))));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetUploadJob() throws Exception {
+    var job = new UploadJob("job-1", "lifecycle", "core/nonrep2.parquet", 8, Instant.now());
+    job.addBytesRead(4);
+    job.addRowsWritten(2);
+    when(uploadJobs.getJob("job-1")).thenReturn(job);
+
+    mockMvc
+        .perform(get("/storage/jobs/job-1").session(session))
+        .andExpect(status().isOk())
+        .andExpect(
+            content()
+                .json(
+                    "{\"id\": \"job-1\", \"project\": \"lifecycle\", \"bytesRead\": 4,"
+                        + " \"rowsWritten\": 2, \"etaSeconds\": null}"));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetUnknownUploadJob() throws Exception {
+    when(uploadJobs.getJob("missing")).thenThrow(new UnknownUploadJobException("missing"));
+
+    mockMvc.perform(get("/storage/jobs/missing").session(session)).andExpect(status().isNotFound());
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadRefusedWhenBusy() throws Exception {
+    var file = mockMultipartFile("contents".getBytes());
+    when(uploadJobs.submitObjectUpload(any(), any(), any()))
+        .thenThrow(new UploadJobsBusyException(10));
+
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/objects")
+                .file(file)
+                .session(session)
+                .param("object", "core/nonrep2.parquet")
+                .param("async", "true"))
+        .andExpect(status().isServiceUnavailable());
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            UPLOAD_OBJECT + "_FAILURE",
+            mockSuAuditMap(
+                Map.of(
+                    PROJECT,
+                    "lifecycle",
+                    OBJECT,
+                    "core/nonrep2.parquet",
+                    "message",
+                    new UploadJobsBusyException(10).getMessage(),
+                    "type",
+                    UploadJobsBusyException.class.getName()))));
+  }
+
   @Test
   @WithMockUser(roles = "SU")
   void testAddObjectFails() {
@@ -120,7 +293,14 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
                 .param("numberOfRowsToDetermineTypeBy", String.valueOf(10)))
         .andExpect(status().isNoContent());
 
-    verify(storage).writeParquetFromCsv("lifecycle", "core/nonrep2.csv", file, 10);
+    verify(storage)
+        .writeParquetFromCsv(
+            "lifecycle",
+            "core/nonrep2.csv",
+            file,
+            10,
+            ParquetWriteOptions.Overrides.NONE,
+            UploadProgress.NONE);
 
     auditEventValidator.validateAuditEvent(
         new AuditEvent(
@@ -130,6 +310,63 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
             mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "core/nonrep2.csv"))));
   }
 
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadCharacterSeparatedFileWithLayout() throws Exception {
+    var file = mockMultipartFile("contents".getBytes());
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/csv")
+                .file(file)
+                .session(session)
+                .param("object", "core/nonrep2.csv")
+                .param("numberOfRowsToDetermineTypeBy", "10")
+                .param("compressionCodec", "SNAPPY")
+                .param("bloomFilterColumns", "id,name"))
+        .andExpect(status().isNoContent());
+
+    verify(storage)
+        .writeParquetFromCsv(
+            "lifecycle",
+            "core/nonrep2.csv",
+            file,
+            10,
+            new ParquetWriteOptions.Overrides(CompressionCodecName.SNAPPY, List.of("id", "name")),
+            UploadProgress.NONE);
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadCharacterSeparatedFileWithUnknownCodec() throws Exception {
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/csv")
+                .file(mockMultipartFile("contents".getBytes()))
+                .session(session)
+                .param("object", "core/nonrep2.csv")
+                .param("numberOfRowsToDetermineTypeBy", "10")
+                .param("compressionCodec", "FASTEST"))
+        .andExpect(status().isBadRequest());
+
+    verifyNoInteractions(storage);
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testUploadCharacterSeparatedFileWithUnsupportedCodec() throws Exception {
+    mockMvc
+        .perform(
+            multipart("/storage/projects/lifecycle/csv")
+                .file(mockMultipartFile("contents".getBytes()))
+                .session(session)
+                .param("object", "core/nonrep2.csv")
+                .param("numberOfRowsToDetermineTypeBy", "10")
+                .param("compressionCodec", "LZO"))
+        .andExpect(status().isBadRequest());
+
+    verifyNoInteractions(storage);
+  }
+
   @Test
   @WithMockUser(roles = "SU")
   void testUploadCharacterSeparatedTsvFile() throws Exception {
@@ -144,7 +381,14 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
                 .param("numberOfRowsToDetermineTypeBy", String.valueOf(10)))
         .andExpect(status().isNoContent());
 
-    verify(storage).writeParquetFromCsv("lifecycle", "core/nonrep2.tsv", file, 10);
+    verify(storage)
+        .writeParquetFromCsv(
+            "lifecycle",
+            "core/nonrep2.tsv",
+            file,
+            10,
+            ParquetWriteOptions.Overrides.NONE,
+            UploadProgress.NONE);
 
     auditEventValidator.validateAuditEvent(
         new AuditEvent(
@@ -161,7 +405,13 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
     var file = mockMultipartFile(contents);
     doThrow(new FileProcessingException("Cannot write parquet"))
         .when(storage)
-        .writeParquetFromCsv("lifecycle", "core/nonrep2.csv", file, 10);
+        .writeParquetFromCsv(
+            "lifecycle",
+            "core/nonrep2.csv",
+            file,
+            10,
+            ParquetWriteOptions.Overrides.NONE,
+            UploadProgress.NONE);
     mockMvc
         .perform(
             multipart("/storage/projects/lifecycle/csv")
@@ -503,9 +753,7 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
   @WithMockUser(roles = "SU")
   void testDownloadObject() throws Exception {
     var content = "content".getBytes();
-    var inputStream = new ByteArrayInputStream(content);
-    when(storage.loadObject("lifecycle", "test.parquet")).thenReturn(inputStream);
-    when(storage.getFileSizeIfObjectExists("shared-lifecycle", "test.parquet")).thenReturn(12345L);
+    when(storage.getObjectPath("lifecycle", "test.parquet")).thenReturn(writeObject(content));
 
     mockMvc
         .perform(get("/storage/projects/lifecycle/objects/test.parquet").session(session))
@@ -521,13 +769,117 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
             mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "test.parquet"))));
   }
 
+  @Test
+  @WithMockUser(roles = "SU")
+  void testDownloadObjectVersion() throws Exception {
+    var content = "content".getBytes();
+    when(storage.getObjectVersionPath("lifecycle", "test.parquet", "0000000001000"))
+        .thenReturn(writeObject(content));
+
+    mockMvc
+        .perform(
+            get("/storage/projects/lifecycle/objects/test.parquet")
+                .param("version", "0000000001000")
+                .session(session))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(content));
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            DOWNLOAD_OBJECT,
+            mockSuAuditMap(
+                Map.of(PROJECT, "lifecycle", OBJECT, "test.parquet", VERSION, "0000000001000"))));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testListObjectVersions() throws Exception {
+    when(storage.listObjectVersions("lifecycle", "test.parquet"))
+        .thenReturn(List.of(new ObjectMetadata("0000000001000", ZonedDateTime.now(), 7)));
+
+    mockMvc
+        .perform(get("/storage/projects/lifecycle/objects/test.parquet/versions").session(session))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].name").value("0000000001000"))
+        .andExpect(jsonPath("$[0].size").value(7));
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(
+            instant,
+            "user",
+            LIST_OBJECT_VERSIONS,
+            mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "test.parquet"))));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testDownloadObjectHasETag() throws Exception {
+    var path = writeObject("content".getBytes());
+    when(storage.getObjectPath("lifecycle", "test.parquet")).thenReturn(path);
+    var eTag = FileDownload.getETag(7, Files.getLastModifiedTime(path).toInstant());
+
+    mockMvc
+        .perform(get("/storage/projects/lifecycle/objects/test.parquet").session(session))
+        .andExpect(status().isOk())
+        .andExpect(header().string(ETAG, eTag))
+        .andExpect(header().string(ACCEPT_RANGES, "bytes"));
+
+    mockMvc
+        .perform(
+            get("/storage/projects/lifecycle/objects/test.parquet")
+                .header(IF_NONE_MATCH, eTag)
+                .session(session))
+        .andExpect(status().isNotModified())
+        .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testDownloadObjectRange() throws Exception {
+    when(storage.getObjectPath("lifecycle", "test.parquet"))
+        .thenReturn(writeObject("content".getBytes()));
+
+    mockMvc
+        .perform(
+            get("/storage/projects/lifecycle/objects/test.parquet")
+                .header(RANGE, "bytes=3-")
+                .session(session))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string(CONTENT_RANGE, "bytes 3-6/7"))
+        .andExpect(content().bytes("tent".getBytes()));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testDownloadObjectWithSendfile() throws Exception {
+    var path = writeObject("content".getBytes());
+    when(storage.getObjectPath("lifecycle", "test.parquet")).thenReturn(path);
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                get("/storage/projects/lifecycle/objects/test.parquet")
+                    .requestAttr(FileDownload.SENDFILE_SUPPORT, true)
+                    .session(session))
+            .andExpect(status().isOk())
+            .andExpect(header().longValue(CONTENT_LENGTH, 7))
+            .andExpect(content().bytes(new byte[0]))
+            .andReturn();
+
+    var request = result.getRequest();
+    assertEquals(
+        path.toFile().getCanonicalPath(), request.getAttribute(FileDownload.SENDFILE_FILENAME));
+    assertEquals(0L, request.getAttribute(FileDownload.SENDFILE_START));
+    assertEquals(7L, request.getAttribute(FileDownload.SENDFILE_END));
+  }
+
   @Test
   @WithMockUser(roles = "LIFECYCLE_RESEARCHER")
   void testDownloadObjectAsResearcher() throws Exception {
     var content = "content".getBytes();
-    var inputStream = new ByteArrayInputStream(content);
-    when(storage.loadObject("lifecycle", "test.parquet")).thenReturn(inputStream);
-    when(storage.getFileSizeIfObjectExists("shared-lifecycle", "test.parquet")).thenReturn(12345L);
+    when(storage.getObjectPath("lifecycle", "test.parquet")).thenReturn(writeObject(content));
 
     mockMvc
         .perform(get("/storage/projects/lifecycle/objects/test.parquet").session(session))
@@ -537,7 +889,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
   @Test
   @WithMockUser(roles = "SU")
   void testPreviewObject() throws Exception {
-    when(storage.getPreview("lifecycle", "test.parquet")).thenReturn(List.of(Map.of("foo", "bar")));
+    when(storage.getPreview("lifecycle", "test.parquet", 0, 10, List.of()))
+        .thenReturn(List.of(Map.of("foo", "bar")));
 
     mockMvc
         .perform(get("/storage/projects/lifecycle/objects/test.parquet/preview").session(session))
@@ -553,6 +906,76 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
             mockSuAuditMap(Map.of(PROJECT, "lifecycle", OBJECT, "test.parquet"))));
   }
 
+  @Test
+  @WithMockUser(roles = "SU")
+  void testPreviewObjectPage() throws Exception {
+    when(storage.getPreview("lifecycle", "test.parquet", 5000, 50, List.of("age", "sex")))
+        .thenReturn(List.of(Map.of("age", "10", "sex", "F")));
+
+    mockMvc
+        .perform(
+            get("/storage/projects/lifecycle/objects/test.parquet/preview")
+                .param("offset", "5000")
+                .param("limit", "50")
+                .param("columns", "age,sex")
+                .session(session))
+        .andExpect(status().isOk())
+        .andExpect(content().json("[{\"age\": \"10\", \"sex\": \"F\"}]"));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testPreviewObjectInvalidLimit() throws Exception {
+    when(storage.getPreview("lifecycle", "test.parquet", 0, 5000, List.of()))
+        .thenThrow(new IllegalArgumentException("Limit must be between 1 and 1000"));
+
+    mockMvc
+        .perform(
+            get("/storage/projects/lifecycle/objects/test.parquet/preview")
+                .param("limit", "5000")
+                .session(session))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testSearchVariables() throws Exception {
+    when(storage.searchVariables("ag", true, 100))
+        .thenReturn(
+            List.of(
+                new VariableSearchResult(
+                    "lifecycle", "core/nonrep.parquet", "age", "INT32", null)));
+
+    mockMvc
+        .perform(
+            get("/storage/variables")
+                .param("query", "ag")
+                .param("substring", "true")
+                .session(session))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(APPLICATION_JSON))
+        .andExpect(
+            content()
+                .json(
+                    "[{\"project\": \"lifecycle\", \"object\": \"core/nonrep.parquet\","
+                        + " \"variable\": \"age\", \"type\": \"INT32\"}]"));
+
+    auditEventValidator.validateAuditEvent(
+        new AuditEvent(instant, "user", SEARCH_VARIABLES, mockSuAuditMap(Map.of(QUERY, "ag"))));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testSearchVariablesInvalidLimit() throws Exception {
+    when(storage.searchVariables("ag", false, 5000))
+        .thenThrow(new IllegalArgumentException("Limit must be between 1 and 1000"));
+
+    mockMvc
+        .perform(
+            get("/storage/variables").param("query", "ag").param("limit", "5000").session(session))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   @WithMockUser(roles = "SU")
   void testCreateLinkedObject() throws Exception {
@@ -563,7 +986,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
         .perform(
             post("/storage/projects/lifecycle/objects/link")
                 .content(
-                    "{\"sourceProject\": \"lifecycle\", \"sourceObjectName\": \"test\", \"linkedObject\": \"my-link\", \"variables\": \"a,b,c\"}")
+                    "{\"sourceProject\": \"lifecycle\", \"sourceObjectName\": \"test\","
+                        + " \"linkedObject\": \"my-link\", \"variables\": \"a,b,c\"}")
                 .contentType(APPLICATION_JSON)
                 .session(session))
         .andExpect(status().isNoContent());
@@ -598,7 +1022,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
         .andExpect(
             content()
                 .json(
-                    "{\"name\": \"test.parquet\", \"size\": \"5 MB\", \"rows\": \"20000\", \"columns\": \"30\"}"));
+                    "{\"name\": \"test.parquet\", \"size\": \"5 MB\", \"rows\": \"20000\","
+                        + " \"columns\": \"30\"}"));
 
     auditEventValidator.validateAuditEvent(
         new AuditEvent(
@@ -613,7 +1038,7 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
   void testDownloadObjectNotExists() throws Exception {
     doThrow(new UnknownObjectException("lifecycle", "test.parquet"))
         .when(storage)
-        .loadObject("lifecycle", "test.parquet");
+        .getObjectPath("lifecycle", "test.parquet");
 
     mockMvc
         .perform(get("/storage/projects/lifecycle/objects/test.parquet").session(session))
@@ -668,7 +1093,7 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
             "column1", armadilloColumn1,
             "column2", armadilloColumn2);
 
-    when(storage.getMetadata("lifecycle", "test.parquet")).thenReturn(metadata);
+    when(storage.getMetadata("lifecycle", "test.parquet", true)).thenReturn(metadata);
 
     mockMvc
         .perform(get("/storage/projects/lifecycle/objects/test.parquet/metadata").session(session))
@@ -706,6 +1131,10 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
     return values;
   }
 
+  private Path writeObject(byte[] contents) throws IOException {
+    return Files.write(tempDir.resolve("test.parquet"), contents);
+  }
+
   private MockMultipartFile mockMultipartFile(byte[] contents) throws IOException {
     return new MockMultipartFile(
         "file",
@@ -717,10 +1146,7 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
   @Test
   void testDownloadRawfileWithResourceToken() throws Exception {
     var content = "content".getBytes();
-    var inputStream = new ByteArrayInputStream(content);
-
-    when(storage.loadObject("lifecycle", "test.parquet")).thenReturn(inputStream);
-    when(storage.getFileSizeIfObjectExists("shared-lifecycle", "test.parquet")).thenReturn(12345L);
+    when(storage.getObjectPath("lifecycle", "test.parquet")).thenReturn(writeObject(content));
     when(storage.getFilenameWithoutExtension("test.parquet")).thenReturn("test");
 
     mockMvc
@@ -766,7 +1192,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
     someException.ifPresent(
         se -> {
           assertEquals(
-              "403 FORBIDDEN \"403 FORBIDDEN \"Token has no permissions for resource project:lifecycle\"\"",
+              "403 FORBIDDEN \"403 FORBIDDEN \"Token has no permissions for resource"
+                  + " project:lifecycle\"\"",
               se.getMessage());
         });
   }
@@ -796,7 +1223,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
     someException.ifPresent(
         se -> {
           assertEquals(
-              "403 FORBIDDEN \"403 FORBIDDEN \"Token has no permissions for resource object:test.parquet\"\"",
+              "403 FORBIDDEN \"403 FORBIDDEN \"Token has no permissions for resource"
+                  + " object:test.parquet\"\"",
               se.getMessage());
         });
   }
@@ -825,7 +1253,8 @@ class StorageControllerTest extends ArmadilloControllerTestBase {
     someException.ifPresent(
         se -> {
           assertEquals(
-              "403 FORBIDDEN \"403 FORBIDDEN \"Token must be issued by armadillo application with correct permissions\"\"",
+              "403 FORBIDDEN \"403 FORBIDDEN \"Token must be issued by armadillo application with"
+                  + " correct permissions\"\"",
               se.getMessage());
         });
   }
@@ -0,0 +1,23 @@
+package org.molgenis.armadillo.controller;
+
+import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * Writes a StreamingResponseBody on the thread that dispatches the request, so the response is
+ * complete when the async dispatch returns. Otherwise the body is still being written while MockMvc
+ * prints the response, which fails now and then with a ConcurrentModificationException.
+ */
+@TestConfiguration
+class SynchronousStreamingConfig {
+
+  @Bean(APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+  AsyncTaskExecutor applicationTaskExecutor() {
+    return new TaskExecutorAdapter(new SyncTaskExecutor());
+  }
+}
@@ -2,7 +2,7 @@ package org.molgenis.armadillo.metadata;
 
 import static java.util.Collections.emptySet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 import java.util.List;
 import java.util.Map;
@@ -44,4 +44,17 @@ class AccessServiceTest {
 
     assertEquals(List.of(project2, project1), metadataService.projectsList());
   }
+
+  @Test
+  void testPermissionChangesInvalidateVisibleTables() {
+    var metadataService = new AccessService(storage, new DummyAccessLoader(), null);
+    metadataService.initialize();
+    clearInvocations(storage);
+
+    metadataService.permissionsAdd("bofke@gmail.com", "project1");
+    metadataService.permissionsDelete("bofke@gmail.com", "project1");
+    metadataService.projectsUpsert(ProjectDetails.create("project2", emptySet()));
+
+    verify(storage, times(3)).invalidateVisibleTables();
+  }
 }
@@ -0,0 +1,66 @@
+package org.molgenis.armadillo.profile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.molgenis.armadillo.profile.ActiveProfileNameAccessor.DEFAULT;
+import static org.molgenis.armadillo.profile.ActiveProfileNameAccessor.setActiveProfileName;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ProfileScopeTest {
+
+  private final ProfileScope profileScope = new ProfileScope();
+  private final List<String> destroyed = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() {
+    setActiveProfileName(DEFAULT);
+  }
+
+  private Object createBean(String profileName, String beanName) {
+    setActiveProfileName(profileName);
+    return profileScope.get(
+        beanName,
+        () -> {
+          profileScope.registerDestructionCallback(
+              beanName, () -> destroyed.add(profileName + "." + beanName));
+          return new Object();
+        });
+  }
+
+  @Test
+  void testRemoveAllProfileBeansDestroysBeansOfProfile() {
+    Object removed = createBean("donkey", "factory");
+    Object kept = createBean("donkey2", "factory");
+
+    profileScope.removeAllProfileBeans("donkey");
+
+    assertEquals(List.of("donkey.factory"), destroyed);
+    assertSame(kept, profileScope.get("factory", Object::new));
+    setActiveProfileName("donkey");
+    assertNotSame(removed, profileScope.get("factory", Object::new));
+  }
+
+  @Test
+  void testRemoveLeavesDestroyingToCaller() {
+    createBean("donkey", "factory");
+
+    assertNotNull(profileScope.remove("factory"));
+    profileScope.removeAllProfileBeans("donkey");
+
+    assertEquals(List.of(), destroyed);
+  }
+
+  @Test
+  void testDestroyAllProfileBeans() {
+    createBean("donkey", "factory");
+    createBean("donkey2", "factory");
+
+    profileScope.destroyAllProfileBeans();
+
+    assertEquals(2, destroyed.size());
+    assertTrue(destroyed.containsAll(List.of("donkey.factory", "donkey2.factory")));
+  }
+}
@@ -0,0 +1,156 @@
+package org.molgenis.armadillo.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.molgenis.armadillo.ArmadilloSession;
+import org.molgenis.armadillo.metadata.ProfileConfig;
+import org.molgenis.armadillo.metadata.ProfileService;
+import org.molgenis.r.RServerConnection;
+import org.molgenis.r.RServerException;
+import org.molgenis.r.rock.RockServerException;
+import org.molgenis.r.service.ProcessService;
+
+@ExtendWith(MockitoExtension.class)
+class ArmadilloSessionPoolTest {
+
+  @Mock ArmadilloConnectionFactory connectionFactory;
+  @Mock ProcessService processService;
+  @Mock ProfileService profileService;
+  @Mock ProfileConfig profileConfig;
+
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final List<RServerConnection> connections = new ArrayList<>();
+  private ArmadilloSessionPool pool;
+
+  @BeforeEach
+  void beforeEach() {
+    lenient()
+        .when(connectionFactory.createConnection())
+        .thenAnswer(
+            invocation -> {
+              RServerConnection connection = mock(RServerConnection.class);
+              connections.add(connection);
+              return connection;
+            });
+    lenient().when(profileService.getByName("default")).thenReturn(profileConfig);
+    pool =
+        new ArmadilloSessionPool(
+            connectionFactory, processService, profileService, 1, 2, tasks::add);
+  }
+
+  private void runTasks() {
+    List.copyOf(tasks).forEach(Runnable::run);
+    tasks.clear();
+  }
+
+  @Test
+  void testDisabled() {
+    pool = new ArmadilloSessionPool(connectionFactory, processService, profileService, 1, 0, null);
+
+    assertNotNull(pool.take());
+    assertNotNull(pool.take());
+
+    assertEquals(2, connections.size());
+    assertEquals(0, pool.getIdleCount("default"));
+    verifyNoInteractions(profileService);
+  }
+
+  @Test
+  void testTakeStartsSessionAndRefillsInTheBackground() {
+    assertNotNull(pool.take());
+    assertEquals(1, connections.size());
+    assertEquals(1, tasks.size());
+
+    runTasks();
+
+    assertEquals(2, pool.getIdleCount("default"));
+    assertEquals(3, connections.size());
+  }
+
+  @Test
+  void testTakeUsesIdleSession() {
+    pool.warmUp("default");
+    runTasks();
+
+    pool.take();
+
+    assertEquals(2, connections.size());
+    assertEquals(1, pool.getIdleCount("default"));
+    // above the minimum, so no refill yet
+    assertEquals(List.of(), tasks);
+  }
+
+  @Test
+  void testTakeDropsDeadSession() throws RServerException {
+    pool.warmUp("default");
+    runTasks();
+    for (RServerConnection connection : connections) {
+      when(connection.eval("base::TRUE")).thenThrow(new RockServerException("gone"));
+    }
+
+    ArmadilloSession session = pool.take();
+
+    assertNotNull(session);
+    assertEquals(3, connections.size());
+    connections.subList(0, 2).forEach(connection -> verify(connection).close());
+  }
+
+  @Test
+  void testTakeDropsSessionOfChangedProfile() {
+    pool.warmUp("default");
+    runTasks();
+    when(profileService.getByName("default")).thenReturn(mock(ProfileConfig.class));
+
+    pool.take();
+
+    assertEquals(3, connections.size());
+    connections.subList(0, 2).forEach(connection -> verify(connection).close());
+  }
+
+  @Test
+  void testFailedRefillIsRetried() {
+    when(connectionFactory.createConnection()).thenThrow(new IllegalStateException("R is down"));
+    pool.warmUp("default");
+    runTasks();
+
+    assertEquals(0, pool.getIdleCount("default"));
+    pool.warmUp("default");
+    assertEquals(1, tasks.size());
+  }
+
+  @Test
+  void testShutdownClosesIdleSessions() {
+    pool.warmUp("default");
+    runTasks();
+
+    pool.shutdown();
+
+    connections.forEach(connection -> verify(connection).close());
+    assertEquals(0, pool.getIdleCount("default"));
+  }
+
+  @Test
+  void testMetrics() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    pool.bindTo(registry);
+    pool.take();
+    runTasks();
+
+    assertEquals(
+        2, registry.get("rserve.session.pool.idle").tag("environment", "default").gauge().value());
+    assertEquals(1, registry.get("rserve.session.pool.checkout").functionTimer().count());
+    assertEquals(2, registry.get("rserve.session.pool.refill").functionTimer().count());
+    verify(processService, times(3)).getPid(any());
+  }
+}
@@ -1,5 +1,6 @@
 package org.molgenis.armadillo.storage;
 
+import static java.lang.String.format;
 import static java.time.temporal.ChronoUnit.MILLIS;
 import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -26,6 +27,7 @@ import java.util.*;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
@@ -70,7 +72,8 @@ class ArmadilloStorageServiceTest {
 
     @Bean
     ArmadilloStorageService armadilloStorageService(StorageService storageService) {
-      return new ArmadilloStorageService(storageService, localStorageServiceMock);
+      return new ArmadilloStorageService(
+          storageService, localStorageServiceMock, ParquetWriteOptions.defaults(), 1, 3);
     }
   }
 
@@ -221,15 +224,37 @@ class ArmadilloStorageServiceTest {
   @Test
   @WithMockUser(roles = "SU")
   void testMoveObject() {
-    var inputStream = mock(InputStream.class);
     mockExistingObject("shared-test", "test.parquet");
-    when(storageService.load("shared-test", "test.parquet")).thenReturn(inputStream);
 
     armadilloStorage.moveObject("test", "renamed.parquet", "test.parquet");
 
-    verify(storageService)
-        .save(inputStream, "shared-test", "renamed.parquet", APPLICATION_OCTET_STREAM);
-    verify(storageService).delete("shared-test", "test.parquet");
+    verify(storageService).move("shared-test", "test.parquet", "shared-test", "renamed.parquet");
+    verifyNoObjectLoaded();
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetObjectVersionPath() {
+    when(storageService.listBuckets()).thenReturn(List.of("shared-test"));
+    when(storageService.listVersions("shared-test", "test.parquet"))
+        .thenReturn(List.of(new ObjectMetadata("0000000001000", ZonedDateTime.now(), 7)));
+    Path path = Path.of("version");
+    when(storageService.getVersionPath("shared-test", "test.parquet", "0000000001000"))
+        .thenReturn(path);
+
+    assertEquals(
+        path, armadilloStorage.getObjectVersionPath("test", "test.parquet", "0000000001000"));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetObjectVersionPathUnknownVersion() {
+    when(storageService.listBuckets()).thenReturn(List.of("shared-test"));
+    when(storageService.listVersions("shared-test", "test.parquet")).thenReturn(List.of());
+
+    assertThrows(
+        UnknownObjectException.class,
+        () -> armadilloStorage.getObjectVersionPath("test", "test.parquet", "0000000001000"));
   }
 
   @Test
@@ -289,14 +314,12 @@ class ArmadilloStorageServiceTest {
   @Test
   @WithMockUser(roles = "SU")
   void testCopyObject() {
-    var inputStream = mock(InputStream.class);
     mockExistingObject("shared-test", "test.parquet");
-    when(storageService.load("shared-test", "test.parquet")).thenReturn(inputStream);
 
     armadilloStorage.copyObject("test", "copy.parquet", "test.parquet");
 
-    verify(storageService)
-        .save(inputStream, "shared-test", "copy.parquet", APPLICATION_OCTET_STREAM);
+    verify(storageService).copy("shared-test", "test.parquet", "shared-test", "copy.parquet");
+    verifyNoObjectLoaded();
     verifyNoObjectDeleted();
   }
 
@@ -384,6 +407,23 @@ class ArmadilloStorageServiceTest {
     assertEquals(inputStream, armadilloStorage.loadObject("test", "test.parquet"));
   }
 
+  @Test
+  @WithMockUser(roles = "TEST_RESEARCHER")
+  void testGetObjectPath() {
+    mockExistingObject("shared-test", "test.parquet");
+    var path = Path.of("data", "shared-test", "test.parquet");
+    when(storageService.getPathIfObjectExists("shared-test", "test.parquet")).thenReturn(path);
+
+    assertEquals(path, armadilloStorage.getObjectPath("test", "test.parquet"));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testGetObjectPathDenied() {
+    assertThrows(
+        AccessDeniedException.class, () -> armadilloStorage.getObjectPath("test", "test.parquet"));
+  }
+
   @Test
   @WithMockUser(roles = "SU")
   void testLoadObjectNotExists() {
@@ -437,6 +477,90 @@ class ArmadilloStorageServiceTest {
     assertEquals(List.of("gecko/1_0_release_1_1/gecko"), armadilloStorage.listTables("gecko"));
   }
 
+  private ObjectMetadata object(String name) {
+    ObjectMetadata objectMetadata = mock(ObjectMetadata.class);
+    lenient().when(objectMetadata.name()).thenReturn(name);
+    return objectMetadata;
+  }
+
+  private void mockTablesInTwoProjects(long version) {
+    // the service is shared between the tests, so every test uses its own storage version
+    when(storageService.getVersion()).thenReturn(version);
+    when(storageService.listBuckets())
+        .thenReturn(List.of(SHARED_DIABETES, SHARED_GECKO, "user-admin"));
+    List<ObjectMetadata> diabetes = List.of(object("core/nonrep.parquet"));
+    List<ObjectMetadata> gecko =
+        List.of(object("core/nonrep.parquet"), object("core/link.alf"), object("core/a.rds"));
+    lenient().when(storageService.listObjects(SHARED_DIABETES)).thenReturn(diabetes);
+    when(storageService.listObjects(SHARED_GECKO)).thenReturn(gecko);
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testListVisibleTablesOnlyListsPermittedProjects() {
+    mockTablesInTwoProjects(1001);
+    assertEquals(
+        List.of("gecko/core/nonrep", "gecko/core/link"), armadilloStorage.listVisibleTables());
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testListVisibleTablesListsAllProjectsForSuperUser() {
+    mockTablesInTwoProjects(1002);
+    assertEquals(
+        List.of("diabetes/core/nonrep", "gecko/core/nonrep", "gecko/core/link"),
+        armadilloStorage.listVisibleTables());
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testListVisibleTablesIsCachedUntilStorageChanges() {
+    mockTablesInTwoProjects(1003);
+    armadilloStorage.listVisibleTables();
+    armadilloStorage.listVisibleTables();
+    verify(storageService, times(1)).listBuckets();
+
+    when(storageService.getVersion()).thenReturn(1004L);
+    armadilloStorage.listVisibleTables();
+    verify(storageService, times(2)).listBuckets();
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testSearchVariablesOnlySearchesPermittedProjects(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    mockTablesInTwoProjects(1005);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "core/nonrep.parquet"))
+        .thenReturn(table);
+    lenient()
+        .when(storageService.getPathIfObjectExists(SHARED_DIABETES, "core/nonrep.parquet"))
+        .thenReturn(table);
+    when(storageService.load(SHARED_GECKO, "core/link.alf"))
+        .thenReturn(
+            new ArmadilloLinkFile("gecko", "core/nonrep", "age", "core/link", "gecko").toStream());
+
+    assertEquals(
+        List.of(
+            new VariableSearchResult("gecko", "core/link.alf", "age", "INT32", null),
+            new VariableSearchResult("gecko", "core/nonrep.parquet", "age", "INT32", null)),
+        armadilloStorage.searchVariables(" AG ", false, 10));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testSearchVariablesValidatesInput() {
+    assertThrows(
+        IllegalArgumentException.class, () -> armadilloStorage.searchVariables(" ", false, 10));
+    assertThrows(
+        IllegalArgumentException.class, () -> armadilloStorage.searchVariables("age", false, 0));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testInvalidateVisibleTablesChecksPermission() {
+    assertThrows(AccessDeniedException.class, () -> armadilloStorage.invalidateVisibleTables());
+  }
+
   @Test
   @WithMockUser(roles = "GECKO_RESEARCHER")
   void testListTablesListsAlfObjectsInSharedBucket() {
@@ -511,6 +635,143 @@ class ArmadilloStorageServiceTest {
         () -> armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko"));
   }
 
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableLoadsSelectedVariables(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "1_0_release_1_1/gecko.parquet"))
+        .thenReturn(table);
+    Path copy = tempDir.resolve("copy.parquet");
+
+    try (InputStream inputStream =
+        armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of("age"))) {
+      Files.copy(inputStream, copy);
+    }
+
+    assertEquals(List.of("age"), ParquetUtils.getColumns(copy));
+    assertTrue(Files.size(copy) < Files.size(table));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableOfLinkFileLoadsLinkedVariables(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("source", "core/test", "id,name", "core/view", "gecko");
+    when(storageService.objectExists(SHARED_GECKO, "core/view.alf")).thenReturn(true);
+    when(storageService.load(SHARED_GECKO, "core/view.alf")).thenReturn(linkFile.toStream());
+    when(storageService.getLinkedTablePath(SHARED_GECKO, "core/view.alf")).thenReturn(table);
+    Path copy = tempDir.resolve("copy.parquet");
+
+    try (InputStream inputStream = armadilloStorage.loadTable("gecko", "core/view", List.of())) {
+      Files.copy(inputStream, copy);
+    }
+
+    assertEquals(List.of("id", "name"), ParquetUtils.getColumns(copy));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableOfLinkFileRejectsOtherVariables() {
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("source", "core/test", "id,name", "core/view", "gecko");
+    when(storageService.objectExists(SHARED_GECKO, "core/view.alf")).thenReturn(true);
+    when(storageService.load(SHARED_GECKO, "core/view.alf")).thenReturn(linkFile.toStream());
+
+    assertThrows(
+        UnknownVariableException.class,
+        () -> armadilloStorage.loadTable("gecko", "core/view", List.of("age")));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableLoadsFilteredRows(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "1_0_release_1_1/gecko.parquet"))
+        .thenReturn(table);
+    Path copy = tempDir.resolve("copy.parquet");
+
+    try (InputStream inputStream =
+        armadilloStorage.loadTable(
+            "gecko", "1_0_release_1_1/gecko", List.of("name"), RowFilter.parse("id < 10"))) {
+      Files.copy(inputStream, copy);
+    }
+
+    assertEquals(List.of("name"), ParquetUtils.getColumns(copy));
+    assertEquals("10", ParquetUtils.retrieveDimensions(copy).get("rows"));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableRefusesFilterOfTooFewRows(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "1_0_release_1_1/gecko.parquet"))
+        .thenReturn(table);
+    RowFilter filter = RowFilter.parse("id %in% c(1, 2)");
+
+    assertThrows(
+        InvalidRowFilterException.class,
+        () -> armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of(), filter));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableRefusesFilterThatLeavesOutTooFewRows(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "1_0_release_1_1/gecko.parquet"))
+        .thenReturn(table);
+    // the complement of the filter selects ids 0 and 1
+    RowFilter filter = RowFilter.parse("id > 1");
+
+    var exception =
+        assertThrows(
+            InvalidRowFilterException.class,
+            () -> armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of(), filter));
+    assertTrue(exception.getMessage().contains("leaves out fewer than 3 rows"));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableUsesGivenThreshold(@TempDir Path tempDir) throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+    when(storageService.getPathIfObjectExists(SHARED_GECKO, "1_0_release_1_1/gecko.parquet"))
+        .thenReturn(table);
+    RowFilter filter = RowFilter.parse("id < 10");
+
+    assertThrows(
+        InvalidRowFilterException.class,
+        () -> armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of(), filter, 11));
+    armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of(), filter, 10).close();
+  }
+
+  @Test
+  void testGetMinFilteredRows() {
+    assertEquals(3, armadilloStorage.getMinFilteredRows(Map.of()));
+    assertEquals(5, armadilloStorage.getMinFilteredRows(Map.of("nfilter.subset", "5")));
+    assertEquals(3, armadilloStorage.getMinFilteredRows(Map.of("nfilter.subset", "many")));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableOfLinkFileRejectsFilterOnOtherVariables() {
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("source", "core/test", "id,name", "core/view", "gecko");
+    when(storageService.objectExists(SHARED_GECKO, "core/view.alf")).thenReturn(true);
+    when(storageService.load(SHARED_GECKO, "core/view.alf")).thenReturn(linkFile.toStream());
+    RowFilter filter = RowFilter.parse("age > 30");
+
+    assertThrows(
+        UnknownVariableException.class,
+        () -> armadilloStorage.loadTable("gecko", "core/view", List.of(), filter));
+  }
+
+  @Test
+  @WithMockUser(roles = "GECKO_RESEARCHER")
+  void testLoadTableWithoutVariablesLoadsTable() {
+    when(storageService.load(SHARED_GECKO, "1_0_release_1_1/gecko.parquet")).thenReturn(is);
+    assertSame(is, armadilloStorage.loadTable("gecko", "1_0_release_1_1/gecko", List.of()));
+  }
+
   @Test
   @WithMockUser(roles = "GECKO_RESEARCHER")
   void testLoadTableLoadsTable() {
@@ -524,9 +785,15 @@ class ArmadilloStorageServiceTest {
     when(principal.getName()).thenReturn("henk");
     var lastModified = Instant.now().truncatedTo(MILLIS).atZone(ZoneId.systemDefault());
     Workspace workspace =
-        Workspace.builder().setName("blah").setLastModified(lastModified).setSize(56).build();
+        Workspace.builder()
+            .setName("blah")
+            .setLastModified(lastModified)
+            .setSize(56)
+            .setChecksum("abc123")
+            .build();
 
     when(storageService.listObjects("user-henk")).thenReturn(List.of(item));
+    when(storageService.getWorkspaceChecksum("user-henk", "blah.RData")).thenReturn("abc123");
     when(item.name()).thenReturn("blah.RData");
     when(item.lastModified()).thenReturn(lastModified);
     when(item.size()).thenReturn(workspace.size());
@@ -568,42 +835,27 @@ class ArmadilloStorageServiceTest {
   @Test
   void testSaveWorkspace() {
     ArmadilloWorkspace workspaceMock = mock(ArmadilloWorkspace.class);
-    ByteArrayInputStream isMock = mock(ByteArrayInputStream.class);
     when(principal.getName()).thenReturn("henk");
-    when(storageService.getWorkSpace(is)).thenReturn(workspaceMock);
-    when(workspaceMock.getSize()).thenReturn(12345L);
-    when(workspaceMock.createInputStream()).thenReturn(isMock);
+    when(storageService.getWorkSpace(is, "user-henk")).thenReturn(workspaceMock);
     armadilloStorage.saveWorkspace(is, principal, "test");
-    verify(storageService).save(isMock, "user-henk", "test.RData", APPLICATION_OCTET_STREAM);
+    verify(storageService).save(workspaceMock, "user-henk", "test.RData");
+    verify(workspaceMock).close();
   }
 
   @Test
   void testSaveWorkspaceReturnsErrorWhenTooBig() {
-    ArmadilloWorkspace workspaceMock = mock(ArmadilloWorkspace.class);
-    when(storageService.getWorkSpace(is)).thenReturn(workspaceMock);
-    when(workspaceMock.getSize()).thenReturn(123456789123456789L);
+    when(storageService.getWorkSpace(eq(is), any()))
+        .thenThrow(
+            new StorageException(format(ArmadilloWorkspace.NOT_ENOUGH_SPACE_ERROR, "5.0 GB")));
     try (MockedStatic<UserInformationRetriever> infoRetriever =
         Mockito.mockStatic(UserInformationRetriever.class)) {
       infoRetriever.when(() -> getUser(principal)).thenReturn(USER_EMAIL);
-      assertThrows(
-          StorageException.class, () -> armadilloStorage.saveWorkspace(is, principal, "test"));
-    }
-  }
-
-  @Test
-  void testSaveWorkspaceReturnsErrorWhenBiggerThan2Gbs() {
-    when(storageService.getWorkSpace(is))
-        .thenThrow(new StorageException(ArmadilloWorkspace.WORKSPACE_TOO_BIG_ERROR));
-    try (MockedStatic<UserInformationRetriever> infoRetriever =
-        Mockito.mockStatic(UserInformationRetriever.class)) {
-      infoRetriever.when(() -> getUser(principal)).thenReturn(USER_EMAIL);
-      try {
-        armadilloStorage.saveWorkspace(is, principal, "test");
-      } catch (StorageException e) {
-        assertEquals(
-            "Unable to save workspace. Maximum supported workspace size is 2GB", e.getMessage());
-      }
+      StorageException exception =
+          assertThrows(
+              StorageException.class, () -> armadilloStorage.saveWorkspace(is, principal, "test"));
+      assertTrue(exception.getMessage().startsWith("Can't save workspace: workspace too big"));
     }
+    verify(storageService, never()).save(any(ArmadilloWorkspace.class), any(), any());
   }
 
   @Test
@@ -776,11 +1028,13 @@ class ArmadilloStorageServiceTest {
 
   private void verifyNoObjectDeleted() {
     verify(storageService, never()).delete(any(String.class), any(String.class));
+    verify(storageService, never()).move(anyString(), anyString(), anyString(), anyString());
   }
 
   private void verifyNoObjectSaved() {
     verify(storageService, never())
         .save(any(InputStream.class), any(String.class), any(String.class), any(MediaType.class));
+    verify(storageService, never()).copy(anyString(), anyString(), anyString(), anyString());
   }
 
   private void verifyNoObjectLoaded() {
@@ -812,11 +1066,40 @@ class ArmadilloStorageServiceTest {
     String srcObj = "1_0_release_1_1/gecko";
     mockExistingObject(SHARED_GECKO, srcObj + PARQUET);
     when(armadilloStorage.hasObject("gecko", srcObj)).thenReturn(Boolean.TRUE);
-    when(storageService.preview(SHARED_GECKO, srcObj, 10, 10)).thenReturn(previewObj);
+    when(storageService.preview(SHARED_GECKO, srcObj, 0, 10, 10, List.of())).thenReturn(previewObj);
     List<Map<String, String>> actual = armadilloStorage.getPreview("gecko", srcObj);
     assertEquals(previewObj, actual);
   }
 
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetPreviewPageOfColumns() {
+    List<Map<String, String>> previewObj = List.of(Map.of("age", "24"));
+    String srcObj = "1_0_release_1_1/gecko";
+    mockExistingObject(SHARED_GECKO, srcObj + PARQUET);
+    when(armadilloStorage.hasObject("gecko", srcObj)).thenReturn(Boolean.TRUE);
+    when(storageService.preview(SHARED_GECKO, srcObj, 2000, 100, 1, List.of("age")))
+        .thenReturn(previewObj);
+
+    assertEquals(
+        previewObj, armadilloStorage.getPreview("gecko", srcObj, 2000, 100, List.of("age")));
+  }
+
+  @Test
+  @WithMockUser(roles = "SU")
+  void testGetPreviewInvalidPage() {
+    List<String> columns = List.of();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> armadilloStorage.getPreview("gecko", "gecko", -1, 10, columns));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> armadilloStorage.getPreview("gecko", "gecko", 0, 0, columns));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> armadilloStorage.getPreview("gecko", "gecko", 0, 1001, columns));
+  }
+
   @Test
   @WithMockUser(roles = "SU")
   void testGetVariables() {
@@ -1024,15 +1307,20 @@ class ArmadilloStorageServiceTest {
     }
     Mockito.when(mockFile.getInputStream())
         .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
-    Mockito.when(
-            localStorageServiceMock.getObjectPathSafely(
-                SHARED_PREFIX + projectName, objectName + PARQUET))
-        .thenReturn(Path.of(objectLocation));
-    Mockito.when(storageService.getRootDir()).thenReturn(tempDirWithPrefix.toString());
+    Path tempFile = Path.of(objectLocation, ".save-gecko.tmp");
+    doAnswer(
+            invocation -> {
+              invocation.<LocalStorageService.ObjectWriter<?>>getArgument(2).write(tempFile);
+              return null;
+            })
+        .when(localStorageServiceMock)
+        .write(eq(SHARED_PREFIX + projectName), eq(objectName + PARQUET), any());
     Mockito.when(storageService.objectExists("gecko", objectName + PARQUET))
         .thenReturn(Boolean.FALSE);
     assertDoesNotThrow(
         () -> armadilloStorage.writeParquetFromCsv(projectName, objectName, mockFile, 10));
+    assertEquals(
+        List.of("age", "name"), ParquetUtils.getColumns(tempFile).stream().sorted().toList());
     FileUtils.deleteDirectory(tempDirWithPrefix.toFile());
   }
 
@@ -1043,11 +1331,20 @@ class ArmadilloStorageServiceTest {
     String projectName = "gecko";
     String objectName = "1_0_release_1_1/gecko";
     Path tempDirWithPrefix = Files.createTempDirectory("test");
-    Mockito.when(storageService.getRootDir()).thenReturn(tempDirWithPrefix.toString());
     String csvData = "name,age\nJohn,30\nJane,25\n";
     MultipartFile mockFile = mock(MultipartFile.class);
     Mockito.when(mockFile.getInputStream())
         .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+    // the directory of the temporary file doesn't exist
+    doAnswer(
+            invocation -> {
+              invocation
+                  .<LocalStorageService.ObjectWriter<?>>getArgument(2)
+                  .write(tempDirWithPrefix.resolve("missing/.save-gecko.tmp"));
+              return null;
+            })
+        .when(localStorageServiceMock)
+        .write(eq(SHARED_PREFIX + projectName), eq(objectName + PARQUET), any());
     assertThrows(
         StorageException.class,
         () -> armadilloStorage.writeParquetFromCsv(projectName, objectName, mockFile, 10));
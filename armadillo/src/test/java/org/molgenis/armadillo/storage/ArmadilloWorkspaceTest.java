@@ -1,42 +1,109 @@
 package org.molgenis.armadillo.storage;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.molgenis.armadillo.exceptions.StorageException;
 
 public class ArmadilloWorkspaceTest {
+
+  @TempDir Path tempDir;
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.toList();
+    }
+  }
+
   @Test
   void testGetFileName() {
     InputStream stubInputStream =
         IOUtils.toInputStream("some test data for my input stream", "UTF-8");
-    ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream);
-    long size = workspace.getSize();
-    assertEquals(34, size);
+    try (ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream, tempDir)) {
+      long size = workspace.getSize();
+      assertEquals(34, size);
+    }
   }
 
   @Test
-  void testGetByteOfInputStreamThrowsError() throws IOException {
-    InputStream isMock = mock(InputStream.class);
-    when(isMock.read(any(byte[].class))).thenThrow(IOException.class);
-    assertThrows(StorageException.class, () -> new ArmadilloWorkspace(isMock));
+  void testChecksum() {
+    InputStream stubInputStream = IOUtils.toInputStream("abc", "UTF-8");
+    try (ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream, tempDir)) {
+      assertEquals(
+          "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+          workspace.getChecksum());
+    }
   }
 
   @Test
-  void testGetByteOfInputStreamThrowsMemoryError() throws IOException {
-    InputStream isMock = mock(InputStream.class);
-    when(isMock.read(any(byte[].class))).thenThrow(OutOfMemoryError.class);
-    try {
-      new ArmadilloWorkspace(isMock);
-    } catch (StorageException e) {
-      assertEquals(ArmadilloWorkspace.WORKSPACE_TOO_BIG_ERROR, e.getMessage());
+  void testSpoolsToHiddenTempFile() throws IOException {
+    InputStream stubInputStream = IOUtils.toInputStream("workspace", "UTF-8");
+    try (ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream, tempDir)) {
+      List<Path> files = listFiles(tempDir);
+      assertEquals(1, files.size());
+      assertTrue(ArmadilloWorkspace.isTempFile(files.get(0)));
+      try (InputStream inputStream = workspace.createInputStream()) {
+        assertEquals("workspace", new String(inputStream.readAllBytes()));
+      }
+    }
+    assertEquals(List.of(), listFiles(tempDir));
+  }
+
+  @Test
+  void testMoveToReplacesTarget() throws IOException {
+    Path target = Files.writeString(tempDir.resolve("test.RData"), "old");
+    InputStream stubInputStream = IOUtils.toInputStream("new", "UTF-8");
+    try (ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream, tempDir)) {
+      workspace.moveTo(target);
     }
+    assertEquals("new", Files.readString(target));
+    assertEquals(
+        List.of(ArmadilloWorkspace.getChecksumFile(target), target),
+        listFiles(tempDir).stream().sorted().toList());
+  }
+
+  @Test
+  void testMoveToWritesChecksumFile() throws IOException {
+    Path target = tempDir.resolve("test.RData");
+    Files.writeString(ArmadilloWorkspace.getChecksumFile(target), "stale  test.RData\n");
+    InputStream stubInputStream = IOUtils.toInputStream("abc", "UTF-8");
+    try (ArmadilloWorkspace workspace = new ArmadilloWorkspace(stubInputStream, tempDir)) {
+      workspace.moveTo(target);
+    }
+
+    Path checksumFile = ArmadilloWorkspace.getChecksumFile(target);
+    assertEquals(tempDir.resolve(".test.RData.sha256"), checksumFile);
+    assertTrue(ArmadilloWorkspace.isChecksumFile(checksumFile));
+    // the format of sha256sum
+    assertEquals(
+        "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  test.RData\n",
+        Files.readString(checksumFile));
+    assertEquals(
+        "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+        ArmadilloWorkspace.readChecksum(target));
+  }
+
+  @Test
+  void testReadChecksumWithoutChecksumFile() throws IOException {
+    assertNull(ArmadilloWorkspace.readChecksum(tempDir.resolve("test.RData")));
+  }
+
+  @Test
+  void testGetByteOfInputStreamThrowsError() throws IOException {
+    InputStream isMock = mock(InputStream.class);
+    when(isMock.read(any(byte[].class), anyInt(), anyInt())).thenThrow(IOException.class);
+    assertThrows(StorageException.class, () -> new ArmadilloWorkspace(isMock, tempDir));
+    assertEquals(List.of(), listFiles(tempDir));
   }
 }
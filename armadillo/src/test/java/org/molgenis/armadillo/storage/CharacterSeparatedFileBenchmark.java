@@ -0,0 +1,92 @@
+package org.molgenis.armadillo.storage;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Compares the throughput of the sequential CSV to Parquet conversion with the parallel one on 1, 4
+ * and 16 threads. Only runs when ARMADILLO_BENCHMARK=true, e.g.
+ *
+ * <pre>
+ * ARMADILLO_BENCHMARK=true ./gradlew :armadillo:test --tests '*CharacterSeparatedFileBenchmark'
+ * </pre>
+ *
+ * The number of rows can be set with ARMADILLO_BENCHMARK_ROWS.
+ */
+@EnabledIfEnvironmentVariable(named = "ARMADILLO_BENCHMARK", matches = "true")
+class CharacterSeparatedFileBenchmark {
+
+  private static final int WARMUP_RUNS = 1;
+  private static final int MEASURED_RUNS = 3;
+
+  @TempDir Path tempDir;
+
+  @Test
+  void benchmarkConversion() throws Exception {
+    int numberOfRows =
+        Integer.parseInt(System.getenv().getOrDefault("ARMADILLO_BENCHMARK_ROWS", "1000000"));
+    Path csv = createCsv(numberOfRows);
+    MultipartFile file = mock(MultipartFile.class);
+    when(file.getInputStream()).thenAnswer(invocation -> Files.newInputStream(csv));
+    when(file.getOriginalFilename()).thenReturn("benchmark.csv");
+
+    System.out.printf(
+        "Converting %d rows (%d MB)%n", numberOfRows, Files.size(csv) / (1024 * 1024));
+    for (int parallelism : new int[] {1, 4, 16}) {
+      try (CharacterSeparatedFile csvFile = new CharacterSeparatedFile(file, 100, parallelism)) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+          convert(csvFile);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+          convert(csvFile);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / MEASURED_RUNS;
+        System.out.printf(
+            "%s, %2d thread(s): %6.2f s, %,10.0f rows/s%n",
+            parallelism == 1 ? "sequential" : "parallel  ",
+            parallelism,
+            seconds,
+            numberOfRows / seconds);
+      }
+    }
+  }
+
+  private void convert(CharacterSeparatedFile csvFile) throws Exception {
+    Path parquet = tempDir.resolve("benchmark.parquet");
+    Files.deleteIfExists(parquet);
+    csvFile.writeParquet(parquet.toString());
+  }
+
+  private Path createCsv(int numberOfRows) throws IOException {
+    Path csv = tempDir.resolve("benchmark.csv");
+    Random random = new Random(42);
+    try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+      writer.write("id,age,weight,smoker,city,comment\n");
+      for (int i = 0; i < numberOfRows; i++) {
+        writer.write(
+            String.format(
+                Locale.ROOT,
+                "%d,%d,%.2f,%s,city%d,\"comment, %d\"%n",
+                i,
+                random.nextInt(100),
+                40 + random.nextDouble() * 80,
+                random.nextBoolean() ? "T" : "F",
+                random.nextInt(50),
+                random.nextInt()));
+      }
+    }
+    return csv;
+  }
+}
@@ -9,23 +9,43 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.molgenis.armadillo.exceptions.FileProcessingException;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
 class CharacterSeparatedFileTest {
 
   MultipartFile mockFile;
 
+  @TempDir Path tempDir;
+
   @BeforeEach
   void setup() {
     mockFile = mock(MultipartFile.class);
   }
 
+  private static Set<Path> getSpooledFiles() throws IOException {
+    try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+      return files
+          .filter(file -> file.getFileName().toString().startsWith("armadillo-upload"))
+          .filter(file -> file.getFileName().toString().endsWith(".csv"))
+          .collect(Collectors.toSet());
+    }
+  }
+
   @Test
   void testConstructorWithCommaSeparator() throws IOException, CsvValidationException {
     String csvData = "name,age\nJohn,30\nJane,25\n";
@@ -33,14 +53,13 @@ class CharacterSeparatedFileTest {
         .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
     Mockito.when(mockFile.getOriginalFilename()).thenReturn("test.csv");
 
-    CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile);
-
-    assertNotNull(csf);
-    assertEquals(',', csf.getHeaderSeparator());
-    assertArrayEquals(new String[] {"name", "age"}, csf.getHeader());
-    assertEquals(
-        List.of(CharacterSeparatedFile.STRING, CharacterSeparatedFile.INT), csf.getTypes());
-    assertNotNull(csf.getSchema());
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile)) {
+      assertEquals(',', csf.getHeaderSeparator());
+      assertArrayEquals(new String[] {"name", "age"}, csf.getHeader());
+      assertEquals(
+          List.of(CharacterSeparatedFile.STRING, CharacterSeparatedFile.INT), csf.getTypes());
+      assertNotNull(csf.getSchema());
+    }
   }
 
   @Test
@@ -50,7 +69,10 @@ class CharacterSeparatedFileTest {
         .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
     Mockito.when(mockFile.getOriginalFilename()).thenReturn("test.csv");
 
+    Set<Path> spooled = getSpooledFiles();
+
     assertThrows(FileProcessingException.class, () -> new CharacterSeparatedFile(mockFile));
+    assertEquals(spooled, getSpooledFiles());
   }
 
   @Test
@@ -72,9 +94,10 @@ class CharacterSeparatedFileTest {
   }
 
   @Test
-  void testImplySeparatorThrowsOnUnsupportedSeparator() {
+  void testImplySeparatorThrowsOnUnsupportedSeparator() throws IOException {
     String csvData = "name#age\nJohn#30\n";
     Mockito.when(mockFile.getOriginalFilename()).thenReturn("bad.csv");
+    Set<Path> spooled = getSpooledFiles();
 
     Exception exception =
         assertThrows(
@@ -86,6 +109,8 @@ class CharacterSeparatedFileTest {
             });
 
     assertTrue(exception.getMessage().contains("Unsupported separator"));
+    // a constructor that fails removes the file it spooled
+    assertEquals(spooled, getSpooledFiles());
   }
 
   @Test
@@ -270,11 +295,169 @@ class CharacterSeparatedFileTest {
         .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
     Mockito.when(mockFile.getOriginalFilename()).thenReturn("test.csv");
 
-    CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile);
-    csf.writeParquet(savePath);
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile)) {
+      csf.writeParquet(savePath);
+    }
 
     File f = new File(savePath);
     assertTrue(f.exists());
     FileUtils.deleteDirectory(tempDirWithPrefix.toFile());
   }
+
+  @Test
+  void testWriteParquetWritesTypedValues() throws IOException, CsvValidationException {
+    String csvData = "name;age;height;smoker\nAlice;35;1.7;T\nBob;NA;;false\n;28;1.8;\n";
+    Path savePath = tempDir.resolve("typed.parquet");
+    Mockito.when(mockFile.getInputStream())
+        .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile)) {
+      csf.writeParquet(savePath.toString());
+    }
+
+    assertEquals(
+        Map.of("name", "BINARY", "age", "INT32", "height", "DOUBLE", "smoker", "BOOLEAN"),
+        ParquetUtils.getDatatypes(savePath));
+    List<Map<String, String>> rows = ParquetUtils.previewRecords(savePath, 3, 10, new String[0]);
+    assertEquals(
+        Map.of("name", "Alice", "age", "35", "height", "1.7", "smoker", "true"), rows.get(0));
+    assertEquals(
+        Map.of("name", "Bob", "age", "NA", "height", "NA", "smoker", "false"), rows.get(1));
+    assertEquals(Map.of("name", "NA", "age", "28", "height", "1.8", "smoker", "NA"), rows.get(2));
+  }
+
+  @Test
+  void testNumberOfRowsToDetermineTypeBy() throws IOException, CsvValidationException {
+    String csvData = "code,value\n1,2\n2,3\nA3,4\n";
+    Mockito.when(mockFile.getInputStream())
+        .thenAnswer(invocation -> new ByteArrayInputStream(csvData.getBytes()));
+
+    try (CharacterSeparatedFile sampled = new CharacterSeparatedFile(mockFile, 2);
+        CharacterSeparatedFile all = new CharacterSeparatedFile(mockFile, 0)) {
+      assertEquals(
+          List.of(CharacterSeparatedFile.INT, CharacterSeparatedFile.INT), sampled.getTypes());
+      assertEquals(
+          List.of(CharacterSeparatedFile.STRING, CharacterSeparatedFile.INT), all.getTypes());
+    }
+  }
+
+  @Test
+  void testWriteParquetFailsOnValueOfOtherType() throws IOException, CsvValidationException {
+    String csvData = "code,value\n1,2\n2,3\nA3,4\n";
+    Mockito.when(mockFile.getInputStream())
+        .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile, 2)) {
+      String savePath = tempDir.resolve("invalid.parquet").toString();
+      FileProcessingException exception =
+          assertThrows(FileProcessingException.class, () -> csf.writeParquet(savePath));
+      assertTrue(exception.getMessage().contains("[A3] in row 3 of column [code]"));
+    }
+  }
+
+  @Test
+  void testWriteParquetUsesCompressionCodec() throws IOException, CsvValidationException {
+    String csvData = "name,age\nAlice,35\nBob,28\n";
+    Path savePath = tempDir.resolve("snappy.parquet");
+    Mockito.when(mockFile.getInputStream())
+        .thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile)) {
+      csf.writeParquet(
+          savePath.toString(),
+          new ParquetWriteOptions(CompressionCodecName.SNAPPY, 1024 * 1024, 64 * 1024));
+    }
+
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(savePath))) {
+      assertTrue(
+          reader.getRowGroups().get(0).getColumns().stream()
+              .allMatch(column -> column.getCodec() == CompressionCodecName.SNAPPY));
+    }
+  }
+
+  @Test
+  void testWriteParquetWritesLayout() throws IOException, CsvValidationException {
+    StringBuilder csvData = new StringBuilder("id,name\n");
+    for (int i = 0; i < 1000; i++) {
+      csvData.append(i).append(",name").append(i).append("\n");
+    }
+    Mockito.when(mockFile.getInputStream())
+        .thenAnswer(invocation -> new ByteArrayInputStream(csvData.toString().getBytes()));
+    ParquetWriteOptions options =
+        new ParquetWriteOptions(
+            CompressionCodecName.ZSTD, 1024 * 1024, 64 * 1024, 100, 64 * 1024, 16, List.of("id"));
+
+    for (int parallelism : new int[] {1, 4}) {
+      Path savePath = tempDir.resolve("layout" + parallelism + ".parquet");
+      try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile, 0, parallelism)) {
+        csf.writeParquet(savePath.toString(), options);
+      }
+
+      try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(savePath))) {
+        var rowGroup = reader.getRowGroups().get(0);
+        assertNotNull(reader.readBloomFilter(rowGroup.getColumns().get(0)));
+        assertNull(reader.readBloomFilter(rowGroup.getColumns().get(1)));
+        assertEquals(10, reader.readOffsetIndex(rowGroup.getColumns().get(1)).getPageCount());
+      }
+    }
+  }
+
+  @Test
+  void testWriteParquetInParallel() throws IOException, CsvValidationException {
+    String csvData = "code;value\n1;2\n2;3.5\nA3;\n";
+    Path sequentialPath = tempDir.resolve("sequential.parquet");
+    Path parallelPath = tempDir.resolve("parallel.parquet");
+    Mockito.when(mockFile.getInputStream())
+        .thenAnswer(invocation -> new ByteArrayInputStream(csvData.getBytes()));
+
+    try (CharacterSeparatedFile sequential = new CharacterSeparatedFile(mockFile, 0, 1);
+        CharacterSeparatedFile parallel = new CharacterSeparatedFile(mockFile, 0, 4)) {
+      assertEquals(sequential.getTypes(), parallel.getTypes());
+      sequential.writeParquet(sequentialPath.toString());
+      parallel.writeParquet(parallelPath.toString());
+    }
+
+    assertEquals(
+        ParquetUtils.previewRecords(sequentialPath, 3, 10, new String[0]),
+        ParquetUtils.previewRecords(parallelPath, 3, 10, new String[0]));
+  }
+
+  @Test
+  void testWriteParquetReportsProgress() throws IOException, CsvValidationException {
+    String csvData = "code;value\n1;2\n2;3.5\n3;\n";
+    Mockito.when(mockFile.getInputStream())
+        .thenAnswer(invocation -> new ByteArrayInputStream(csvData.getBytes()));
+
+    for (int parallelism : new int[] {1, 4}) {
+      UploadJob progress = new UploadJob("id", "project", "table.parquet", 0, Instant.now());
+      Path savePath = tempDir.resolve("progress" + parallelism + ".parquet");
+      try (CharacterSeparatedFile csf = new CharacterSeparatedFile(mockFile, 0, parallelism)) {
+        csf.writeParquet(savePath.toString(), ParquetWriteOptions.defaults(), progress);
+      }
+
+      assertEquals(csvData.length(), progress.getBytesRead());
+      assertEquals(3, progress.getRowsWritten());
+    }
+  }
+
+  @Test
+  void testReadsSpooledUploadWithoutCopyingIt() throws IOException, CsvValidationException {
+    SpooledUpload upload =
+        Mockito.spy(
+            SpooledUpload.of(
+                new MockMultipartFile(
+                    "file", "test.csv", "text/csv", "name,age\nAlice,35\n".getBytes())));
+    Path savePath = tempDir.resolve("spooled.parquet");
+
+    try (CharacterSeparatedFile csf = new CharacterSeparatedFile(upload, 0, 1)) {
+      csf.writeParquet(savePath.toString());
+    }
+
+    Mockito.verify(upload, Mockito.never()).getInputStream();
+    assertTrue(Files.exists(upload.getPath()));
+    assertEquals(
+        List.of(Map.of("name", "Alice", "age", "35")),
+        ParquetUtils.previewRecords(savePath, 1, 10, new String[0]));
+    upload.delete();
+  }
 }
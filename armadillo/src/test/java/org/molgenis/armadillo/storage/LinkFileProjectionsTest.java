@@ -0,0 +1,123 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LinkFileProjectionsTest {
+
+  @TempDir Path bucket;
+
+  private Path source;
+  private final List<Runnable> tasks = new ArrayList<>();
+  private LinkFileProjections projections;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    source = ParquetUtilsTest.writeTestTable(Files.createDirectories(bucket.resolve("source")));
+    projections = new LinkFileProjections(true, tasks::add);
+  }
+
+  private static ArmadilloLinkFile linkFile(String variables) {
+    return new ArmadilloLinkFile("source", "test", variables, "core/view", "view");
+  }
+
+  private void runTasks() {
+    List.copyOf(tasks).forEach(Runnable::run);
+    tasks.clear();
+  }
+
+  private List<Path> listProjections() throws IOException {
+    try (Stream<Path> files = Files.list(bucket.resolve(".projections/core/view.alf"))) {
+      return files.toList();
+    }
+  }
+
+  @Test
+  void testGetBuildsProjectionInTheBackground() throws IOException {
+    ArmadilloLinkFile linkFile = linkFile("id,name");
+
+    assertEquals(Optional.empty(), projections.get(bucket, "core/view.alf", linkFile, source));
+    assertEquals(1, tasks.size());
+    runTasks();
+
+    Path projection = projections.get(bucket, "core/view.alf", linkFile, source).orElseThrow();
+    assertEquals(List.of("id", "name"), ParquetUtils.getColumns(projection));
+    assertTrue(LinkFileProjections.isProjectionFile(bucket, projection));
+    assertEquals(List.of(), tasks);
+  }
+
+  @Test
+  void testGetSchedulesOneBuildAtATime() {
+    ArmadilloLinkFile linkFile = linkFile("id,name");
+
+    projections.get(bucket, "core/view.alf", linkFile, source);
+    projections.get(bucket, "core/view.alf", linkFile, source);
+
+    assertEquals(1, tasks.size());
+  }
+
+  @Test
+  void testProjectionOfAllVariablesSharesSource() throws IOException {
+    projections.build(bucket, "core/view.alf", linkFile("id,age,status,name"), source);
+    runTasks();
+
+    Path projection =
+        projections
+            .get(bucket, "core/view.alf", linkFile("id,age,status,name"), source)
+            .orElseThrow();
+    assertTrue(Files.isSameFile(source, projection));
+  }
+
+  @Test
+  void testChangedSourceIsRebuilt() throws IOException {
+    ArmadilloLinkFile linkFile = linkFile("id");
+    projections.build(bucket, "core/view.alf", linkFile, source);
+    runTasks();
+
+    Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+
+    assertEquals(Optional.empty(), projections.get(bucket, "core/view.alf", linkFile, source));
+    runTasks();
+    assertTrue(projections.get(bucket, "core/view.alf", linkFile, source).isPresent());
+    assertEquals(1, listProjections().size());
+  }
+
+  @Test
+  void testChangedVariablesAreRebuilt() throws IOException {
+    projections.build(bucket, "core/view.alf", linkFile("id"), source);
+    runTasks();
+
+    assertEquals(
+        Optional.empty(), projections.get(bucket, "core/view.alf", linkFile("id,age"), source));
+  }
+
+  @Test
+  void testRemove() throws IOException {
+    projections.build(bucket, "core/view.alf", linkFile("id"), source);
+    runTasks();
+
+    projections.remove(bucket, "core/view.alf");
+
+    assertFalse(Files.exists(bucket.resolve(".projections/core/view.alf")));
+  }
+
+  @Test
+  void testDisabled() {
+    projections = LinkFileProjections.disabled();
+
+    assertEquals(
+        Optional.empty(), projections.get(bucket, "core/view.alf", linkFile("id"), source));
+    assertFalse(Files.exists(bucket.resolve(".projections")));
+  }
+}
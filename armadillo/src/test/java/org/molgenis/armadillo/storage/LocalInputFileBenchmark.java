@@ -0,0 +1,105 @@
+package org.molgenis.armadillo.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares reading the footer and all row groups of a table through the memory mapped {@link
+ * LocalInputFile} with the {@code RandomAccessFile} based one of parquet-mr, which copies every
+ * read through a small heap buffer. Only runs when ARMADILLO_BENCHMARK=true, e.g.
+ *
+ * <pre>
+ * ARMADILLO_BENCHMARK=true ./gradlew :armadillo:test --tests '*LocalInputFileBenchmark'
+ * </pre>
+ *
+ * The number of rows can be set with ARMADILLO_BENCHMARK_ROWS.
+ */
+@EnabledIfEnvironmentVariable(named = "ARMADILLO_BENCHMARK", matches = "true")
+class LocalInputFileBenchmark {
+
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 5;
+
+  @TempDir Path tempDir;
+
+  @FunctionalInterface
+  private interface InputFileFactory {
+    InputFile open(Path path) throws IOException;
+  }
+
+  @Test
+  void benchmarkReads() throws Exception {
+    int numberOfRows =
+        Integer.parseInt(System.getenv().getOrDefault("ARMADILLO_BENCHMARK_ROWS", "2000000"));
+    Path table = createTable(numberOfRows);
+
+    System.out.printf("Reading %d rows (%d MB)%n", numberOfRows, Files.size(table) / (1024 * 1024));
+    measure("RandomAccessFile", table, org.apache.parquet.io.LocalInputFile::new);
+    measure("memory mapped   ", table, LocalInputFile::new);
+  }
+
+  private void measure(String name, Path table, InputFileFactory factory) throws IOException {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      readAllRowGroups(factory.open(table));
+    }
+    long start = System.nanoTime();
+    long bytes = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      bytes = readAllRowGroups(factory.open(table));
+    }
+    double seconds = (System.nanoTime() - start) / 1e9 / MEASURED_RUNS;
+    System.out.printf("%s: %6.3f s, %,8.0f MB/s%n", name, seconds, bytes / seconds / (1024 * 1024));
+  }
+
+  private long readAllRowGroups(InputFile file) throws IOException {
+    long bytes = 0;
+    try (ParquetFileReader reader = ParquetFileReader.open(file, ParquetUtils.READ_OPTIONS)) {
+      PageReadStore rowGroup;
+      int index = 0;
+      while ((rowGroup = reader.readNextRowGroup()) != null) {
+        bytes += reader.getRowGroups().get(index++).getCompressedSize();
+        rowGroup.close();
+      }
+    }
+    return bytes;
+  }
+
+  private Path createTable(int numberOfRows) throws IOException {
+    Path file = tempDir.resolve("benchmark.parquet");
+    MessageType schema =
+        MessageTypeParser.parseMessageType(
+            "message benchmark { required int32 id; optional int32 age; optional double weight; "
+                + "optional binary city (STRING); optional binary comment (STRING); }");
+    SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
+    Random random = new Random(42);
+    try (ParquetWriter<Group> writer =
+        ExampleParquetWriter.builder(new LocalOutputFile(file)).withType(schema).build()) {
+      for (int i = 0; i < numberOfRows; i++) {
+        writer.write(
+            groupFactory
+                .newGroup()
+                .append("id", i)
+                .append("age", random.nextInt(100))
+                .append("weight", 40 + random.nextDouble() * 80)
+                .append("city", "city" + random.nextInt(50))
+                .append("comment", "comment " + random.nextLong()));
+      }
+    }
+    return file;
+  }
+}
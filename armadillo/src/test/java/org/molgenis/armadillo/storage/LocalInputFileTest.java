@@ -0,0 +1,191 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.ParquetFileRange;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalInputFileTest {
+
+  private static final int SEGMENT_SIZE = 7;
+
+  @TempDir Path tempDir;
+  private byte[] content;
+  private LocalInputFile file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    content = new byte[100];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (200 + i);
+    }
+    Path path = tempDir.resolve("test.bin");
+    Files.write(path, content);
+    file = new LocalInputFile(path, SEGMENT_SIZE);
+  }
+
+  @Test
+  void testGetLength() {
+    assertEquals(100, file.getLength());
+  }
+
+  @Test
+  void testReadFullyAcrossSegments() throws IOException {
+    try (SeekableInputStream stream = file.newStream()) {
+      byte[] bytes = new byte[100];
+      stream.readFully(bytes);
+
+      assertArrayEquals(content, bytes);
+      assertEquals(100, stream.getPos());
+      assertEquals(-1, stream.read());
+    }
+  }
+
+  @Test
+  void testReadDirectBuffer() throws IOException {
+    try (SeekableInputStream stream = file.newStream()) {
+      stream.seek(95);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(10);
+
+      assertEquals(5, stream.read(buffer));
+      assertEquals(-1, stream.read(buffer));
+      buffer.flip();
+      for (int i = 95; i < 100; i++) {
+        assertEquals(content[i], buffer.get());
+      }
+    }
+  }
+
+  @Test
+  void testReadSingleBytesSkipAndMark() throws IOException {
+    try (SeekableInputStream stream = file.newStream()) {
+      assertEquals(200, stream.read());
+      assertEquals(10, stream.skip(10));
+      stream.mark(0);
+      assertEquals(content[11] & 0xFF, stream.read());
+      stream.reset();
+      assertEquals(11, stream.getPos());
+      assertEquals(89, stream.skip(1000));
+      assertEquals(0, stream.available());
+    }
+  }
+
+  @Test
+  void testReadFullyBeyondEnd() throws IOException {
+    try (SeekableInputStream stream = file.newStream()) {
+      stream.seek(90);
+      byte[] bytes = new byte[20];
+
+      assertThrows(EOFException.class, () -> stream.readFully(bytes));
+      assertEquals(90, stream.getPos());
+    }
+  }
+
+  @Test
+  void testStreamsHaveTheirOwnPosition() throws IOException {
+    try (SeekableInputStream first = file.newStream();
+        SeekableInputStream second = file.newStream()) {
+      first.seek(50);
+
+      assertEquals(content[0] & 0xFF, second.read());
+      assertEquals(content[50] & 0xFF, first.read());
+    }
+  }
+
+  @Test
+  void testReadVectored() throws Exception {
+    ParquetFileRange inSegment = new ParquetFileRange(8, 5);
+    ParquetFileRange acrossSegments = new ParquetFileRange(12, 20);
+    ParquetFileRange beyondEnd = new ParquetFileRange(90, 20);
+
+    try (SeekableInputStream stream = file.newStream()) {
+      assertTrue(stream.readVectoredAvailable(new HeapByteBufferAllocator()));
+      stream.readVectored(
+          List.of(inSegment, acrossSegments, beyondEnd), new HeapByteBufferAllocator());
+    }
+
+    assertRange(inSegment);
+    assertRange(acrossSegments);
+    ExecutionException exception =
+        assertThrows(ExecutionException.class, () -> beyondEnd.getDataReadFuture().get());
+    assertInstanceOf(EOFException.class, exception.getCause());
+  }
+
+  private void assertRange(ParquetFileRange range) throws Exception {
+    ByteBuffer buffer = range.getDataReadFuture().get();
+    assertEquals(range.getLength(), buffer.remaining());
+    for (int i = 0; i < range.getLength(); i++) {
+      assertEquals(content[(int) range.getOffset() + i], buffer.get());
+    }
+  }
+
+  @Test
+  void testMapsWhenFirstStreamIsOpened() throws IOException {
+    assertFalse(file.isMapped());
+    SeekableInputStream first = file.newStream();
+    SeekableInputStream second = file.newStream();
+    assertTrue(file.isMapped());
+
+    first.close();
+    first.close();
+    assertEquals(content[0] & 0xFF, second.read());
+    second.close();
+
+    try (SeekableInputStream third = file.newStream()) {
+      third.seek(50);
+      assertEquals(content[50] & 0xFF, third.read());
+    }
+  }
+
+  @Test
+  void testReadAfterCloseFails() throws IOException {
+    SeekableInputStream stream = file.newStream();
+    stream.close();
+
+    assertThrows(IOException.class, stream::read);
+    assertThrows(IOException.class, () -> stream.readFully(new byte[1]));
+  }
+
+  @Test
+  void testReadParquetFileWithVectoredReads() throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(tempDir);
+
+    try (ParquetFileReader reader =
+        ParquetFileReader.open(new LocalInputFile(table, 256), ParquetUtils.READ_OPTIONS)) {
+      MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+      MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+      int id = 0;
+      PageReadStore rowGroup;
+      while ((rowGroup = reader.readNextRowGroup()) != null) {
+        RecordReader<Group> records =
+            columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schema));
+        for (long i = 0; i < rowGroup.getRowCount(); i++) {
+          Group record = records.read();
+          assertEquals(id, record.getInteger("id", 0));
+          assertEquals("Name" + id, record.getString("name", 0));
+          id++;
+        }
+      }
+      assertEquals(300, id);
+    }
+  }
+}
@@ -4,16 +4,23 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.molgenis.armadillo.storage.StorageService.getHumanReadableByteCount;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.Principal;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -109,6 +116,354 @@ class LocalStorageServiceTest {
     assertTrue(localStorageService.objectExists(SOME_PROJECT, SOME_OBJECT_PATH));
   }
 
+  @Test
+  void testListObjectsHidesMetadataCacheFile() throws IOException {
+    localStorageService.save(
+        new ByteArrayInputStream("test".getBytes()),
+        SOME_PROJECT,
+        SOME_OBJECT_PATH,
+        MediaType.TEXT_PLAIN);
+    Files.writeString(Paths.get(tmpDir, SOME_PROJECT, TableMetadataCache.SIDECAR_FILE), "[]");
+
+    assertEquals(1, localStorageService.listObjects(SOME_PROJECT).size());
+  }
+
+  @Test
+  void testLinkFileIsReadFromMaterialisedTable() throws IOException {
+    localStorageService =
+        new LocalStorageService(
+            tmpDir,
+            new TableMetadataCache(TableMetadataCache.DEFAULT_MAX_SIZE, false),
+            new LinkFileProjections(true, Runnable::run),
+            false,
+            0);
+    Path table = ParquetUtilsTest.writeTestTable(Files.createTempDirectory("source"));
+    try (InputStream inputStream = Files.newInputStream(table)) {
+      localStorageService.save(
+          inputStream, "shared-source", "core/test.parquet", MediaType.APPLICATION_OCTET_STREAM);
+    }
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("source", "core/test", "id,name", "core/view", "view");
+    localStorageService.save(
+        linkFile.toStream(), "shared-view", linkFile.getFileName(), MediaType.APPLICATION_JSON);
+
+    Path linkedTable = localStorageService.getLinkedTablePath("shared-view", "core/view.alf");
+    assertTrue(LinkFileProjections.isProjectionFile(Paths.get(tmpDir, "shared-view"), linkedTable));
+    assertEquals(List.of("id", "name"), ParquetUtils.getColumns(linkedTable));
+    assertEquals(
+        List.of("core/view.alf"),
+        localStorageService.listObjects("shared-view").stream().map(ObjectMetadata::name).toList());
+    assertEquals(
+        Map.of("id", "0", "name", "Name0"),
+        localStorageService.preview("shared-view", "core/view.alf", 0, 1, 10, List.of()).get(0));
+    assertEquals(
+        List.of("id", "name"),
+        List.copyOf(
+            localStorageService.getMetadataFromTablePath("shared-view", "core/view.alf").keySet()));
+
+    localStorageService.delete("shared-view", "core/view.alf");
+    assertFalse(Files.exists(Paths.get(tmpDir, "shared-view", ".projections", "core/view.alf")));
+  }
+
+  @Test
+  void testLinkFileWithoutMaterialisedTableIsReadFromSource() throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(Files.createTempDirectory("source"));
+    try (InputStream inputStream = Files.newInputStream(table)) {
+      localStorageService.save(
+          inputStream, "shared-source", "core/test.parquet", MediaType.APPLICATION_OCTET_STREAM);
+    }
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("source", "core/test", "id,name", "core/view", "view");
+    localStorageService.save(
+        linkFile.toStream(), "shared-view", linkFile.getFileName(), MediaType.APPLICATION_JSON);
+
+    assertEquals(
+        localStorageService.getPathIfObjectExists("shared-source", "core/test.parquet"),
+        localStorageService.getLinkedTablePath("shared-view", "core/view.alf"));
+  }
+
+  @Test
+  void testSaveReplacesObjectWithoutChangingMappedFile() throws IOException {
+    localStorageService.save(
+        new ByteArrayInputStream("old".getBytes()), SOME_PROJECT, "test.bin", MediaType.TEXT_PLAIN);
+    LocalInputFile mappedFile =
+        new LocalInputFile(localStorageService.getPathIfObjectExists(SOME_PROJECT, "test.bin"));
+
+    try (var stream = mappedFile.newStream()) {
+      localStorageService.save(
+          new ByteArrayInputStream("new!".getBytes()),
+          SOME_PROJECT,
+          "test.bin",
+          MediaType.TEXT_PLAIN);
+
+      byte[] bytes = new byte[3];
+      stream.readFully(bytes);
+      assertEquals("old", new String(bytes));
+    }
+    try (InputStream inputStream = localStorageService.load(SOME_PROJECT, "test.bin")) {
+      assertEquals("new!", new String(inputStream.readAllBytes()));
+    }
+    assertEquals(1, localStorageService.listObjects(SOME_PROJECT).size());
+  }
+
+  private void saveText(String bucket, String object, String text) {
+    localStorageService.save(
+        new ByteArrayInputStream(text.getBytes()), bucket, object, MediaType.TEXT_PLAIN);
+  }
+
+  private String loadText(String bucket, String object) throws IOException {
+    try (InputStream inputStream = localStorageService.load(bucket, object)) {
+      return new String(inputStream.readAllBytes());
+    }
+  }
+
+  @Test
+  void testCopyLinksFile() throws IOException {
+    saveText(SOME_PROJECT, "test.bin", "data");
+
+    localStorageService.copy(SOME_PROJECT, "test.bin", "other-project", "copies/test.bin");
+
+    assertTrue(
+        Files.isSameFile(
+            localStorageService.getPathIfObjectExists(SOME_PROJECT, "test.bin"),
+            localStorageService.getPathIfObjectExists("other-project", "copies/test.bin")));
+    assertEquals(
+        List.of("copies/test.bin"),
+        localStorageService.listObjects("other-project").stream()
+            .map(ObjectMetadata::name)
+            .toList());
+  }
+
+  @Test
+  void testCopyIsIndependentOfOriginal() throws IOException {
+    saveText(SOME_PROJECT, "test.bin", "old");
+    saveText(SOME_PROJECT, "copy.bin", "replaced by the copy");
+
+    localStorageService.copy(SOME_PROJECT, "test.bin", SOME_PROJECT, "copy.bin");
+    saveText(SOME_PROJECT, "test.bin", "new");
+    localStorageService.delete(SOME_PROJECT, "test.bin");
+
+    assertEquals("old", loadText(SOME_PROJECT, "copy.bin"));
+    assertEquals(1, localStorageService.listObjects(SOME_PROJECT).size());
+  }
+
+  @Test
+  void testCopyIsIndependentOfWrite() throws IOException {
+    saveText(SOME_PROJECT, "test.bin", "old");
+    localStorageService.copy(SOME_PROJECT, "test.bin", SOME_PROJECT, "copy.bin");
+
+    localStorageService.write(SOME_PROJECT, "test.bin", file -> Files.writeString(file, "new"));
+
+    assertEquals("new", loadText(SOME_PROJECT, "test.bin"));
+    assertEquals("old", loadText(SOME_PROJECT, "copy.bin"));
+  }
+
+  @Test
+  void testCopyUnknownObject() {
+    assertThrows(
+        StorageException.class,
+        () -> localStorageService.copy(SOME_PROJECT, "test.bin", SOME_PROJECT, "copy.bin"));
+  }
+
+  @Test
+  void testMoveRenamesFile() throws IOException {
+    saveText(SOME_PROJECT, "test.bin", "data");
+    Path original = localStorageService.getPathIfObjectExists(SOME_PROJECT, "test.bin");
+    Object fileKey = Files.readAttributes(original, BasicFileAttributes.class).fileKey();
+
+    localStorageService.move(SOME_PROJECT, "test.bin", SOME_PROJECT, "moved/test.bin");
+
+    assertFalse(localStorageService.objectExists(SOME_PROJECT, "test.bin"));
+    Path moved = localStorageService.getPathIfObjectExists(SOME_PROJECT, "moved/test.bin");
+    assertEquals(fileKey, Files.readAttributes(moved, BasicFileAttributes.class).fileKey());
+  }
+
+  @Test
+  void testMoveIllegalPath() {
+    saveText(SOME_PROJECT, "test.bin", "data");
+
+    assertThrows(
+        IllegalPathException.class,
+        () -> localStorageService.move(SOME_PROJECT, "test.bin", SOME_PROJECT, "../test.bin"));
+    assertTrue(localStorageService.objectExists(SOME_PROJECT, "test.bin"));
+  }
+
+  @Test
+  void testKeepsVersionsOfReplacedAndDeletedObjects() throws IOException {
+    localStorageService =
+        new LocalStorageService(
+            tmpDir, new TableMetadataCache(TableMetadataCache.DEFAULT_MAX_SIZE, false), false, 5);
+    saveText(SOME_PROJECT, "test.bin", "v1");
+    Path object = localStorageService.getPathIfObjectExists(SOME_PROJECT, "test.bin");
+    Files.setLastModifiedTime(object, FileTime.fromMillis(1000));
+    saveText(SOME_PROJECT, "test.bin", "v2");
+    Files.setLastModifiedTime(object, FileTime.fromMillis(2000));
+    localStorageService.delete(SOME_PROJECT, "test.bin");
+
+    List<ObjectMetadata> versions = localStorageService.listVersions(SOME_PROJECT, "test.bin");
+    assertEquals(
+        List.of("0000000002000", "0000000001000"),
+        versions.stream().map(ObjectMetadata::name).toList());
+    assertEquals(
+        "v1",
+        Files.readString(
+            localStorageService.getVersionPath(SOME_PROJECT, "test.bin", "0000000001000")));
+    assertEquals(List.of(), localStorageService.listObjects(SOME_PROJECT));
+  }
+
+  @Test
+  void testVersionsAreNotObjects() {
+    assertThrows(
+        IllegalPathException.class,
+        () -> saveText(SOME_PROJECT, ".versions/test.bin/0000000001000", "data"));
+  }
+
+  @Test
+  void testListObjectsHidesTempFiles() throws IOException {
+    localStorageService.save(
+        new ByteArrayInputStream("test".getBytes()),
+        SOME_PROJECT,
+        SOME_OBJECT_PATH,
+        MediaType.TEXT_PLAIN);
+    Files.writeString(Paths.get(tmpDir, SOME_PROJECT, ".save-123.tmp"), "partial");
+
+    assertEquals(1, localStorageService.listObjects(SOME_PROJECT).size());
+  }
+
+  @Test
+  void testSaveWorkspace() throws IOException {
+    String bucket = "user-henk";
+    try (ArmadilloWorkspace workspace =
+        localStorageService.getWorkSpace(
+            new ByteArrayInputStream("workspace".getBytes()), bucket)) {
+      assertEquals(List.of(), localStorageService.listObjects(bucket));
+
+      localStorageService.save(workspace, bucket, "test.RData");
+    }
+
+    var objects = localStorageService.listObjects(bucket);
+    assertEquals(1, objects.size());
+    assertEquals("test.RData", objects.get(0).name());
+    try (var inputStream = localStorageService.load(bucket, "test.RData")) {
+      assertEquals("workspace", new String(inputStream.readAllBytes()));
+    }
+    assertEquals(
+        "21a3230e03772a58aff1b3709a9e232850916337e1fba95c434076b6668c6e08",
+        localStorageService.getWorkspaceChecksum(bucket, "test.RData"));
+
+    localStorageService.delete(bucket, "test.RData");
+
+    assertNull(localStorageService.getWorkspaceChecksum(bucket, "test.RData"));
+    assertEquals(List.of(), listFiles(Paths.get(tmpDir, bucket)));
+  }
+
+  @Test
+  void testSaveInvalidatesCachedMetadata() throws IOException {
+    Path table = ParquetUtilsTest.writeTestTable(Files.createTempDirectory("metadataCacheTest"));
+    try (var inputStream = Files.newInputStream(table)) {
+      localStorageService.save(inputStream, SOME_PROJECT, "test.parquet", MediaType.TEXT_PLAIN);
+    }
+    var metadata = localStorageService.getMetadataFromTablePath(SOME_PROJECT, "test.parquet");
+    assertSame(
+        metadata, localStorageService.getMetadataFromTablePath(SOME_PROJECT, "test.parquet"));
+
+    try (var inputStream = Files.newInputStream(table)) {
+      localStorageService.save(inputStream, SOME_PROJECT, "test.parquet", MediaType.TEXT_PLAIN);
+    }
+
+    assertNotSame(
+        metadata, localStorageService.getMetadataFromTablePath(SOME_PROJECT, "test.parquet"));
+  }
+
+  @Test
+  void testTableLookupsAreCached() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(TableMetadataCache.DEFAULT_MAX_SIZE, false);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    localStorageService = new LocalStorageService(tmpDir, cache, false, 5);
+    Path table = ParquetUtilsTest.writeTestTable(Files.createTempDirectory("metadataCacheTest"));
+    try (var inputStream = Files.newInputStream(table)) {
+      localStorageService.save(inputStream, SOME_PROJECT, "test.parquet", MediaType.TEXT_PLAIN);
+    }
+    var variables = localStorageService.getVariables(SOME_PROJECT, "test.parquet");
+    var preview = localStorageService.preview(SOME_PROJECT, "test.parquet", 0, 5, 10, List.of());
+    var info = localStorageService.getInfo(SOME_PROJECT, "test.parquet");
+
+    assertSame(variables, localStorageService.getVariables(SOME_PROJECT, "test.parquet"));
+    // previews are read from the table every time
+    assertNotSame(
+        preview, localStorageService.preview(SOME_PROJECT, "test.parquet", 0, 5, 10, List.of()));
+    assertEquals(
+        preview, localStorageService.preview(SOME_PROJECT, "test.parquet", 0, 5, 10, List.of()));
+    assertEquals(info, localStorageService.getInfo(SOME_PROJECT, "test.parquet"));
+    assertEquals(2, registry.get("storage.metadata.cache.hits").functionCounter().count());
+    assertEquals(2, registry.get("storage.metadata.cache.misses").functionCounter().count());
+
+    try (var inputStream = Files.newInputStream(table)) {
+      localStorageService.save(inputStream, SOME_PROJECT, "test.parquet", MediaType.TEXT_PLAIN);
+    }
+
+    assertNotSame(variables, localStorageService.getVariables(SOME_PROJECT, "test.parquet"));
+  }
+
+  @Test
+  void testWriteReplacesObject() throws IOException {
+    localStorageService.save(
+        new ByteArrayInputStream("old".getBytes()), SOME_PROJECT, "test.bin", MediaType.TEXT_PLAIN);
+
+    localStorageService.write(
+        SOME_PROJECT,
+        "test.bin",
+        file -> {
+          assertFalse(Files.exists(file));
+          Files.writeString(file, "new");
+        });
+
+    try (InputStream inputStream = localStorageService.load(SOME_PROJECT, "test.bin")) {
+      assertEquals("new", new String(inputStream.readAllBytes()));
+    }
+    assertEquals(List.of("test.bin"), listFiles(Paths.get(tmpDir, SOME_PROJECT)));
+  }
+
+  @Test
+  void testFailedWriteKeepsPreviousObject() throws IOException {
+    localStorageService.save(
+        new ByteArrayInputStream("old".getBytes()), SOME_PROJECT, "test.bin", MediaType.TEXT_PLAIN);
+
+    assertThrows(
+        IOException.class,
+        () ->
+            localStorageService.write(
+                SOME_PROJECT,
+                "test.bin",
+                file -> {
+                  Files.writeString(file, "partial");
+                  throw new IOException("broken");
+                }));
+    // also when the writer fails with an error instead of an exception
+    assertThrows(
+        NoClassDefFoundError.class,
+        () ->
+            localStorageService.write(
+                SOME_PROJECT,
+                "test.bin",
+                file -> {
+                  Files.writeString(file, "partial");
+                  throw new NoClassDefFoundError("codec");
+                }));
+
+    try (InputStream inputStream = localStorageService.load(SOME_PROJECT, "test.bin")) {
+      assertEquals("old", new String(inputStream.readAllBytes()));
+    }
+    assertEquals(List.of("test.bin"), listFiles(Paths.get(tmpDir, SOME_PROJECT)));
+  }
+
+  private static List<String> listFiles(Path directory) throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted().toList();
+    }
+  }
+
   @Test
   void testListWorkspacesNoProject() {
     assertEquals(Collections.emptyList(), localStorageService.listObjects("user-admin"));
@@ -284,8 +639,17 @@ class LocalStorageServiceTest {
     mockedFiles.close();
   }
 
+  private static TableMetadataCache passThroughCache() throws IOException {
+    TableMetadataCache cache = mock(TableMetadataCache.class);
+    when(cache.get(any(Path.class), anyString(), anyString(), anyList(), any()))
+        .thenAnswer(
+            invocation -> invocation.<TableMetadataCache.LookupLoader<?>>getArgument(4).load());
+    return cache;
+  }
+
   @Test
   void testGetInfoForTable() throws IOException {
+    localStorageService = new LocalStorageService(tmpDir, passThroughCache(), false, 0);
     MockedStatic<Paths> mockedPaths = Mockito.mockStatic(Paths.class, RETURNS_DEEP_STUBS);
     MockedStatic<Files> mockedFiles = Mockito.mockStatic(Files.class);
     MockedStatic<ParquetUtils> mockedParquetUtils = Mockito.mockStatic(ParquetUtils.class);
@@ -322,6 +686,7 @@ class LocalStorageServiceTest {
 
   @Test
   void testGetInfoForNonTable() throws IOException {
+    localStorageService = new LocalStorageService(tmpDir, passThroughCache(), false, 0);
     MockedStatic<Paths> mockedPaths = Mockito.mockStatic(Paths.class, RETURNS_DEEP_STUBS);
     MockedStatic<Files> mockedFiles = Mockito.mockStatic(Files.class);
     MockedStatic<ParquetUtils> mockedParquetUtils = Mockito.mockStatic(ParquetUtils.class);
@@ -370,7 +735,7 @@ class LocalStorageServiceTest {
     MockedStatic<ParquetUtils> mockedParquetUtils = Mockito.mockStatic(ParquetUtils.class);
     localStorageService.preview(bucket, object, 10, 10);
     Path path = localStorageService.getObjectPathSafely(bucket, object);
-    mockedParquetUtils.verify(() -> ParquetUtils.previewRecords(path, 10, 10, new String[0]));
+    mockedParquetUtils.verify(() -> ParquetUtils.previewRecords(path, 0, 10, 10, new String[0]));
     mockedParquetUtils.close();
   }
 
@@ -428,10 +793,10 @@ class LocalStorageServiceTest {
 
     mockMetadata.put("id", idMeta);
     mockMetadata.put("place", placeMeta);
-    mockMetadata.put("age", Map.of("label", "Age label")); // should be filtered out
 
+    // only the linked variables should be requested, "age" is never read
     mockedParquetUtils
-        .when(() -> ParquetUtils.getColumnMetaData(parquetPath))
+        .when(() -> ParquetUtils.getColumnMetaData(parquetPath, List.of("id", "place"), true))
         .thenReturn(mockMetadata);
 
     // Call the method under test
@@ -0,0 +1,95 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.molgenis.armadillo.exceptions.StorageException;
+
+class ObjectVersionsTest {
+
+  @TempDir Path bucket;
+
+  private Path writeObject(String content, long lastModified) throws IOException {
+    Path object = bucket.resolve("core/test.parquet");
+    Files.createDirectories(object.getParent());
+    // objects are replaced, never written in place
+    Files.deleteIfExists(object);
+    Files.writeString(object, content);
+    Files.setLastModifiedTime(object, FileTime.fromMillis(lastModified));
+    return object;
+  }
+
+  private static List<String> names(List<ObjectMetadata> versions) {
+    return versions.stream().map(ObjectMetadata::name).toList();
+  }
+
+  @Test
+  void testPreserveKeepsNewestVersions() throws IOException {
+    ObjectVersions versions = new ObjectVersions(2);
+    for (int i = 1; i <= 3; i++) {
+      Path object = writeObject("v" + i, i * 1000L);
+      versions.preserve(bucket, "core/test.parquet", object);
+    }
+
+    List<ObjectMetadata> list = versions.list(bucket, "core/test.parquet");
+    assertEquals(List.of("0000000003000", "0000000002000"), names(list));
+    assertEquals(
+        "v2", Files.readString(versions.getPath(bucket, "core/test.parquet", "0000000002000")));
+  }
+
+  @Test
+  void testPreserveSharesDataWithObject() throws IOException {
+    Path object = writeObject("data", 1000L);
+
+    new ObjectVersions(1).preserve(bucket, "core/test.parquet", object);
+
+    assertTrue(
+        Files.isSameFile(object, bucket.resolve(".versions/core/test.parquet/0000000001000")));
+  }
+
+  @Test
+  void testPreserveTwiceWithinAMillisecond() throws IOException {
+    ObjectVersions versions = new ObjectVersions(5);
+    versions.preserve(bucket, "core/test.parquet", writeObject("v1", 1000L));
+    Files.delete(bucket.resolve("core/test.parquet"));
+    versions.preserve(bucket, "core/test.parquet", writeObject("v2", 1000L));
+
+    assertEquals(
+        List.of("0000000001000-1", "0000000001000"),
+        names(versions.list(bucket, "core/test.parquet")));
+  }
+
+  @Test
+  void testPreserveKeepsNothingByDefault() throws IOException {
+    ObjectVersions versions = new ObjectVersions(0);
+
+    versions.preserve(bucket, "core/test.parquet", writeObject("v1", 1000L));
+
+    assertEquals(List.of(), versions.list(bucket, "core/test.parquet"));
+    assertFalse(Files.exists(bucket.resolve(ObjectVersions.VERSIONS_DIR)));
+  }
+
+  @Test
+  void testGetPathOnlyAcceptsVersionNames() throws IOException {
+    ObjectVersions versions = new ObjectVersions(1);
+    versions.preserve(bucket, "core/test.parquet", writeObject("v1", 1000L));
+
+    assertThrows(
+        StorageException.class, () -> versions.getPath(bucket, "core/test.parquet", "../../x"));
+    assertThrows(
+        StorageException.class,
+        () -> versions.getPath(bucket, "core/test.parquet", "0000000002000"));
+  }
+
+  @Test
+  void testIsVersionFile() {
+    assertTrue(ObjectVersions.isVersionFile(bucket, bucket.resolve(".versions/core/a.parquet/1")));
+    assertFalse(ObjectVersions.isVersionFile(bucket, bucket.resolve("core/.versions")));
+  }
+}
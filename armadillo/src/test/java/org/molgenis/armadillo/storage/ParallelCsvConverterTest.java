@@ -0,0 +1,155 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.molgenis.armadillo.exceptions.FileProcessingException;
+
+class ParallelCsvConverterTest {
+
+  private static final MessageType SCHEMA =
+      MessageTypeParser.parseMessageType(
+          "message armadillo { optional int32 id; optional double score; "
+              + "optional boolean flag; optional binary label (STRING); }");
+
+  @TempDir Path tempDir;
+
+  private Path writeCsv(String content) throws IOException {
+    Path csv = tempDir.resolve("test.csv");
+    Files.writeString(csv, content);
+    return csv;
+  }
+
+  private static String createRows(int numberOfRows) {
+    StringBuilder csv = new StringBuilder("id,score,flag,label\n");
+    for (int i = 0; i < numberOfRows; i++) {
+      String label = i % 7 == 0 ? "\"multi\nline, " + i + "\"" : "label" + i;
+      String score = i % 5 == 0 ? "NA" : String.valueOf(i / 2.0);
+      csv.append(i).append(',').append(score).append(',').append(i % 2 == 0 ? 'T' : 'F');
+      csv.append(',').append(label).append('\n');
+    }
+    return csv.toString();
+  }
+
+  @Test
+  void testFindChunkBoundariesSkipsQuotedNewlines() throws IOException {
+    Path csv = writeCsv("a,b\n1,\"x\ny\"\n2,\"z \\\" \n\"\n3,w");
+
+    List<Long> boundaries = ParallelCsvConverter.findChunkBoundaries(csv, 1, ',');
+
+    assertEquals(List.of(4L, 12L, 23L, 26L), boundaries);
+  }
+
+  @Test
+  void testFindChunkBoundariesOnlyHeader() throws IOException {
+    Path csv = writeCsv("a,b");
+
+    assertEquals(List.of(3L), ParallelCsvConverter.findChunkBoundaries(csv, 1, ','));
+  }
+
+  @Test
+  void testFindChunkBoundariesRespectsChunkSize() throws IOException {
+    Path csv = writeCsv("h\n1\n2\n3\n4\n5\n");
+
+    assertEquals(List.of(2L, 6L, 10L, 12L), ParallelCsvConverter.findChunkBoundaries(csv, 3, ','));
+  }
+
+  @Test
+  void testFindChunkBoundariesAtCarriageReturns() throws IOException {
+    Path csv = writeCsv("h\r1\r\n2\r\"x\ry\"\r4");
+
+    assertEquals(
+        List.of(2L, 5L, 7L, 13L, 14L), ParallelCsvConverter.findChunkBoundaries(csv, 1, ','));
+  }
+
+  @Test
+  void testWriteWithCarriageReturnLineEndings() throws IOException {
+    Path csv = writeCsv(createRows(100).replace('\n', '\r'));
+    Path parquet = tempDir.resolve("test.parquet");
+
+    new ParallelCsvConverter(csv, ',', 4, 256)
+        .write(new LocalOutputFile(parquet), SCHEMA, ParquetWriteOptions.defaults());
+
+    List<Map<String, String>> rows = ParquetUtils.previewRecords(parquet, 100, 4, new String[0]);
+    assertEquals(100, rows.size());
+    // OpenCSV joins the lines of a quoted value with '\n'
+    assertEquals(
+        Map.of("id", "0", "score", "NA", "flag", "true", "label", "multi\nline, 0"), rows.get(0));
+    assertEquals("label99", rows.get(99).get("label"));
+  }
+
+  @Test
+  void testWriteKeepsRowOrderAcrossChunks() throws IOException {
+    Path csv = writeCsv(createRows(1000));
+    Path parquet = tempDir.resolve("test.parquet");
+
+    new ParallelCsvConverter(csv, ',', 4, 512)
+        .write(new LocalOutputFile(parquet), SCHEMA, ParquetWriteOptions.defaults());
+
+    List<Map<String, String>> rows = ParquetUtils.previewRecords(parquet, 1000, 4, new String[0]);
+    assertEquals(
+        Map.of("id", "0", "score", "NA", "flag", "true", "label", "multi\nline, 0"), rows.get(0));
+    for (int i = 0; i < 1000; i++) {
+      Map<String, String> row = rows.get(i);
+      assertEquals(String.valueOf(i), row.get("id"));
+      assertEquals(i % 5 == 0 ? "NA" : String.valueOf(i / 2.0), row.get("score"));
+      assertEquals(String.valueOf(i % 2 == 0), row.get("flag"));
+      assertEquals(i % 7 == 0 ? "multi\nline, " + i : "label" + i, row.get("label"));
+    }
+  }
+
+  @Test
+  void testWriteReportsRowNumberOfInvalidValue() throws IOException {
+    String rows = createRows(500);
+    Path csv = writeCsv(rows + "oops,1.0,T,x\n");
+    Path parquet = tempDir.resolve("test.parquet");
+    ParallelCsvConverter converter = new ParallelCsvConverter(csv, ',', 4, 256);
+    LocalOutputFile outputFile = new LocalOutputFile(parquet);
+    ParquetWriteOptions options = ParquetWriteOptions.defaults();
+
+    FileProcessingException exception =
+        assertThrows(
+            FileProcessingException.class, () -> converter.write(outputFile, SCHEMA, options));
+
+    assertTrue(exception.getMessage().contains("[oops] in row 501 of column [id]"));
+  }
+
+  @Test
+  void testWriteReportsTooManyValues() throws IOException {
+    Path csv = writeCsv("id,score,flag,label\n1,2.0,T,x\n2,3.0,F,y,z\n");
+    Path parquet = tempDir.resolve("test.parquet");
+    ParallelCsvConverter converter = new ParallelCsvConverter(csv, ',', 2, 1);
+    LocalOutputFile outputFile = new LocalOutputFile(parquet);
+    ParquetWriteOptions options = ParquetWriteOptions.defaults();
+
+    FileProcessingException exception =
+        assertThrows(
+            FileProcessingException.class, () -> converter.write(outputFile, SCHEMA, options));
+
+    assertEquals("Row 2 has 5 values, but the header has 4 columns", exception.getMessage());
+  }
+
+  @Test
+  void testInferTypesMergesChunks() throws IOException {
+    Path csv = writeCsv("a;b;c;d\n1;1;T;NA\n2;1.5;F;\n3;2;true;\nx;4;F;\n");
+
+    List<String> types = new ParallelCsvConverter(csv, ';', 3, 1).inferTypes(4);
+
+    assertEquals(
+        List.of(
+            CharacterSeparatedFile.STRING,
+            CharacterSeparatedFile.DOUBLE,
+            CharacterSeparatedFile.BOOLEAN,
+            CharacterSeparatedFile.STRING),
+        types);
+  }
+}
@@ -0,0 +1,63 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import org.apache.parquet.io.api.Binary;
+import org.junit.jupiter.api.Test;
+
+class ParquetColumnScannerTest {
+
+  @Test
+  void testAddValueCountsEmptyAndNaAsMissing() {
+    ParquetColumnScanner.ColumnStats stats = new ParquetColumnScanner.ColumnStats();
+    stats.addValue(Binary.fromString(""), 10);
+    stats.addValue(Binary.fromString("NA"), 10);
+    stats.addValue(Binary.fromString("a"), 10);
+    stats.countMissingValue();
+
+    assertEquals(3, stats.getMissing());
+    assertEquals(Set.of("a"), stats.getLevels());
+  }
+
+  @Test
+  void testAddValueStopsCollectingAboveCap() {
+    ParquetColumnScanner.ColumnStats stats = new ParquetColumnScanner.ColumnStats();
+    stats.addValue(Binary.fromString("a"), 2);
+    stats.addValue(Binary.fromString("b"), 2);
+    stats.addValue(Binary.fromString("a"), 2);
+    assertEquals(Set.of("a", "b"), stats.getLevels());
+
+    stats.addValue(Binary.fromString("c"), 2);
+    assertNull(stats.getLevels());
+  }
+
+  @Test
+  void testMerge() {
+    ParquetColumnScanner.ColumnStats first = new ParquetColumnScanner.ColumnStats();
+    first.addValue(Binary.fromString("a"), 3);
+    first.countMissingValue();
+    ParquetColumnScanner.ColumnStats second = new ParquetColumnScanner.ColumnStats();
+    second.addValue(Binary.fromString("b"), 3);
+    second.addValue(Binary.fromString("a"), 3);
+    second.countMissingValue();
+
+    first.merge(second, 3);
+
+    assertEquals(2, first.getMissing());
+    assertEquals(Set.of("a", "b"), first.getLevels());
+  }
+
+  @Test
+  void testMergeExceedingCap() {
+    ParquetColumnScanner.ColumnStats first = new ParquetColumnScanner.ColumnStats();
+    first.addValue(Binary.fromString("a"), 2);
+    first.addValue(Binary.fromString("b"), 2);
+    ParquetColumnScanner.ColumnStats second = new ParquetColumnScanner.ColumnStats();
+    second.addValue(Binary.fromString("c"), 2);
+
+    first.merge(second, 2);
+
+    assertNull(first.getLevels());
+  }
+}
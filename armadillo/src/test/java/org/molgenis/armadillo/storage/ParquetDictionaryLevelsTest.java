@@ -0,0 +1,117 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
+
+class ParquetDictionaryLevelsTest {
+  @TempDir Path tempDir;
+
+  /** 300 rows in row groups of 100, "category" cycles through 'a', 'b', 'c' and null. */
+  private Path writeCategoryTable(boolean dictionaryEncoding) throws IOException {
+    Path file = tempDir.resolve("category-" + dictionaryEncoding + ".parquet");
+    MessageType schema =
+        MessageTypeParser.parseMessageType(
+            "message test { optional binary category (STRING); optional binary name (STRING); }");
+    SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
+    List<String> categories = List.of("a", "b", "c");
+    try (ParquetWriter<Group> writer =
+        ExampleParquetWriter.builder(new LocalOutputFile(file))
+            .withType(schema)
+            .withDictionaryEncoding(dictionaryEncoding)
+            .withRowGroupRowCountLimit(100)
+            .build()) {
+      for (int i = 0; i < 300; i++) {
+        Group group = groupFactory.newGroup().append("name", "Name" + i);
+        if (i % 4 != 3) {
+          group.append("category", categories.get(i % 4));
+        }
+        writer.write(group);
+      }
+    }
+    return file;
+  }
+
+  private Optional<ParquetColumnScanner.ColumnStats> extract(Path path, String column, int cap)
+      throws IOException {
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(path))) {
+      Map<String, Statistics<?>> statistics =
+          ParquetFooterStatistics.getColumnStatistics(reader.getFooter(), Set.of(column));
+      return ParquetDictionaryLevels.extract(reader, column, statistics.get(column), cap);
+    }
+  }
+
+  @Test
+  void testExtractFromDictionary() throws IOException {
+    Path path = writeCategoryTable(true);
+
+    ParquetColumnScanner.ColumnStats stats = extract(path, "category", 89).orElseThrow();
+
+    assertEquals(75, stats.getMissing());
+    assertEquals(Set.of("a", "b", "c"), stats.getLevels());
+  }
+
+  @Test
+  void testExtractShortCircuitsAboveCap() throws IOException {
+    Path path = writeCategoryTable(true);
+
+    ParquetColumnScanner.ColumnStats stats = extract(path, "category", 2).orElseThrow();
+
+    assertEquals(75, stats.getMissing());
+    assertNull(stats.getLevels());
+  }
+
+  @Test
+  void testExtractUniqueValuesWithoutDictionary() throws IOException {
+    // a dictionary of unique values doesn't compress, so the writer falls back to plain encoding
+    Path path = writeCategoryTable(true);
+
+    assertTrue(extract(path, "name", 89).isEmpty());
+  }
+
+  @Test
+  void testExtractWithoutDictionary() throws IOException {
+    Path path = writeCategoryTable(false);
+
+    assertTrue(extract(path, "category", 89).isEmpty());
+  }
+
+  @Test
+  void testExtractFallsBackWhenDictionaryContainsNa() throws IOException {
+    Path path = ParquetUtilsTest.writeTestTable(tempDir);
+
+    assertTrue(extract(path, "status", 89).isEmpty());
+  }
+
+  @Test
+  void testColumnMetaDataMatchesScan() throws IOException {
+    Map<String, ArmadilloColumnMetaData> fromDictionary =
+        ParquetUtils.getColumnMetaData(writeCategoryTable(true));
+    Map<String, ArmadilloColumnMetaData> fromScan =
+        ParquetUtils.getColumnMetaData(writeCategoryTable(false));
+
+    assertEquals("75/300", fromDictionary.get("category").getTotalMissing());
+    assertEquals(
+        fromScan.get("category").getTotalMissing(),
+        fromDictionary.get("category").getTotalMissing());
+    assertEquals(fromScan.get("category").getLevels(), fromDictionary.get("category").getLevels());
+    assertNull(fromDictionary.get("name").getLevels());
+  }
+}
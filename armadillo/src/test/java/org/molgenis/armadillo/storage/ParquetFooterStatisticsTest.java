@@ -0,0 +1,60 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParquetFooterStatisticsTest {
+  @TempDir Path tempDir;
+  private ParquetMetadata footer;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Path path = ParquetUtilsTest.writeTestTable(tempDir);
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(path))) {
+      footer = reader.getFooter();
+    }
+  }
+
+  @Test
+  void testGetColumnStatisticsMergesRowGroups() {
+    Map<String, Statistics<?>> statistics =
+        ParquetFooterStatistics.getColumnStatistics(footer, Set.of("id", "age"));
+
+    assertEquals(Set.of("id", "age"), statistics.keySet());
+    assertEquals(0, statistics.get("id").getNumNulls());
+    assertEquals("0", statistics.get("id").minAsString());
+    assertEquals("299", statistics.get("id").maxAsString());
+    assertEquals(30, statistics.get("age").getNumNulls());
+  }
+
+  @Test
+  void testIsMissingCountExact() {
+    Map<String, Statistics<?>> statistics =
+        ParquetFooterStatistics.getColumnStatistics(footer, Set.of("age", "status", "name"));
+
+    assertTrue(ParquetFooterStatistics.isMissingCountExact(statistics.get("age")));
+    // status contains 'NA' which only shows up when reading the values
+    assertFalse(ParquetFooterStatistics.isMissingCountExact(statistics.get("status")));
+    // all names sort after 'NA' and none are empty
+    assertTrue(ParquetFooterStatistics.isMissingCountExact(statistics.get("name")));
+  }
+
+  @Test
+  void testHasNumericRange() {
+    Map<String, Statistics<?>> statistics =
+        ParquetFooterStatistics.getColumnStatistics(footer, Set.of("age", "name"));
+
+    assertTrue(ParquetFooterStatistics.hasNumericRange(statistics.get("age")));
+    assertFalse(ParquetFooterStatistics.hasNumericRange(statistics.get("name")));
+  }
+}
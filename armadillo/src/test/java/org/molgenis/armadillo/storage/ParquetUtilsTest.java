@@ -1,24 +1,62 @@
 package org.molgenis.armadillo.storage;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import org.apache.commons.compress.utils.Sets;
 import org.apache.parquet.example.data.Group;
-import org.apache.parquet.example.data.simple.SimpleGroup;
-import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.io.LocalOutputFile;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
 
 public class ParquetUtilsTest {
+  @TempDir Path tempDir;
+
+  /**
+   * Writes a table of 300 rows in row groups of 100 rows: "id" is unique, "age" is missing every
+   * 10th row, "status" cycles through 'active', 'inactive', 'NA' and null and "name" is unique.
+   */
+  static Path writeTestTable(Path dir) throws IOException {
+    Path file = dir.resolve("test.parquet");
+    MessageType schema =
+        MessageTypeParser.parseMessageType(
+            "message test { required int32 id; optional int32 age; "
+                + "optional binary status (STRING); optional binary name (STRING); }");
+    SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
+    try (ParquetWriter<Group> writer =
+        ExampleParquetWriter.builder(new LocalOutputFile(file))
+            .withType(schema)
+            .withRowGroupRowCountLimit(100)
+            .build()) {
+      for (int i = 0; i < 300; i++) {
+        Group group = groupFactory.newGroup().append("id", i).append("name", "Name" + i);
+        if (i % 10 != 0) {
+          group.append("age", 20 + i % 50);
+        }
+        switch (i % 4) {
+          case 0 -> group.append("status", "active");
+          case 1 -> group.append("status", "inactive");
+          case 2 -> group.append("status", "NA");
+          default -> {}
+        }
+        writer.write(group);
+      }
+    }
+    return file;
+  }
+
   @Test
   public void testParquetPreview() throws IOException, URISyntaxException {
     Path path =
@@ -124,120 +162,6 @@ public class ParquetUtilsTest {
     assertEquals(Set.of(), rawLevels.get("myColumn"));
   }
 
-  @Test
-  void testHandleColumnValueCountsMissingWhenEmpty() {
-    Map<String, String> datatypes = Map.of("col", "BINARY");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-
-    ArmadilloColumnMetaData armadilloColumnMetaData = ArmadilloColumnMetaData.create("BINARY");
-    armadilloColumnMetaData.setTotal(1L);
-    columnMetaData.put("col", armadilloColumnMetaData);
-    rawLevels.put("col", new HashSet<>());
-    levelCounts.put("col", 0);
-
-    // Mock Group
-    Group group = mock(Group.class);
-    when(group.getValueToString(anyInt(), anyInt())).thenReturn(""); // simulate empty value
-
-    // Mock MessageType and getFieldIndex
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("col")).thenReturn(0);
-
-    ParquetUtils.handleColumnValue(
-        group, schema, "col", datatypes, columnMetaData, rawLevels, levelCounts);
-
-    assertEquals("1/1", columnMetaData.get("col").getTotalMissing());
-  }
-
-  @Test
-  void testHandleColumnValueAddsBinaryLevel() {
-    Map<String, String> datatypes = Map.of("col", "BINARY");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-    ArmadilloColumnMetaData armadilloColumnMetaData = ArmadilloColumnMetaData.create("BINARY");
-    armadilloColumnMetaData.setTotal(1L);
-    columnMetaData.put("col", armadilloColumnMetaData);
-    rawLevels.put("col", new HashSet<>());
-    levelCounts.put("col", 0);
-
-    SimpleGroup group = mock(SimpleGroup.class);
-    when(group.getValueToString(anyInt(), anyInt())).thenReturn("LEVEL_A");
-
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("col")).thenReturn(0);
-
-    ParquetUtils.handleColumnValue(
-        group, schema, "col", datatypes, columnMetaData, rawLevels, levelCounts);
-
-    assertTrue(rawLevels.get("col").contains("LEVEL_A"));
-    assertEquals(1, levelCounts.get("col"));
-  }
-
-  @Test
-  void testProcessRowsWithSingleRow() {
-    // Prepare mocks and test data
-    Map<String, String> datatypes = Map.of("col1", "BINARY", "col2", "INT32");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-    List<String> columns = List.of("col1", "col2");
-    long numberOfRows = 1;
-
-    // Mock Group to return values for each column index
-    Group group = mock(Group.class);
-    when(group.getValueToString(0, 0)).thenReturn("level1"); // For "col1"
-    when(group.getValueToString(1, 0)).thenReturn("42"); // For "col2"
-
-    // Mock MessageType and getFieldIndex for columns
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("col1")).thenReturn(0);
-    when(schema.getFieldIndex("col2")).thenReturn(1);
-
-    // Create a mocked RecordReader<Group> that returns the mock Group once, then null
-    RecordReader<Group> recordReader =
-        new RecordReader<>() {
-          private int readCount = 0;
-
-          @Override
-          public Group read() {
-            if (readCount == 0) {
-              readCount++;
-              return group;
-            }
-            return null;
-          }
-        };
-
-    // Call the package-private processRows method (assumed package-private)
-    ParquetUtils.processRows(
-        recordReader,
-        numberOfRows,
-        schema,
-        columns,
-        datatypes,
-        columnMetaData,
-        rawLevels,
-        levelCounts);
-
-    // Assert expected metadata results
-    assertTrue(columnMetaData.containsKey("col1"));
-    assertTrue(columnMetaData.containsKey("col2"));
-
-    // Check missing counts (should be "0/1" initially)
-    assertEquals("0/1", columnMetaData.get("col1").getTotalMissing());
-    assertEquals("0/1", columnMetaData.get("col2").getTotalMissing());
-
-    // For col1 (BINARY), level should be recorded
-    assertTrue(rawLevels.get("col1").contains("level1"));
-    assertEquals(1, levelCounts.get("col1"));
-
-    // For col2 (INT32), no levels should be added (only missing count)
-    assertTrue(rawLevels.get("col2") == null || rawLevels.get("col2").isEmpty());
-  }
-
   @Test
   void testGetDatatypes() throws URISyntaxException, IOException {
     Path path =
@@ -298,132 +222,69 @@ public class ParquetUtilsTest {
   }
 
   @Test
-  void testGetColumnMetaDataThrowsOnInvalidFile() {
-    Path invalidPath = Path.of("non_existent.parquet");
+  void testGetColumnMetaDataReadsAllRowGroups() throws IOException {
+    Path path = writeTestTable(tempDir);
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(path))) {
+      assertEquals(3, reader.getRowGroups().size());
+    }
 
-    assertThrows(IOException.class, () -> ParquetUtils.getColumnMetaData(invalidPath));
-  }
+    Map<String, ArmadilloColumnMetaData> metadata = ParquetUtils.getColumnMetaData(path);
 
-  @Test
-  void testProcessRowsWithAllValuesPresent() {
-    Map<String, String> datatypes = Map.of("col", "INT32");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-    List<String> columns = List.of("col");
-    long numberOfRows = 1;
-
-    Group group = mock(Group.class);
-    when(group.getValueToString(0, 0)).thenReturn("123");
-
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("col")).thenReturn(0);
-
-    RecordReader<Group> recordReader =
-        new RecordReader<>() {
-          private int count = 0;
-
-          public Group read() {
-            return count++ == 0 ? group : null;
-          }
-        };
-
-    ParquetUtils.processRows(
-        recordReader,
-        numberOfRows,
-        schema,
-        columns,
-        datatypes,
-        columnMetaData,
-        rawLevels,
-        levelCounts);
-
-    assertEquals("0/1", columnMetaData.get("col").getTotalMissing());
-    assertNull(columnMetaData.get("col").getLevels());
+    assertEquals(List.of("id", "age", "status", "name"), List.copyOf(metadata.keySet()));
+    assertEquals("0/300", metadata.get("id").getTotalMissing());
+    assertEquals("30/300", metadata.get("age").getTotalMissing());
+    assertEquals("150/300", metadata.get("status").getTotalMissing());
+    assertEquals(Set.of("active", "inactive"), metadata.get("status").getLevels());
+    assertEquals("0/300", metadata.get("name").getTotalMissing());
+    assertNull(metadata.get("name").getLevels());
   }
 
   @Test
-  void testProcessRowsWithMissingValue() {
-    Map<String, String> datatypes = Map.of("col", "INT32");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-    List<String> columns = List.of("col");
-    long numberOfRows = 1;
-
-    Group group = mock(Group.class);
-    when(group.getValueToString(0, 0)).thenReturn(""); // empty = missing
-
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("col")).thenReturn(0);
-
-    RecordReader<Group> recordReader =
-        new RecordReader<>() {
-          private int count = 0;
-
-          public Group read() {
-            return count++ == 0 ? group : null;
-          }
-        };
+  void testGetColumnMetaDataOnlyReturnsRequestedColumns() throws IOException {
+    Path path = writeTestTable(tempDir);
 
-    ParquetUtils.processRows(
-        recordReader,
-        numberOfRows,
-        schema,
-        columns,
-        datatypes,
-        columnMetaData,
-        rawLevels,
-        levelCounts);
+    Map<String, ArmadilloColumnMetaData> metadata =
+        ParquetUtils.getColumnMetaData(path, List.of("status", "age", "unknown"));
 
-    assertEquals("1/1", columnMetaData.get("col").getTotalMissing());
+    assertEquals(List.of("age", "status"), List.copyOf(metadata.keySet()));
+    assertEquals("30/300", metadata.get("age").getTotalMissing());
+    assertEquals(Set.of("active", "inactive"), metadata.get("status").getLevels());
   }
 
   @Test
-  void testProcessRowsBinaryLevels() {
-    Map<String, String> datatypes = Map.of("status", "BINARY");
-    HashMap<String, ArmadilloColumnMetaData> columnMetaData = new HashMap<>();
-    HashMap<String, Set<String>> rawLevels = new HashMap<>();
-    HashMap<String, Integer> levelCounts = new HashMap<>();
-    List<String> columns = List.of("status");
-    long numberOfRows = 2;
-
-    Group group1 = mock(Group.class);
-    when(group1.getValueToString(0, 0)).thenReturn("active");
-
-    Group group2 = mock(Group.class);
-    when(group2.getValueToString(0, 0)).thenReturn("inactive");
-
-    MessageType schema = mock(MessageType.class);
-    when(schema.getFieldIndex("status")).thenReturn(0);
-
-    RecordReader<Group> recordReader =
-        new RecordReader<>() {
-          private int count = 0;
+  void testGetColumnMetaDataWithoutLevels() throws IOException {
+    Path path = writeTestTable(tempDir);
+
+    Map<String, ArmadilloColumnMetaData> metadata =
+        ParquetUtils.getColumnMetaData(path, List.of("id", "age", "status", "name"), false);
+
+    assertEquals("0/300", metadata.get("id").getTotalMissing());
+    assertEquals("0", metadata.get("id").getMin());
+    assertEquals("299", metadata.get("id").getMax());
+    assertEquals("30/300", metadata.get("age").getTotalMissing());
+    assertEquals("21", metadata.get("age").getMin());
+    assertEquals("69", metadata.get("age").getMax());
+    assertEquals("150/300", metadata.get("status").getTotalMissing());
+    assertNull(metadata.get("status").getMin());
+    assertEquals("0/300", metadata.get("name").getTotalMissing());
+    assertNull(metadata.get("name").getLevels());
+  }
 
-          public Group read() {
-            return switch (count++) {
-              case 0 -> group1;
-              case 1 -> group2;
-              default -> null;
-            };
-          }
-        };
+  @Test
+  void testGetLevelCap() {
+    assertEquals(0, ParquetUtils.getLevelCap(0));
+    assertEquals(0, ParquetUtils.getLevelCap(1));
+    assertEquals(29, ParquetUtils.getLevelCap(100));
+    assertEquals(30, ParquetUtils.getLevelCap(101));
+    assertFalse(ParquetUtils.isUnique(ParquetUtils.getLevelCap(1000), 1000));
+    assertTrue(ParquetUtils.isUnique(ParquetUtils.getLevelCap(1000) + 1, 1000));
+  }
 
-    ParquetUtils.processRows(
-        recordReader,
-        numberOfRows,
-        schema,
-        columns,
-        datatypes,
-        columnMetaData,
-        rawLevels,
-        levelCounts);
+  @Test
+  void testGetColumnMetaDataThrowsOnInvalidFile() {
+    Path invalidPath = Path.of("non_existent.parquet");
 
-    assertEquals("0/2", columnMetaData.get("status").getTotalMissing());
-    assertTrue(rawLevels.get("status").contains("active"));
-    assertTrue(rawLevels.get("status").contains("inactive"));
-    assertEquals(2, levelCounts.get("status"));
+    assertThrows(IOException.class, () -> ParquetUtils.getColumnMetaData(invalidPath));
   }
 
   @Test
@@ -497,4 +358,146 @@ public class ParquetUtilsTest {
         Objects.requireNonNull(columnMetaData.get("col").getLevels())
             .isEmpty()); // empty, but added
   }
+
+  @Test
+  void testPreviewPageAcrossRowGroups() throws IOException {
+    Path path = writeTestTable(tempDir);
+
+    List<Map<String, String>> preview =
+        ParquetUtils.previewRecords(path, 150, 120, 10, new String[] {"name", "age", "unknown"});
+
+    assertEquals(120, preview.size());
+    for (int i = 0; i < preview.size(); i++) {
+      int id = 150 + i;
+      assertEquals(List.of("age", "name"), List.copyOf(preview.get(i).keySet()));
+      assertEquals(id % 10 == 0 ? "NA" : String.valueOf(20 + id % 50), preview.get(i).get("age"));
+      assertEquals("Name" + id, preview.get(i).get("name"));
+    }
+  }
+
+  @Test
+  void testPreviewPageEndOfTable() throws IOException {
+    Path path = writeTestTable(tempDir);
+
+    assertEquals(5, ParquetUtils.previewRecords(path, 295, 10, 10, new String[0]).size());
+    assertEquals(List.of(), ParquetUtils.previewRecords(path, 300, 10, 10, new String[0]));
+    assertEquals(List.of(), ParquetUtils.previewRecords(path, 0, 10, 10, new String[] {"x"}));
+  }
+
+  @Test
+  void testPreviewPageSkipsPages() throws IOException {
+    Path path = tempDir.resolve("pages.parquet");
+    MessageType schema =
+        MessageTypeParser.parseMessageType(
+            "message test { required int32 id; optional binary label (STRING); }");
+    SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
+    try (ParquetWriter<Group> writer =
+        ExampleParquetWriter.builder(new LocalOutputFile(path))
+            .withType(schema)
+            .withRowGroupRowCountLimit(50)
+            .withPageRowCountLimit(7)
+            .build()) {
+      for (int i = 0; i < 200; i++) {
+        Group group = groupFactory.newGroup().append("id", i);
+        if (i % 3 != 0) {
+          group.append("label", "label" + i);
+        }
+        writer.write(group);
+      }
+    }
+
+    for (int offset : new int[] {0, 6, 7, 13, 49, 50, 64, 190}) {
+      List<Map<String, String>> preview =
+          ParquetUtils.previewRecords(path, offset, 9, 10, new String[] {"label"});
+      assertEquals(Math.min(9, 200 - offset), preview.size());
+      for (int i = 0; i < preview.size(); i++) {
+        int id = offset + i;
+        assertEquals(Map.of("label", id % 3 == 0 ? "NA" : "label" + id), preview.get(i));
+      }
+    }
+  }
+
+  @Test
+  void testWriteProjection() throws IOException {
+    Path path = writeTestTable(tempDir);
+    Path projection = tempDir.resolve("projection.parquet");
+
+    assertTrue(ParquetUtils.writeProjection(path, projection, List.of("name", "id", "unknown")));
+
+    assertEquals(List.of("id", "name"), ParquetUtils.getColumns(projection));
+    assertEquals(
+        ParquetUtils.previewRecords(path, 100, 4, new String[0]).stream()
+            .map(row -> Map.of("id", row.get("id"), "name", row.get("name")))
+            .toList(),
+        ParquetUtils.previewRecords(projection, 100, 2, new String[0]));
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(projection))) {
+      assertEquals(3, reader.getRowGroups().size());
+    }
+  }
+
+  @Test
+  void testWriteProjectionOfAllColumns() throws IOException {
+    Path path = writeTestTable(tempDir);
+    Path projection = tempDir.resolve("projection.parquet");
+
+    assertFalse(
+        ParquetUtils.writeProjection(path, projection, List.of("id", "age", "status", "name")));
+    assertFalse(ParquetUtils.writeProjection(path, projection, List.of("unknown")));
+    assertFalse(Files.exists(projection));
+  }
+
+  @Test
+  void testWriteFilteredRows() throws IOException {
+    Path path = writeTestTable(tempDir);
+    Path filtered = tempDir.resolve("filtered.parquet");
+
+    long rows =
+        ParquetUtils.writeFilteredRows(
+            path,
+            filtered,
+            List.of("id", "name"),
+            RowFilter.parse("id >= 150 & status == 'active'"),
+            ParquetWriteOptions.defaults());
+
+    assertEquals(37, rows);
+    assertEquals(List.of("id", "name"), ParquetUtils.getColumns(filtered));
+    List<Map<String, String>> preview =
+        ParquetUtils.previewRecords(filtered, 100, 10, new String[0]);
+    assertEquals(37, preview.size());
+    assertEquals(Map.of("id", "152", "name", "Name152"), preview.get(0));
+    assertEquals(Map.of("id", "296", "name", "Name296"), preview.get(36));
+  }
+
+  @Test
+  void testWriteFilteredRowsLeavesOutMissingValues() throws IOException {
+    Path path = writeTestTable(tempDir);
+    Path filtered = tempDir.resolve("filtered.parquet");
+
+    long rows =
+        ParquetUtils.writeFilteredRows(
+            path,
+            filtered,
+            List.of(),
+            RowFilter.parse("age != 25"),
+            ParquetWriteOptions.defaults());
+
+    // 30 rows have no age and 6 rows have age 25
+    assertEquals(264, rows);
+    assertEquals(List.of("id", "age", "status", "name"), ParquetUtils.getColumns(filtered));
+  }
+
+  @Test
+  void testWriteFilteredRowsWithoutMatches() throws IOException {
+    Path path = writeTestTable(tempDir);
+    Path filtered = tempDir.resolve("filtered.parquet");
+
+    assertEquals(
+        0,
+        ParquetUtils.writeFilteredRows(
+            path,
+            filtered,
+            List.of(),
+            RowFilter.parse("id %in% c(1000, 2000)"),
+            ParquetWriteOptions.defaults()));
+  }
 }
@@ -0,0 +1,118 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.molgenis.armadillo.exceptions.UnsupportedCompressionCodecException;
+
+class ParquetWriteOptionsTest {
+  @TempDir Path tempDir;
+
+  private final ParquetWriteOptions options =
+      new ParquetWriteOptions(CompressionCodecName.ZSTD, 1024, 512, 100, 256, 32, List.of("id"));
+
+  @Test
+  void testWithoutOverrides() {
+    assertSame(options, options.with(ParquetWriteOptions.Overrides.NONE));
+    assertEquals(ParquetWriteOptions.Overrides.NONE, new ParquetWriteOptions.Overrides(null, null));
+  }
+
+  @Test
+  void testWithOverrides() {
+    ParquetWriteOptions overridden =
+        options.with(
+            new ParquetWriteOptions.Overrides(CompressionCodecName.SNAPPY, List.of("name", "id")));
+
+    assertEquals(CompressionCodecName.SNAPPY, overridden.getCompressionCodec());
+    assertEquals(List.of("id", "name"), overridden.getBloomFilterColumns());
+    assertEquals(1024, overridden.getRowGroupSize());
+    assertEquals(512, overridden.getPageSize());
+    assertEquals(100, overridden.getPageRowCountLimit());
+    assertEquals(256, overridden.getDictionaryPageSize());
+    assertEquals(32, overridden.getColumnIndexTruncateLength());
+  }
+
+  @Test
+  void testWithBloomFiltersKeepsCodec() {
+    ParquetWriteOptions overridden =
+        options.with(new ParquetWriteOptions.Overrides(null, List.of("name")));
+
+    assertEquals(CompressionCodecName.ZSTD, overridden.getCompressionCodec());
+    assertEquals(List.of("id", "name"), overridden.getBloomFilterColumns());
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = CompressionCodecName.class,
+      names = {"UNCOMPRESSED", "SNAPPY", "GZIP", "ZSTD", "LZ4_RAW", "LZ4"})
+  void testWritesWithAcceptedCodec(CompressionCodecName codec) throws IOException {
+    ParquetWriteOptions codecOptions =
+        new ParquetWriteOptions(codec, ParquetWriter.DEFAULT_BLOCK_SIZE, 1024);
+    MessageType schema = MessageTypeParser.parseMessageType("message t { required binary id; }");
+    SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
+    Path file = tempDir.resolve("table.parquet");
+
+    try (var writer =
+        codecOptions
+            .configure(ExampleParquetWriter.builder(new LocalOutputFile(file)).withType(schema))
+            .build()) {
+      for (int i = 0; i < 1000; i++) {
+        writer.write(groupFactory.newGroup().append("id", "id" + i));
+      }
+    }
+
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(file))) {
+      assertEquals(
+          codecOptions.getCompressionCodec(),
+          reader.getFooter().getBlocks().get(0).getColumns().get(0).getCodec());
+    }
+    assertEquals(1000, ParquetUtils.getRowCount(file));
+    assertEquals(
+        List.of(Map.of("id", "id999")),
+        ParquetUtils.previewRecords(file, 999, 1, 1, new String[0]));
+  }
+
+  @Test
+  void testLz4IsWrittenAsLz4Raw() {
+    assertEquals(
+        CompressionCodecName.LZ4_RAW,
+        new ParquetWriteOptions(CompressionCodecName.LZ4, 1024, 512).getCompressionCodec());
+    assertEquals(
+        CompressionCodecName.LZ4_RAW,
+        new ParquetWriteOptions.Overrides(CompressionCodecName.LZ4, null).compressionCodec());
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = CompressionCodecName.class,
+      names = {"LZO", "BROTLI"})
+  void testRefusesUnsupportedCodec(CompressionCodecName codec) {
+    assertThrows(
+        UnsupportedCompressionCodecException.class,
+        () -> new ParquetWriteOptions(codec, 1024, 512));
+    var exception =
+        assertThrows(
+            UnsupportedCompressionCodecException.class,
+            () -> new ParquetWriteOptions.Overrides(codec, List.of()));
+    assertEquals(
+        "Compression codec "
+            + codec
+            + " is not supported, use one of [UNCOMPRESSED, SNAPPY, GZIP, ZSTD, LZ4_RAW]",
+        exception.getMessage());
+  }
+}
@@ -0,0 +1,75 @@
+package org.molgenis.armadillo.storage;
+
+import static org.apache.parquet.filter2.predicate.FilterApi.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.molgenis.armadillo.exceptions.InvalidRowFilterException;
+
+class RowFilterTest {
+
+  private static final MessageType SCHEMA =
+      MessageTypeParser.parseMessageType(
+          "message test { required int32 id; optional double weight; "
+              + "optional binary region (STRING); optional boolean smoker; "
+              + "optional group nested { optional int32 value; } }");
+
+  @Test
+  void testParse() {
+    RowFilter filter = RowFilter.parse("id >= 18 & region %in% c('north', \"east\") & smoker == T");
+
+    assertEquals(List.of("id", "region", "smoker"), List.copyOf(filter.getColumns()));
+    assertEquals(
+        and(
+            and(
+                gtEq(intColumn("id"), 18),
+                in(
+                    binaryColumn("region"),
+                    Set.of(Binary.fromString("north"), Binary.fromString("east")))),
+            eq(booleanColumn("smoker"), true)),
+        filter.toPredicate(SCHEMA));
+  }
+
+  @Test
+  void testNotEqualLeavesOutMissingValues() {
+    assertEquals(
+        and(notEq(doubleColumn("weight"), 80.5), notEq(doubleColumn("weight"), null)),
+        RowFilter.parse("weight != 80.5").toPredicate(SCHEMA));
+  }
+
+  @Test
+  void testAmpersandInQuotedValue() {
+    RowFilter filter = RowFilter.parse("region == 'north & east'");
+
+    assertEquals(
+        eq(binaryColumn("region"), Binary.fromString("north & east")), filter.toPredicate(SCHEMA));
+  }
+
+  @Test
+  void testToString() {
+    assertEquals("id < 10", RowFilter.parse("id < 10").toString());
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"", "id", "id => 10", "id == ", "id %in% 10", "id == 'a' 'b'", "& id > 1"})
+  void testInvalidSyntax(String expression) {
+    assertThrows(InvalidRowFilterException.class, () -> RowFilter.parse(expression));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"unknown == 1", "nested == 1", "id == 'a'", "weight > heavy", "smoker < TRUE"})
+  void testInvalidForSchema(String expression) {
+    RowFilter filter = RowFilter.parse(expression);
+
+    assertThrows(InvalidRowFilterException.class, () -> filter.toPredicate(SCHEMA));
+  }
+}
@@ -0,0 +1,104 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StorageCatalogTest {
+
+  @TempDir Path root;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Files.createDirectories(root.resolve("shared-lifecycle/core"));
+    Files.writeString(root.resolve("shared-lifecycle/core/nonrep.parquet"), "table");
+    Files.writeString(root.resolve("shared-lifecycle/a.rds"), "resource");
+    Files.writeString(root.resolve("shared-lifecycle/.save-1.tmp"), "partial");
+    Files.writeString(root.resolve("shared-lifecycle/" + TableMetadataCache.SIDECAR_FILE), "[]");
+    Files.createDirectories(root.resolve("user-henk"));
+    Files.writeString(root.resolve("not-a-bucket.txt"), "file");
+  }
+
+  private static List<String> names(List<ObjectMetadata> objects) {
+    return objects.stream().map(ObjectMetadata::name).toList();
+  }
+
+  @Test
+  void testScansRootOnCreation() {
+    StorageCatalog catalog = new StorageCatalog(root);
+
+    assertEquals(List.of("shared-lifecycle", "user-henk"), catalog.listBuckets());
+    assertEquals(
+        List.of("a.rds", "core/nonrep.parquet"), names(catalog.listObjects("shared-lifecycle")));
+    assertEquals(List.of(), catalog.listObjects("user-henk"));
+    assertEquals(List.of(), catalog.listObjects("shared-unknown"));
+    assertEquals(5, catalog.getObject("shared-lifecycle", "core/nonrep.parquet").get().size());
+    assertTrue(catalog.getObject("shared-lifecycle", "./core/../a.rds").isPresent());
+    assertFalse(catalog.getObject("shared-lifecycle", ".save-1.tmp").isPresent());
+    assertFalse(catalog.bucketExists("not-a-bucket.txt"));
+  }
+
+  @Test
+  void testRefreshObject() throws IOException {
+    StorageCatalog catalog = new StorageCatalog(root);
+
+    long version = catalog.getVersion();
+    Files.writeString(root.resolve("user-henk/test.RData"), "workspace");
+    catalog.refreshObject("user-henk", "test.RData");
+    assertTrue(catalog.getVersion() > version);
+    assertEquals(9, catalog.getObject("user-henk", "test.RData").get().size());
+
+    Files.delete(root.resolve("shared-lifecycle/a.rds"));
+    catalog.refreshObject("shared-lifecycle", "a.rds");
+    assertEquals(List.of("core/nonrep.parquet"), names(catalog.listObjects("shared-lifecycle")));
+  }
+
+  @Test
+  void testRefreshBucket() throws IOException {
+    StorageCatalog catalog = new StorageCatalog(root);
+
+    Files.createDirectories(root.resolve("shared-diabetes"));
+    Files.writeString(root.resolve("shared-diabetes/a.parquet"), "table");
+    catalog.refreshBucket("shared-diabetes");
+    assertEquals(List.of("a.parquet"), names(catalog.listObjects("shared-diabetes")));
+
+    Files.delete(root.resolve("shared-diabetes/a.parquet"));
+    Files.delete(root.resolve("shared-diabetes"));
+    catalog.refreshBucket("shared-diabetes");
+    assertFalse(catalog.bucketExists("shared-diabetes"));
+  }
+
+  @Test
+  void testWatchPicksUpChangesMadeByOthers() throws Exception {
+    try (StorageCatalog catalog = new StorageCatalog(root)) {
+      catalog.watch();
+
+      Files.writeString(root.resolve("shared-lifecycle/core/rep.parquet"), "table");
+      awaitTrue(() -> catalog.getObject("shared-lifecycle", "core/rep.parquet").isPresent());
+
+      Files.createDirectories(root.resolve("shared-diabetes/core"));
+      awaitTrue(() -> catalog.bucketExists("shared-diabetes"));
+      Files.writeString(root.resolve("shared-diabetes/core/a.parquet"), "table");
+      awaitTrue(() -> catalog.getObject("shared-diabetes", "core/a.parquet").isPresent());
+
+      Files.delete(root.resolve("shared-lifecycle/a.rds"));
+      awaitTrue(() -> catalog.getObject("shared-lifecycle", "a.rds").isEmpty());
+    }
+  }
+
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    // the poll based watch service of some platforms only checks every few seconds
+    long deadline = System.nanoTime() + 30_000_000_000L;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "Change was not picked up in time");
+      Thread.sleep(20);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.molgenis.armadillo.model.ArmadilloColumnMetaData;
+
+class TableMetadataCacheTest {
+
+  @TempDir Path bucket;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    Files.writeString(bucket.resolve("a.parquet"), "a");
+    Files.writeString(bucket.resolve("b.parquet"), "b");
+  }
+
+  private Map<String, ArmadilloColumnMetaData> load() {
+    loads.incrementAndGet();
+    ArmadilloColumnMetaData columnMetaData = ArmadilloColumnMetaData.create("BINARY");
+    columnMetaData.setTotal(10);
+    columnMetaData.setMissing(2);
+    columnMetaData.setPossibleLevels(Set.of("x", "y"));
+    ArmadilloColumnMetaData numeric = ArmadilloColumnMetaData.create("INT32");
+    numeric.setTotal(10);
+    numeric.setRange("1", "9");
+    return Map.of("status", columnMetaData, "age", numeric);
+  }
+
+  @Test
+  void testGetCachesMetadata() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+
+    var first = cache.get(bucket, "a.parquet", null, true, this::load);
+    var second = cache.get(bucket, "a.parquet", null, true, this::load);
+
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testGetDistinguishesColumnsAndLevels() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "a.parquet", null, false, this::load);
+    cache.get(bucket, "a.parquet", List.of("status"), true, this::load);
+
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  void testGetMissesWhenFileChanged() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+    cache.get(bucket, "a.parquet", null, true, this::load);
+
+    Files.writeString(bucket.resolve("a.parquet"), "changed");
+    cache.get(bucket, "a.parquet", null, true, this::load);
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testInvalidate() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "a.parquet", List.of("status"), true, this::load);
+    cache.get(bucket, "b.parquet", null, true, this::load);
+
+    cache.invalidate(bucket, "a.parquet");
+    assertEquals(1, cache.size());
+
+    cache.invalidate(bucket);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testEvictsLeastRecentlyUsed() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(2, false);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "b.parquet", null, true, this::load);
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "a.parquet", null, false, this::load);
+    // b was least recently used and is evicted, a is still cached
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "b.parquet", null, true, this::load);
+
+    assertEquals(4, loads.get());
+    assertEquals(2, registry.get("storage.metadata.cache.hits").functionCounter().count());
+    assertEquals(4, registry.get("storage.metadata.cache.misses").functionCounter().count());
+    assertEquals(2, registry.get("storage.metadata.cache.evictions").functionCounter().count());
+    assertEquals(2, registry.get("storage.metadata.cache.size").gauge().value());
+  }
+
+  @Test
+  void testPersistsToSidecar() throws IOException {
+    new TableMetadataCache(10, true).get(bucket, "a.parquet", null, true, this::load);
+    assertTrue(Files.exists(bucket.resolve(TableMetadataCache.SIDECAR_FILE)));
+
+    var restored =
+        new TableMetadataCache(10, true)
+            .get(bucket, "a.parquet", null, true, () -> fail("should be read from sidecar"));
+
+    assertEquals(1, loads.get());
+    assertEquals(Set.of("status", "age"), restored.keySet());
+    assertEquals("2/10", restored.get("status").getTotalMissing());
+    assertEquals(Set.of("x", "y"), restored.get("status").getLevels());
+    assertEquals("1", restored.get("age").getMin());
+    assertEquals("9", restored.get("age").getMax());
+    assertNull(restored.get("age").getLevels());
+  }
+
+  @Test
+  void testIgnoresOutdatedSidecarEntries() throws IOException {
+    new TableMetadataCache(10, true).get(bucket, "a.parquet", null, true, this::load);
+    Path file = bucket.resolve("a.parquet");
+    Files.setLastModifiedTime(
+        file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+    new TableMetadataCache(10, true).get(bucket, "a.parquet", null, true, this::load);
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testIgnoresUnreadableSidecar() throws IOException {
+    Files.writeString(bucket.resolve(TableMetadataCache.SIDECAR_FILE), "not json");
+
+    new TableMetadataCache(10, true).get(bucket, "a.parquet", null, true, this::load);
+
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testGetCachesLookups() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+
+    var variables = cache.get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+    assertSame(
+        variables, cache.get(bucket, "a.parquet", "variables", List.of(), this::loadVariables));
+    cache.get(bucket, "a.parquet", "dimensions", List.of("a"), this::loadVariables);
+    cache.get(bucket, "a.parquet", "dimensions", List.of("b"), this::loadVariables);
+    cache.get(bucket, "a.parquet", "dimensions", List.of("b"), this::loadVariables);
+
+    assertEquals(3, loads.get());
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  void testLookupMissesWhenFileChanged() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+    cache.get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+
+    Files.writeString(bucket.resolve("a.parquet"), "changed");
+    cache.get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testInvalidateLookups() throws IOException {
+    TableMetadataCache cache = new TableMetadataCache(10, false);
+    cache.get(bucket, "a.parquet", null, true, this::load);
+    cache.get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+    cache.get(bucket, "b.parquet", "variables", List.of(), this::loadVariables);
+
+    cache.invalidate(bucket, "a.parquet");
+    assertEquals(1, cache.size());
+
+    cache.invalidate(bucket);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testLookupsAreNotPersisted() throws IOException {
+    new TableMetadataCache(10, true)
+        .get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+
+    new TableMetadataCache(10, true)
+        .get(bucket, "a.parquet", "variables", List.of(), this::loadVariables);
+
+    assertEquals(2, loads.get());
+  }
+
+  private List<String> loadVariables() {
+    loads.incrementAndGet();
+    return List.of("status", "age");
+  }
+}
@@ -0,0 +1,200 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.molgenis.armadillo.exceptions.FileProcessingException;
+import org.molgenis.armadillo.exceptions.UnknownUploadJobException;
+import org.molgenis.armadillo.exceptions.UploadJobsBusyException;
+import org.springframework.mock.web.MockMultipartFile;
+
+@ExtendWith(MockitoExtension.class)
+class UploadJobServiceTest {
+
+  @Mock ArmadilloStorageService storage;
+  UploadJobService uploadJobService;
+  MockMultipartFile file =
+      new MockMultipartFile("file", "table.csv", null, "a,b\n1,2\n".getBytes());
+
+  @BeforeEach
+  void setup() {
+    uploadJobService =
+        new UploadJobService(
+            storage, 1, 1, Duration.ofMillis(100), Duration.ofHours(1), Clock.systemUTC());
+  }
+
+  @AfterEach
+  void shutdown() {
+    uploadJobService.shutdown();
+  }
+
+  private static UploadJob awaitFinished(UploadJob job) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (job.getFinished() == null && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNotNull(job.getFinished(), "job did not finish in time");
+    return job;
+  }
+
+  @Test
+  void testSubmitObjectUpload() throws Exception {
+    AtomicReference<byte[]> uploaded = new AtomicReference<>();
+    doAnswer(
+            invocation -> {
+              uploaded.set(invocation.getArgument(2, InputStream.class).readAllBytes());
+              return null;
+            })
+        .when(storage)
+        .addObject(eq("project"), eq("core/table.parquet"), any(InputStream.class));
+
+    UploadJob job = uploadJobService.submitObjectUpload("project", "core/table.parquet", file);
+    awaitFinished(job);
+
+    assertEquals(UploadJob.Status.COMPLETED, job.getStatus());
+    assertArrayEquals(file.getBytes(), uploaded.get());
+    assertEquals(file.getSize(), job.getTotalBytes());
+    assertEquals(file.getSize(), job.getBytesRead());
+    verify(storage).getMetadata("project", "core/table.parquet");
+    assertSame(job, uploadJobService.getJob(job.getId()));
+  }
+
+  @Test
+  void testSubmitCsvUpload() throws Exception {
+    UploadJob job = uploadJobService.submitCsvUpload("project", "core/table.csv", file, 100);
+    awaitFinished(job);
+
+    assertEquals(UploadJob.Status.COMPLETED, job.getStatus());
+    assertEquals("core/table.parquet", job.getObject());
+    verify(storage)
+        .writeParquetFromCsv(
+            eq("project"),
+            eq("core/table.csv"),
+            any(),
+            eq(100),
+            eq(ParquetWriteOptions.Overrides.NONE),
+            eq(job));
+    verify(storage).getMetadata("project", "core/table.parquet");
+  }
+
+  @Test
+  void testFailedUpload() throws Exception {
+    doThrow(new FileProcessingException("Row 2 has 3 values, but the header has 2 columns"))
+        .when(storage)
+        .writeParquetFromCsv(any(), any(), any(), anyInt(), any(), any());
+
+    UploadJob job = uploadJobService.submitCsvUpload("project", "core/table.csv", file, 100);
+    awaitFinished(job);
+
+    assertEquals(UploadJob.Status.FAILED, job.getStatus());
+    assertEquals(
+        "Could not process file: [table.csv] because: [Row 2 has 3 values, but the header has 2"
+            + " columns]",
+        job.getError());
+    verify(storage, never()).getMetadata(any(), any());
+  }
+
+  @Test
+  void testSpooledUploadIsDeleted() throws Exception {
+    AtomicReference<Path> spooled = new AtomicReference<>();
+    UploadJob job =
+        uploadJobService.submit(
+            "project",
+            "object",
+            file,
+            (upload, uploadJob) -> {
+              Path copy = Files.createTempFile("spooled", ".csv");
+              upload.transferTo(copy);
+              spooled.set(copy);
+              assertArrayEquals(file.getBytes(), Files.readAllBytes(copy));
+            });
+    awaitFinished(job);
+    Files.delete(spooled.get());
+
+    assertEquals(UploadJob.Status.COMPLETED, job.getStatus());
+  }
+
+  @Test
+  void testBackPressureWhenAllSlotsAreTaken() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    UploadJobService.UploadTask blocking = (upload, job) -> release.await();
+
+    UploadJob running = uploadJobService.submit("project", "a", file, blocking);
+    UploadJob queued = uploadJobService.submit("project", "b", file, blocking);
+
+    assertThrows(
+        UploadJobsBusyException.class,
+        () -> uploadJobService.submit("project", "c", file, blocking));
+
+    release.countDown();
+    awaitFinished(running);
+    awaitFinished(queued);
+    assertEquals(UploadJob.Status.COMPLETED, queued.getStatus());
+    UploadJob afterwards = uploadJobService.submit("project", "c", file, (upload, job) -> {});
+    assertEquals(UploadJob.Status.COMPLETED, awaitFinished(afterwards).getStatus());
+  }
+
+  @Test
+  void testFinishedJobsExpire() throws Exception {
+    Instant now = Instant.now();
+    MutableClock clock = new MutableClock(now);
+    uploadJobService.shutdown();
+    uploadJobService =
+        new UploadJobService(storage, 1, 1, Duration.ofMillis(100), Duration.ofMinutes(5), clock);
+
+    UploadJob job = uploadJobService.submit("project", "a", file, (upload, uploadJob) -> {});
+    awaitFinished(job);
+    assertSame(job, uploadJobService.getJob(job.getId()));
+
+    clock.instant = now.plus(Duration.ofMinutes(6));
+    String id = job.getId();
+    assertThrows(UnknownUploadJobException.class, () -> uploadJobService.getJob(id));
+  }
+
+  @Test
+  void testUnknownJob() {
+    assertThrows(UnknownUploadJobException.class, () -> uploadJobService.getJob("unknown"));
+  }
+
+  private static class MutableClock extends Clock {
+    volatile Instant instant;
+
+    MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class UploadJobTest {
+
+  private final Instant start = Instant.parse("2026-01-01T10:00:00Z");
+
+  @Test
+  void testEtaUnknownBeforeStart() {
+    UploadJob job = new UploadJob("id", "project", "table.parquet", 1000, start);
+
+    assertEquals(UploadJob.Status.QUEUED, job.getStatus());
+    assertNull(job.getEtaSeconds(start.plusSeconds(10)));
+  }
+
+  @Test
+  void testEtaFromAverageSpeed() {
+    UploadJob job = new UploadJob("id", "project", "table.parquet", 1000, start);
+    job.start(start);
+    job.addBytesRead(250);
+
+    assertEquals(30, job.getEtaSeconds(start.plusSeconds(10)));
+  }
+
+  @Test
+  void testEtaZeroWhenFinished() {
+    UploadJob job = new UploadJob("id", "project", "table.parquet", 1000, start);
+    job.start(start);
+    job.fail(start.plusSeconds(1), new IllegalStateException("broken"));
+
+    assertEquals(UploadJob.Status.FAILED, job.getStatus());
+    assertEquals("broken", job.getError());
+    assertEquals(0, job.getEtaSeconds(start.plusSeconds(2)));
+    assertTrue(job.isFinishedBefore(start.plusSeconds(2)));
+    assertFalse(job.isFinishedBefore(start));
+    assertTrue(job.whenFinished().isCompletedExceptionally());
+  }
+
+  @Test
+  void testWhenFinishedCompletesWithJob() {
+    UploadJob job = new UploadJob("id", "project", "table.parquet", 1000, start);
+    job.start(start);
+    assertFalse(job.whenFinished().isDone());
+
+    job.complete(start.plusSeconds(1));
+
+    assertSame(job, job.whenFinished().join());
+  }
+
+  @Test
+  void testTrackCountsBytesRead() throws IOException {
+    UploadJob job = new UploadJob("id", "project", "table.parquet", 5, start);
+
+    try (InputStream inputStream = job.track(new ByteArrayInputStream("12345".getBytes()))) {
+      assertEquals('1', inputStream.read());
+      assertEquals(4, inputStream.readAllBytes().length);
+    }
+
+    assertEquals(5, job.getBytesRead());
+  }
+}
@@ -0,0 +1,148 @@
+package org.molgenis.armadillo.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class VariableIndexTest {
+
+  private static final Set<String> STATUS_LEVELS = Set.of("active", "inactive");
+
+  @TempDir Path root;
+  LocalStorageService storageService;
+  VariableIndex index;
+  final List<Runnable> updates = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Path core = Files.createDirectories(root.resolve("shared-lifecycle/core"));
+    ParquetUtilsTest.writeTestTable(core);
+    Files.createDirectories(root.resolve("shared-diabetes"));
+    storageService = new LocalStorageService(root.toString());
+    saveLink("diabetes", "core/link.alf", "age,status");
+    index = new VariableIndex(storageService, updates::add);
+  }
+
+  private void saveLink(String project, String object, String variables) {
+    ArmadilloLinkFile linkFile =
+        new ArmadilloLinkFile("lifecycle", "core/test", variables, object, project);
+    storageService.save(linkFile.toStream(), "shared-" + project, object, APPLICATION_OCTET_STREAM);
+  }
+
+  private List<VariableSearchResult> search(String query, boolean substring) {
+    return index.search(query, substring, project -> true, 100);
+  }
+
+  private void runUpdates() {
+    List.copyOf(updates).forEach(Runnable::run);
+    updates.clear();
+  }
+
+  @Test
+  void testSearchByPrefix() {
+    assertEquals(
+        List.of(
+            new VariableSearchResult(
+                "diabetes", "core/link.alf", "status", "BINARY", STATUS_LEVELS),
+            new VariableSearchResult(
+                "lifecycle", "core/test.parquet", "status", "BINARY", STATUS_LEVELS)),
+        search("STAT", false));
+    assertEquals(List.of(), search("tus", false));
+  }
+
+  @Test
+  void testSearchBySubstring() {
+    assertEquals(
+        List.of(
+            new VariableSearchResult("diabetes", "core/link.alf", "age", "INT32", null),
+            new VariableSearchResult("lifecycle", "core/test.parquet", "age", "INT32", null),
+            new VariableSearchResult("lifecycle", "core/test.parquet", "name", "BINARY", null),
+            new VariableSearchResult(
+                "diabetes", "core/link.alf", "status", "BINARY", STATUS_LEVELS),
+            new VariableSearchResult(
+                "lifecycle", "core/test.parquet", "status", "BINARY", STATUS_LEVELS)),
+        search("A", true));
+  }
+
+  @Test
+  void testSearchOnlyInFilteredProjectsUpToLimit() {
+    assertEquals(
+        List.of(new VariableSearchResult("lifecycle", "core/test.parquet", "age", "INT32", null)),
+        index.search("a", true, "lifecycle"::equals, 1));
+  }
+
+  @Test
+  void testUpdateOnlyReadsChangedObjects() throws IOException {
+    LocalStorageService spy = Mockito.spy(storageService);
+    index = new VariableIndex(spy, updates::add);
+    search("id", false);
+
+    Files.copy(
+        root.resolve("shared-lifecycle/core/test.parquet"),
+        root.resolve("shared-diabetes/copy.parquet"));
+    spy.refreshObject("shared-diabetes", "copy.parquet");
+    spy.delete("shared-diabetes", "core/link.alf");
+    index.update();
+
+    assertEquals(
+        List.of(
+            new VariableSearchResult("diabetes", "copy.parquet", "status", "BINARY", STATUS_LEVELS),
+            new VariableSearchResult(
+                "lifecycle", "core/test.parquet", "status", "BINARY", STATUS_LEVELS)),
+        search("status", false));
+    Mockito.verify(spy, Mockito.times(1))
+        .getPathIfObjectExists("shared-lifecycle", "core/test.parquet");
+  }
+
+  @Test
+  void testSearchAnswersFromLastIndexWhileUpdating() {
+    search("status", false);
+    storageService.delete("shared-diabetes", "core/link.alf");
+
+    assertEquals(2, search("status", false).size());
+    assertEquals(2, search("status", false).size());
+    assertEquals(1, updates.size());
+
+    runUpdates();
+
+    assertEquals(
+        List.of(
+            new VariableSearchResult(
+                "lifecycle", "core/test.parquet", "status", "BINARY", STATUS_LEVELS)),
+        search("status", false));
+    assertEquals(List.of(), updates);
+  }
+
+  @Test
+  void testLinkWithoutSourceHasNoTypes() {
+    storageService.delete("shared-lifecycle", "core/test.parquet");
+
+    assertEquals(
+        List.of(new VariableSearchResult("diabetes", "core/link.alf", "age", null, null)),
+        search("age", false));
+  }
+
+  @Test
+  void testInvalidObjectIsIndexedWithoutVariables() {
+    storageService.save(
+        InputStream.nullInputStream(),
+        "shared-diabetes",
+        "broken.parquet",
+        APPLICATION_OCTET_STREAM);
+
+    assertEquals(
+        List.of(new VariableSearchResult("lifecycle", "core/test.parquet", "id", "INT32", null)),
+        search("id", false));
+  }
+}
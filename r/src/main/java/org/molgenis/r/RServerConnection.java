@@ -1,5 +1,6 @@
 package org.molgenis.r;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.function.Consumer;
 
@@ -26,6 +27,18 @@ public interface RServerConnection {
    */
   RServerResult eval(String expr, boolean serialized) throws RServerException;
 
+  /**
+   * Evaluate an expression and return the raw result as a stream, which has to be closed. The
+   * result is read from the server while the stream is read, instead of being held in memory.
+   *
+   * @param expr
+   * @return
+   * @throws RServerException
+   */
+  default InputStream evalStream(String expr) throws RServerException {
+    return new ByteArrayInputStream(eval(expr, true).asBytes());
+  }
+
   /**
    * Write a file from the input stream.
    *
@@ -1,21 +1,36 @@
 package org.molgenis.r;
 
+import static java.lang.String.format;
+
 import java.io.IOException;
 import java.net.*;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.molgenis.r.config.EnvironmentConfigProps;
+import org.molgenis.r.config.RockClientProps;
 import org.molgenis.r.rock.RockConnectionFactory;
 import org.molgenis.r.rserve.RserveConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class RServerConnectionFactory implements RConnectionFactory {
+public class RServerConnectionFactory implements RConnectionFactory, AutoCloseable {
   private static final Logger logger = LoggerFactory.getLogger(RServerConnectionFactory.class);
 
   private final EnvironmentConfigProps environment;
+  private final RockClientProps clientProps;
+  private final AtomicBoolean checkingRockStatus = new AtomicBoolean();
+  private RockConnectionFactory rockConnectionFactory;
+  private boolean closed;
+  private volatile RockStatusCode rockStatus;
+  private volatile long rockStatusTime;
 
   public RServerConnectionFactory(EnvironmentConfigProps environment) {
+    this(environment, new RockClientProps());
+  }
+
+  public RServerConnectionFactory(EnvironmentConfigProps environment, RockClientProps clientProps) {
     this.environment = environment;
+    this.clientProps = clientProps;
   }
 
   RockStatusCode doHead(String uri) {
@@ -25,6 +40,8 @@ public class RServerConnectionFactory implements RConnectionFactory {
       HttpURLConnection connection;
       try {
         connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout((int) clientProps.getConnectTimeout().toMillis());
+        connection.setReadTimeout((int) clientProps.getConnectTimeout().toMillis());
         connection.setRequestMethod("HEAD");
         connection.getContentLength();
         int responseCode = connection.getResponseCode();
@@ -72,22 +89,91 @@ public class RServerConnectionFactory implements RConnectionFactory {
         || rockStatusCode == RockStatusCode.UNEXPECTED_URL;
   }
 
-  @Override
-  public RServerConnection tryCreateConnection() {
-    if (environment.getImage().contains("rock")) {
-      String url = "http://" + environment.getHost() + ":" + environment.getPort();
-      RockStatusCode rockStatus = doHead(url);
-      String statusMessage = getMessageFromStatus(rockStatus, url);
-      if (isWarningStatus(rockStatus)) {
+  /**
+   * The last known state of the Rock server. Only the first call waits for the server to answer,
+   * after that a state that is older than the health check interval is checked again in the
+   * background.
+   */
+  RockStatusCode getRockStatus() {
+    RockStatusCode status = rockStatus;
+    if (status == null) {
+      return checkRockStatus();
+    }
+    long age = System.nanoTime() - rockStatusTime;
+    if (age > clientProps.getHealthCheckInterval().toNanos()
+        && checkingRockStatus.compareAndSet(false, true)) {
+      Thread.ofVirtual()
+          .name("rock-health-check")
+          .start(
+              () -> {
+                try {
+                  checkRockStatus();
+                } finally {
+                  checkingRockStatus.set(false);
+                }
+              });
+    }
+    return status;
+  }
+
+  private RockStatusCode checkRockStatus() {
+    String url = getRockUrl();
+    RockStatusCode status = doHead(url);
+    RockStatusCode previous = rockStatus;
+    rockStatus = status;
+    rockStatusTime = System.nanoTime();
+    if (status != previous) {
+      String statusMessage = getMessageFromStatus(status, url);
+      if (isWarningStatus(status)) {
         logger.warn(statusMessage);
       } else if (!Objects.equals(statusMessage, "")) {
         logger.info(statusMessage);
       }
-      return new RockConnectionFactory(environment).tryCreateConnection();
+    }
+    return status;
+  }
+
+  private String getRockUrl() {
+    return "http://" + environment.getHost() + ":" + environment.getPort();
+  }
+
+  private synchronized RockConnectionFactory getRockConnectionFactory() {
+    if (closed) {
+      throw new IllegalStateException(format("Connection factory for %s is closed", getRockUrl()));
+    }
+    if (rockConnectionFactory == null) {
+      rockConnectionFactory = new RockConnectionFactory(environment, clientProps);
+    }
+    return rockConnectionFactory;
+  }
+
+  @Override
+  public RServerConnection tryCreateConnection() {
+    if (environment.getImage().contains("rock")) {
+      getRockStatus();
+      try {
+        return getRockConnectionFactory().tryCreateConnection();
+      } catch (RuntimeException e) {
+        // check the server on the next attempt
+        rockStatusTime = 0;
+        throw e;
+      }
     } else {
       return new RserveConnectionFactory(environment).tryCreateConnection();
     }
   }
+
+  /**
+   * Refuses new connections, e.g. when the profile changed. Open connections keep working until
+   * they are closed.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (rockConnectionFactory != null) {
+      rockConnectionFactory.close();
+    }
+  }
 }
 
 enum RockStatusCode {
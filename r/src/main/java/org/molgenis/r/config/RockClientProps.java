@@ -0,0 +1,70 @@
+package org.molgenis.r.config;
+
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+
+/** Settings of the HTTP client that the connections to a Rock server share. */
+public class RockClientProps {
+  @Positive private int maxConnections = 100;
+  private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+  private Duration connectTimeout = Duration.ofSeconds(10);
+  private Duration responseTimeout = Duration.ZERO;
+  private Duration keepAlive = Duration.ofSeconds(30);
+  private Duration healthCheckInterval = Duration.ofSeconds(10);
+
+  /**
+   * Connections that are open at the same time. Every session that is waiting for R holds one, so
+   * this is the number of sessions of a profile that can run a command at the same time.
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /** Time to wait for a free connection when all connections are in use. */
+  public Duration getConnectionRequestTimeout() {
+    return connectionRequestTimeout;
+  }
+
+  public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+    this.connectionRequestTimeout = connectionRequestTimeout;
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(Duration connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /** Time to wait for a response, zero waits as long as R takes. */
+  public Duration getResponseTimeout() {
+    return responseTimeout;
+  }
+
+  public void setResponseTimeout(Duration responseTimeout) {
+    this.responseTimeout = responseTimeout;
+  }
+
+  /** Time an idle connection is kept open for the next request. */
+  public Duration getKeepAlive() {
+    return keepAlive;
+  }
+
+  public void setKeepAlive(Duration keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  /** Time after which the known state of the server is checked again. */
+  public Duration getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  public void setHealthCheckInterval(Duration healthCheckInterval) {
+    this.healthCheckInterval = healthCheckInterval;
+  }
+}
@@ -2,22 +2,24 @@ package org.molgenis.r.rock;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import org.molgenis.r.RServerConnection;
 import org.molgenis.r.RServerException;
 import org.molgenis.r.RServerResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
 
 public class RockConnection implements RServerConnection {
@@ -27,6 +29,7 @@ public class RockConnection implements RServerConnection {
   public static final MediaType MEDIATYPE_APPLICATION_RSCRIPT =
       MediaType.valueOf("application/x-rscript");
   private static final String UPLOAD_FAILED = "File upload failed: ";
+  private static final String EVAL_FAILED = "Eval failed: ";
   private static final String UPLOAD_ENDPOINT = "/_upload";
   private static final String EVAL_ENDPOINT = "/_eval";
   public static final String DOWNLOAD_ENDPOINT = "/_download";
@@ -38,10 +41,26 @@ public class RockConnection implements RServerConnection {
 
   private final RockApplication application;
   private final RestClient restClient;
+  private final Runnable onClose;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
-  public RockConnection(RockApplication application) throws RServerException {
+  /**
+   * @param restClient client that sends the authentication of the application, shared by all
+   *     connections to the same server
+   */
+  public RockConnection(RockApplication application, RestClient restClient)
+      throws RServerException {
+    this(application, restClient, () -> {});
+  }
+
+  /**
+   * @param onClose runs once when the connection is closed, e.g. to release the shared client
+   */
+  RockConnection(RockApplication application, RestClient restClient, Runnable onClose)
+      throws RServerException {
     this.application = application;
-    this.restClient = getRestClient();
+    this.restClient = restClient;
+    this.onClose = onClose;
     openSession();
   }
 
@@ -77,6 +96,39 @@ public class RockConnection implements RServerConnection {
     }
   }
 
+  @Override
+  public InputStream evalStream(String expr) throws RServerException {
+    String serverUrl = getRSessionResourceUrl(EVAL_ENDPOINT);
+    try {
+      return createRequestForPost(serverUrl, expr, MEDIATYPE_APPLICATION_RSCRIPT)
+          .accept(MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON)
+          // the response is closed together with the stream
+          .exchange(
+              (request, response) -> {
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                  try (response) {
+                    throw new RestClientResponseException(
+                        response.getStatusText(),
+                        response.getStatusCode(),
+                        response.getStatusText(),
+                        response.getHeaders(),
+                        response.getBody().readAllBytes(),
+                        null);
+                  }
+                }
+                try {
+                  return new ResponseInputStream(response);
+                } catch (IOException e) {
+                  response.close();
+                  throw e;
+                }
+              },
+              false);
+    } catch (RestClientException e) {
+      throw new RockServerException(EVAL_FAILED, e);
+    }
+  }
+
   @Override
   public void writeFile(String fileName, InputStream in) throws RServerException {
     try {
@@ -131,13 +183,23 @@ public class RockConnection implements RServerConnection {
 
   @Override
   public boolean close() {
+    try {
+      return closeSession();
+    } finally {
+      if (closed.compareAndSet(false, true)) {
+        onClose.run();
+      }
+    }
+  }
+
+  private boolean closeSession() {
     if (Strings.isNullOrEmpty(rockSessionId)) return true;
 
     try {
       restClient.delete().uri(getRSessionResourceUrl("")).retrieve().toBodilessEntity();
       this.rockSessionId = null;
       return true;
-    } catch (RestClientException e) {
+    } catch (RuntimeException e) {
       String msg = "Failure when closing the Rock R session {}";
       if (logger.isDebugEnabled()) logger.warn(msg, rockSessionId, e);
       else logger.warn(msg, rockSessionId);
@@ -168,26 +230,6 @@ public class RockConnection implements RServerConnection {
     return String.format("%s/r/session/%s%s", application.getUrl(), rockSessionId, path);
   }
 
-  private String getAuthHeader() {
-    String auth = application.getUser() + ":" + application.getPassword();
-    byte[] encodedAuth = Base64.getEncoder().encode(auth.getBytes(StandardCharsets.UTF_8));
-    return "Basic " + new String(encodedAuth);
-  }
-
-  private RestClient getRestClient() {
-    String serverUrl = getRSessionResourceUrl(UPLOAD_ENDPOINT);
-    String authHeader = getAuthHeader();
-    return RestClient.builder()
-        .baseUrl(serverUrl)
-        .requestFactory(ClientHttpRequestFactoryBuilder.httpComponents().build())
-        .defaultHeaders(
-            httpHeaders -> {
-              httpHeaders.setBasicAuth(authHeader);
-              httpHeaders.set(HttpHeaders.AUTHORIZATION, authHeader);
-            })
-        .build();
-  }
-
   private RestClient.RequestBodySpec createRequestForPost(
       String uriString, Object body, MediaType contentType) {
     return restClient.post().uri(uriString).contentType(contentType).body(body);
@@ -198,6 +240,22 @@ public class RockConnection implements RServerConnection {
     return createRequestForPost(uriString, body, contentType).retrieve();
   }
 
+  /** Body of a response that releases the connection of the response when it is closed. */
+  private static class ResponseInputStream extends FilterInputStream {
+
+    private final ClientHttpResponse response;
+
+    ResponseInputStream(ClientHttpResponse response) throws IOException {
+      super(response.getBody());
+      this.response = response;
+    }
+
+    @Override
+    public void close() {
+      response.close();
+    }
+  }
+
   private static class MultiPartInputStreamResource extends InputStreamResource {
 
     private final String fileName;
@@ -2,21 +2,63 @@ package org.molgenis.r.rock;
 
 import static java.lang.String.format;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.molgenis.r.RConnectionVendorFactory;
 import org.molgenis.r.RServerConnection;
 import org.molgenis.r.RServerException;
 import org.molgenis.r.config.EnvironmentConfigProps;
+import org.molgenis.r.config.RockClientProps;
 import org.molgenis.r.exceptions.ConnectionCreationFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
 
-public class RockConnectionFactory implements RConnectionVendorFactory {
+/**
+ * Creates connections to a Rock server. All connections share one HTTP client, which keeps idle
+ * connections to the server open, so a request doesn't have to set up a new TCP connection. The
+ * client is closed when the factory and all connections it created are closed, so closing the
+ * factory, e.g. when the profile changes, doesn't break the sessions that are still open.
+ */
+public class RockConnectionFactory implements RConnectionVendorFactory, AutoCloseable {
 
   private static final Logger logger = LoggerFactory.getLogger(RockConnectionFactory.class);
   private final EnvironmentConfigProps environment;
+  private final RockApplication application;
+  private final CloseableHttpClient httpClient;
+  private final RestClient restClient;
+
+  /** The factory and each open connection hold a reference to the client. */
+  private int references = 1;
+
+  private boolean closed;
 
   public RockConnectionFactory(EnvironmentConfigProps environment) {
+    this(environment, new RockClientProps());
+  }
+
+  public RockConnectionFactory(EnvironmentConfigProps environment, RockClientProps clientProps) {
     this.environment = environment;
+    // TODO make rock credentials configurable
+    this.application =
+        new RockApplication(
+            format("http://%s:%s", environment.getHost(), environment.getPort()),
+            "administrator",
+            "password");
+    this.httpClient = createHttpClient(clientProps);
+    this.restClient = createRestClient(application, httpClient, clientProps);
   }
 
   @Override
@@ -27,16 +69,107 @@ public class RockConnectionFactory implements RConnectionVendorFactory {
               "Trying to connect to instance: [ %s ] on [ %s ]",
               environment.getHost(), environment.getPort()));
     }
-    // TODO make rock credentials configurable
-    RockApplication application =
-        new RockApplication(
-            format("http://%s:%s", environment.getHost(), environment.getPort()),
-            "administrator",
-            "password");
+    acquire();
     try {
-      return new RockConnection(application);
+      return new RockConnection(application, restClient, this::release);
     } catch (RServerException e) {
+      release();
       throw new ConnectionCreationFailedException(e);
+    } catch (RuntimeException e) {
+      release();
+      throw e;
+    }
+  }
+
+  private synchronized void acquire() {
+    if (closed) {
+      throw new IllegalStateException(
+          format("Connection factory for %s is closed", application.getUrl()));
+    }
+    references++;
+  }
+
+  private synchronized void release() {
+    if (--references == 0) {
+      logger.debug("Closing the connections to {}", application.getUrl());
+      httpClient.close(CloseMode.GRACEFUL);
+    }
+  }
+
+  synchronized boolean isClientClosed() {
+    return references == 0;
+  }
+
+  static CloseableHttpClient createHttpClient(RockClientProps clientProps) {
+    ConnectionConfig connectionConfig =
+        ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(clientProps.getConnectTimeout()))
+            // the keep-alive of the server may be shorter than ours
+            .setValidateAfterInactivity(TimeValue.ofSeconds(1))
+            .build();
+    // all requests go to the same server, so the pool has a single route
+    return HttpClients.custom()
+        .setConnectionManager(
+            PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(clientProps.getMaxConnections())
+                .setMaxConnPerRoute(clientProps.getMaxConnections())
+                .setDefaultConnectionConfig(connectionConfig)
+                .build())
+        .setKeepAliveStrategy((response, context) -> TimeValue.of(clientProps.getKeepAlive()))
+        .setDefaultRequestConfig(
+            RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(clientProps.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.of(clientProps.getResponseTimeout()))
+                .build())
+        .build();
+  }
+
+  static RestClient createRestClient(
+      RockApplication application, CloseableHttpClient httpClient, RockClientProps clientProps) {
+    String authHeader = getAuthHeader(application);
+    return RestClient.builder()
+        .requestFactory(new HttpComponentsClientHttpRequestFactory(httpClient))
+        .requestInterceptor(explainConnectionRequestTimeout(application, clientProps))
+        .defaultHeaders(httpHeaders -> httpHeaders.set(HttpHeaders.AUTHORIZATION, authHeader))
+        .build();
+  }
+
+  /** Replaces the bare timeout of the pool with one that says why there was no connection. */
+  private static ClientHttpRequestInterceptor explainConnectionRequestTimeout(
+      RockApplication application, RockClientProps clientProps) {
+    return (request, body, execution) -> {
+      try {
+        return execution.execute(request, body);
+      } catch (ConnectionRequestTimeoutException e) {
+        var exception =
+            new ConnectionRequestTimeoutException(
+                format(
+                    "All %d connections to %s are in use, none became free within %d ms. Raise"
+                        + " armadillo.rock-client.max-connections to run more commands at once.",
+                    clientProps.getMaxConnections(),
+                    application.getUrl(),
+                    clientProps.getConnectionRequestTimeout().toMillis()));
+        exception.initCause(e);
+        throw exception;
+      }
+    };
+  }
+
+  private static String getAuthHeader(RockApplication application) {
+    String auth = application.getUser() + ":" + application.getPassword();
+    byte[] encodedAuth = Base64.getEncoder().encode(auth.getBytes(StandardCharsets.UTF_8));
+    return "Basic " + new String(encodedAuth);
+  }
+
+  /**
+   * Refuses new connections. The client is closed when the connections that are still open have
+   * been closed too.
+   */
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      release();
     }
   }
 }
@@ -29,7 +29,7 @@ public class RockServerException extends RServerException {
   }
 
   RockServerException(String message, RestClientException e) {
-    super(message);
+    super(message, e);
     if (e instanceof RestClientResponseException) {
       RestClientResponseException re = (RestClientResponseException) e;
       this.clientError = re.getRawStatusCode() < 500;
@@ -39,7 +39,11 @@ public class RockServerException extends RServerException {
       } catch (JSONException je) {
         this.causeMessage = re.getStatusText();
       }
-    } else this.clientError = false;
+    } else {
+      this.clientError = false;
+      // e.g. why no connection to the server could be made
+      this.causeMessage = e.getCause() != null ? e.getCause().getMessage() : null;
+    }
   }
 
   public boolean isClientError() {
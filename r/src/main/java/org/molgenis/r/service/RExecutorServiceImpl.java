@@ -40,6 +40,17 @@ public class RExecutorServiceImpl implements RExecutorService {
     }
   }
 
+  @Override
+  public InputStream executeStream(String cmd, RServerConnection connection) {
+    try {
+      LOGGER.debug("Evaluate {}", cmd);
+      return connection.evalStream(cmd);
+    } catch (RServerException e) {
+      LOGGER.warn("RServerException", e);
+      throw new RExecutionException(e);
+    }
+  }
+
   @Override
   public void saveWorkspace(
       RServerConnection connection, Consumer<InputStream> inputStreamConsumer) {
@@ -79,7 +90,8 @@ public class RExecutorServiceImpl implements RExecutorService {
       if (variables.isEmpty()) {
         execute(
             format(
-                "is.null(base::assign('%s', value={data.frame(arrow::read_parquet('%s', as_data_frame = FALSE))}))",
+                "is.null(base::assign('%s', value={data.frame(arrow::read_parquet('%s',"
+                    + " as_data_frame = FALSE))}))",
                 symbol, rFileName),
             connection);
       } else {
@@ -89,7 +101,8 @@ public class RExecutorServiceImpl implements RExecutorService {
                 + ")";
         execute(
             format(
-                "is.null(base::assign('%s', value={data.frame(arrow::read_parquet('%s', as_data_frame = FALSE, col_select = %s))}))",
+                "is.null(base::assign('%s', value={data.frame(arrow::read_parquet('%s',"
+                    + " as_data_frame = FALSE, col_select = %s))}))",
                 symbol, rFileName, colSelect),
             connection);
       }
@@ -2,8 +2,15 @@ package org.molgenis.r;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 import org.molgenis.r.config.EnvironmentConfigProps;
+import org.molgenis.r.config.RockClientProps;
 
 public class RserverConnectionFactoryTest {
   EnvironmentConfigProps props = new EnvironmentConfigProps();
@@ -88,4 +95,47 @@ public class RserverConnectionFactoryTest {
     Boolean isWarning = connectionFactory.isWarningStatus(RockStatusCode.UNEXPECTED_RESPONSE_CODE);
     assertFalse(isWarning);
   }
+
+  @Test
+  public void testGetRockStatusIsCached() {
+    RockClientProps clientProps = new RockClientProps();
+    clientProps.setHealthCheckInterval(Duration.ofHours(1));
+    List<String> heads = new CopyOnWriteArrayList<>();
+    RServerConnectionFactory factory =
+        new RServerConnectionFactory(props, clientProps) {
+          @Override
+          RockStatusCode doHead(String uri) {
+            heads.add(uri);
+            return RockStatusCode.OK;
+          }
+        };
+
+    assertEquals(RockStatusCode.OK, factory.getRockStatus());
+    assertEquals(RockStatusCode.OK, factory.getRockStatus());
+    assertEquals(1, heads.size());
+  }
+
+  @Test
+  public void testGetRockStatusRefreshesInBackground() throws InterruptedException {
+    RockClientProps clientProps = new RockClientProps();
+    clientProps.setHealthCheckInterval(Duration.ZERO);
+    CountDownLatch refreshed = new CountDownLatch(1);
+    AtomicInteger heads = new AtomicInteger();
+    RServerConnectionFactory factory =
+        new RServerConnectionFactory(props, clientProps) {
+          @Override
+          RockStatusCode doHead(String uri) {
+            if (heads.incrementAndGet() == 1) {
+              return RockStatusCode.SERVER_NOT_READY;
+            }
+            refreshed.countDown();
+            return RockStatusCode.OK;
+          }
+        };
+
+    assertEquals(RockStatusCode.SERVER_NOT_READY, factory.getRockStatus());
+    Thread.sleep(1);
+    assertEquals(RockStatusCode.SERVER_NOT_READY, factory.getRockStatus());
+    assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+  }
 }
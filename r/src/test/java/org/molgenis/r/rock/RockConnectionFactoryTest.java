@@ -0,0 +1,137 @@
+package org.molgenis.r.rock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.molgenis.r.RServerConnection;
+import org.molgenis.r.RServerConnectionFactory;
+import org.molgenis.r.RServerException;
+import org.molgenis.r.config.EnvironmentConfigProps;
+import org.molgenis.r.config.RockClientProps;
+
+class RockConnectionFactoryTest {
+
+  private HttpServer server;
+  private final EnvironmentConfigProps environment = new EnvironmentConfigProps();
+  private final RockClientProps clientProps = new RockClientProps();
+  private final List<String> sessionRequests = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/r/sessions", exchange -> respond(exchange, "{\"id\":\"session\"}"));
+    server.createContext(
+        "/r/session/session",
+        exchange -> {
+          sessionRequests.add(exchange.getRequestMethod());
+          respond(exchange, "[1]");
+        });
+    server.createContext(
+        "/",
+        exchange -> {
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.start();
+    environment.setHost("localhost");
+    environment.setPort(server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (var out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @Test
+  void testWaitForFreeConnectionTimesOut() throws RServerException, IOException {
+    clientProps.setMaxConnections(1);
+    clientProps.setConnectionRequestTimeout(Duration.ofMillis(100));
+    try (var factory = new RockConnectionFactory(environment, clientProps)) {
+      RServerConnection connection = factory.tryCreateConnection();
+
+      try (InputStream ignored = connection.evalStream("1")) {
+        var exception = assertThrows(RServerException.class, () -> connection.evalStream("2"));
+        assertEquals(
+            "Eval failed:  -> All 1 connections to http://localhost:"
+                + environment.getPort()
+                + " are in use, none became free within 100 ms. Raise"
+                + " armadillo.rock-client.max-connections to run more commands at once.",
+            exception.getMessage());
+        assertInstanceOf(ConnectionRequestTimeoutException.class, exception.getCause().getCause());
+      }
+      try (InputStream in = connection.evalStream("3")) {
+        assertEquals("[1]", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  @Test
+  void testCloseWithoutConnectionsClosesClient() {
+    var factory = new RockConnectionFactory(environment, clientProps);
+
+    factory.close();
+
+    assertTrue(factory.isClientClosed());
+    var exception = assertThrows(IllegalStateException.class, factory::tryCreateConnection);
+    assertEquals(
+        "Connection factory for http://localhost:" + environment.getPort() + " is closed",
+        exception.getMessage());
+  }
+
+  @Test
+  void testCloseKeepsClientUntilLastConnectionIsClosed() throws RServerException {
+    var factory = new RockConnectionFactory(environment, clientProps);
+    RServerConnection first = factory.tryCreateConnection();
+    RServerConnection second = factory.tryCreateConnection();
+
+    factory.close();
+
+    assertThrows(IllegalStateException.class, factory::tryCreateConnection);
+    assertNotNull(first.eval("1", false));
+    assertTrue(first.close());
+    assertFalse(factory.isClientClosed());
+    assertTrue(second.close());
+    assertTrue(factory.isClientClosed());
+    assertEquals(List.of("POST", "DELETE", "DELETE"), sessionRequests);
+  }
+
+  /** A profile is flushed when it changes, the sessions that are open keep working. */
+  @Test
+  void testFlushProfileWhileSessionIsOpen() throws RServerException, IOException {
+    environment.setImage("datashield/rock-base");
+    var profileFactory = new RServerConnectionFactory(environment, clientProps);
+    RServerConnection session = profileFactory.tryCreateConnection();
+
+    profileFactory.close();
+
+    assertThrows(IllegalStateException.class, profileFactory::tryCreateConnection);
+    try (InputStream in = session.evalStream("1")) {
+      assertEquals("[1]", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+    assertTrue(session.close());
+    assertEquals(List.of("POST", "DELETE"), sessionRequests);
+  }
+}
@@ -0,0 +1,110 @@
+package org.molgenis.r.rock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.molgenis.r.RServerException;
+import org.molgenis.r.config.RockClientProps;
+
+class RockConnectionTest {
+
+  private static final int CHUNK_SIZE = 1024 * 1024;
+  private static final int CHUNKS = 64;
+
+  private HttpServer server;
+  private RockConnection connection;
+
+  /** Released when the client has read the first chunk of the result. */
+  private final CountDownLatch firstChunkRead = new CountDownLatch(1);
+
+  @BeforeEach
+  void setUp() throws IOException, RServerException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext(
+        "/r/sessions",
+        exchange -> {
+          byte[] body = "{\"id\":\"session\"}".getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          try (var out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    server.createContext("/r/session/session/_eval", this::streamLargeResult);
+    server.start();
+
+    RockApplication application =
+        new RockApplication(
+            "http://localhost:" + server.getAddress().getPort(), "administrator", "password");
+    RockClientProps clientProps = new RockClientProps();
+    connection =
+        new RockConnection(
+            application,
+            RockConnectionFactory.createRestClient(
+                application, RockConnectionFactory.createHttpClient(clientProps), clientProps));
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  /**
+   * Sends {@link #CHUNKS} MB of serialized result, but only the first MB until the client has read
+   * it, so a client that reads the whole body before returning it never gets an answer.
+   */
+  private void streamLargeResult(HttpExchange exchange) throws IOException {
+    exchange.getRequestBody().readAllBytes();
+    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(200, (long) CHUNK_SIZE * CHUNKS);
+    byte[] chunk = new byte[CHUNK_SIZE];
+    try (OutputStream out = exchange.getResponseBody()) {
+      for (int i = 0; i < CHUNKS; i++) {
+        chunk[0] = (byte) i;
+        out.write(chunk);
+        out.flush();
+        if (i == 0 && !firstChunkRead.await(10, TimeUnit.SECONDS)) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void testEvalStreamDoesNotBufferResult() {
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(30),
+        () -> {
+          try (InputStream in = connection.evalStream("base::serialize(D, NULL)")) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            assertEquals(CHUNK_SIZE, in.readNBytes(chunk, 0, CHUNK_SIZE));
+            assertEquals(0, chunk[0]);
+            firstChunkRead.countDown();
+
+            long remaining = 0;
+            int read;
+            while ((read = in.readNBytes(chunk, 0, CHUNK_SIZE)) > 0) {
+              remaining += read;
+            }
+            assertEquals((long) CHUNK_SIZE * (CHUNKS - 1), remaining);
+            assertEquals(CHUNKS - 1, chunk[0]);
+          }
+        });
+  }
+}
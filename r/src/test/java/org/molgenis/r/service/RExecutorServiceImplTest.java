@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -80,6 +81,25 @@ class RExecutorServiceImplTest {
     assertEquals("Error in try(mean(age)) : object 'age' not found", thrown.getMessage());
   }
 
+  @Test
+  void executeStream() throws RServerException {
+    InputStream stream = new ByteArrayInputStream(new byte[] {0x1});
+    when(rConnection.evalStream("mean(age)")).thenReturn(stream);
+
+    assertSame(stream, executorService.executeStream("mean(age)", rConnection));
+  }
+
+  @Test
+  void executeStreamFail() throws RServerException {
+    when(rConnection.evalStream("mean(ages)")).thenThrow(new RockServerException("Eval failed"));
+
+    RExecutionException thrown =
+        assertThrows(
+            RExecutionException.class,
+            () -> executorService.executeStream("mean(ages)", rConnection));
+    assertTrue(thrown.getMessage().contains("Eval failed"));
+  }
+
   @Test
   void executeFailResultIsNull() throws RServerException {
     when(rConnection.eval("mean(child_id)", false)).thenReturn(null);
@@ -107,7 +127,10 @@ class RExecutorServiceImplTest {
     Resource resource = new InMemoryResource("Hello");
 
     when(rConnection.eval(
-            "is.null(base::assign('D', value={data.frame(arrow::read_parquet('project_folder_table.parquet', as_data_frame = FALSE, col_select = tidyselect::any_of(c(\"col1\",\"col2\"))))}))",
+            "is.null(base::assign('D',"
+                + " value={data.frame(arrow::read_parquet('project_folder_table.parquet',"
+                + " as_data_frame = FALSE, col_select ="
+                + " tidyselect::any_of(c(\"col1\",\"col2\"))))}))",
             false))
         .thenReturn(new RockResult(new REXPLogical(true)));
     when(rConnection.eval("base::unlink('project_folder_table.parquet')", false))
@@ -118,7 +141,10 @@ class RExecutorServiceImplTest {
 
     verify(rConnection)
         .eval(
-            "is.null(base::assign('D', value={data.frame(arrow::read_parquet('project_folder_table.parquet', as_data_frame = FALSE, col_select = tidyselect::any_of(c(\"col1\",\"col2\"))))}))",
+            "is.null(base::assign('D',"
+                + " value={data.frame(arrow::read_parquet('project_folder_table.parquet',"
+                + " as_data_frame = FALSE, col_select ="
+                + " tidyselect::any_of(c(\"col1\",\"col2\"))))}))",
             false);
     verify(rConnection).eval("base::unlink('project_folder_table.parquet')", false);
   }
@@ -128,7 +154,9 @@ class RExecutorServiceImplTest {
     Resource resource = new InMemoryResource("Hello");
 
     when(rConnection.eval(
-            "is.null(base::assign('D', value={data.frame(arrow::read_parquet('project_folder_table.parquet', as_data_frame = FALSE))}))",
+            "is.null(base::assign('D',"
+                + " value={data.frame(arrow::read_parquet('project_folder_table.parquet',"
+                + " as_data_frame = FALSE))}))",
             false))
         .thenReturn(new RockResult(new REXPLogical(true)));
     when(rConnection.eval("base::unlink('project_folder_table.parquet')", false))
@@ -139,7 +167,9 @@ class RExecutorServiceImplTest {
 
     verify(rConnection)
         .eval(
-            "is.null(base::assign('D', value={data.frame(arrow::read_parquet('project_folder_table.parquet', as_data_frame = FALSE))}))",
+            "is.null(base::assign('D',"
+                + " value={data.frame(arrow::read_parquet('project_folder_table.parquet',"
+                + " as_data_frame = FALSE))}))",
             false);
     verify(rConnection).eval("base::unlink('project_folder_table.parquet')", false);
   }
@@ -253,7 +283,8 @@ class RExecutorServiceImplTest {
   @Test
   void testInstallPackage() throws IOException, RServerException {
     when(rConnection.eval(
-            "remotes::install_local('location__test_.tar.gz', dependencies = TRUE, upgrade = 'never')",
+            "remotes::install_local('location__test_.tar.gz', dependencies = TRUE, upgrade ="
+                + " 'never')",
             false))
         .thenReturn(new RserveResult(new REXPNull()));
     when(rConnection.eval("require('location/_test')", false))
@@ -268,7 +299,8 @@ class RExecutorServiceImplTest {
 
     verify(rConnection)
         .eval(
-            "remotes::install_local('location__test_.tar.gz', dependencies = TRUE, upgrade = 'never')",
+            "remotes::install_local('location__test_.tar.gz', dependencies = TRUE, upgrade ="
+                + " 'never')",
             false);
     verify(rConnection).eval("require('location/_test')", false);
     verify(rConnection).eval("file.remove('location/_test_.tar.gz')", false);